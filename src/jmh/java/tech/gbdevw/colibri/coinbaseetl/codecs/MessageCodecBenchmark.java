@@ -0,0 +1,176 @@
+package tech.gbdevw.colibri.coinbaseetl.codecs;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.buffer.Buffer;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Side;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Compares the zero-copy event bus codecs with the previous codecs which copied
+ * messages through intermediate byte arrays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    private final MatchMessageCodec matchCodec = new MatchMessageCodec();
+    private final TickerMessageCodec tickerCodec = new TickerMessageCodec();
+    private final CopyingMatchMessageCodec copyingMatchCodec = new CopyingMatchMessageCodec();
+    private final CopyingTickerMessageCodec copyingTickerCodec = new CopyingTickerMessageCodec();
+
+    private Match match;
+    private Ticker ticker;
+    private Buffer matchWire;
+    private Buffer tickerWire;
+
+    @Setup
+    public void setup() {
+
+        match = Match.newBuilder()
+            .setTimestamp(1600000000000000000L)
+            .setId(104503241L)
+            .setUnit(Currency.BTC)
+            .setQuote(Currency.USD)
+            .setSide(Side.SELL)
+            .setPrice(10543.21)
+            .setSize(0.0125)
+            .build();
+
+        ticker = Ticker.newBuilder()
+            .setTimestamp(1600000000000000001L)
+            .setId(17123456789L)
+            .setUnit(Currency.BTC)
+            .setQuote(Currency.USD)
+            .setBestBid(10543.20)
+            .setBestAsk(10543.21)
+            .setLastTradeSide(Side.SELL)
+            .setLastTradePrice(10543.21)
+            .setLastTradeSize(0.0125)
+            .build();
+
+        matchWire = Buffer.buffer();
+        matchCodec.encodeToWire(matchWire, match);
+        tickerWire = Buffer.buffer();
+        tickerCodec.encodeToWire(tickerWire, ticker);
+    }
+
+    @Benchmark
+    public Buffer encodeMatch() {
+        Buffer buffer = Buffer.buffer(64);
+        matchCodec.encodeToWire(buffer, match);
+        return buffer;
+    }
+
+    @Benchmark
+    public Buffer encodeMatchCopying() {
+        Buffer buffer = Buffer.buffer(64);
+        copyingMatchCodec.encodeToWire(buffer, match);
+        return buffer;
+    }
+
+    @Benchmark
+    public Match decodeMatch() {
+        return matchCodec.decodeFromWire(0, matchWire);
+    }
+
+    @Benchmark
+    public Match decodeMatchCopying() {
+        return copyingMatchCodec.decodeFromWire(0, matchWire);
+    }
+
+    @Benchmark
+    public Buffer encodeTicker() {
+        Buffer buffer = Buffer.buffer(64);
+        tickerCodec.encodeToWire(buffer, ticker);
+        return buffer;
+    }
+
+    @Benchmark
+    public Buffer encodeTickerCopying() {
+        Buffer buffer = Buffer.buffer(64);
+        copyingTickerCodec.encodeToWire(buffer, ticker);
+        return buffer;
+    }
+
+    @Benchmark
+    public Ticker decodeTicker() {
+        return tickerCodec.decodeFromWire(0, tickerWire);
+    }
+
+    @Benchmark
+    public Ticker decodeTickerCopying() {
+        return copyingTickerCodec.decodeFromWire(0, tickerWire);
+    }
+
+    /**
+     * Previous Match codec : serializes to a byte array which is then copied in the buffer
+     */
+    static class CopyingMatchMessageCodec extends MatchMessageCodec {
+
+        @Override
+        public void encodeToWire(Buffer buffer, Match s) {
+            byte[] b = s.toByteArray();
+            buffer.appendInt(b.length);
+            buffer.appendBytes(b);
+        }
+
+        @Override
+        public Match decodeFromWire(int pos, Buffer buffer) {
+
+            try {
+                int length = buffer.getInt(pos);
+                return Match.parseFrom(buffer.getBytes(pos + Integer.BYTES, pos + Integer.BYTES + length));
+            } 
+            catch (InvalidProtocolBufferException e) 
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Previous Ticker codec : serializes to a byte array which is then copied in the buffer
+     */
+    static class CopyingTickerMessageCodec extends TickerMessageCodec {
+
+        @Override
+        public void encodeToWire(Buffer buffer, Ticker s) {
+            byte[] b = s.toByteArray();
+            buffer.appendInt(b.length);
+            buffer.appendBytes(b);
+        }
+
+        @Override
+        public Ticker decodeFromWire(int pos, Buffer buffer) {
+
+            try {
+                int length = buffer.getInt(pos);
+                return Ticker.parseFrom(buffer.getBytes(pos + Integer.BYTES, pos + Integer.BYTES + length));
+            } 
+            catch (InvalidProtocolBufferException e) 
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonPrimitive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Conversion of the prices & sizes of Coinbase messages : Double.parseDouble (syncer),
+ * JsonPrimitive.getAsDouble (tree path) and CoinbaseDecimalHelper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimalParseBenchmark {
+
+    private String [] values;
+    private JsonPrimitive [] primitives;
+
+    @Setup
+    public void setup() {
+        values = new String [] { "9123.45000000", "0.00213877", "9123.44", "1.25000000", "37512.01", "0.1" };
+        primitives = new JsonPrimitive [values.length];
+        for(int i = 0; i < values.length; i++) {
+            primitives[i] = new JsonPrimitive(values[i]);
+        }
+    }
+
+    @Benchmark
+    public void parseDouble(Blackhole blackhole) {
+        for(String value : values) {
+            blackhole.consume(Double.parseDouble(value));
+        }
+    }
+
+    @Benchmark
+    public void gsonDouble(Blackhole blackhole) {
+        for(JsonPrimitive primitive : primitives) {
+            blackhole.consume(primitive.getAsDouble());
+        }
+    }
+
+    @Benchmark
+    public void helperDouble(Blackhole blackhole) {
+        for(String value : values) {
+            blackhole.consume(CoinbaseDecimalHelper.parseDouble(value));
+        }
+    }
+
+    @Benchmark
+    public void helperScaled(Blackhole blackhole) {
+        for(String value : values) {
+            blackhole.consume(CoinbaseDecimalHelper.parse(value));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Parse & build of the match and ticker frames of the test fixtures, as done by the
+ * websocket endpoint with the streaming decoder and with the tree path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecodeBenchmark {
+
+    private CoinbaseProductTable products;
+    private String matchFrame;
+    private String tickerFrame;
+
+    @Setup
+    public void setup() throws IOException {
+        products = new CoinbaseProductTable(List.of("BTC-USD"));
+        matchFrame = readMessage("/messages/CoinbaseMatchMessage.json");
+        tickerFrame = readMessage("/messages/CoinbaseTickerMessage.json");
+    }
+
+    @Benchmark
+    public Match streamMatch() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(matchFrame));
+        CoinbaseWSStreamDecoder.readType(reader);
+        return CoinbaseWSStreamDecoder.readMatch(reader, products);
+    }
+
+    @Benchmark
+    public Match treeMatch() {
+        return CoinbaseWsMatchHelper.getMatch(JsonParser.parseString(matchFrame).getAsJsonObject(), products);
+    }
+
+    @Benchmark
+    public Ticker streamTicker() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(tickerFrame));
+        CoinbaseWSStreamDecoder.readType(reader);
+        return CoinbaseWSStreamDecoder.readTicker(reader, products);
+    }
+
+    @Benchmark
+    public Ticker treeTicker() {
+        return CoinbaseWSTickHelper.getTicker(JsonParser.parseString(tickerFrame).getAsJsonObject(), products);
+    }
+
+    /**
+     * Read a frame from the test resources
+     */
+    static String readMessage(String resource) throws IOException {
+        try (InputStream in = FrameDecodeBenchmark.class.getResourceAsStream(resource)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.google.gson.stream.JsonReader;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSStreamDecoder;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.checkpoint.CheckpointService;
+import tech.gbdevw.colibri.coinbaseetl.service.dedupe.MatchDeduplicator;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.EpochClock;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.LatencyTracker;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+import tech.gbdevw.colibri.domain.serde.MatchSerializer;
+import tech.gbdevw.colibri.domain.serde.TickerSerializer;
+
+/**
+ * Full path of a frame : decode, deduplicate (matches), track the latency and send through the
+ * producers to a mock Kafka producer which serializes and acknowledges records immediately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestPathBenchmark {
+
+    /**
+     * Synchronous sends or asynchronous sends through the send window
+     */
+    @Param({ "false", "true" })
+    public boolean async;
+
+    private Vertx vertx;
+    private CoinbaseProductTable products;
+    private MatchDeduplicator dedupe;
+    private LatencyTracker latency;
+    private MatchProducer matchProducer;
+    private TickerProducer tickerProducer;
+    private String matchFrame;
+    private String tickerFrame;
+    private long tradeId;
+
+    @Setup
+    public void setup() throws Exception {
+
+        // Keep the per-event logs out of the console (their messages are still built)
+        java.util.logging.Logger.getLogger("").setLevel(Level.WARNING);
+
+        ConfluentProperties config = new ConfluentProperties();
+        config.match = Optional.of("matches");
+        config.ticker = Optional.of("tickers");
+        config.checkpoint = Optional.empty();
+        config.spool = Optional.empty();
+        config.async = async;
+
+        vertx = Vertx.vertx();
+        products = new CoinbaseProductTable(List.of("BTC-USD"));
+        BusMetrics bus = new BusMetrics(vertx.eventBus(), new MetricsRegistryImpl());
+        dedupe = new MatchDeduplicator(new CoinbaseProperties(), products, vertx.eventBus(), new MetricsRegistryImpl(), bus);
+        CheckpointService checkpoint = new CheckpointService(config, products, vertx);
+        latency = new LatencyTracker(new CoinbaseProperties(), products, new MetricsRegistryImpl());
+
+        matchProducer = new MatchProducer(config, products, vertx, new MetricsRegistryImpl(), checkpoint, latency, bus);
+        matchProducer.start(new AcknowledgingProducer<>(new MatchSerializer()));
+        tickerProducer = new TickerProducer(config, products, vertx, new MetricsRegistryImpl(), checkpoint, latency, bus);
+        tickerProducer.start(new AcknowledgingProducer<>(new TickerSerializer()));
+
+        matchFrame = readMessage("/messages/CoinbaseMatchMessage.json");
+        tickerFrame = readMessage("/messages/CoinbaseTickerMessage.json");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        matchProducer.close();
+        tickerProducer.close();
+        vertx.close();
+    }
+
+    @Benchmark
+    public boolean match() throws IOException {
+        long received = EpochClock.now();
+        JsonReader reader = new JsonReader(new StringReader(matchFrame));
+        CoinbaseWSStreamDecoder.readType(reader);
+        // The fixture is replayed with increasing trade ids so it is never a duplicate
+        Match match = CoinbaseWSStreamDecoder.readMatch(reader, products).toBuilder().setId(++tradeId).build();
+        latency.matchDispatched(match, received);
+        if(!dedupe.isNew(match)) {
+            return false;
+        }
+        matchProducer.produceMatchEvent(match);
+        return true;
+    }
+
+    @Benchmark
+    public Ticker ticker() throws IOException {
+        long received = EpochClock.now();
+        JsonReader reader = new JsonReader(new StringReader(tickerFrame));
+        CoinbaseWSStreamDecoder.readType(reader);
+        Ticker ticker = CoinbaseWSStreamDecoder.readTicker(reader, products);
+        latency.tickerDispatched(ticker, received);
+        tickerProducer.produceTickerEvent(ticker);
+        return ticker;
+    }
+
+    /**
+     * Read a frame from the test resources
+     */
+    static String readMessage(String resource) throws IOException {
+        try (InputStream in = IngestPathBenchmark.class.getResourceAsStream(resource)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Mock producer which serializes records and acknowledges them at once without keeping
+     * the history of the sent records (which would grow for the whole run)
+     */
+    static class AcknowledgingProducer<V> extends MockProducer<Long, V> {
+
+        private final LongSerializer keySerializer = new LongSerializer();
+        private final Serializer<V> valueSerializer;
+        private long offset;
+
+        AcknowledgingProducer(Serializer<V> valueSerializer) {
+            super(true, new LongSerializer(), valueSerializer);
+            this.valueSerializer = valueSerializer;
+        }
+
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<Long, V> record, Callback callback) {
+            byte[] key = keySerializer.serialize(record.topic(), record.key());
+            byte[] value = valueSerializer.serialize(record.topic(), record.value());
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), offset++, 0, RecordBatch.NO_TIMESTAMP, null, key.length, value.length);
+            if(callback != null) {
+                callback.onCompletion(metadata, null);
+            }
+            return CompletableFuture.completedFuture(metadata);
+        }
+    }
+}
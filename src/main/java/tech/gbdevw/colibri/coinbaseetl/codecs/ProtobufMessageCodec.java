@@ -0,0 +1,101 @@
+package tech.gbdevw.colibri.coinbaseetl.codecs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Base event bus codec for protobuf messages.
+ * 
+ * Messages are framed as [int length][message]. Encoding serializes the message
+ * straight into the memory backing the Vert.x Buffer (its array for heap buffers)
+ * and decoding parses from a view over the same memory, so no intermediate byte
+ * arrays are allocated.
+ */
+public abstract class ProtobufMessageCodec<T extends MessageLite> implements MessageCodec<T, T> {
+
+    /**
+     * Parser used to decode messages
+     */
+    private final Parser<T> parser;
+
+    /**
+     * Constructor
+     * 
+     * @param parser Parser used to decode messages
+     */
+    protected ProtobufMessageCodec(Parser<T> parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, T s) {
+
+        int size = s.getSerializedSize();
+        buffer.appendInt(size);
+
+        if (size == 0) {
+            return;
+        }
+
+        // Grow the buffer (and its writer index) by the message size, then write in place.
+        // getByteBuf() returns a duplicate which shares the memory of the buffer.
+        int start = buffer.length();
+        buffer.setByte(start + size - 1, (byte) 0);
+
+        try {
+            ByteBuf buf = buffer.getByteBuf();
+            CodedOutputStream out = buf.hasArray() ? 
+                CodedOutputStream.newInstance(buf.array(), buf.arrayOffset() + start, size) : 
+                CodedOutputStream.newInstance(buf.nioBuffer(start, size));
+            s.writeTo(out);
+            out.flush();
+            out.checkNoSpaceLeft();
+        } 
+        catch (IOException e) 
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T decodeFromWire(int pos, Buffer buffer) {
+
+        try {
+            int length = buffer.getInt(pos);
+            ByteBuf buf = buffer.getByteBuf();
+            CodedInputStream in = buf.hasArray() ? 
+                CodedInputStream.newInstance(buf.array(), buf.arrayOffset() + pos + Integer.BYTES, length) : 
+                CodedInputStream.newInstance(buf.nioBuffer(pos + Integer.BYTES, length));
+            return parser.parseFrom(in);
+        } 
+        catch (IOException e) 
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T transform(T s) {
+        return s;
+    }
+
+    @Override
+    public String name() {
+        return this.getClass().getName();
+    }
+
+    @Override
+    public byte systemCodecID() {
+        // Always -1
+        return -1;
+    }
+}
@@ -0,0 +1,96 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseOrderIdHelper;
+
+/**
+ * Class which streams the level3 book of a product returned by the Coinbase Pro API
+ * (/products/{product}/book?level=3) : the book may contain millions of orders, it is read
+ * order by order without building the JSON tree.
+ *
+ * Format : {"sequence": 3, "bids": [[price, size, order_id], ...], "asks": [...]}
+ */
+public class CoinbaseBookReader {
+
+    /**
+     * Consumer of the orders of a level3 book
+     */
+    @FunctionalInterface
+    public interface OrderConsumer {
+
+        /**
+         * @param bid True for a buy order
+         * @param price Price (1e-8)
+         * @param size Remaining size (1e-8)
+         * @param high Most significant bits of the order id
+         * @param low Least significant bits of the order id
+         */
+        void accept(boolean bid, long price, long size, long high, long low);
+    }
+
+    /**
+     * Read a level3 book. Orders are consumed in the order of the book (best price first).
+     *
+     * @param in Response of the API (closed by the method)
+     * @param consumer Consumer of the orders
+     * @return Sequence of the book
+     * @throws IOException if the response can't be read or is not a level3 book
+     */
+    public static long read(InputStream in, OrderConsumer consumer) throws IOException {
+        long sequence = -1;
+        try(JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while(reader.hasNext()) {
+                switch(reader.nextName()) {
+                    case "sequence":
+                        sequence = reader.nextLong();
+                        break;
+                    case "bids":
+                        readSide(reader, true, consumer);
+                        break;
+                    case "asks":
+                        readSide(reader, false, consumer);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        catch(IllegalArgumentException | IllegalStateException ex) {
+            throw new IOException("Invalid level3 book", ex);
+        }
+        if(sequence < 0) {
+            throw new IOException("Missing sequence in level3 book");
+        }
+        return sequence;
+    }
+
+    /**
+     * Read the orders of a side
+     */
+    private static void readSide(JsonReader reader, boolean bid, OrderConsumer consumer) throws IOException {
+        reader.beginArray();
+        while(reader.hasNext()) {
+            reader.beginArray();
+            long price = CoinbaseDecimalHelper.parse(reader.nextString());
+            long size = CoinbaseDecimalHelper.parse(reader.nextString());
+            String id = reader.nextString();
+            while(reader.peek() != JsonToken.END_ARRAY) {
+                reader.skipValue();
+            }
+            reader.endArray();
+            consumer.accept(bid, price, size, CoinbaseOrderIdHelper.getHigh(id), CoinbaseOrderIdHelper.getLow(id));
+        }
+        reader.endArray();
+    }
+}
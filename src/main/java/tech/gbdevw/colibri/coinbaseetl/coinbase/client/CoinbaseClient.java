@@ -1,5 +1,7 @@
 package tech.gbdevw.colibri.coinbaseetl.coinbase.client;
 
+import java.io.InputStream;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -15,8 +17,30 @@ import org.jboss.resteasy.annotations.jaxrs.QueryParam;
 @RegisterRestClient(configKey = "coinbase-rest-client")
 public interface CoinbaseClient {
 
+    /**
+     * Fetch a page of trades, newest first. Trade ids are used as pagination cursors.
+     * 
+     * @param product Product id
+     * @param limit Max. number of trades (100 max.)
+     * @param before Return trades newer than this trade id (optional)
+     * @param after Return trades older than this trade id (optional)
+     * @return Trades of the page
+     */
     @GET
     @Path("/products/{product}/trades")
     @Consumes("application/json")
-    public CoinbaseTrade [] getLatestTrades (@PathParam String product, @QueryParam("limit") Integer limit) ;
+    public CoinbaseTrade [] getTrades (@PathParam String product, @QueryParam("limit") Integer limit, @QueryParam("before") Long before, @QueryParam("after") Long after) ;
+
+    /**
+     * Fetch the book of a product. The level3 book contains every resting order : it is
+     * returned as a stream to be read with CoinbaseBookReader.
+     * 
+     * @param product Product id
+     * @param level Level of detail (3 : all orders)
+     * @return Response body
+     */
+    @GET
+    @Path("/products/{product}/book")
+    @Consumes("application/json")
+    public InputStream getBook (@PathParam String product, @QueryParam("level") Integer level) ;
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+/**
+ * Class which provides methods to convert the decimal strings received from Coinbase (prices &
+ * sizes) to scaled longs without going through a double.
+ *
+ * A value scaled by 10^8 is the number of units of 1e-8 (ex : "10101.1" -> 1010110000000).
+ * Coinbase sends at most 8 decimals : additional decimals are truncated.
+ *
+ * The string is read once, digit by digit : converting the scaled value to a double gives the
+ * same result as Double.parseDouble without going through FloatingDecimal.
+ */
+public class CoinbaseDecimalHelper {
+
+    /**
+     * Decimals kept by the scaled values
+     */
+    public static final int SCALE = 8;
+
+    /**
+     * 10^SCALE
+     */
+    public static final long UNIT = 100000000L;
+
+    /**
+     * Scaled values below this bound (2^53) are exact doubles
+     */
+    private static final long EXACT = 1L << 53;
+
+    /**
+     * Convert a decimal string to a long scaled by 10^8
+     *
+     * @param value Decimal string (ex : 10101.10000000)
+     * @return Value in units of 1e-8
+     * @throws NumberFormatException if the value is not a plain decimal number or overflows
+     */
+    public static long parse(CharSequence value) {
+        return parse(value, true);
+    }
+
+    /**
+     * Convert a decimal string to a double. Plain decimal strings with at most 8 decimals are
+     * parsed as scaled longs, other strings (ex : exponents) with Double.parseDouble.
+     *
+     * @param value Decimal string (ex : 10101.10000000)
+     * @return The double closest to the value (like Double.parseDouble)
+     * @throws NumberFormatException if the value is not a number
+     */
+    public static double parseDouble(CharSequence value) {
+        try {
+            long scaled = parse(value, false);
+            if(scaled < EXACT && scaled > -EXACT) {
+                return toDouble(scaled);
+            }
+        }
+        catch(NumberFormatException | ArithmeticException ex) {
+            // Not a plain decimal string with at most 8 decimals
+        }
+        return Double.parseDouble(value.toString());
+    }
+
+    /**
+     * Convert a long scaled by 10^8 to a double
+     *
+     * @param value Value in units of 1e-8
+     * @return The double closest to the value if it is below 2^53 units
+     */
+    public static double toDouble(long value) {
+        // Both operands are exact doubles : the division is rounded like Double.parseDouble
+        return value / (double) UNIT;
+    }
+
+    /**
+     * Convert a double obtained from a decimal string with at most 8 decimals back to a long
+     * scaled by 10^8
+     *
+     * @param value Value (below 2^51 units)
+     * @return Value in units of 1e-8
+     */
+    public static long fromDouble(double value) {
+        return Math.round(value * UNIT);
+    }
+
+    /**
+     * Convert a decimal string to a long scaled by 10^8
+     *
+     * @param value Decimal string
+     * @param truncate True to truncate the decimals after the 8th, false to reject them
+     * @return Value in units of 1e-8
+     * @throws NumberFormatException if the value is not a plain decimal number
+     * @throws ArithmeticException if the value overflows
+     */
+    private static long parse(CharSequence value, boolean truncate) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if(length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            negative = value.charAt(0) == '-';
+            i++;
+        }
+
+        long result = 0;
+        int digits = 0;
+        int decimals = -1;
+        for(; i < length; i++) {
+            char c = value.charAt(i);
+            if(c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if(c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid decimal : " + value);
+            }
+            digits++;
+            if(decimals >= SCALE) {
+                // Truncated
+                if(!truncate && c != '0') {
+                    throw new NumberFormatException("More than " + SCALE + " decimals : " + value);
+                }
+                continue;
+            }
+            if(decimals >= 0) {
+                decimals++;
+            }
+            result = Math.addExact(Math.multiplyExact(result, 10), c - '0');
+        }
+        if(digits == 0) {
+            throw new NumberFormatException("Invalid decimal : " + value);
+        }
+        for(int scale = Math.max(decimals, 0); scale < SCALE; scale++) {
+            result = Math.multiplyExact(result, 10);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Append a long scaled by 10^8 as a decimal string with 8 decimals
+     *
+     * @param builder Builder
+     * @param value Value in units of 1e-8
+     * @return The builder
+     */
+    public static StringBuilder append(StringBuilder builder, long value) {
+        if(value < 0) {
+            builder.append('-');
+        }
+        long abs = Math.abs(value);
+        builder.append(abs / UNIT).append('.');
+        String fraction = Long.toString(abs % UNIT);
+        for(int i = fraction.length(); i < SCALE; i++) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+}
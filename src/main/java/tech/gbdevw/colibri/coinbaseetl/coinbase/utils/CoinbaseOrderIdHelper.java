@@ -0,0 +1,74 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import java.util.UUID;
+
+/**
+ * Class which provides methods to convert the order ids received from Coinbase (UUIDs) to a pair
+ * of longs without building a UUID.
+ */
+public class CoinbaseOrderIdHelper {
+
+    /**
+     * Length of an order id (ex : 3b0f1225-7f84-490b-a29f-0faef9de823a)
+     */
+    private static final int LENGTH = 36;
+
+    /**
+     * Return the most significant bits of an order id
+     *
+     * @param id Order id
+     * @return Most significant bits (first 16 hex digits)
+     * @throws IllegalArgumentException if the order id is not a UUID
+     */
+    public static long getHigh(CharSequence id) {
+        check(id);
+        return hex(id, 0, 8) << 32 | hex(id, 9, 13) << 16 | hex(id, 14, 18);
+    }
+
+    /**
+     * Return the least significant bits of an order id
+     *
+     * @param id Order id
+     * @return Least significant bits (last 16 hex digits)
+     * @throws IllegalArgumentException if the order id is not a UUID
+     */
+    public static long getLow(CharSequence id) {
+        check(id);
+        return hex(id, 19, 23) << 48 | hex(id, 24, 36);
+    }
+
+    /**
+     * Format an order id
+     *
+     * @param high Most significant bits
+     * @param low Least significant bits
+     * @return Order id
+     */
+    public static String toString(long high, long low) {
+        return new UUID(high, low).toString();
+    }
+
+    /**
+     * Check the length and the separators of an order id
+     */
+    private static void check(CharSequence id) {
+        if(id.length() != LENGTH || id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-' || id.charAt(23) != '-') {
+            throw new IllegalArgumentException("Invalid order id : " + id);
+        }
+    }
+
+    /**
+     * Parse the hex digits of a range
+     */
+    private static long hex(CharSequence id, int start, int end) {
+        long value = 0;
+        for(int i = start; i < end; i++) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if(digit < 0) {
+                throw new IllegalArgumentException("Invalid order id : " + id);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+}
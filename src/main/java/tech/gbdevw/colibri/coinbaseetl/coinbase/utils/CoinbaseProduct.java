@@ -0,0 +1,66 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import tech.gbdevw.colibri.domain.Currency;
+
+/**
+ * Immutable description of a Coinbase product (ex : BTC-USD).
+ */
+public class CoinbaseProduct {
+
+    /**
+     * Canonical (interned) product id
+     */
+    private final String id;
+
+    /**
+     * Unit currency (ex : BTC)
+     */
+    private final Currency unit;
+
+    /**
+     * Quote currency (ex : USD)
+     */
+    private final Currency quote;
+
+    /**
+     * Constructor
+     * 
+     * @param id Product id (ex : BTC-USD)
+     * @throws IllegalArgumentException if the product id is not UNIT-QUOTE with supported currencies
+     */
+    public CoinbaseProduct (String id) {
+        int separator = id.indexOf('-');
+        if(separator <= 0 || separator != id.lastIndexOf('-')) {
+            throw new IllegalArgumentException("Invalid product : " + id);
+        }
+        this.id = id.intern();
+        this.unit = Currency.valueOf(id.substring(0, separator));
+        this.quote = Currency.valueOf(id.substring(separator + 1));
+    }
+
+    /**
+     * @return Canonical product id
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return Unit currency
+     */
+    public Currency getUnit() {
+        return this.unit;
+    }
+
+    /**
+     * @return Quote currency
+     */
+    public Currency getQuote() {
+        return this.quote;
+    }
+
+    @Override
+    public String toString() {
+        return this.id;
+    }
+}
@@ -0,0 +1,76 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import tech.gbdevw.colibri.domain.Currency;
+
+/**
+ * Immutable symbol table which resolves a Coinbase product id to its currencies.
+ * 
+ * The table is built once from the configured products so messages do not have to split
+ * the product id and look up the currencies each time.
+ */
+public class CoinbaseProductTable {
+
+    /**
+     * Products by id
+     */
+    private final Map<String, CoinbaseProduct> products;
+
+    /**
+     * Products indexed by unit and quote currency ordinals
+     */
+    private final CoinbaseProduct [][] byCurrencies;
+
+    /**
+     * Constructor
+     * 
+     * @param ids Products to support (ex : BTC-USD)
+     * @throws IllegalArgumentException if a product is not valid
+     */
+    public CoinbaseProductTable (Collection<String> ids) {
+        Map<String, CoinbaseProduct> table = new HashMap<>();
+        int currencies = Currency.values().length;
+        this.byCurrencies = new CoinbaseProduct [currencies][currencies];
+        for(String id : ids) {
+            CoinbaseProduct product = new CoinbaseProduct(id);
+            table.put(id, product);
+            this.byCurrencies[product.getUnit().ordinal()][product.getQuote().ordinal()] = product;
+        }
+        this.products = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Resolve a product. Products which are not in the table are parsed on each call.
+     * 
+     * @param id Product id (ex : BTC-USD)
+     * @return The product
+     * @throws IllegalArgumentException if the product is not valid
+     */
+    public CoinbaseProduct get (String id) {
+        CoinbaseProduct product = this.products.get(id);
+        return product != null ? product : new CoinbaseProduct(id);
+    }
+
+    /**
+     * Resolve a product from its currencies. Products which are not in the table are built on each call.
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     * @return The product
+     */
+    public CoinbaseProduct get (Currency unit, Currency quote) {
+        CoinbaseProduct product = this.byCurrencies[unit.ordinal()][quote.ordinal()];
+        return product != null ? product : new CoinbaseProduct(unit.name() + "-" + quote.name());
+    }
+
+    /**
+     * @return Supported products by id
+     */
+    public Map<String, CoinbaseProduct> getProducts() {
+        return this.products;
+    }
+}
@@ -0,0 +1,40 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import tech.gbdevw.colibri.domain.Side;
+
+/**
+ * Class which provides methods to resolve the side of a trade received from Coinbase.
+ */
+public class CoinbaseSideHelper {
+
+    /**
+     * Sides by name (lower and upper case)
+     */
+    private static final Map<String, Side> SIDES;
+
+    static {
+        Map<String, Side> sides = new HashMap<>();
+        for(Side side : Side.values()) {
+            sides.put(side.name(), side);
+            sides.put(side.name().toLowerCase(Locale.ROOT), side);
+        }
+        SIDES = Collections.unmodifiableMap(sides);
+    }
+
+    /**
+     * Return the side from its name
+     * 
+     * @param name Side name (ex : buy)
+     * @return The side
+     * @throws IllegalArgumentException if the side is not supported
+     */
+    public static Side getSide (String name) {
+        Side side = SIDES.get(name);
+        return side != null ? side : Side.valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,173 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import java.time.Instant;
+
+/**
+ * Class which provides methods to convert timestamps received from Coinbase to epoch milliseconds.
+ * 
+ * Coinbase timestamps have the format yyyy-MM-ddTHH:mm:ss.SSSSSSZ and share their date and hour
+ * for long stretches : the epoch of the last date-hour prefix is cached so only minutes, seconds
+ * and fraction have to be parsed. Timestamps in any other format are parsed with Instant.parse.
+ */
+public class CoinbaseTimeHelper {
+
+    /**
+     * Length of the date-hour prefix (yyyy-MM-ddTHH)
+     */
+    private static final int PREFIX_LENGTH = 13;
+
+    /**
+     * Length of a timestamp without fraction (yyyy-MM-ddTHH:mm:ssZ)
+     */
+    private static final int MIN_LENGTH = 20;
+
+    /**
+     * Max. digits in the fraction of second
+     */
+    private static final int MAX_FRACTION_DIGITS = 9;
+
+    /**
+     * Returned by the fast path when the timestamp does not have the expected format
+     */
+    private static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Days in each month of a non leap year
+     */
+    private static final int [] DAYS_IN_MONTH = new int [] {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    /**
+     * Date-hour prefix last seen and its epoch in ms
+     */
+    private static final class HourCache {
+
+        private final String prefix;
+        private final long epochMilli;
+
+        private HourCache (String prefix, long epochMilli) {
+            this.prefix = prefix;
+            this.epochMilli = epochMilli;
+        }
+    }
+
+    /**
+     * Cache of the last date-hour prefix. The holder is immutable and replaced on each new prefix.
+     */
+    private static volatile HourCache cache = new HourCache("", 0);
+
+    /**
+     * Convert a Coinbase timestamp to epoch milliseconds.
+     * 
+     * @param time Timestamp (ex : 2020-07-12T17:49:47.169497Z)
+     * @return Epoch in milliseconds
+     * @throws java.time.format.DateTimeParseException if the timestamp cannot be parsed
+     */
+    public static long toEpochMilli (String time) {
+        long epochMilli = parse(time);
+        return epochMilli != INVALID ? epochMilli : Instant.parse(time).toEpochMilli();
+    }
+
+    /**
+     * Parse a timestamp with the format yyyy-MM-ddTHH:mm:ss[.fraction]Z.
+     * 
+     * @param time Timestamp
+     * @return Epoch in milliseconds or INVALID if the timestamp does not have the expected format
+     */
+    private static long parse (String time) {
+
+        // Check separators
+        int length = time.length();
+        if(length < MIN_LENGTH || time.charAt(length - 1) != 'Z' || time.charAt(13) != ':' || time.charAt(16) != ':') {
+            return INVALID;
+        }
+
+        // Get epoch of the date-hour prefix
+        HourCache hour = cache;
+        if(!time.regionMatches(0, hour.prefix, 0, PREFIX_LENGTH)) {
+            long epochMilli = parsePrefix(time);
+            if(epochMilli == INVALID) {
+                return INVALID;
+            }
+            hour = new HourCache(time.substring(0, PREFIX_LENGTH), epochMilli);
+            cache = hour;
+        }
+
+        // Parse minutes & seconds
+        int minutes = digits(time, 14, 2);
+        int seconds = digits(time, 17, 2);
+        if(minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return INVALID;
+        }
+
+        // Parse milliseconds from the fraction of second (if any)
+        int millis = 0;
+        if(length > MIN_LENGTH) {
+            int fractionDigits = length - MIN_LENGTH - 1;
+            if(time.charAt(19) != '.' || fractionDigits < 1 || fractionDigits > MAX_FRACTION_DIGITS || digits(time, 20, fractionDigits) < 0) {
+                return INVALID;
+            }
+            for(int i = 0; i < 3; i++) {
+                millis = millis * 10 + (i < fractionDigits ? time.charAt(20 + i) - '0' : 0);
+            }
+        }
+
+        return hour.epochMilli + minutes * 60_000L + seconds * 1_000L + millis;
+    }
+
+    /**
+     * Compute the epoch of the date-hour prefix (yyyy-MM-ddTHH).
+     * 
+     * @param time Timestamp
+     * @return Epoch in milliseconds or INVALID if the prefix does not have the expected format
+     */
+    private static long parsePrefix (String time) {
+
+        // Check separators
+        if(time.charAt(4) != '-' || time.charAt(7) != '-' || time.charAt(10) != 'T') {
+            return INVALID;
+        }
+
+        // Parse & check fields
+        int year = digits(time, 0, 4);
+        int month = digits(time, 5, 2);
+        int day = digits(time, 8, 2);
+        int hour = digits(time, 11, 2);
+        if(year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23) {
+            return INVALID;
+        }
+        boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+        if(day > DAYS_IN_MONTH[month - 1] + (leap && month == 2 ? 1 : 0)) {
+            return INVALID;
+        }
+
+        // Days since epoch (civil calendar to day number)
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468;
+
+        return days * 86_400_000L + hour * 3_600_000L;
+    }
+
+    /**
+     * Parse a positive number from a fixed number of digits.
+     * 
+     * @param s String to parse
+     * @param from Index of the first digit
+     * @param count Number of digits
+     * @return The number or -1 if a character is not a digit
+     */
+    private static int digits (String s, int from, int count) {
+        int value = 0;
+        for(int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
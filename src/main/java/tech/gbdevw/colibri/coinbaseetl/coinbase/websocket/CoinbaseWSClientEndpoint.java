@@ -1,12 +1,12 @@
 package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 
-import javax.enterprise.context.ApplicationScoped;
 import javax.websocket.ClientEndpoint;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCodes;
@@ -18,29 +18,42 @@ import javax.websocket.Session;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tech.gbdevw.colibri.coinbaseetl.codecs.MatchMessageCodec;
 import tech.gbdevw.colibri.coinbaseetl.codecs.TickerMessageCodec;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight.FlightRecorder;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Helper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL3Helper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL3Message;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSMsgTypes;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSStreamDecoder;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSTickHelper;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSubscriptionHelper;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsLastMatchHelper;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsMatchHelper;
 import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L2BookService;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L3BookService;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.LatencyTracker;
+import tech.gbdevw.colibri.coinbaseetl.service.pipeline.PipelineEvent;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 
 /**
- * Client endpoint for coinbase websocket feed.
+ * Client endpoint for coinbase websocket feed. An endpoint is created for each connection of a shard.
  */
 @RegisterForReflection
 @ClientEndpoint
-@ApplicationScoped
 public class CoinbaseWSClientEndpoint {
 
     /**
@@ -53,40 +66,123 @@ public class CoinbaseWSClientEndpoint {
      */
     private EventBus bus;
 
+    /**
+     * Shard of the connection
+     */
+    private CoinbaseWSShard shard;
+
     /**
      * Products to support for each channel
      */
     private Set<String> products;
+
+    /**
+     * Symbol table of the supported products
+     */
+    private CoinbaseProductTable productTable;
     
     /**
      * Channels to subscribe to
      */
     private Set<String> channels;
 
+    /**
+     * Use the streaming decoder instead of the JSON tree
+     */
+    private boolean streaming;
+
+    /**
+     * Pipeline slot of the message being processed (ring pipeline only) - decoded events are
+     * stored in the slot instead of being published on the bus
+     */
+    private PipelineEvent slot;
+
+    /**
+     * Receive time in epoch ns of the message being processed
+     */
+    private long received;
+
+    /**
+     * Latency of the dispatched events
+     */
+    private LatencyTracker latency;
+
+    /**
+     * Last frames processed by the shard (null if disabled)
+     */
+    private FlightRecorder flight;
+
+    /**
+     * Level2 books of the products
+     */
+    private L2BookService books;
+
+    /**
+     * Level2 message reused for each snapshot & l2update
+     */
+    private CoinbaseWSL2Message level2;
+
+    /**
+     * Level3 books of the products
+     */
+    private L3BookService orders;
+
+    /**
+     * Message of the full channel reused for each message
+     */
+    private CoinbaseWSL3Message level3;
+
     /**
      * Constructor for CoinbaseWSClientEndpoint class
      * 
      * @param bus Event bus
      * @param configuration Configuration
+     * @param productTable Symbol table of the supported products
+     * @param shard Shard of the connection
+     * @param latency Latency of the dispatched events
+     * @param books Level2 books of the products
+     * @param orders Level3 books of the products
      */
-    public CoinbaseWSClientEndpoint(EventBus bus, CoinbaseProperties configuration) {
+    public CoinbaseWSClientEndpoint(EventBus bus, CoinbaseProperties configuration, CoinbaseProductTable productTable, CoinbaseWSShard shard, LatencyTracker latency, L2BookService books, L3BookService orders) {
         
-        // Register event bus & codecs
+        // Event bus (codecs are registered by the container)
         this.bus = bus;
-        this.bus.registerCodec(new MatchMessageCodec());
-        this.bus.registerCodec(new TickerMessageCodec());
 
-        // Load product
-        this.products = new HashSet<>();
-        products.add(configuration.product);
-        LOG.info("Supported product : " + configuration.product);
+        // Load products of the shard
+        this.shard = shard;
+        this.products = new HashSet<>(shard.getProducts());
+        this.productTable = productTable;
+        this.latency = latency;
+        this.flight = shard.getFlightRecorder();
+        this.books = books;
+        this.level2 = new CoinbaseWSL2Message();
+        this.orders = orders;
+        this.level3 = new CoinbaseWSL3Message();
+        for(String product : this.products) {
+            LOG.info("Supported product : " + product + " (shard " + shard.getId() + ")");
+        }
 
         // Load channels
         this.channels = new HashSet<>();
         channels.add("ticker");
         LOG.info("Supported channel : ticker");
-        channels.add("matches");
-        LOG.info("Supported channel : matches");
+        // The full channel carries the matches & the level2 books are derived from the level3 books
+        if(orders.isEnabled()) {
+            channels.add("full");
+            LOG.info("Supported channel : full");
+        }
+        else {
+            channels.add("matches");
+            LOG.info("Supported channel : matches");
+            if(books.isEnabled()) {
+                channels.add("level2");
+                LOG.info("Supported channel : level2");
+            }
+        }
+
+        // Select decoder
+        this.streaming = !CoinbaseProperties.TREE_DECODER.equalsIgnoreCase(configuration.decoder);
+        LOG.info("Decoder : " + (this.streaming ? CoinbaseProperties.STREAMING_DECODER : CoinbaseProperties.TREE_DECODER));
     }
 
     /**
@@ -113,6 +209,8 @@ public class CoinbaseWSClientEndpoint {
             } catch (IOException e) {
                 // Log closing error & publish close event
                 LOG.error("Websocket could not be closed normally", e);
+                this.resetBooks();
+                this.shard.onClose(this);
                 this.bus.publish(CoinbaseWsEventAddresses.websocketCloseEventAddress, new CloseReason(CloseCodes.CLOSED_ABNORMALLY, "Websocket could not be closed normally"));
             }
         }
@@ -126,76 +224,327 @@ public class CoinbaseWSClientEndpoint {
      */
     @OnMessage
     public void onMessage(Session session, String message) {
-        try {
-
-            // Parse message & get message type (or exception if not present)
-            JsonObject raw = JsonParser.parseString(message).getAsJsonObject();
-            String msgType = Optional.ofNullable(raw.get("type")).get().getAsString();
-            LOG.info("Message received from Coinbase feed : " + msgType);
-            LOG.trace(message);
-
-            // Dispatch or process if msgType is "subscription" or "error"
-            switch(msgType) {
-  
-                case CoinbaseWSMsgTypes.SUBSCRIPTIONS :
-                    // Verify subscription
-                    CoinbaseWSubscriptionHelper.checkSubscriptionMessage(raw, this.products.toArray(new String [this.products.size()]), this.channels.toArray(new String [this.channels.size()]));
-                    LOG.info("Subscription OK");
-                    break;
-
-                case CoinbaseWSMsgTypes.TICKER :
-                    // Publish tick event
-                    this.bus.publish(CoinbaseWsEventAddresses.websocketTickEventAddress, CoinbaseWSTickHelper.getTicker(raw), new DeliveryOptions().setCodecName(TickerMessageCodec.class.getName()));
-                    break;
+        this.shard.receive(this, session, message);
+    }
 
-                case CoinbaseWSMsgTypes.MATCH :
-                    // Publish match event
-                    this.bus.publish(CoinbaseWsEventAddresses.websocketMatchEventAddress, CoinbaseWsMatchHelper.getMatch(raw), new DeliveryOptions().setCodecName(MatchMessageCodec.class.getName()));
-                    break;
+    /**
+     * Process a message received from the feed on the receive thread of the shard (or on the
+     * parser stage of its pipeline)
+     * 
+     * @param session session object (null for replayed frames)
+     * @param message Text message received from the feed
+     * @param received Receive time in epoch ns
+     * @param slot Pipeline slot of the message (null if events are published on the bus)
+     */
+    public void process(Session session, String message, long received, PipelineEvent slot) {
+        this.slot = slot;
+        this.received = received;
+        if(this.flight != null) {
+            this.flight.record(received, message);
+        }
+        try {
 
-                case CoinbaseWSMsgTypes.LASTMATCH :
-                    // publish last_match event & publish match event
-                    this.bus.publish(CoinbaseWsEventAddresses.websocketLastMatchEventAddress, CoinbaseWsLastMatchHelper.getLastTradeId(raw));
-                    this.bus.publish(CoinbaseWsEventAddresses.websocketMatchEventAddress, CoinbaseWsLastMatchHelper.getLastMatch(raw), new DeliveryOptions().setCodecName(MatchMessageCodec.class.getName()));
-                    break;
-                
-                case CoinbaseWSMsgTypes.ERROR :
-                    // Process error
-                    throw new Exception(Optional.ofNullable(raw.get("message")).get().getAsString());
-
-                default:
-                    // Unsupported message type
-                    LOG.warn("Unsupported message type (" + msgType + ") processed");
-                    LOG.warn("Unspported message : " + raw.toString());
-                    break;
+            // Decode & dispatch the message
+            if(this.streaming) {
+                this.processStream(message);
+            }
+            else {
+                this.processTree(message);
+            }
+            if(this.flight != null) {
+                this.flight.outcome(FlightRecorder.PROCESSED);
             }
         }
         // An error occured while parsing the message
         catch(NoSuchElementException ex) {
+            this.shard.countFailure();
+            if(this.flight != null) {
+                this.flight.outcome(FlightRecorder.FAILED);
+            }
             try {
                 // Log error & close session
                 LOG.error("Expected property not found in the message", ex);
-                LOG.error("Message : ", message);
-                session.close(new CloseReason(CloseCodes.PROTOCOL_ERROR, "An error occured while processing a message from the feed"));
+                LOG.error("Message : {}", message);
+                this.dumpFlightRecorder("Expected property not found in the message");
+                // No session for replayed frames
+                if(session != null) {
+                    session.close(new CloseReason(CloseCodes.PROTOCOL_ERROR, "An error occured while processing a message from the feed"));
+                }
             } catch (IOException e) {
                 // Log closing error & publish close event
                 LOG.error("Websocket could not be closed normally", e);
+                this.resetBooks();
+                this.shard.onClose(this);
                 this.bus.publish(CoinbaseWsEventAddresses.websocketCloseEventAddress, new CloseReason(CloseCodes.CLOSED_ABNORMALLY, "Websocket could not be closed normally"));
             }
         }
         catch(Exception ex) {
+            this.shard.countFailure();
+            if(this.flight != null) {
+                this.flight.outcome(FlightRecorder.FAILED);
+            }
             try {
                 // An error occured while processing the message - Log & close
                 LOG.error("An error occured while processing a message from the feed", ex);
-                LOG.error("Message : ", message);
-                session.close(new CloseReason(CloseCodes.PROTOCOL_ERROR, "An error occured while processing a message from the feed"));
+                LOG.error("Message : {}", message);
+                this.dumpFlightRecorder("An error occured while processing a message from the feed");
+                // No session for replayed frames
+                if(session != null) {
+                    session.close(new CloseReason(CloseCodes.PROTOCOL_ERROR, "An error occured while processing a message from the feed"));
+                }
             }
             catch (IOException e) {
                 // Log closing error & publish close event
                 LOG.error("Websocket could not be closed normally", e);
+                this.resetBooks();
+                this.shard.onClose(this);
                 this.bus.publish(CoinbaseWsEventAddresses.websocketCloseEventAddress, new CloseReason(CloseCodes.CLOSED_ABNORMALLY, "Websocket could not be closed normally"));
             }
         }
+        finally {
+            this.slot = null;
+        }
+    }
+
+    /**
+     * Decode a message with the streaming decoder and dispatch it. Messages which are
+     * not on the hot path (subscriptions, errors, ...) are processed with the tree path.
+     * 
+     * @param message Text message received from the feed
+     * @throws Exception An error occured while processing the message
+     */
+    private void processStream(String message) throws Exception {
+
+        // Read message type (or use the tree path if type is not the first property)
+        JsonReader reader = new JsonReader(new StringReader(message));
+        String msgType = CoinbaseWSStreamDecoder.readType(reader);
+        if(msgType == null) {
+            this.processTree(message);
+            return;
+        }
+        // Dispatch or fallback to tree path
+        switch(msgType) {
+
+            case CoinbaseWSMsgTypes.TICKER :
+                // Publish tick event
+                this.publishTicker(CoinbaseWSStreamDecoder.readTicker(reader, this.productTable));
+                break;
+
+            case CoinbaseWSMsgTypes.MATCH :
+                if(this.orders.isEnabled()) {
+                    // Apply the match to the book & publish match event
+                    CoinbaseWSStreamDecoder.readL3(reader, CoinbaseWSL3Message.MATCH, this.productTable, this.level3);
+                    this.applyLevel3Match();
+                    break;
+                }
+                // Publish match event
+                this.publishMatch(CoinbaseWSStreamDecoder.readMatch(reader, this.productTable));
+                break;
+
+            case CoinbaseWSMsgTypes.LASTMATCH :
+                // Publish match event
+                this.publishMatch(CoinbaseWSStreamDecoder.readMatch(reader, this.productTable));
+                break;
+
+            case CoinbaseWSMsgTypes.L2UPDATE :
+                // Apply the update to the book
+                CoinbaseWSStreamDecoder.readL2Update(reader, this.productTable, this.level2);
+                this.applyLevel2Update();
+                break;
+
+            case CoinbaseWSMsgTypes.SNAPSHOT :
+                // Load the book
+                CoinbaseWSStreamDecoder.readL2Snapshot(reader, this.productTable, this.level2);
+                this.loadLevel2Snapshot();
+                break;
+
+            case CoinbaseWSMsgTypes.RECEIVED :
+            case CoinbaseWSMsgTypes.OPEN :
+            case CoinbaseWSMsgTypes.DONE :
+            case CoinbaseWSMsgTypes.CHANGE :
+            case CoinbaseWSMsgTypes.ACTIVATE :
+                // Apply the message to the book
+                CoinbaseWSStreamDecoder.readL3(reader, CoinbaseWSL3Message.getType(msgType), this.productTable, this.level3);
+                this.applyLevel3();
+                break;
+
+            default:
+                this.dispatchTree(msgType, JsonParser.parseString(message).getAsJsonObject());
+                break;
+        }
+    }
+
+    /**
+     * Parse a message as a JSON tree and dispatch it.
+     * 
+     * @param message Text message received from the feed
+     * @throws Exception An error occured while processing the message
+     */
+    private void processTree(String message) throws Exception {
+
+        // Parse message & get message type (or exception if not present)
+        JsonObject raw = JsonParser.parseString(message).getAsJsonObject();
+        String msgType = Optional.ofNullable(raw.get("type")).get().getAsString();
+
+        this.dispatchTree(msgType, raw);
+    }
+
+    /**
+     * Dispatch or process a message parsed as a JSON tree.
+     * 
+     * @param msgType Message type
+     * @param raw Parsed message
+     * @throws Exception An error occured while processing the message
+     */
+    private void dispatchTree(String msgType, JsonObject raw) throws Exception {
+
+        // Dispatch or process if msgType is "subscription" or "error"
+        switch(msgType) {
+
+            case CoinbaseWSMsgTypes.SUBSCRIPTIONS :
+                // Verify subscription
+                CoinbaseWSubscriptionHelper.checkSubscriptionMessage(raw, this.products.toArray(new String [this.products.size()]), this.channels.toArray(new String [this.channels.size()]));
+                LOG.info("Subscription OK");
+                this.shard.onSubscribed(this);
+                break;
+
+            case CoinbaseWSMsgTypes.TICKER :
+                // Publish tick event
+                this.publishTicker(CoinbaseWSTickHelper.getTicker(raw, this.productTable));
+                break;
+
+            case CoinbaseWSMsgTypes.MATCH :
+                if(this.orders.isEnabled()) {
+                    // Apply the match to the book & publish match event
+                    CoinbaseWSL3Helper.getMessage(raw, CoinbaseWSL3Message.MATCH, this.productTable, this.level3);
+                    this.applyLevel3Match();
+                    break;
+                }
+                // Publish match event
+                this.publishMatch(CoinbaseWsMatchHelper.getMatch(raw, this.productTable));
+                break;
+
+            case CoinbaseWSMsgTypes.LASTMATCH :
+                // Publish match event
+                this.publishMatch(CoinbaseWsLastMatchHelper.getLastMatch(raw, this.productTable));
+                break;
+
+            case CoinbaseWSMsgTypes.L2UPDATE :
+                // Apply the update to the book
+                CoinbaseWSL2Helper.getUpdate(raw, this.productTable, this.level2);
+                this.applyLevel2Update();
+                break;
+
+            case CoinbaseWSMsgTypes.SNAPSHOT :
+                // Load the book
+                CoinbaseWSL2Helper.getSnapshot(raw, this.productTable, this.level2);
+                this.loadLevel2Snapshot();
+                break;
+
+            case CoinbaseWSMsgTypes.RECEIVED :
+            case CoinbaseWSMsgTypes.OPEN :
+            case CoinbaseWSMsgTypes.DONE :
+            case CoinbaseWSMsgTypes.CHANGE :
+            case CoinbaseWSMsgTypes.ACTIVATE :
+                // Apply the message to the book
+                CoinbaseWSL3Helper.getMessage(raw, CoinbaseWSL3Message.getType(msgType), this.productTable, this.level3);
+                this.applyLevel3();
+                break;
+            
+            case CoinbaseWSMsgTypes.ERROR :
+                // Process error
+                throw new Exception(Optional.ofNullable(raw.get("message")).get().getAsString());
+
+            default:
+                // Unsupported message type
+                LOG.warn("Unsupported message type (" + msgType + ") processed");
+                LOG.warn("Unspported message : " + raw.toString());
+                break;
+        }
+    }
+
+    /**
+     * Publish a tick event
+     * 
+     * @param ticker Ticker
+     */
+    private void publishTicker(Ticker ticker) {
+        this.shard.countTicker(ticker.getUnit(), ticker.getQuote());
+        this.latency.tickerDispatched(ticker, this.received);
+        if(this.slot != null) {
+            this.slot.setTicker(ticker);
+            return;
+        }
+        this.bus.publish(CoinbaseWsEventAddresses.websocketTickEventAddress, ticker, new DeliveryOptions().setCodecName(TickerMessageCodec.class.getName()));
+    }
+
+    /**
+     * Publish a match event
+     * 
+     * @param match Match
+     */
+    private void publishMatch(Match match) {
+        this.shard.countMatch(match.getUnit(), match.getQuote());
+        this.latency.matchDispatched(match, this.received);
+        if(this.slot != null) {
+            this.slot.setMatch(match);
+            return;
+        }
+        this.bus.publish(CoinbaseWsEventAddresses.websocketMatchEventAddress, match, new DeliveryOptions().setCodecName(MatchMessageCodec.class.getName()));
+    }
+
+    /**
+     * Load the level2 snapshot decoded in the reusable message (snapshots carry no time : the
+     * receive time is used)
+     */
+    private void loadLevel2Snapshot() {
+        this.level2.setTime(this.received / 1000000L);
+        this.books.snapshot(this.level2, this);
+    }
+
+    /**
+     * Apply the l2update decoded in the reusable message to the book of its product
+     */
+    private void applyLevel2Update() {
+        this.shard.countLevel2(this.level2.getProduct().getUnit(), this.level2.getProduct().getQuote());
+        this.books.update(this.level2);
+    }
+
+    /**
+     * Apply the message of the full channel decoded in the reusable message to the book of its
+     * product
+     */
+    private void applyLevel3() {
+        this.shard.countLevel3(this.level3.getProduct().getUnit(), this.level3.getProduct().getQuote());
+        this.orders.apply(this.level3);
+    }
+
+    /**
+     * Apply the match decoded in the reusable message to the book of its product and publish it
+     */
+    private void applyLevel3Match() {
+        this.orders.apply(this.level3);
+        this.publishMatch(this.level3.getMatch());
+    }
+
+    /**
+     * Drop the level2 books loaded from this connection until their next snapshot
+     */
+    private void resetBooks() {
+        if(this.books.isEnabled()) {
+            this.books.reset(this.products, this);
+        }
+    }
+
+    /**
+     * Log the last frames processed by the shard (if the flight recorder is enabled)
+     * 
+     * @param reason Reason of the dump
+     */
+    private void dumpFlightRecorder(String reason) {
+        if(this.flight != null) {
+            this.flight.dump(reason);
+        }
     }
 
     /**
@@ -209,10 +558,13 @@ public class CoinbaseWSClientEndpoint {
         try {
             // Log error and close websocket from client side
             LOG.error("Websocket error received from feed", error);
+            this.dumpFlightRecorder("Websocket error received from feed");
             session.close(new CloseReason(CloseCodes.PROTOCOL_ERROR, "Websocket error received from feed"));
         } catch (IOException e) {
             // Log closing error & publish close event
             LOG.error("Websocket could not be closed normally", e);
+            this.resetBooks();
+            this.shard.onClose(this);
             this.bus.publish(CoinbaseWsEventAddresses.websocketCloseEventAddress, new CloseReason(CloseCodes.CLOSED_ABNORMALLY, "Websocket could not be closed normally"));
         }
     }
@@ -232,7 +584,9 @@ public class CoinbaseWSClientEndpoint {
             LOG.error("Websocket closed : " + reason.toString());
         }
 
-        // Publish close event
+        // Update shard & publish close event
+        this.resetBooks();
+        this.shard.onClose(this);
         this.bus.publish(CoinbaseWsEventAddresses.websocketCloseEventAddress, reason);
     }
 }
\ No newline at end of file
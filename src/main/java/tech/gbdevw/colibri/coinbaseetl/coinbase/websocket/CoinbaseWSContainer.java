@@ -2,8 +2,15 @@ package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -11,19 +18,35 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.ContainerProvider;
-import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 
 import org.eclipse.microprofile.health.HealthCheck;
 import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
 import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tech.gbdevw.colibri.coinbaseetl.codecs.MatchMessageCodec;
+import tech.gbdevw.colibri.coinbaseetl.codecs.TickerMessageCodec;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight.FlightRecorder;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay.FrameReader;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay.FrameRecorder;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay.FrameReplayer;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSBackoff;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSShardingHelper;
 import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L2BookService;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L3BookService;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.LatencyTracker;
+import tech.gbdevw.colibri.coinbaseetl.service.pipeline.EventPipeline;
 import io.quarkus.runtime.Startup;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import io.quarkus.vertx.ConsumeEvent;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
 
 @RegisterForReflection
 @ApplicationScoped
@@ -41,14 +64,44 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
     private final static Logger LOG = LoggerFactory.getLogger(CoinbaseWSContainer.class.getSimpleName());
 
     /**
-     * Coinbase websocket client endpoint
+     * Configuration
      */
-    CoinbaseWSClientEndpoint cbwsce;
+    private CoinbaseProperties config;
 
     /**
-     * Session
+     * Bus used by the endpoints to publish events
      */
-    private Session session;
+    private EventBus bus;
+
+    /**
+     * Vertx instance used for reconnect and rebalance timers
+     */
+    private Vertx vertx;
+
+    /**
+     * Symbol table of the supported products
+     */
+    private CoinbaseProductTable productTable;
+
+    /**
+     * Websocket connections (shards)
+     */
+    private List<CoinbaseWSShard> shards;
+
+    /**
+     * Messages received for each product
+     */
+    private Map<String, LongAdder> productMessages;
+
+    /**
+     * Messages received for each product at the last rebalance
+     */
+    private Map<String, Long> rebalanceMessages;
+
+    /**
+     * Websocket container
+     */
+    private WebSocketContainer container;
 
     /**
      * URI of the websocket feed.
@@ -56,24 +109,39 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
     private String dest;
 
     /**
-     * Retry counter
+     * Parsed URI of the websocket feed
+     */
+    private URI destination;
+
+    /**
+     * True once the container is closed : no more reconnect
      */
-    private AtomicInteger retry;
+    private volatile boolean closed;
 
     /**
-     * Max. retry
+     * Recorder of the raw frames (null if frames are not recorded)
      */
-    private int maxRetry;
+    private FrameRecorder recorder;
 
     /**
-     * Retry throttle in ms
+     * Replay of recorded frames (null if connected to the feed)
      */
-    private int retryThrottle;
+    private FrameReplayer replayer;
 
     /**
-     * Health indicator
+     * Latency of the dispatched events
      */
-    private boolean isRunning;
+    private LatencyTracker latency;
+
+    /**
+     * Level2 books fed by the endpoints
+     */
+    private L2BookService books;
+
+    /**
+     * Level3 books fed by the endpoints
+     */
+    private L3BookService orders;
 
     /*********************************************************************************************/
     /* Constructor & Factory */
@@ -82,31 +150,66 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
     /**
      * CoinbaseWSContainer constructor
      */
-    CoinbaseWSContainer(CoinbaseProperties config, CoinbaseWSClientEndpoint wsc) {
-
-        // Setup the websocket client
-        this.cbwsce = wsc;
+    CoinbaseWSContainer(CoinbaseProperties config, CoinbaseProductTable productTable, EventBus bus, Vertx vertx, MetricRegistry registry, EventPipeline pipeline, LatencyTracker latency, L2BookService books, L3BookService orders) throws IOException {
+
+        // Setup the websocket clients dependencies & register codecs once for all endpoints
+        this.config = config;
+        this.productTable = productTable;
+        this.bus = bus;
+        this.bus.registerCodec(new MatchMessageCodec());
+        this.bus.registerCodec(new TickerMessageCodec());
+        this.vertx = vertx;
+        this.latency = latency;
+        this.books = books;
+        this.orders = orders;
 
         // Setup dest. URI
         this.dest = config.websocket;
 
-        // Setup retry & throttle
-        this.retryThrottle = 4500;
-        this.maxRetry = 3;
+        this.closed = false;
 
-        // Setup health indicator
-        this.isRunning = false;
+        // Setup message counters
+        Map<String, LongAdder> messages = new HashMap<>();
+        this.rebalanceMessages = new HashMap<>();
+        for(String product : productTable.getProducts().keySet()) {
+            messages.put(product, new LongAdder());
+            this.rebalanceMessages.put(product, 0L);
+        }
+        this.productMessages = Collections.unmodifiableMap(messages);
 
-        // Setup retry counter
-        this.retry = new AtomicInteger(0);
+        // Assign products to shards
+        List<Set<String>> assignment;
+        if(config.shards.isPresent()) {
+            assignment = CoinbaseWSShardingHelper.assignExplicit(config.shards.get(), messages.keySet());
+        }
+        else if(CoinbaseProperties.WEIGHTED_SHARDING.equalsIgnoreCase(config.sharding)) {
+            // No rate observed yet : same weight for all products
+            assignment = CoinbaseWSShardingHelper.assignWeighted(this.rebalanceMessages, config.connections);
+        }
+        else {
+            assignment = CoinbaseWSShardingHelper.assignHash(messages.keySet(), config.connections);
+        }
+
+        // Record the raw frames of the feed (replayed frames are not recorded again)
+        if(config.record.isPresent() && !config.replay.isPresent()) {
+            this.recorder = new FrameRecorder(Paths.get(config.record.get()), config.recordSegmentSize, config.recordQueueSize, registry);
+            LOG.info("Recording frames in " + config.record.get());
+        }
+
+        // Events of each product & message type (counters shared by all shards)
+        CoinbaseWSEventCounters events = new CoinbaseWSEventCounters(productTable, registry, books.isEnabled() && !orders.isEnabled(), orders.isEnabled());
+
+        this.shards = new ArrayList<>(assignment.size());
+        for(int i = 0; i < assignment.size(); i++) {
+            FlightRecorder flight = config.flightRecorder > 0 ? new FlightRecorder(i, config.flightRecorder, config.flightRecorderFrameSize) : null;
+            CoinbaseWSBackoff backoff = new CoinbaseWSBackoff(config.reconnectDelay, config.reconnectMaxDelay, config.reconnectJitter, config.reconnectFailures, config.reconnectOpen);
+            this.shards.add(new CoinbaseWSShard(i, assignment.get(i), productTable, this.productMessages, events, registry, backoff, this::onDrop, pipeline.isEnabled() ? pipeline.create(i) : null, this.recorder, flight));
+        }
     }
 
     /**
      * CoinbaseWebsocketContainer factory
      * 
-     * @param env Configuration
-     * @param wsc Websocket client to manage
-     * 
      * @throws Exception Error during initialization
      */
     @PostConstruct
@@ -114,39 +217,33 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
 
         try {
 
-            LOG.info("Starting websocket");
+            // Replay recorded frames instead of connecting to the feed
+            if(this.config.replay.isPresent()) {
+                this.startReplay();
+                return;
+            }
+
+            LOG.info("Starting websockets : " + this.shards.size() + " connection(s)");
 
             // Build URL
-            URI destination = new URI(this.dest);
-            LOG.info("URL : " + destination.toString());
+            this.destination = new URI(this.dest);
+            LOG.info("URL : " + this.destination.toString());
 
             // Setup the websocket container
-            WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+            this.container = ContainerProvider.getWebSocketContainer();
 
-            // Connect to the feed
-            this.session = null;
-            while (this.session == null && (this.retry.get() < this.maxRetry)) {
-                try {
-                    // Connect to the feed
-                    this.session = container.connectToServer(this.cbwsce, destination);
-                } catch (IOException e) {
-                    // Log error, increase retry and throttle
-                    LOG.error("Failed to connect to " + this.dest + " - Attempt : "
-                            + this.retry.incrementAndGet(), e);
-                    Thread.sleep(this.retryThrottle);
-                }
+            // Connect each shard to the feed : failed attempts are retried on the reconnect loop
+            for(CoinbaseWSShard shard : this.shards) {
+                this.scheduleConnect(shard, 0);
             }
 
-            // The bean failed too many times
-            if (this.retry.get() >= this.maxRetry) {
-                throw new IOException("Failed to connect to " + this.dest);
+            // Rebalance weighted shards periodically
+            if(!this.config.shards.isPresent() && CoinbaseProperties.WEIGHTED_SHARDING.equalsIgnoreCase(this.config.sharding) && this.config.rebalanceInterval > 0) {
+                this.vertx.setPeriodic(this.config.rebalanceInterval, id -> this.vertx.<Void>executeBlocking(promise -> {
+                    this.rebalance();
+                    promise.complete();
+                }, false, null));
             }
-
-            // Reset retry counter
-            this.retry.set(0);
-
-            // Set isRunning -> true
-            this.isRunning = true;
         } catch (Exception e) {
             // Log error & throw exception to stop
             LOG.error(e.getMessage(), e);
@@ -154,6 +251,157 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
         }
     }
 
+    /*********************************************************************************************/
+    /* Replay */
+    /*********************************************************************************************/
+
+    /**
+     * Replay the recorded frames on a dedicated thread. Each frame is processed by the shard
+     * which recorded it (modulo the number of shards).
+     * 
+     * @throws IOException if the recorded frames cannot be listed
+     */
+    private void startReplay () throws IOException {
+
+        LOG.info("Replaying frames from " + this.config.replay.get() + " - Speed : " + (this.config.replaySpeed > 0 ? this.config.replaySpeed + "x" : "as fast as possible"));
+        for(CoinbaseWSShard shard : this.shards) {
+            shard.replay(new CoinbaseWSClientEndpoint(this.bus, this.config, this.productTable, shard, this.latency, this.books, this.orders));
+        }
+
+        FrameReader reader = new FrameReader(Paths.get(this.config.replay.get()));
+        this.replayer = new FrameReplayer(reader, this.config.replaySpeed, (shard, message) -> this.shards.get(shard % this.shards.size()).replay(message));
+        Thread thread = new Thread(() -> {
+            try (reader) {
+                long start = System.nanoTime();
+                long frames = this.replayer.replay();
+                LOG.info("Replay completed : " + frames + " frames in " + (System.nanoTime() - start) / 1000000L + " ms");
+            } catch (Exception ex) {
+                LOG.error("Failed to replay frames", ex);
+            }
+        }, "coinbase-ws-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*********************************************************************************************/
+    /* Reconnect */
+    /*********************************************************************************************/
+
+    /**
+     * Called by a shard when its connection drops : schedule a reconnect. A connection dropped
+     * before its subscription was validated counts as a failed attempt.
+     * 
+     * @param shard Shard whose connection dropped
+     */
+    private void onDrop (CoinbaseWSShard shard) {
+        if(!shard.isSubscribed()) {
+            long delay = shard.getBackoff().onFailure();
+            LOG.warn("Shard " + shard.getId() + " disconnected before its subscription was confirmed - Attempt : "
+                + shard.getBackoff().getFailures() + (shard.getBackoff().isOpen() ? " - Circuit open" : "") + " - Reconnect in " + delay + " ms");
+            this.scheduleConnect(shard, delay);
+            return;
+        }
+        long delay = shard.getBackoff().firstDelay();
+        LOG.warn("Shard " + shard.getId() + " disconnected - Reconnect in " + delay + " ms");
+        this.scheduleConnect(shard, delay);
+    }
+
+    /**
+     * Try to connect a shard after a delay on a worker thread. The endpoint subscribes to the
+     * products of the shard once connected.
+     * 
+     * @param shard Shard to connect
+     * @param delay Delay in ms
+     */
+    private void scheduleConnect (CoinbaseWSShard shard, long delay) {
+        this.vertx.setTimer(Math.max(1, delay), id -> this.vertx.<Void>executeBlocking(promise -> {
+            this.connect(shard);
+            promise.complete();
+        }, false, null));
+    }
+
+    /**
+     * Connect a shard to the feed. A failed attempt, or a connection whose subscription is not
+     * confirmed in time, is retried according to the reconnect policy of the shard.
+     * 
+     * @param shard Shard to connect
+     */
+    private void connect (CoinbaseWSShard shard) {
+
+        synchronized(shard) {
+
+            // Nothing to do
+            if(this.closed || shard.isRunning()) {
+                return;
+            }
+            if(shard.getProducts().isEmpty()) {
+                LOG.info("Shard " + shard.getId() + " has no product - Not connected");
+                return;
+            }
+
+            // Connect to the feed
+            try {
+                CoinbaseWSClientEndpoint endpoint = new CoinbaseWSClientEndpoint(this.bus, this.config, this.productTable, shard, this.latency, this.books, this.orders);
+                shard.connect(this.container, this.destination, endpoint);
+                if(this.config.subscribeTimeout > 0) {
+                    this.vertx.setTimer(this.config.subscribeTimeout, id -> this.vertx.<Void>executeBlocking(promise -> {
+                        shard.onSubscribeTimeout(endpoint);
+                        promise.complete();
+                    }, false, null));
+                }
+            } catch (Exception e) {
+                long delay = shard.getBackoff().onFailure();
+                if(shard.getBackoff().isOpen()) {
+                    LOG.error("Failed to connect shard " + shard.getId() + " to " + this.dest + " - Circuit open after "
+                        + shard.getBackoff().getFailures() + " attempts - Next attempt in " + delay + " ms", e);
+                }
+                else {
+                    LOG.error("Failed to connect shard " + shard.getId() + " to " + this.dest + " - Attempt : "
+                        + shard.getBackoff().getFailures() + " - Next attempt in " + delay + " ms", e);
+                }
+                this.scheduleConnect(shard, delay);
+            }
+        }
+    }
+
+    /*********************************************************************************************/
+    /* Rebalance */
+    /*********************************************************************************************/
+
+    /**
+     * Assign products to shards according to the message rates observed since the last rebalance
+     * and reconnect the shards whose products changed.
+     */
+    private synchronized void rebalance () {
+
+        try {
+            // Compute messages received since the last rebalance
+            Map<String, Long> weights = new HashMap<>();
+            for(Map.Entry<String, LongAdder> entry : this.productMessages.entrySet()) {
+                long total = entry.getValue().sum();
+                weights.put(entry.getKey(), total - this.rebalanceMessages.get(entry.getKey()));
+                this.rebalanceMessages.put(entry.getKey(), total);
+            }
+
+            // Reconnect shards whose products changed
+            List<Set<String>> assignment = CoinbaseWSShardingHelper.assignWeighted(weights, this.shards.size());
+            for(CoinbaseWSShard shard : this.shards) {
+                Set<String> products = assignment.get(shard.getId());
+                if(!products.equals(shard.getProducts())) {
+                    LOG.info("Rebalance shard " + shard.getId() + " : " + shard.getProducts() + " -> " + products);
+                    synchronized(shard) {
+                        shard.disconnect(new CloseReason(CloseCodes.NORMAL_CLOSURE, "Rebalanced by container"));
+                        shard.assign(products);
+                    }
+                    this.connect(shard);
+                }
+            }
+        }
+        catch(Exception ex) {
+            LOG.error("Failed to rebalance websocket connections", ex);
+        }
+    }
+
     /*********************************************************************************************/
     /* Websocket close event management */
     /*********************************************************************************************/
@@ -165,7 +413,6 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
     @ConsumeEvent("coinbase/websocket/close")
     public void consumeCloseEvent(CloseReason reason) {
         LOG.info("Websocket closed : " + Optional.of(reason.getReasonPhrase()).orElse("UNKNOWN"));
-        this.isRunning = false;
     }
 
     /*********************************************************************************************/
@@ -178,18 +425,62 @@ public class CoinbaseWSContainer implements AutoCloseable, HealthCheck {
     @Override
     @PreDestroy
     public void close() throws Exception {
-        if (this.session != null) {
-            this.session.close(new CloseReason(CloseCodes.NORMAL_CLOSURE, "Closed by container"));
+        this.closed = true;
+        if(this.replayer != null) {
+            this.replayer.stop();
+        }
+        for(CoinbaseWSShard shard : this.shards) {
+            shard.close();
+        }
+        if(this.recorder != null) {
+            this.recorder.close();
         }
     }
 
     /**
-     * Service healthcheck
+     * @return Flight recorders of the shards (empty if disabled)
+     */
+    public List<FlightRecorder> getFlightRecorders() {
+        List<FlightRecorder> recorders = new ArrayList<>(this.shards.size());
+        for(CoinbaseWSShard shard : this.shards) {
+            if(shard.getFlightRecorder() != null) {
+                recorders.add(shard.getFlightRecorder());
+            }
+        }
+        return recorders;
+    }
+
+    /**
+     * @return Shards of the feed
+     */
+    public List<CoinbaseWSShard> getShards() {
+        return Collections.unmodifiableList(this.shards);
+    }
+
+    /**
+     * Service healthcheck : the service is DOWN only when the circuit of a shard is open. Shards
+     * waiting for their (re)connection are reported in the data and by the readiness check.
      * 
      * @return Tell if the service is healthy or not
      */
     @Override
     public HealthCheckResponse call() {
-        return this.isRunning ? HealthCheckResponse.up("Coinbase websocket feed OK") : HealthCheckResponse.down("Coinbase websocket feed KO");
+        boolean alive = true;
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("Coinbase websocket feed");
+        for(CoinbaseWSShard shard : this.shards) {
+            String state;
+            if(shard.getProducts().isEmpty() || shard.isRunning()) {
+                state = "UP ";
+            }
+            else if(shard.getBackoff().isOpen()) {
+                state = "CIRCUIT OPEN ";
+                alive = false;
+            }
+            else {
+                state = "NOT CONNECTED ";
+            }
+            response.withData("shard-" + shard.getId(), state + shard.getProducts());
+        }
+        return response.state(alive).build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.domain.Currency;
+
+/**
+ * Counters of the events received from the feed by product and message type, shared by all
+ * shards. Counters are indexed by currency ordinals so counting does not look up the registry.
+ */
+public class CoinbaseWSEventCounters {
+
+    /**
+     * Match counters indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] matches;
+
+    /**
+     * Ticker counters indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] tickers;
+
+    /**
+     * Level2 update counters indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] level2;
+
+    /**
+     * Full channel message counters indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] level3;
+
+    /**
+     * Constructor
+     * 
+     * @param products Supported products
+     * @param registry Registry for the counters
+     * @param level2 True if the level2 channel is enabled
+     * @param level3 True if the full channel is enabled
+     */
+    public CoinbaseWSEventCounters(CoinbaseProductTable products, MetricRegistry registry, boolean level2, boolean level3) {
+        int currencies = Currency.values().length;
+        this.matches = new Counter [currencies][currencies];
+        this.tickers = new Counter [currencies][currencies];
+        this.level2 = new Counter [currencies][currencies];
+        this.level3 = new Counter [currencies][currencies];
+        Metadata metadata = Metadata.builder()
+            .withName("websocket.events")
+            .withDescription("Events received from the Coinbase feed")
+            .build();
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            int unit = product.getUnit().ordinal();
+            int quote = product.getQuote().ordinal();
+            Tag tag = new Tag("product", product.getId());
+            this.matches[unit][quote] = registry.counter(metadata, tag, new Tag("type", "match"));
+            this.tickers[unit][quote] = registry.counter(metadata, tag, new Tag("type", "ticker"));
+            if(level2) {
+                this.level2[unit][quote] = registry.counter(metadata, tag, new Tag("type", "l2update"));
+            }
+            if(level3) {
+                this.level3[unit][quote] = registry.counter(metadata, tag, new Tag("type", "full"));
+            }
+        }
+    }
+
+    /**
+     * Count a match
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    public void match(Currency unit, Currency quote) {
+        CoinbaseWSEventCounters.inc(this.matches, unit, quote);
+    }
+
+    /**
+     * Count a ticker
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    public void ticker(Currency unit, Currency quote) {
+        CoinbaseWSEventCounters.inc(this.tickers, unit, quote);
+    }
+
+    /**
+     * Count a level2 update
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    public void level2(Currency unit, Currency quote) {
+        CoinbaseWSEventCounters.inc(this.level2, unit, quote);
+    }
+
+    /**
+     * Count a message of the full channel (matches are counted as matches)
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    public void level3(Currency unit, Currency quote) {
+        CoinbaseWSEventCounters.inc(this.level3, unit, quote);
+    }
+
+    /**
+     * Increment the counter of a product (products which are not supported are not counted)
+     * 
+     * @param counters Counters indexed by currency ordinals
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    private static void inc(Counter [][] counters, Currency unit, Currency quote) {
+        Counter counter = counters[unit.ordinal()][quote.ordinal()];
+        if(counter != null) {
+            counter.inc();
+        }
+    }
+}
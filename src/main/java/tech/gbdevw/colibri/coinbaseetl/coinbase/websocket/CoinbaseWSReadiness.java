@@ -0,0 +1,52 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Readiness of the Coinbase websocket feed : the feed is ready once every shard with products
+ * is connected. Shards waiting for their (re)connection make the service not ready without
+ * failing the liveness check (see CoinbaseWSContainer).
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Readiness
+public class CoinbaseWSReadiness implements HealthCheck {
+
+    /**
+     * Container of the websocket connections
+     */
+    private final CoinbaseWSContainer container;
+
+    /**
+     * Constructor
+     *
+     * @param container Container of the websocket connections
+     */
+    public CoinbaseWSReadiness(CoinbaseWSContainer container) {
+        this.container = container;
+    }
+
+    /**
+     * Service readiness check
+     *
+     * @return Tell if all the shards are connected
+     */
+    @Override
+    public HealthCheckResponse call() {
+        boolean ready = true;
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("Coinbase websocket feed connected");
+        for(CoinbaseWSShard shard : this.container.getShards()) {
+            boolean up = shard.getProducts().isEmpty() || shard.isRunning();
+            response.withData("shard-" + shard.getId(), (up ? "UP " : "DOWN ") + shard.getProducts());
+            ready &= up;
+        }
+        return response.state(ready).build();
+    }
+}
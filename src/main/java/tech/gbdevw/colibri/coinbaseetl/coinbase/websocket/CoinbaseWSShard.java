@@ -0,0 +1,512 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.websocket.CloseReason;
+import javax.websocket.DeploymentException;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight.FlightRecorder;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay.FrameRecorder;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSBackoff;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.EpochClock;
+import tech.gbdevw.colibri.coinbaseetl.service.pipeline.ShardPipeline;
+import tech.gbdevw.colibri.domain.Currency;
+
+/**
+ * Websocket connection to the Coinbase feed subscribed to a shard of the supported products.
+ * 
+ * Each shard has its own receive thread : messages are decoded and dispatched on it so a busy
+ * shard does not delay the other ones.
+ */
+public class CoinbaseWSShard implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CoinbaseWSShard.class.getSimpleName());
+
+    /**
+     * Shard id
+     */
+    private final int id;
+
+    /**
+     * Products of the shard
+     */
+    private volatile Set<String> products;
+
+    /**
+     * Symbol table of the supported products
+     */
+    private final CoinbaseProductTable productTable;
+
+    /**
+     * Messages received for each product (shared by all shards)
+     */
+    private final Map<String, LongAdder> productMessages;
+
+    /**
+     * Events received for each product & message type (shared by all shards)
+     */
+    private final CoinbaseWSEventCounters events;
+
+    /**
+     * Receive thread (bus mode)
+     */
+    private final ExecutorService receiver;
+
+    /**
+     * Ring buffer pipeline (ring mode - null in bus mode)
+     */
+    private final ShardPipeline pipeline;
+
+    /**
+     * Recorder of the raw frames (null if frames are not recorded)
+     */
+    private final FrameRecorder recorder;
+
+    /**
+     * Last frames processed by the shard (null if disabled)
+     */
+    private final FlightRecorder flight;
+
+    /**
+     * Messages received by the shard
+     */
+    private final Counter messages;
+
+    /**
+     * Messages which could not be processed
+     */
+    private final Counter parseFailures;
+
+    /**
+     * Successful reconnections
+     */
+    private final Counter reconnects;
+
+    /**
+     * Failed connection attempts
+     */
+    private final Counter failures;
+
+    /**
+     * Time in ms spent disconnected
+     */
+    private final Counter downtime;
+
+    /**
+     * Reconnect policy
+     */
+    private final CoinbaseWSBackoff backoff;
+
+    /**
+     * Called when the connection drops (not closed by the container)
+     */
+    private final Consumer<CoinbaseWSShard> dropListener;
+
+    /**
+     * Time in ms when the connection dropped (0 if connected or never connected)
+     */
+    private volatile long droppedAt;
+
+    /**
+     * Endpoint of the current connection
+     */
+    private volatile CoinbaseWSClientEndpoint endpoint;
+
+    /**
+     * Session of the current connection
+     */
+    private Session session;
+
+    /**
+     * Health indicator
+     */
+    private volatile boolean running;
+
+    /**
+     * True once the subscription of the current connection is validated
+     */
+    private volatile boolean subscribed;
+
+    /**
+     * Constructor
+     * 
+     * @param id Shard id
+     * @param products Products of the shard
+     * @param productTable Symbol table of the supported products
+     * @param productMessages Messages received for each product
+     * @param events Events received for each product & message type
+     * @param registry Registry for shard metrics
+     * @param backoff Reconnect policy
+     * @param dropListener Called when the connection drops
+     * @param pipeline Ring buffer pipeline of the shard (null to publish events on the bus)
+     * @param recorder Recorder of the raw frames (null if frames are not recorded)
+     * @param flight Last frames processed by the shard (null if disabled)
+     */
+    public CoinbaseWSShard(int id, Set<String> products, CoinbaseProductTable productTable, Map<String, LongAdder> productMessages, CoinbaseWSEventCounters events, MetricRegistry registry, CoinbaseWSBackoff backoff, Consumer<CoinbaseWSShard> dropListener, ShardPipeline pipeline, FrameRecorder recorder, FlightRecorder flight) {
+        this.id = id;
+        this.products = Collections.unmodifiableSet(products);
+        this.productTable = productTable;
+        this.productMessages = productMessages;
+        this.events = events;
+        this.receiver = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "coinbase-ws-shard-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.running = false;
+        this.subscribed = false;
+        this.droppedAt = 0;
+        this.backoff = backoff;
+        this.dropListener = dropListener;
+        this.pipeline = pipeline;
+        this.recorder = recorder;
+        this.flight = flight;
+
+        // Metrics
+        Tag tag = new Tag("shard", String.valueOf(id));
+        this.messages = registry.counter(Metadata.builder()
+            .withName("websocket.messages")
+            .withDescription("Messages received from the Coinbase feed")
+            .build(), tag);
+        this.parseFailures = registry.counter(Metadata.builder()
+            .withName("websocket.parse.failures")
+            .withDescription("Messages of the Coinbase feed which could not be processed")
+            .build(), tag);
+        registry.register(Metadata.builder()
+            .withName("websocket.connected")
+            .withDescription("1 if the websocket connection is running, 0 otherwise")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Long>) () -> this.running ? 1L : 0L, tag);
+        registry.register(Metadata.builder()
+            .withName("websocket.products")
+            .withDescription("Products assigned to the websocket connection")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Integer>) () -> this.products.size(), tag);
+        this.reconnects = registry.counter(Metadata.builder()
+            .withName("websocket.reconnects")
+            .withDescription("Successful reconnections after the connection dropped")
+            .build(), tag);
+        this.failures = registry.counter(Metadata.builder()
+            .withName("websocket.connect.failures")
+            .withDescription("Failed connection attempts")
+            .build(), tag);
+        this.downtime = registry.counter(Metadata.builder()
+            .withName("websocket.downtime")
+            .withDescription("Time spent disconnected after the connection dropped")
+            .withUnit("milliseconds")
+            .build(), tag);
+        registry.register(Metadata.builder()
+            .withName("websocket.circuit.open")
+            .withDescription("1 if reconnect attempts are suspended after too many failures, 0 otherwise")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Long>) () -> this.backoff.isOpen() ? 1L : 0L, tag);
+        if(pipeline != null) {
+            for(int i = 0; i < ShardPipeline.STAGES.length; i++) {
+                final int stage = i;
+                registry.register(Metadata.builder()
+                    .withName("pipeline.pending")
+                    .withDescription("Messages waiting for a stage of the ring buffer pipeline")
+                    .withType(MetricType.GAUGE)
+                    .build(), (Gauge<Long>) () -> pipeline.getPending(stage), tag, new Tag("stage", ShardPipeline.STAGES[i]));
+            }
+        }
+    }
+
+    /**
+     * Connect to the feed. The endpoint subscribes to the products of the shard : the attempt
+     * only succeeds for the reconnect policy once the subscription is validated.
+     * 
+     * @param container Websocket container
+     * @param destination URI of the feed
+     * @param endpoint Endpoint of the connection
+     * @throws DeploymentException if the endpoint is not valid
+     * @throws IOException if the connection failed
+     */
+    public synchronized void connect(WebSocketContainer container, URI destination, CoinbaseWSClientEndpoint endpoint) throws DeploymentException, IOException {
+        try {
+            this.endpoint = endpoint;
+            this.subscribed = false;
+            this.session = container.connectToServer(endpoint, destination);
+        }
+        catch(DeploymentException | IOException ex) {
+            this.failures.inc();
+            throw ex;
+        }
+        this.running = true;
+
+        // Account for the time spent disconnected
+        long dropped = this.droppedAt;
+        if(dropped > 0) {
+            this.reconnects.inc();
+            this.downtime.inc(Math.max(0, System.currentTimeMillis() - dropped));
+            this.droppedAt = 0;
+        }
+        LOG.info("Shard " + this.id + " connected - Products : " + this.products);
+    }
+
+    /**
+     * Use an endpoint without connection to process replayed frames
+     * 
+     * @param endpoint Endpoint which processes the replayed frames
+     */
+    public synchronized void replay(CoinbaseWSClientEndpoint endpoint) {
+        this.endpoint = endpoint;
+        this.running = true;
+        LOG.info("Shard " + this.id + " replaying recorded frames - Products : " + this.products);
+    }
+
+    /**
+     * Close the current connection
+     * 
+     * @param reason Close reason
+     * @throws IOException if the connection could not be closed normally
+     */
+    public synchronized void disconnect(CloseReason reason) throws IOException {
+        this.running = false;
+        if(this.session != null && this.session.isOpen()) {
+            this.session.close(reason);
+        }
+        this.session = null;
+    }
+
+    /**
+     * Change the products of the shard. Takes effect at the next connection.
+     * 
+     * @param products Products of the shard
+     */
+    public void assign(Set<String> products) {
+        this.products = Collections.unmodifiableSet(products);
+    }
+
+    /**
+     * Process a message on the receive thread, or publish it to the pipeline of the shard
+     * 
+     * @param endpoint Endpoint which received the message
+     * @param session Session which received the message
+     * @param message Raw message
+     */
+    void receive(CoinbaseWSClientEndpoint endpoint, Session session, String message) {
+        long received = EpochClock.now();
+        if(this.recorder != null) {
+            this.recorder.record(this.id, received, message);
+        }
+        this.messages.inc();
+        if(this.pipeline != null) {
+            this.pipeline.publish(endpoint, session, message, received);
+        }
+        else {
+            this.receiver.execute(() -> endpoint.process(session, message, received, null));
+        }
+    }
+
+    /**
+     * Process a replayed frame with the endpoint of the shard. Frames are processed on the
+     * calling thread (or published to the pipeline) so the replay waits for the shard.
+     * 
+     * @param message Raw message
+     */
+    void replay(String message) {
+        long received = EpochClock.now();
+        this.messages.inc();
+        if(this.pipeline != null) {
+            this.pipeline.publish(this.endpoint, null, message, received);
+        }
+        else {
+            this.endpoint.process(null, message, received, null);
+        }
+    }
+
+    /**
+     * Count a match received for a product
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    void countMatch(Currency unit, Currency quote) {
+        this.events.match(unit, quote);
+        this.count(unit, quote);
+    }
+
+    /**
+     * Count a ticker received for a product
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    void countTicker(Currency unit, Currency quote) {
+        this.events.ticker(unit, quote);
+        this.count(unit, quote);
+    }
+
+    /**
+     * Count a level2 update received for a product
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    void countLevel2(Currency unit, Currency quote) {
+        this.events.level2(unit, quote);
+        this.count(unit, quote);
+    }
+
+    /**
+     * Count a message of the full channel received for a product
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    void countLevel3(Currency unit, Currency quote) {
+        this.events.level3(unit, quote);
+        this.count(unit, quote);
+    }
+
+    /**
+     * Count a message which could not be processed
+     */
+    void countFailure() {
+        this.parseFailures.inc();
+    }
+
+    /**
+     * Count a message received for a product
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     */
+    private void count(Currency unit, Currency quote) {
+        LongAdder counter = this.productMessages.get(this.productTable.get(unit, quote).getId());
+        if(counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Called by an endpoint when the feed confirmed its subscription : close the circuit of the
+     * reconnect policy.
+     * 
+     * @param subscribed Endpoint whose subscription is validated
+     */
+    void onSubscribed(CoinbaseWSClientEndpoint subscribed) {
+        if(subscribed == this.endpoint && !this.subscribed) {
+            this.subscribed = true;
+            this.backoff.onSuccess();
+        }
+    }
+
+    /**
+     * Close the connection of an endpoint whose subscription was not confirmed in time : the
+     * drop is handled as a failed attempt.
+     * 
+     * @param expired Endpoint waiting for its subscription
+     */
+    synchronized void onSubscribeTimeout(CoinbaseWSClientEndpoint expired) {
+        if(expired != this.endpoint || !this.running || this.subscribed) {
+            return;
+        }
+        LOG.warn("Shard " + this.id + " subscription not confirmed in time - Closing the connection");
+        try {
+            if(this.session != null && this.session.isOpen()) {
+                this.session.close(new CloseReason(CloseReason.CloseCodes.PROTOCOL_ERROR, "Subscription not confirmed"));
+            }
+        }
+        catch(IOException ex) {
+            LOG.warn("Shard " + this.id + " connection could not be closed normally", ex);
+        }
+        this.onClose(expired);
+    }
+
+    /**
+     * Called by an endpoint when its connection is closed. The drop listener is notified
+     * unless the connection was closed by the container. A connection closed before its
+     * subscription was validated counts as a failed attempt.
+     * 
+     * @param closed Endpoint of the closed connection
+     */
+    synchronized void onClose(CoinbaseWSClientEndpoint closed) {
+        if(closed == this.endpoint && this.running) {
+            this.running = false;
+            if(!this.subscribed) {
+                this.failures.inc();
+            }
+            this.droppedAt = System.currentTimeMillis();
+            this.dropListener.accept(this);
+        }
+    }
+
+    /**
+     * @return Shard id
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return Products of the shard
+     */
+    public Set<String> getProducts() {
+        return this.products;
+    }
+
+    /**
+     * @return Last frames processed by the shard (null if disabled)
+     */
+    public FlightRecorder getFlightRecorder() {
+        return this.flight;
+    }
+
+    /**
+     * @return Reconnect policy
+     */
+    public CoinbaseWSBackoff getBackoff() {
+        return this.backoff;
+    }
+
+    /**
+     * @return True once the subscription of the current connection is validated
+     */
+    public boolean isSubscribed() {
+        return this.subscribed;
+    }
+
+    /**
+     * @return True if the connection is running
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Close the connection and stop the receive thread
+     */
+    @Override
+    public void close() throws Exception {
+        this.disconnect(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "Closed by container"));
+        this.receiver.shutdown();
+        if(this.pipeline != null) {
+            this.pipeline.close();
+        }
+    }
+}
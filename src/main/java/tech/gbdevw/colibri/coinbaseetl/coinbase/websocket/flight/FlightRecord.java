@@ -0,0 +1,111 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Frame copied from a flight recorder
+ */
+@RegisterForReflection
+public class FlightRecord {
+
+    /**
+     * Shard which received the frame
+     */
+    private final int shard;
+
+    /**
+     * Sequence of the frame in the shard
+     */
+    private final long sequence;
+
+    /**
+     * Receive time in epoch ns
+     */
+    private final long received;
+
+    /**
+     * Parse outcome (pending, processed or failed)
+     */
+    private final String outcome;
+
+    /**
+     * True if the frame was truncated by the recorder
+     */
+    private final boolean truncated;
+
+    /**
+     * Raw frame
+     */
+    private final String frame;
+
+    /**
+     * Constructor
+     *
+     * @param shard Shard which received the frame
+     * @param sequence Sequence of the frame in the shard
+     * @param received Receive time in epoch ns
+     * @param outcome Parse outcome (see FlightRecorder)
+     * @param truncated True if the frame was truncated by the recorder
+     * @param frame Raw frame
+     */
+    FlightRecord(int shard, long sequence, long received, byte outcome, boolean truncated, String frame) {
+        this.shard = shard;
+        this.sequence = sequence;
+        this.received = received;
+        switch(outcome) {
+            case FlightRecorder.PROCESSED :
+                this.outcome = "processed";
+                break;
+            case FlightRecorder.FAILED :
+                this.outcome = "failed";
+                break;
+            default :
+                this.outcome = "pending";
+                break;
+        }
+        this.truncated = truncated;
+        this.frame = frame;
+    }
+
+    /**
+     * @return Shard which received the frame
+     */
+    public int getShard() {
+        return this.shard;
+    }
+
+    /**
+     * @return Sequence of the frame in the shard
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @return Receive time in epoch ns
+     */
+    public long getReceived() {
+        return this.received;
+    }
+
+    /**
+     * @return Parse outcome (pending, processed or failed)
+     */
+    public String getOutcome() {
+        return this.outcome;
+    }
+
+    /**
+     * @return True if the frame was truncated by the recorder
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * @return Raw frame
+     */
+    public String getFrame() {
+        return this.frame;
+    }
+}
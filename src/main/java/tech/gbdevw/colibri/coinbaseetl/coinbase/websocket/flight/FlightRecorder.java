@@ -0,0 +1,297 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last frames processed by a shard and their parse outcome in a fixed-size off-heap
+ * ring, so the frames which led to an error can be dumped after the fact.
+ *
+ * Each slot holds [long sequence][long receive time in ns][byte outcome][int frame length]
+ * [int stored bytes][UTF-8 frame truncated to the slot size]. Frames are recorded by the thread
+ * which processes the messages of the shard (single writer) : nothing is allocated and no lock
+ * is taken. Readers copy the slots concurrently and discard the slots rewritten during the copy
+ * (each slot is guarded by a version which is odd while the slot is written).
+ */
+public class FlightRecorder {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecorder.class.getSimpleName());
+
+    /**
+     * Outcome of a frame being processed
+     */
+    public static final byte PENDING = 0;
+
+    /**
+     * Outcome of a frame processed successfully
+     */
+    public static final byte PROCESSED = 1;
+
+    /**
+     * Outcome of a frame which could not be processed
+     */
+    public static final byte FAILED = 2;
+
+    /**
+     * Offset of the frame sequence in a slot
+     */
+    private static final int SEQUENCE = 0;
+
+    /**
+     * Offset of the receive time in a slot
+     */
+    private static final int RECEIVED = SEQUENCE + Long.BYTES;
+
+    /**
+     * Offset of the outcome in a slot
+     */
+    private static final int OUTCOME = RECEIVED + Long.BYTES;
+
+    /**
+     * Offset of the frame length (characters) in a slot
+     */
+    private static final int LENGTH = OUTCOME + 1;
+
+    /**
+     * Offset of the stored bytes in a slot
+     */
+    private static final int STORED = LENGTH + Integer.BYTES;
+
+    /**
+     * Size of the slot header
+     */
+    private static final int HEADER = STORED + Integer.BYTES;
+
+    /**
+     * Shard of the recorded frames
+     */
+    private final int shard;
+
+    /**
+     * Slots of the ring
+     */
+    private final int capacity;
+
+    /**
+     * Bytes of a slot (header included)
+     */
+    private final int slotSize;
+
+    /**
+     * Off-heap slots
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * View of the slots used to encode frames (writer only)
+     */
+    private final ByteBuffer target;
+
+    /**
+     * Encoder of the frames with non-ASCII characters (writer only)
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * Version of each slot (odd while the slot is written)
+     */
+    private final AtomicLongArray versions;
+
+    /**
+     * Frames recorded so far (published after each frame)
+     */
+    private final AtomicLong head;
+
+    /**
+     * Sequence of the next frame (writer only)
+     */
+    private long next;
+
+    /**
+     * Slot of the last frame (writer only)
+     */
+    private int last;
+
+    /**
+     * Constructor
+     *
+     * @param shard Shard of the recorded frames
+     * @param capacity Frames kept by the recorder
+     * @param frameSize Max. bytes kept for each frame (longer frames are truncated)
+     */
+    public FlightRecorder(int shard, int capacity, int frameSize) {
+        if(capacity <= 0 || frameSize <= 0) {
+            throw new IllegalArgumentException("Capacity and frame size must be positive");
+        }
+        this.shard = shard;
+        this.capacity = capacity;
+        this.slotSize = HEADER + frameSize;
+        this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, this.slotSize));
+        this.target = this.buffer.duplicate();
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.versions = new AtomicLongArray(capacity);
+        this.head = new AtomicLong(0);
+        this.next = 0;
+        this.last = -1;
+    }
+
+    /**
+     * Record a frame about to be processed. Its outcome is pending until {@link #outcome(byte)}
+     * is called.
+     *
+     * @param received Receive time in epoch ns
+     * @param message Raw frame
+     */
+    public void record(long received, String message) {
+        long sequence = this.next++;
+        int slot = (int) (sequence % this.capacity);
+        int base = slot * this.slotSize;
+        long version = this.versions.get(slot);
+        this.versions.set(slot, version + 1);
+        VarHandle.storeStoreFence();
+
+        this.buffer.putLong(base + SEQUENCE, sequence);
+        this.buffer.putLong(base + RECEIVED, received);
+        this.buffer.put(base + OUTCOME, PENDING);
+        this.buffer.putInt(base + LENGTH, message.length());
+        this.buffer.putInt(base + STORED, this.encode(message, base + HEADER, base + this.slotSize) - base - HEADER);
+
+        this.versions.lazySet(slot, version + 2);
+        this.head.lazySet(sequence + 1);
+        this.last = slot;
+    }
+
+    /**
+     * Set the outcome of the last recorded frame
+     *
+     * @param outcome PROCESSED or FAILED
+     */
+    public void outcome(byte outcome) {
+        int slot = this.last;
+        if(slot < 0) {
+            return;
+        }
+        long version = this.versions.get(slot);
+        this.versions.set(slot, version + 1);
+        VarHandle.storeStoreFence();
+        this.buffer.put(slot * this.slotSize + OUTCOME, outcome);
+        this.versions.lazySet(slot, version + 2);
+    }
+
+    /**
+     * Copy a frame in the slots as UTF-8 : ASCII characters are copied directly and the encoder
+     * is only used from the first non-ASCII character
+     *
+     * @param message Raw frame
+     * @param start Offset of the first byte
+     * @param end Offset after the last byte of the slot
+     * @return Offset after the last byte written
+     */
+    private int encode(String message, int start, int end) {
+        int length = message.length();
+        int position = start;
+        int i = 0;
+        for(; i < length && position < end; i++) {
+            char c = message.charAt(i);
+            if(c >= 0x80) {
+                break;
+            }
+            this.buffer.put(position++, (byte) c);
+        }
+        if(i == length || position == end) {
+            return position;
+        }
+
+        // Non-ASCII frame : stops before a character which does not fit in the slot
+        this.target.limit(end).position(position);
+        this.encoder.reset();
+        CoderResult result = this.encoder.encode(CharBuffer.wrap(message, i, length), this.target, true);
+        if(result.isUnderflow()) {
+            this.encoder.flush(this.target);
+        }
+        return this.target.position();
+    }
+
+    /**
+     * Copy the frames kept by the recorder. Frames being written during the copy are skipped.
+     *
+     * @return Frames from the oldest to the latest one
+     */
+    public List<FlightRecord> snapshot() {
+        long end = this.head.get();
+        long start = Math.max(0, end - this.capacity);
+        List<FlightRecord> records = new ArrayList<>((int) (end - start));
+        for(long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence % this.capacity);
+            int base = slot * this.slotSize;
+            long version = this.versions.get(slot);
+            if((version & 1) != 0) {
+                continue;
+            }
+            long recorded = this.buffer.getLong(base + SEQUENCE);
+            long received = this.buffer.getLong(base + RECEIVED);
+            byte outcome = this.buffer.get(base + OUTCOME);
+            int length = this.buffer.getInt(base + LENGTH);
+            int stored = Math.max(0, Math.min(this.buffer.getInt(base + STORED), this.slotSize - HEADER));
+            byte[] bytes = new byte[stored];
+            this.buffer.duplicate().position(base + HEADER).get(bytes);
+            VarHandle.acquireFence();
+            if(this.versions.get(slot) != version || recorded != sequence) {
+                continue;
+            }
+            String frame = new String(bytes, StandardCharsets.UTF_8);
+            records.add(new FlightRecord(this.shard, sequence, received, outcome, frame.length() < length, frame));
+        }
+        return records;
+    }
+
+    /**
+     * Log the frames kept by the recorder
+     *
+     * @param reason Reason of the dump
+     */
+    public void dump(String reason) {
+        List<FlightRecord> records = this.snapshot();
+        StringBuilder dump = new StringBuilder();
+        dump.append("Flight recorder of shard ").append(this.shard).append(" (").append(reason).append(") : ").append(records.size()).append(" frame(s)");
+        for(FlightRecord record : records) {
+            dump.append(System.lineSeparator())
+                .append(Instant.ofEpochSecond(0, record.getReceived())).append(' ')
+                .append(record.getOutcome()).append(' ')
+                .append(record.getFrame());
+            if(record.isTruncated()) {
+                dump.append(" [truncated]");
+            }
+        }
+        LOG.error(dump.toString());
+    }
+
+    /**
+     * @return Shard of the recorded frames
+     */
+    public int getShard() {
+        return this.shard;
+    }
+
+    /**
+     * @return Frames kept by the recorder
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+}
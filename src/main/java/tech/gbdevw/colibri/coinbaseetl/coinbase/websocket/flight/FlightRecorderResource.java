@@ -0,0 +1,62 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.CoinbaseWSContainer;
+
+/**
+ * Dumps the frames kept by the flight recorders of the websocket shards
+ */
+@Path("/flight-recorder")
+@Produces(MediaType.APPLICATION_JSON)
+public class FlightRecorderResource {
+
+    /**
+     * Container of the websocket shards
+     */
+    private CoinbaseWSContainer container;
+
+    /**
+     * Constructor
+     *
+     * @param container Container of the websocket shards
+     */
+    public FlightRecorderResource(CoinbaseWSContainer container) {
+        this.container = container;
+    }
+
+    /**
+     * @return Frames kept by the flight recorders of all shards
+     */
+    @GET
+    public List<FlightRecord> dump() {
+        List<FlightRecord> records = new ArrayList<>();
+        for(FlightRecorder recorder : this.container.getFlightRecorders()) {
+            records.addAll(recorder.snapshot());
+        }
+        return records;
+    }
+
+    /**
+     * @param shard Shard id
+     * @return Frames kept by the flight recorder of the shard
+     */
+    @GET
+    @Path("/{shard}")
+    public List<FlightRecord> dump(@PathParam("shard") int shard) {
+        for(FlightRecorder recorder : this.container.getFlightRecorders()) {
+            if(recorder.getShard() == shard) {
+                return recorder.snapshot();
+            }
+        }
+        throw new NotFoundException("No flight recorder for shard " + shard);
+    }
+}
@@ -0,0 +1,138 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the frames recorded by a FrameRecorder, segment after segment in recording order.
+ * 
+ * A segment which ends abruptly (recorder killed) is read up to its last complete frame.
+ */
+public class FrameReader implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(FrameReader.class.getSimpleName());
+
+    /**
+     * Segments left to read
+     */
+    private final Iterator<Path> segments;
+
+    /**
+     * Stream of the current segment (null if no segment is open)
+     */
+    private DataInputStream in;
+
+    /**
+     * Receive time in ns of the current frame
+     */
+    private long timestamp;
+
+    /**
+     * Shard of the current frame
+     */
+    private int shard;
+
+    /**
+     * Current frame
+     */
+    private String message;
+
+    /**
+     * Constructor
+     * 
+     * @param dir Directory of the segments
+     * @throws IOException if the directory cannot be listed
+     */
+    public FrameReader(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(FrameRecorder.SEGMENT_EXTENSION))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        LOG.info("Segments to read in " + dir + " : " + files.size());
+        this.segments = files.iterator();
+    }
+
+    /**
+     * Move to the next frame
+     * 
+     * @return False if there is no more frame
+     * @throws IOException if a segment cannot be read
+     */
+    public boolean next() throws IOException {
+        while(true) {
+            if(this.in == null) {
+                if(!this.segments.hasNext()) {
+                    return false;
+                }
+                Path segment = this.segments.next();
+                this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(segment), 65536), 65536));
+                LOG.info("Reading frames from " + segment);
+            }
+            try {
+                long timestamp = this.in.readLong();
+                int shard = this.in.readInt();
+                byte[] bytes = new byte[this.in.readInt()];
+                this.in.readFully(bytes);
+                this.timestamp = timestamp;
+                this.shard = shard;
+                this.message = new String(bytes, StandardCharsets.UTF_8);
+                return true;
+            } catch (EOFException | ZipException ex) {
+                // End of segment (or incomplete tail of a segment which was not closed)
+                this.in.close();
+                this.in = null;
+            }
+        }
+    }
+
+    /**
+     * @return Receive time in ns of the current frame
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * @return Shard of the current frame
+     */
+    public int getShard() {
+        return this.shard;
+    }
+
+    /**
+     * @return Current frame
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Close the current segment
+     */
+    @Override
+    public void close() throws IOException {
+        if(this.in != null) {
+            this.in.close();
+            this.in = null;
+        }
+    }
+}
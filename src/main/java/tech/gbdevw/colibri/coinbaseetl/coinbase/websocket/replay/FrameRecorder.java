@@ -0,0 +1,252 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.service.latency.EpochClock;
+
+/**
+ * Records the raw frames received from the websocket feed in compressed segment files.
+ * 
+ * Each frame is written as [long receive time in ns][int shard][int length][UTF-8 frame]
+ * in a gzip stream. A new segment is started once the frames written in the current one
+ * exceed the segment size. Segments are named after the receive time of their first frame
+ * so they sort in recording order.
+ * 
+ * Frames are handed over to a writer thread through a bounded queue so the receive threads
+ * never wait for the disk : frames are dropped (and counted) when the queue is full.
+ */
+public class FrameRecorder implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(FrameRecorder.class.getSimpleName());
+
+    /**
+     * Extension of the segment files
+     */
+    public static final String SEGMENT_EXTENSION = ".frames.gz";
+
+    /**
+     * Directory of the segments
+     */
+    private final Path dir;
+
+    /**
+     * Max. frame bytes of a segment (before compression)
+     */
+    private final long segmentSize;
+
+    /**
+     * Frames waiting to be written
+     */
+    private final BlockingQueue<Frame> queue;
+
+    /**
+     * Writer thread
+     */
+    private final Thread writer;
+
+    /**
+     * Frames dropped because the queue was full
+     */
+    private final Counter dropped;
+
+    /**
+     * Frames written
+     */
+    private final Counter recorded;
+
+    /**
+     * Stream of the current segment (null if no segment is open)
+     */
+    private DataOutputStream out;
+
+    /**
+     * Frame bytes written in the current segment
+     */
+    private long written;
+
+    /**
+     * False once the recorder is closed
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     * 
+     * @param dir Directory of the segments
+     * @param segmentSize Max. frame bytes of a segment (before compression)
+     * @param queueSize Max. frames waiting to be written
+     * @param registry Registry for recorder metrics
+     * @throws IOException if the directory cannot be created
+     */
+    public FrameRecorder(Path dir, long segmentSize, int queueSize, MetricRegistry registry) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.segmentSize = segmentSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.dropped = registry.counter(Metadata.builder()
+            .withName("recorder.dropped")
+            .withDescription("Frames which could not be recorded because the recorder was lagging")
+            .build());
+        this.recorded = registry.counter(Metadata.builder()
+            .withName("recorder.frames")
+            .withDescription("Frames recorded")
+            .build());
+        this.running = true;
+        this.writer = new Thread(this::write, "coinbase-ws-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return Current epoch time in ns (monotonic)
+     */
+    public long now() {
+        return EpochClock.now();
+    }
+
+    /**
+     * Record a frame
+     * 
+     * @param shard Shard which received the frame
+     * @param timestamp Receive time in ns
+     * @param message Raw frame
+     * @return False if the frame was dropped
+     */
+    public boolean record(int shard, long timestamp, String message) {
+        if(!this.queue.offer(new Frame(timestamp, shard, message))) {
+            this.dropped.inc();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Frames dropped because the queue was full
+     */
+    public long getDropped() {
+        return this.dropped.getCount();
+    }
+
+    /**
+     * Writer loop : write frames in batches and flush when the queue is drained so a crash
+     * loses as few frames as possible
+     */
+    private void write() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while(this.running || !this.queue.isEmpty()) {
+                Frame first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch);
+                for(Frame frame : batch) {
+                    this.write(frame);
+                }
+                this.recorded.inc(batch.size());
+                batch.clear();
+                this.out.flush();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            LOG.error("Frames could not be recorded - Recording stopped", ex);
+            this.running = false;
+            this.queue.clear();
+        } finally {
+            this.closeSegment();
+        }
+    }
+
+    /**
+     * Write a frame in the current segment, starting a new segment if needed
+     * 
+     * @param frame Frame
+     * @throws IOException if the frame could not be written
+     */
+    private void write(Frame frame) throws IOException {
+        if(this.out == null || this.written >= this.segmentSize) {
+            this.closeSegment();
+            Path segment = this.dir.resolve(String.format("%020d", frame.timestamp) + SEGMENT_EXTENSION);
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(segment), 65536, true), 65536));
+            this.written = 0;
+            LOG.info("Recording frames in " + segment);
+        }
+        byte[] bytes = frame.message.getBytes(StandardCharsets.UTF_8);
+        this.out.writeLong(frame.timestamp);
+        this.out.writeInt(frame.shard);
+        this.out.writeInt(bytes.length);
+        this.out.write(bytes);
+        this.written += bytes.length + Long.BYTES + 2 * Integer.BYTES;
+    }
+
+    /**
+     * Close the current segment (if any)
+     */
+    private void closeSegment() {
+        if(this.out != null) {
+            try {
+                this.out.close();
+            } catch (IOException ex) {
+                LOG.error("Segment could not be closed", ex);
+            }
+            this.out = null;
+        }
+    }
+
+    /**
+     * Write the pending frames and close the current segment
+     */
+    @Override
+    public void close() throws InterruptedException {
+        this.running = false;
+        this.writer.join();
+    }
+
+    /**
+     * Frame waiting to be written
+     */
+    private static class Frame {
+
+        /**
+         * Receive time in ns
+         */
+        private final long timestamp;
+
+        /**
+         * Shard which received the frame
+         */
+        private final int shard;
+
+        /**
+         * Raw frame
+         */
+        private final String message;
+
+        Frame(long timestamp, int shard, String message) {
+            this.timestamp = timestamp;
+            this.shard = shard;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Feeds recorded frames to a sink, paced on their receive times.
+ * 
+ * With a speed of 1 frames are replayed in real time, with a speed of N they are replayed
+ * N times faster and with a speed of 0 (or less) they are replayed as fast as possible.
+ */
+public class FrameReplayer {
+
+    /**
+     * Sink of the replayed frames
+     */
+    @FunctionalInterface
+    public interface FrameSink {
+
+        /**
+         * Called for each replayed frame
+         * 
+         * @param shard Shard which received the frame
+         * @param message Raw frame
+         */
+        void accept(int shard, String message);
+    }
+
+    /**
+     * Reader of the recorded frames
+     */
+    private final FrameReader reader;
+
+    /**
+     * Replay speed (0 or less : as fast as possible)
+     */
+    private final double speed;
+
+    /**
+     * Sink of the replayed frames
+     */
+    private final FrameSink sink;
+
+    /**
+     * Monotonic clock in ns
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Waits for a number of ns
+     */
+    private final LongConsumer sleeper;
+
+    /**
+     * False to stop the replay
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     * 
+     * @param reader Reader of the recorded frames
+     * @param speed Replay speed (0 or less : as fast as possible)
+     * @param sink Sink of the replayed frames
+     */
+    public FrameReplayer(FrameReader reader, double speed, FrameSink sink) {
+        this(reader, speed, sink, System::nanoTime, LockSupport::parkNanos);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param reader Reader of the recorded frames
+     * @param speed Replay speed (0 or less : as fast as possible)
+     * @param sink Sink of the replayed frames
+     * @param clock Monotonic clock in ns
+     * @param sleeper Waits for a number of ns
+     */
+    FrameReplayer(FrameReader reader, double speed, FrameSink sink, LongSupplier clock, LongConsumer sleeper) {
+        this.reader = reader;
+        this.speed = speed;
+        this.sink = sink;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.running = true;
+    }
+
+    /**
+     * Replay the frames until there is no more frame or the replay is stopped
+     * 
+     * @return Frames replayed
+     * @throws IOException if the frames cannot be read
+     */
+    public long replay() throws IOException {
+        long frames = 0;
+        long first = 0;
+        long start = 0;
+        while(this.running && this.reader.next()) {
+            if(this.speed > 0) {
+                if(frames == 0) {
+                    first = this.reader.getTimestamp();
+                    start = this.clock.getAsLong();
+                }
+                // Wait until the frame is due
+                long due = start + (long) ((this.reader.getTimestamp() - first) / this.speed);
+                for(long wait = due - this.clock.getAsLong(); wait > 0 && this.running; wait = due - this.clock.getAsLong()) {
+                    this.sleeper.accept(wait);
+                }
+            }
+            this.sink.accept(this.reader.getShard(), this.reader.getMessage());
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Stop the replay
+     */
+    public void stop() {
+        this.running = false;
+    }
+}
@@ -0,0 +1,120 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reconnect policy of a websocket connection : exponential backoff with jitter and a cap,
+ * guarded by a circuit breaker.
+ * 
+ * The circuit opens after too many consecutive failures : the next attempt is delayed by the
+ * open duration. A single failure of that attempt (half-open) opens the circuit again, a
+ * success closes it.
+ */
+public class CoinbaseWSBackoff {
+
+    /**
+     * Delay in ms before the first reconnect attempt
+     */
+    private final long initialDelay;
+
+    /**
+     * Max. delay in ms between two attempts
+     */
+    private final long maxDelay;
+
+    /**
+     * Part of the delay which is randomized (0 to 1)
+     */
+    private final double jitter;
+
+    /**
+     * Consecutive failures which open the circuit
+     */
+    private final int threshold;
+
+    /**
+     * Delay in ms before an attempt when the circuit is open
+     */
+    private final long openDuration;
+
+    /**
+     * Consecutive failures
+     */
+    private int failures;
+
+    /**
+     * Constructor
+     * 
+     * @param initialDelay Delay in ms before the first reconnect attempt (> 0 : a zero delay
+     *        would never grow)
+     * @param maxDelay Max. delay in ms between two attempts
+     * @param jitter Part of the delay which is randomized (0 to 1)
+     * @param threshold Consecutive failures which open the circuit
+     * @param openDuration Delay in ms before an attempt when the circuit is open
+     */
+    public CoinbaseWSBackoff(long initialDelay, long maxDelay, double jitter, int threshold, long openDuration) {
+        if(initialDelay <= 0 || maxDelay < initialDelay || jitter < 0 || jitter > 1 || threshold < 1 || openDuration < 0) {
+            throw new IllegalArgumentException("Invalid reconnect policy");
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.jitter = jitter;
+        this.threshold = threshold;
+        this.openDuration = openDuration;
+        this.failures = 0;
+    }
+
+    /**
+     * @return Delay in ms before the first attempt after a drop
+     */
+    public synchronized long firstDelay() {
+        return this.isOpen() ? this.openDuration : this.randomize(this.initialDelay);
+    }
+
+    /**
+     * Record a failed attempt
+     * 
+     * @return Delay in ms before the next attempt
+     */
+    public synchronized long onFailure() {
+        this.failures++;
+        if(this.isOpen()) {
+            return this.openDuration;
+        }
+        // initialDelay * 2^failures without overflow
+        long delay = this.failures < Long.numberOfLeadingZeros(this.initialDelay) - 1 ? Math.min(this.maxDelay, this.initialDelay << this.failures) : this.maxDelay;
+        return this.randomize(delay);
+    }
+
+    /**
+     * Record a successful attempt : close the circuit
+     */
+    public synchronized void onSuccess() {
+        this.failures = 0;
+    }
+
+    /**
+     * @return True if the circuit is open
+     */
+    public synchronized boolean isOpen() {
+        return this.failures >= this.threshold;
+    }
+
+    /**
+     * @return Consecutive failures
+     */
+    public synchronized int getFailures() {
+        return this.failures;
+    }
+
+    /**
+     * Remove a random part of the delay so connections do not retry in lockstep
+     * 
+     * @param delay Delay in ms
+     * @return Delay in ms in [delay * (1 - jitter), delay]
+     */
+    private long randomize(long delay) {
+        long random = (long) (delay * this.jitter);
+        return random > 0 ? delay - ThreadLocalRandom.current().nextLong(random + 1) : delay;
+    }
+}
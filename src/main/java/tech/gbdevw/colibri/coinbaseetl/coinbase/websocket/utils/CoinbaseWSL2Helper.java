@@ -0,0 +1,77 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.util.Optional;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseSideHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseTimeHelper;
+
+/**
+ * Class which provides methods to extract data from the snapshot and l2update messages of the
+ * level2 channel received from the Coinbase feed
+ */
+public class CoinbaseWSL2Helper {
+
+    /**
+     * Fill a reusable message with a level2 snapshot. The receive time of the snapshot is left
+     * to the caller.
+     *
+     * @param msg snapshot message
+     * @param products Supported products
+     * @param message Message filled with the levels of the snapshot
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static void getSnapshot (JsonObject msg, CoinbaseProductTable products, CoinbaseWSL2Message message) {
+        message.clear();
+        message.setProduct(products.get(Optional.ofNullable(msg.get("product_id")).orElseThrow().getAsString()));
+        for(JsonElement level : Optional.ofNullable(msg.getAsJsonArray("bids")).orElseThrow()) {
+            JsonArray values = level.getAsJsonArray();
+            message.add(true, CoinbaseDecimalHelper.parse(values.get(0).getAsString()), CoinbaseDecimalHelper.parse(values.get(1).getAsString()));
+        }
+        for(JsonElement level : Optional.ofNullable(msg.getAsJsonArray("asks")).orElseThrow()) {
+            JsonArray values = level.getAsJsonArray();
+            message.add(false, CoinbaseDecimalHelper.parse(values.get(0).getAsString()), CoinbaseDecimalHelper.parse(values.get(1).getAsString()));
+        }
+    }
+
+    /**
+     * Fill a reusable message with a l2update
+     *
+     * @param msg l2update message
+     * @param products Supported products
+     * @param message Message filled with the changes of the update
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static void getUpdate (JsonObject msg, CoinbaseProductTable products, CoinbaseWSL2Message message) {
+        message.clear();
+        message.setProduct(products.get(Optional.ofNullable(msg.get("product_id")).orElseThrow().getAsString()));
+        message.setTime(CoinbaseTimeHelper.toEpochMilli(Optional.ofNullable(msg.get("time")).orElseThrow().getAsString()));
+        for(JsonElement change : Optional.ofNullable(msg.getAsJsonArray("changes")).orElseThrow()) {
+            JsonArray values = change.getAsJsonArray();
+            message.add(isBid(values.get(0).getAsString()), CoinbaseDecimalHelper.parse(values.get(1).getAsString()), CoinbaseDecimalHelper.parse(values.get(2).getAsString()));
+        }
+    }
+
+    /**
+     * Return the book side of a change
+     *
+     * @param side Side of the change (buy or sell)
+     * @return True for a bid (buy), false for an ask (sell)
+     * @throws IllegalArgumentException if the side is not supported
+     */
+    public static boolean isBid (String side) {
+        switch(CoinbaseSideHelper.getSide(side)) {
+            case BUY:
+                return true;
+            case SELL:
+                return false;
+            default:
+                throw new IllegalArgumentException("Unsupported side : " + side);
+        }
+    }
+}
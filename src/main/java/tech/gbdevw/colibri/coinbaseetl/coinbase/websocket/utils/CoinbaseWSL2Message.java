@@ -0,0 +1,140 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.util.Arrays;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+
+/**
+ * Snapshot or l2update message of the level2 channel. An instance is reused by an endpoint for
+ * all the messages it decodes : price levels are stored in primitive arrays (prices & sizes
+ * scaled by 10^8, see CoinbaseDecimalHelper) which only grow.
+ */
+public class CoinbaseWSL2Message {
+
+    /**
+     * Product of the message
+     */
+    private CoinbaseProduct product;
+
+    /**
+     * Time of the update in epoch ms (receive time for snapshots)
+     */
+    private long time;
+
+    /**
+     * Levels in the message
+     */
+    private int count;
+
+    /**
+     * Side of each level (true : bid)
+     */
+    private boolean [] bids;
+
+    /**
+     * Price of each level (1e-8)
+     */
+    private long [] prices;
+
+    /**
+     * Size of each level (1e-8) - 0 if the level is removed
+     */
+    private long [] sizes;
+
+    /**
+     * Constructor
+     */
+    public CoinbaseWSL2Message() {
+        this.bids = new boolean [64];
+        this.prices = new long [64];
+        this.sizes = new long [64];
+    }
+
+    /**
+     * Clear the message before decoding a new one
+     */
+    public void clear() {
+        this.product = null;
+        this.time = 0;
+        this.count = 0;
+    }
+
+    /**
+     * Add a level
+     *
+     * @param bid True for a bid, false for an ask
+     * @param price Price (1e-8)
+     * @param size Size (1e-8) - 0 if the level is removed
+     */
+    public void add(boolean bid, long price, long size) {
+        if(this.count == this.prices.length) {
+            int capacity = this.count * 2;
+            this.bids = Arrays.copyOf(this.bids, capacity);
+            this.prices = Arrays.copyOf(this.prices, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+        }
+        this.bids[this.count] = bid;
+        this.prices[this.count] = price;
+        this.sizes[this.count] = size;
+        this.count++;
+    }
+
+    /**
+     * @param product Product of the message
+     */
+    public void setProduct(CoinbaseProduct product) {
+        this.product = product;
+    }
+
+    /**
+     * @param time Time of the update in epoch ms
+     */
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * @return Product of the message
+     */
+    public CoinbaseProduct getProduct() {
+        return this.product;
+    }
+
+    /**
+     * @return Time of the update in epoch ms
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return Levels in the message
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @param i Level index
+     * @return True if the level is a bid
+     */
+    public boolean isBid(int i) {
+        return this.bids[i];
+    }
+
+    /**
+     * @param i Level index
+     * @return Price of the level (1e-8)
+     */
+    public long getPrice(int i) {
+        return this.prices[i];
+    }
+
+    /**
+     * @param i Level index
+     * @return Size of the level (1e-8)
+     */
+    public long getSize(int i) {
+        return this.sizes[i];
+    }
+}
@@ -0,0 +1,64 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.util.Optional;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseOrderIdHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseTimeHelper;
+
+/**
+ * Class which provides methods to extract data from the messages of the full channel received
+ * from the Coinbase feed
+ */
+public class CoinbaseWSL3Helper {
+
+    /**
+     * Fill a reusable message with a message of the full channel. Prices of market orders are
+     * not set.
+     *
+     * @param msg Message of the full channel
+     * @param type Message type (see CoinbaseWSL3Message)
+     * @param products Supported products
+     * @param message Message filled with the properties of the message
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static void getMessage (JsonObject msg, byte type, CoinbaseProductTable products, CoinbaseWSL3Message message) {
+        message.clear(type);
+        message.setTime(CoinbaseTimeHelper.toEpochMilli(Optional.ofNullable(msg.get("time")).orElseThrow().getAsString()));
+        message.setSequence(Optional.ofNullable(msg.get("sequence")).orElseThrow().getAsLong());
+        message.setProduct(products.get(Optional.ofNullable(msg.get("product_id")).orElseThrow().getAsString()));
+
+        boolean order = type == CoinbaseWSL3Message.OPEN || type == CoinbaseWSL3Message.DONE || type == CoinbaseWSL3Message.CHANGE;
+        boolean match = type == CoinbaseWSL3Message.MATCH;
+        if(order || match) {
+            String id = get(msg, match ? "maker_order_id" : "order_id").orElseThrow().getAsString();
+            message.setOrder(CoinbaseOrderIdHelper.getHigh(id), CoinbaseOrderIdHelper.getLow(id));
+            message.setBid(CoinbaseWSL2Helper.isBid(get(msg, "side").orElseThrow().getAsString()));
+        }
+
+        // Price & size are required by open & match only
+        boolean required = type == CoinbaseWSL3Message.OPEN || match;
+        Optional<JsonElement> price = get(msg, "price");
+        if(required || price.isPresent()) {
+            message.setPrice(CoinbaseDecimalHelper.parse(price.orElseThrow().getAsString()));
+        }
+        Optional<JsonElement> size = get(msg, type == CoinbaseWSL3Message.CHANGE ? "new_size" : (type == CoinbaseWSL3Message.OPEN || type == CoinbaseWSL3Message.DONE) ? "remaining_size" : "size");
+        if(required || size.isPresent()) {
+            message.setSize(CoinbaseDecimalHelper.parse(size.orElseThrow().getAsString()));
+        }
+        if(match) {
+            message.setTradeId(get(msg, "trade_id").orElseThrow().getAsLong());
+        }
+    }
+
+    /**
+     * Return a property which is not null
+     */
+    private static Optional<JsonElement> get (JsonObject msg, String name) {
+        return Optional.ofNullable(msg.get(name)).filter(element -> !element.isJsonNull());
+    }
+}
@@ -0,0 +1,281 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Side;
+
+/**
+ * Message of the full channel (received, open, done, match, change or activate). An instance is
+ * reused by an endpoint for all the messages it decodes : the order id is stored as two longs and
+ * prices & sizes are scaled by 10^8 (see CoinbaseDecimalHelper).
+ */
+public class CoinbaseWSL3Message {
+
+    /**
+     * Message types
+     */
+    public static final byte RECEIVED = 0;
+    public static final byte OPEN = 1;
+    public static final byte DONE = 2;
+    public static final byte MATCH = 3;
+    public static final byte CHANGE = 4;
+    public static final byte ACTIVATE = 5;
+
+    /**
+     * Message type
+     */
+    private byte type;
+
+    /**
+     * Product of the message
+     */
+    private CoinbaseProduct product;
+
+    /**
+     * Time of the message in epoch ms
+     */
+    private long time;
+
+    /**
+     * Sequence of the message in the feed of the product
+     */
+    private long sequence;
+
+    /**
+     * Most significant bits of the order id (maker order for a match)
+     */
+    private long orderHigh;
+
+    /**
+     * Least significant bits of the order id (maker order for a match)
+     */
+    private long orderLow;
+
+    /**
+     * True if the order is a buy order (maker order for a match)
+     */
+    private boolean bid;
+
+    /**
+     * Price (1e-8) - 0 if not set (market orders)
+     */
+    private long price;
+
+    /**
+     * Remaining size of open & done, size of match & received, new size of change (1e-8) - -1
+     * if not set
+     */
+    private long size;
+
+    /**
+     * Trade id (match only)
+     */
+    private long tradeId;
+
+    /**
+     * Clear the message before decoding a new one
+     *
+     * @param type Message type
+     */
+    public void clear(byte type) {
+        this.type = type;
+        this.product = null;
+        this.time = 0;
+        this.sequence = 0;
+        this.orderHigh = 0;
+        this.orderLow = 0;
+        this.bid = false;
+        this.price = 0;
+        this.size = -1;
+        this.tradeId = 0;
+    }
+
+    /**
+     * Copy another message
+     *
+     * @param other Message to copy
+     */
+    public void copy(CoinbaseWSL3Message other) {
+        this.type = other.type;
+        this.product = other.product;
+        this.time = other.time;
+        this.sequence = other.sequence;
+        this.orderHigh = other.orderHigh;
+        this.orderLow = other.orderLow;
+        this.bid = other.bid;
+        this.price = other.price;
+        this.size = other.size;
+        this.tradeId = other.tradeId;
+    }
+
+    /**
+     * Return the match of a match message
+     *
+     * @return The match (the side is the side of the maker order)
+     */
+    public Match getMatch() {
+        return Match.newBuilder()
+            .setTimestamp(this.time)
+            .setId(this.tradeId)
+            .setUnit(this.product.getUnit())
+            .setQuote(this.product.getQuote())
+            .setSide(this.bid ? Side.BUY : Side.SELL)
+            .setPrice(CoinbaseDecimalHelper.toDouble(this.price))
+            .setSize(CoinbaseDecimalHelper.toDouble(this.size))
+            .build();
+    }
+
+    /**
+     * Return the type of a message of the full channel
+     *
+     * @param type Message type (ex : open)
+     * @return The type or -1 if the message is not a message of the full channel
+     */
+    public static byte getType(String type) {
+        switch(type) {
+            case CoinbaseWSMsgTypes.RECEIVED:
+                return RECEIVED;
+            case CoinbaseWSMsgTypes.OPEN:
+                return OPEN;
+            case CoinbaseWSMsgTypes.DONE:
+                return DONE;
+            case CoinbaseWSMsgTypes.MATCH:
+                return MATCH;
+            case CoinbaseWSMsgTypes.CHANGE:
+                return CHANGE;
+            case CoinbaseWSMsgTypes.ACTIVATE:
+                return ACTIVATE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param product Product of the message
+     */
+    public void setProduct(CoinbaseProduct product) {
+        this.product = product;
+    }
+
+    /**
+     * @param time Time of the message in epoch ms
+     */
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * @param sequence Sequence of the message
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @param high Most significant bits of the order id
+     * @param low Least significant bits of the order id
+     */
+    public void setOrder(long high, long low) {
+        this.orderHigh = high;
+        this.orderLow = low;
+    }
+
+    /**
+     * @param bid True for a buy order
+     */
+    public void setBid(boolean bid) {
+        this.bid = bid;
+    }
+
+    /**
+     * @param price Price (1e-8)
+     */
+    public void setPrice(long price) {
+        this.price = price;
+    }
+
+    /**
+     * @param size Size (1e-8)
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @param tradeId Trade id
+     */
+    public void setTradeId(long tradeId) {
+        this.tradeId = tradeId;
+    }
+
+    /**
+     * @return Message type
+     */
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * @return Product of the message
+     */
+    public CoinbaseProduct getProduct() {
+        return this.product;
+    }
+
+    /**
+     * @return Time of the message in epoch ms
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return Sequence of the message
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @return Most significant bits of the order id
+     */
+    public long getOrderHigh() {
+        return this.orderHigh;
+    }
+
+    /**
+     * @return Least significant bits of the order id
+     */
+    public long getOrderLow() {
+        return this.orderLow;
+    }
+
+    /**
+     * @return True for a buy order
+     */
+    public boolean isBid() {
+        return this.bid;
+    }
+
+    /**
+     * @return Price (1e-8) - 0 if not set
+     */
+    public long getPrice() {
+        return this.price;
+    }
+
+    /**
+     * @return Size (1e-8) - -1 if not set
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return Trade id
+     */
+    public long getTradeId() {
+        return this.tradeId;
+    }
+}
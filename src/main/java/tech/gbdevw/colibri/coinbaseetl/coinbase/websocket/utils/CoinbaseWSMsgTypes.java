@@ -11,4 +11,11 @@ public class CoinbaseWSMsgTypes {
     public static final String MATCH = "match";
     public static final String HEARTBEAT = "heartbeat";
     public static final String LASTMATCH = "last_match";
+    public static final String SNAPSHOT = "snapshot";
+    public static final String L2UPDATE = "l2update";
+    public static final String RECEIVED = "received";
+    public static final String OPEN = "open";
+    public static final String DONE = "done";
+    public static final String CHANGE = "change";
+    public static final String ACTIVATE = "activate";
 }
\ No newline at end of file
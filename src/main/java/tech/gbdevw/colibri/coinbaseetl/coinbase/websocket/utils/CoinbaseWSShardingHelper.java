@@ -0,0 +1,129 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Class offering methods to assign products to websocket connections (shards).
+ */
+public class CoinbaseWSShardingHelper {
+
+    /**
+     * Separator of the connections in an explicit assignment
+     */
+    public static final String CONNECTION_SEPARATOR = ";";
+
+    /**
+     * Separator of the products of a connection in an explicit assignment
+     */
+    public static final String PRODUCT_SEPARATOR = ",";
+
+    /**
+     * Assign products to connections from an explicit assignment.
+     * 
+     * @param assignment Products of each connection (ex : BTC-USD,ETH-EUR;LTC-USD)
+     * @param products Supported products
+     * @return Products of each connection
+     * @throws IllegalArgumentException if a product is not supported or is not assigned exactly once
+     */
+    public static List<Set<String>> assignExplicit (String assignment, Collection<String> products) {
+
+        List<Set<String>> shards = new ArrayList<>();
+        Set<String> remaining = new HashSet<>(products);
+
+        for(String connection : assignment.split(CONNECTION_SEPARATOR)) {
+            Set<String> shard = new TreeSet<>();
+            for(String product : connection.split(PRODUCT_SEPARATOR)) {
+                String id = product.trim();
+                if(id.isEmpty()) {
+                    continue;
+                }
+                if(!remaining.remove(id)) {
+                    throw new IllegalArgumentException("Product not supported or assigned twice : " + id);
+                }
+                shard.add(id);
+            }
+            shards.add(shard);
+        }
+
+        // Check that all products are assigned
+        if(remaining.size() > 0) {
+            throw new IllegalArgumentException("Products not assigned to a connection : " + remaining.toString());
+        }
+
+        return shards;
+    }
+
+    /**
+     * Assign products to connections using the hash of the product id.
+     * 
+     * @param products Supported products
+     * @param connections Number of connections
+     * @return Products of each connection
+     */
+    public static List<Set<String>> assignHash (Collection<String> products, int connections) {
+
+        List<Set<String>> shards = newShards(connections);
+        for(String product : products) {
+            shards.get(Math.floorMod(product.hashCode(), connections)).add(product);
+        }
+        return shards;
+    }
+
+    /**
+     * Assign products to connections so each connection gets about the same weight (ex : message rate).
+     * The heaviest products are assigned first, each one to the lightest connection.
+     * 
+     * @param weights Weight of each product
+     * @param connections Number of connections
+     * @return Products of each connection
+     */
+    public static List<Set<String>> assignWeighted (Map<String, Long> weights, int connections) {
+
+        List<Set<String>> shards = newShards(connections);
+        long [] loads = new long [connections];
+
+        // Sort products by weight (heaviest first) then by id
+        List<String> products = new ArrayList<>(weights.keySet());
+        products.sort((a, b) -> {
+            int order = Long.compare(weights.get(b), weights.get(a));
+            return order != 0 ? order : a.compareTo(b);
+        });
+
+        // Assign each product to the lightest connection
+        for(String product : products) {
+            int lightest = 0;
+            for(int i = 1; i < connections; i++) {
+                if(loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(product);
+            loads[lightest] += Math.max(1, weights.get(product));
+        }
+
+        return shards;
+    }
+
+    /**
+     * Create empty connections
+     * 
+     * @param connections Number of connections
+     * @return Empty product set for each connection
+     */
+    private static List<Set<String>> newShards (int connections) {
+        if(connections < 1) {
+            throw new IllegalArgumentException("At least one connection is required : " + connections);
+        }
+        List<Set<String>> shards = new ArrayList<>(connections);
+        for(int i = 0; i < connections; i++) {
+            shards.add(new TreeSet<>());
+        }
+        return shards;
+    }
+}
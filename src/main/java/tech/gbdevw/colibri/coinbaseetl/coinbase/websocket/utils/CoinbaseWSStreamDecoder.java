@@ -0,0 +1,402 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseOrderIdHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseSideHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseTimeHelper;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Class which provides methods to decode messages received from the Coinbase feed with a
+ * streaming reader. Builders are filled directly from the message without building a JSON tree.
+ * 
+ * The Coinbase feed always sends the "type" property first : it is read first to know which
+ * builder must be filled with the remaining properties.
+ */
+public class CoinbaseWSStreamDecoder {
+
+    /**
+     * Flags used to track the properties found in a message
+     */
+    private static final int TIME = 1;
+    private static final int ID = 1 << 1;
+    private static final int PRODUCT = 1 << 2;
+    private static final int SIDE = 1 << 3;
+    private static final int PRICE = 1 << 4;
+    private static final int SIZE = 1 << 5;
+    private static final int BEST_BID = 1 << 6;
+    private static final int BEST_ASK = 1 << 7;
+    private static final int BIDS = 1 << 8;
+    private static final int ASKS = 1 << 9;
+    private static final int CHANGES = 1 << 10;
+    private static final int SEQUENCE = 1 << 11;
+    private static final int ORDER = 1 << 12;
+
+    /**
+     * Properties required to build a match
+     */
+    private static final int MATCH_PROPERTIES = TIME | ID | PRODUCT | SIDE | PRICE | SIZE;
+
+    /**
+     * Properties required to build a ticker
+     */
+    private static final int TICKER_PROPERTIES = TIME | ID | PRODUCT | SIDE | PRICE | SIZE | BEST_BID | BEST_ASK;
+
+    /**
+     * Properties required to build a level2 snapshot
+     */
+    private static final int SNAPSHOT_PROPERTIES = PRODUCT | BIDS | ASKS;
+
+    /**
+     * Properties required to build a level2 update
+     */
+    private static final int L2UPDATE_PROPERTIES = TIME | PRODUCT | CHANGES;
+
+    /**
+     * Properties required by all the messages of the full channel
+     */
+    private static final int L3_PROPERTIES = TIME | PRODUCT | SEQUENCE;
+
+    /**
+     * Open the message and return its type if "type" is its first property.
+     * 
+     * @param reader Reader positioned at the beginning of the message
+     * @return The message type or null if the first property is not the message type
+     * @throws IOException if the message is not a valid JSON object
+     */
+    public static String readType (JsonReader reader) throws IOException {
+        reader.beginObject();
+        if(reader.hasNext() && reader.peek() == JsonToken.NAME && "type".equals(reader.nextName())) {
+            return reader.nextString();
+        }
+        return null;
+    }
+
+    /**
+     * Return the match from the remaining properties of a match or last_match message.
+     * 
+     * @param reader Reader positioned after the message type
+     * @param products Supported products
+     * @return the match data
+     * @throws IOException if the message is not a valid JSON object
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static Match readMatch (JsonReader reader, CoinbaseProductTable products) throws IOException {
+
+        Match.Builder builder = Match.newBuilder();
+        int found = 0;
+
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "time":
+                    builder.setTimestamp(CoinbaseTimeHelper.toEpochMilli(reader.nextString()));
+                    found |= TIME;
+                    break;
+                case "trade_id":
+                    builder.setId(reader.nextLong());
+                    found |= ID;
+                    break;
+                case "product_id":
+                    CoinbaseProduct product = products.get(reader.nextString());
+                    builder.setUnit(product.getUnit()).setQuote(product.getQuote());
+                    found |= PRODUCT;
+                    break;
+                case "side":
+                    builder.setSide(CoinbaseSideHelper.getSide(reader.nextString()));
+                    found |= SIDE;
+                    break;
+                case "price":
+                    builder.setPrice(CoinbaseDecimalHelper.parseDouble(reader.nextString()));
+                    found |= PRICE;
+                    break;
+                case "size":
+                    builder.setSize(CoinbaseDecimalHelper.parseDouble(reader.nextString()));
+                    found |= SIZE;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if(found != MATCH_PROPERTIES) {
+            throw new NoSuchElementException("Expected property not found in the match message");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Return the ticker from the remaining properties of a ticker message.
+     * 
+     * @param reader Reader positioned after the message type
+     * @param products Supported products
+     * @return the ticker data
+     * @throws IOException if the message is not a valid JSON object
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static Ticker readTicker (JsonReader reader, CoinbaseProductTable products) throws IOException {
+
+        Ticker.Builder builder = Ticker.newBuilder();
+        int found = 0;
+
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "time":
+                    builder.setTimestamp(CoinbaseTimeHelper.toEpochMilli(reader.nextString()));
+                    found |= TIME;
+                    break;
+                case "sequence":
+                    builder.setId(reader.nextLong());
+                    found |= ID;
+                    break;
+                case "product_id":
+                    CoinbaseProduct product = products.get(reader.nextString());
+                    builder.setUnit(product.getUnit()).setQuote(product.getQuote());
+                    found |= PRODUCT;
+                    break;
+                case "best_ask":
+                    builder.setBestAsk(CoinbaseDecimalHelper.parseDouble(reader.nextString()));
+                    found |= BEST_ASK;
+                    break;
+                case "best_bid":
+                    builder.setBestBid(CoinbaseDecimalHelper.parseDouble(reader.nextString()));
+                    found |= BEST_BID;
+                    break;
+                case "side":
+                    builder.setLastTradeSide(CoinbaseSideHelper.getSide(reader.nextString()));
+                    found |= SIDE;
+                    break;
+                case "price":
+                    builder.setLastTradePrice(CoinbaseDecimalHelper.parseDouble(reader.nextString()));
+                    found |= PRICE;
+                    break;
+                case "last_size":
+                    builder.setLastTradeSize(CoinbaseDecimalHelper.parseDouble(reader.nextString()));
+                    found |= SIZE;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if(found != TICKER_PROPERTIES) {
+            throw new NoSuchElementException("Expected property not found in the ticker message");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read the remaining properties of a level2 snapshot message in a reusable message. The
+     * receive time of the snapshot is left to the caller.
+     * 
+     * @param reader Reader positioned after the message type
+     * @param products Supported products
+     * @param message Message filled with the levels of the snapshot
+     * @throws IOException if the message is not a valid JSON object
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static void readL2Snapshot (JsonReader reader, CoinbaseProductTable products, CoinbaseWSL2Message message) throws IOException {
+
+        message.clear();
+        int found = 0;
+
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "product_id":
+                    message.setProduct(products.get(reader.nextString()));
+                    found |= PRODUCT;
+                    break;
+                case "bids":
+                    readLevels(reader, true, message);
+                    found |= BIDS;
+                    break;
+                case "asks":
+                    readLevels(reader, false, message);
+                    found |= ASKS;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if(found != SNAPSHOT_PROPERTIES) {
+            throw new NoSuchElementException("Expected property not found in the snapshot message");
+        }
+    }
+
+    /**
+     * Read the remaining properties of a l2update message in a reusable message.
+     * 
+     * @param reader Reader positioned after the message type
+     * @param products Supported products
+     * @param message Message filled with the changes of the update
+     * @throws IOException if the message is not a valid JSON object
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static void readL2Update (JsonReader reader, CoinbaseProductTable products, CoinbaseWSL2Message message) throws IOException {
+
+        message.clear();
+        int found = 0;
+
+        while(reader.hasNext()) {
+            switch(reader.nextName()) {
+                case "time":
+                    message.setTime(CoinbaseTimeHelper.toEpochMilli(reader.nextString()));
+                    found |= TIME;
+                    break;
+                case "product_id":
+                    message.setProduct(products.get(reader.nextString()));
+                    found |= PRODUCT;
+                    break;
+                case "changes":
+                    reader.beginArray();
+                    while(reader.hasNext()) {
+                        reader.beginArray();
+                        boolean bid = CoinbaseWSL2Helper.isBid(reader.nextString());
+                        long price = CoinbaseDecimalHelper.parse(reader.nextString());
+                        message.add(bid, price, CoinbaseDecimalHelper.parse(reader.nextString()));
+                        reader.endArray();
+                    }
+                    reader.endArray();
+                    found |= CHANGES;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if(found != L2UPDATE_PROPERTIES) {
+            throw new NoSuchElementException("Expected property not found in the l2update message");
+        }
+    }
+
+    /**
+     * Read the remaining properties of a message of the full channel in a reusable message.
+     * Prices of market orders are not set.
+     * 
+     * @param reader Reader positioned after the message type
+     * @param type Message type (see CoinbaseWSL3Message)
+     * @param products Supported products
+     * @param message Message filled with the properties of the message
+     * @throws IOException if the message is not a valid JSON object
+     * @throws NoSuchElementException if the message does not contain the expected properties
+     */
+    public static void readL3 (JsonReader reader, byte type, CoinbaseProductTable products, CoinbaseWSL3Message message) throws IOException {
+
+        message.clear(type);
+        int found = 0;
+
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch(name) {
+                case "time":
+                    message.setTime(CoinbaseTimeHelper.toEpochMilli(reader.nextString()));
+                    found |= TIME;
+                    break;
+                case "sequence":
+                    message.setSequence(reader.nextLong());
+                    found |= SEQUENCE;
+                    break;
+                case "product_id":
+                    message.setProduct(products.get(reader.nextString()));
+                    found |= PRODUCT;
+                    break;
+                case "order_id":
+                case "maker_order_id":
+                    String order = reader.nextString();
+                    message.setOrder(CoinbaseOrderIdHelper.getHigh(order), CoinbaseOrderIdHelper.getLow(order));
+                    found |= ORDER;
+                    break;
+                case "side":
+                    message.setBid(CoinbaseWSL2Helper.isBid(reader.nextString()));
+                    found |= SIDE;
+                    break;
+                case "price":
+                    message.setPrice(CoinbaseDecimalHelper.parse(reader.nextString()));
+                    found |= PRICE;
+                    break;
+                case "size":
+                case "remaining_size":
+                case "new_size":
+                    message.setSize(CoinbaseDecimalHelper.parse(reader.nextString()));
+                    found |= SIZE;
+                    break;
+                case "trade_id":
+                    message.setTradeId(reader.nextLong());
+                    found |= ID;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        int expected = getL3Properties(type);
+        if((found & expected) != expected) {
+            throw new NoSuchElementException("Expected property not found in the full channel message");
+        }
+    }
+
+    /**
+     * Return the properties required by a message of the full channel
+     * 
+     * @param type Message type (see CoinbaseWSL3Message)
+     * @return Properties flags
+     */
+    private static int getL3Properties (byte type) {
+        switch(type) {
+            case CoinbaseWSL3Message.OPEN:
+                return L3_PROPERTIES | ORDER | SIDE | PRICE | SIZE;
+            case CoinbaseWSL3Message.MATCH:
+                return L3_PROPERTIES | ORDER | SIDE | PRICE | SIZE | ID;
+            case CoinbaseWSL3Message.DONE:
+            case CoinbaseWSL3Message.CHANGE:
+                return L3_PROPERTIES | ORDER | SIDE;
+            default:
+                return L3_PROPERTIES;
+        }
+    }
+
+    /**
+     * Read the [price, size] levels of a side of a snapshot
+     * 
+     * @param reader Reader positioned before the array of levels
+     * @param bid True for bids, false for asks
+     * @param message Message filled with the levels
+     * @throws IOException if the levels are not a valid JSON array
+     */
+    private static void readLevels (JsonReader reader, boolean bid, CoinbaseWSL2Message message) throws IOException {
+        reader.beginArray();
+        while(reader.hasNext()) {
+            reader.beginArray();
+            long price = CoinbaseDecimalHelper.parse(reader.nextString());
+            message.add(bid, price, CoinbaseDecimalHelper.parse(reader.nextString()));
+            while(reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+        }
+        reader.endArray();
+    }
+}
@@ -1,13 +1,15 @@
 package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
 
-import java.time.Instant;
 import java.util.Optional;
 
 import com.google.gson.JsonObject;
 
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseSideHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseTimeHelper;
 import tech.gbdevw.colibri.domain.Ticker;
-import tech.gbdevw.colibri.domain.Currency;
-import tech.gbdevw.colibri.domain.Side;
 
 /**
  * Class which provides methods to extract data from a Ticker message received from the Coinbase feed
@@ -17,20 +19,22 @@ public class CoinbaseWSTickHelper {
     /**
      * Return the ticker from the ticker message
      * @param msg ticker message
+     * @param products Supported products
      * @return the ticker data
      * @throws NoSuchElementException if the message does not contain the expected properties
      */
-    public static Ticker getTicker (JsonObject msg) {
+    public static Ticker getTicker (JsonObject msg, CoinbaseProductTable products) {
+        CoinbaseProduct product = products.get(Optional.of(msg.get("product_id")).orElseThrow().getAsString());
         return Ticker.newBuilder()
-            .setTimestamp(Instant.parse(Optional.of(msg.get("time")).orElseThrow().getAsString()).toEpochMilli())
+            .setTimestamp(CoinbaseTimeHelper.toEpochMilli(Optional.of(msg.get("time")).orElseThrow().getAsString()))
             .setId(Optional.of(msg.get("sequence")).orElseThrow().getAsLong())
-            .setUnit(Currency.valueOf(Optional.of(msg.get("product_id")).orElseThrow().getAsString().split("-")[0]))
-            .setQuote(Currency.valueOf(Optional.of(msg.get("product_id")).orElseThrow().getAsString().split("-")[1]))
-            .setBestAsk(Optional.of(msg.get("best_ask")).orElseThrow().getAsDouble())
-            .setBestBid(Optional.of(msg.get("best_bid")).orElseThrow().getAsDouble())
-            .setLastTradeSide(Side.valueOf(Optional.of(msg.get("side")).orElseThrow().getAsString().toUpperCase()))
-            .setLastTradePrice(Optional.of(msg.get("price")).orElseThrow().getAsDouble())
-            .setLastTradeSize(Optional.of(msg.get("last_size")).orElseThrow().getAsDouble())
+            .setUnit(product.getUnit())
+            .setQuote(product.getQuote())
+            .setBestAsk(CoinbaseDecimalHelper.parseDouble(Optional.of(msg.get("best_ask")).orElseThrow().getAsString()))
+            .setBestBid(CoinbaseDecimalHelper.parseDouble(Optional.of(msg.get("best_bid")).orElseThrow().getAsString()))
+            .setLastTradeSide(CoinbaseSideHelper.getSide(Optional.of(msg.get("side")).orElseThrow().getAsString()))
+            .setLastTradePrice(CoinbaseDecimalHelper.parseDouble(Optional.of(msg.get("price")).orElseThrow().getAsString()))
+            .setLastTradeSize(CoinbaseDecimalHelper.parseDouble(Optional.of(msg.get("last_size")).orElseThrow().getAsString()))
             .build();
     }
 }
\ No newline at end of file
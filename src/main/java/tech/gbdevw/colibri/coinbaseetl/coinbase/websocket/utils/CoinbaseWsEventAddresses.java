@@ -7,5 +7,5 @@ public class CoinbaseWsEventAddresses {
     public static final String websocketCloseEventAddress = "coinbase/websocket/close";
     public static final String websocketTickEventAddress = "coinbase/websocket/tick";
     public static final String websocketMatchEventAddress = "coinbase/websocket/match";
-    public static final String websocketLastMatchEventAddress = "coinbase/websocket/lastmatch";
+    public static final String dedupedMatchEventAddress = "coinbase/dedupe/match";
 }
\ No newline at end of file
@@ -1,14 +1,16 @@
 package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
 
-import java.time.Instant;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 
 import com.google.gson.JsonObject;
 
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseSideHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseTimeHelper;
 import tech.gbdevw.colibri.domain.Match;
-import tech.gbdevw.colibri.domain.Currency;
-import tech.gbdevw.colibri.domain.Side;
 
 /**
  * Class which provides methods to extract data from a Mast Match message
@@ -29,18 +31,20 @@ public class CoinbaseWsLastMatchHelper {
     /**
      * Return the match from the last_match message
      * @param msg last_match message
+     * @param products Supported products
      * @return the match data
      * @throws NoSuchElementException if the message does not contain the expected properties
      */
-    public static Match getLastMatch (JsonObject msg) {
+    public static Match getLastMatch (JsonObject msg, CoinbaseProductTable products) {
+        CoinbaseProduct product = products.get(Optional.of(msg.get("product_id")).orElseThrow().getAsString());
         return Match.newBuilder()
-            .setTimestamp(Instant.parse(Optional.of(msg.get("time")).orElseThrow().getAsString()).toEpochMilli())
+            .setTimestamp(CoinbaseTimeHelper.toEpochMilli(Optional.of(msg.get("time")).orElseThrow().getAsString()))
             .setId(Optional.of(msg.get("trade_id")).orElseThrow().getAsLong())
-            .setUnit(Currency.valueOf(Optional.of(msg.get("product_id")).orElseThrow().getAsString().split("-")[0]))
-            .setQuote(Currency.valueOf(Optional.of(msg.get("product_id")).orElseThrow().getAsString().split("-")[1]))
-            .setSide(Side.valueOf(Optional.of(msg.get("side")).orElseThrow().getAsString().toUpperCase()))
-            .setPrice(Optional.of(msg.get("price")).orElseThrow().getAsDouble())
-            .setSize(Optional.of(msg.get("size")).orElseThrow().getAsDouble())
+            .setUnit(product.getUnit())
+            .setQuote(product.getQuote())
+            .setSide(CoinbaseSideHelper.getSide(Optional.of(msg.get("side")).orElseThrow().getAsString()))
+            .setPrice(CoinbaseDecimalHelper.parseDouble(Optional.of(msg.get("price")).orElseThrow().getAsString()))
+            .setSize(CoinbaseDecimalHelper.parseDouble(Optional.of(msg.get("size")).orElseThrow().getAsString()))
             .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package tech.gbdevw.colibri.coinbaseetl.configuration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+
+/**
+ * Class which provides the symbol table of the products configured in Coinbase properties.
+ */
+@ApplicationScoped
+public class CoinbaseProductTableProducer {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CoinbaseProductTableProducer.class.getSimpleName());
+
+    /**
+     * Build the symbol table of the supported products
+     * 
+     * @param config Coinbase properties
+     * @return Symbol table of the supported products
+     */
+    @Produces
+    @Singleton
+    public CoinbaseProductTable productTable (CoinbaseProperties config) {
+        CoinbaseProductTable table = new CoinbaseProductTable(config.product);
+        LOG.info("Supported products : " + table.getProducts().keySet());
+        return table;
+    }
+}
@@ -1,5 +1,8 @@
 package tech.gbdevw.colibri.coinbaseetl.configuration;
 
+import java.util.List;
+import java.util.Optional;
+
 import io.quarkus.arc.config.ConfigProperties;
 
 /**
@@ -8,6 +11,36 @@ import io.quarkus.arc.config.ConfigProperties;
 @ConfigProperties(prefix="coinbase")
 public class CoinbaseProperties{
 
+    /**
+     * Decoder which parses messages with a streaming reader
+     */
+    public static final String STREAMING_DECODER = "streaming";
+
+    /**
+     * Decoder which parses messages as JSON trees
+     */
+    public static final String TREE_DECODER = "tree";
+
+    /**
+     * Products are assigned to connections using the hash of their id
+     */
+    public static final String HASH_SHARDING = "hash";
+
+    /**
+     * Products are assigned to connections according to their message rate
+     */
+    public static final String WEIGHTED_SHARDING = "weighted";
+
+    /**
+     * Websocket events are dispatched on the Vert.x event bus
+     */
+    public static final String BUS_PIPELINE = "bus";
+
+    /**
+     * Websocket events are dispatched through a ring buffer pipeline per shard
+     */
+    public static final String RING_PIPELINE = "ring";
+
     /**
      * URI of the COinbase websocket feed
      */
@@ -19,7 +52,218 @@ public class CoinbaseProperties{
     public String api;
 
     /**
-     * Product to support
+     * Products to support (ex : BTC-USD,ETH-EUR)
+     */
+    public List<String> product;
+
+    /**
+     * Decoder used for websocket messages (streaming or tree)
+     */
+    public String decoder = STREAMING_DECODER;
+
+    /**
+     * Websocket connections (shards) to open
+     */
+    public Integer connections = 1;
+
+    /**
+     * Assignment of products to connections (hash or weighted)
+     */
+    public String sharding = HASH_SHARDING;
+
+    /**
+     * Explicit assignment of products to connections (ex : BTC-USD,ETH-EUR;LTC-USD)
+     */
+    public Optional<String> shards;
+
+    /**
+     * Interval in ms between two rebalances of weighted connections (0 to disable)
+     */
+    public Long rebalanceInterval = 0L;
+
+    /**
+     * Delay in ms before the first reconnect attempt (doubled after each failure)
+     */
+    public Long reconnectDelay = 500L;
+
+    /**
+     * Max. delay in ms between two reconnect attempts
+     */
+    public Long reconnectMaxDelay = 30000L;
+
+    /**
+     * Part of the reconnect delay which is randomized (0 to 1)
+     */
+    public Double reconnectJitter = 0.5;
+
+    /**
+     * Consecutive failed reconnect attempts which open the circuit
+     */
+    public Integer reconnectFailures = 10;
+
+    /**
+     * Delay in ms before a reconnect attempt when the circuit is open
+     */
+    public Long reconnectOpen = 300000L;
+
+    /**
+     * Time in ms given to the feed to confirm the subscription of a connection before it is
+     * closed and retried (0 to disable)
+     */
+    public Long subscribeTimeout = 10000L;
+
+    /**
+     * Trades fetched per request when filling a gap in the trade flow (100 max.)
+     */
+    public Integer backfillPageSize = 100;
+
+    /**
+     * Max. requests to fill a gap in the trade flow
+     */
+    public Integer backfillMaxPages = 100;
+
+    /**
+     * Trades fetched at startup when no trade was published yet
+     */
+    public Long backfillInitial = 100L;
+
+    /**
+     * Delay in ms before the first retry of a failed backfill
+     */
+    public Long backfillRetryDelay = 1000L;
+
+    /**
+     * Max. delay in ms between two retries of a failed backfill
+     */
+    public Long backfillRetryMaxDelay = 60000L;
+
+    /**
+     * Consecutive failed attempts after which a gap is given up
+     */
+    public Integer backfillRetries = 10;
+
+    /**
+     * Latest trade ids of each product checked for duplicates
+     */
+    public Integer dedupeWindow = 65536;
+
+    /**
+     * Dispatch of the websocket events (bus or ring)
+     */
+    public String pipeline = BUS_PIPELINE;
+
+    /**
+     * Slots of the ring buffer of each shard (power of 2)
+     */
+    public Integer pipelineSize = 4096;
+
+    /**
+     * Wait strategy of the pipeline stages (busy-spin, yielding, sleeping or blocking)
+     */
+    public String pipelineWaitStrategy = "blocking";
+
+    /**
+     * Directory where the raw frames of the feed are recorded (no recording if not set)
+     */
+    public Optional<String> record;
+
+    /**
+     * Max. frame bytes of a recording segment (before compression)
+     */
+    public Long recordSegmentSize = 268435456L;
+
+    /**
+     * Max. frames waiting to be recorded
+     */
+    public Integer recordQueueSize = 65536;
+
+    /**
+     * Directory of recorded frames to replay instead of connecting to the feed
+     */
+    public Optional<String> replay;
+
+    /**
+     * Replay speed (1 : real time, N : N times faster, 0 : as fast as possible)
+     */
+    public Double replaySpeed = 1.0;
+
+    /**
+     * Track the latency of the events from the exchange to the Kafka acknowledgement
+     */
+    public Boolean latency = true;
+
+    /**
+     * Duration in ms of a window of the latency histograms (snapshots cover 2 windows)
+     */
+    public Long latencyWindow = 60000L;
+
+    /**
+     * Last frames kept off-heap by the flight recorder of each shard (0 to disable)
+     */
+    public Integer flightRecorder = 256;
+
+    /**
+     * Max. bytes kept for each frame by the flight recorder (longer frames are truncated)
+     */
+    public Integer flightRecorderFrameSize = 2048;
+
+    /**
+     * Subscribe to the level2 channel and maintain the book of each product
+     */
+    public Boolean level2 = false;
+
+    /**
+     * Levels of each side published in depth snapshots
+     */
+    public Integer level2Depth = 10;
+
+    /**
+     * Min. interval in ms between two depth snapshots of a book
+     */
+    public Long level2DepthInterval = 100L;
+
+    /**
+     * Subscribe to the full channel and maintain the level3 book of each product
+     */
+    public Boolean level3 = false;
+
+    /**
+     * Max. resting orders of the level3 book of a product
+     */
+    public Integer level3MaxOrders = 4194304;
+
+    /**
+     * Max. messages of a product kept while its level3 book is synchronized
+     */
+    public Integer level3Pending = 65536;
+
+    /**
+     * Delay in ms before requesting again the level3 book of a product after a failure
+     */
+    public Long level3ResyncDelay = 1000L;
+
+    /**
+     * Roll the matches into OHLCV bars of each product
+     */
+    public Boolean candles = false;
+
+    /**
+     * Intervals of the bars (comma separated - ex : 1s,1m,5m,1h)
+     */
+    public String candlesIntervals = "1s,1m,5m,1h";
+
+    /**
+     * Time in ms during which a bar stays open after its end to add late trades
+     */
+    public Long candlesGrace = 5000L;
+
+    /**
+     * Publish the bars in progress which changed at each flush (in addition to closed bars)
+     */
+    public Boolean candlesUpdates = false;
+
+    /**
+     * Interval in ms between two flushes of the bars
      */
-    public String product;
+    public Long candlesFlushInterval = 250L;
 }
\ No newline at end of file
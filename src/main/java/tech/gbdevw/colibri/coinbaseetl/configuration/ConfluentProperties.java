@@ -38,4 +38,84 @@ public class ConfluentProperties {
      * Ticker topic
      */
     public Optional<String> ticker;
+
+    /**
+     * Level2 update topic
+     */
+    public Optional<String> level2;
+
+    /**
+     * Book depth topic
+     */
+    public Optional<String> depth;
+
+    /**
+     * Candle topic
+     */
+    public Optional<String> candles;
+
+    /**
+     * Min. interval in ms between two tickers sent for a product (0 to send every ticker)
+     */
+    public Long tickerConflation = 0L;
+
+    /**
+     * Ticker conflation interval of specific products (ex : BTC-USD:100,ETH-BTC:1000)
+     */
+    public Optional<String> tickerConflationProducts;
+
+    /**
+     * Send records asynchronously instead of waiting for each acknowledgement
+     */
+    public Boolean async = false;
+
+    /**
+     * Max. records sent and not yet acknowledged (asynchronous sends only)
+     */
+    public Integer maxInFlight = 1000;
+
+    /**
+     * Collect events into batches before sending them
+     */
+    public Boolean batch = false;
+
+    /**
+     * Max. events in a batch
+     */
+    public Integer batchSize = 500;
+
+    /**
+     * Max. time in ms between the first event of a batch and its flush
+     */
+    public Long batchLinger = 20L;
+
+    /**
+     * Checkpoint file of the last trade id & ticker sequence acknowledged for each product
+     */
+    public Optional<String> checkpoint;
+
+    /**
+     * Interval in ms between two writes of the checkpoint to disk
+     */
+    public Long checkpointSync = 1000L;
+
+    /**
+     * Directory of the spool of events which could not be sent
+     */
+    public Optional<String> spool;
+
+    /**
+     * Size of a spool segment in bytes
+     */
+    public Integer spoolSegmentSize = 67108864;
+
+    /**
+     * Max. disk used by the spool of each producer in bytes
+     */
+    public Long spoolMaxSize = 1073741824L;
+
+    /**
+     * Interval in ms between two replays of the spool
+     */
+    public Long spoolDrainInterval = 1000L;
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package tech.gbdevw.colibri.coinbaseetl.configuration;
+
+import io.quarkus.arc.config.ConfigProperties;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Class which defines properties of the embedded Coinbase simulator
+ */
+@RegisterForReflection
+@ConfigProperties(prefix="simulator")
+public class SimulatorProperties {
+
+    /**
+     * Start the simulator with the application (build time)
+     */
+    public Boolean enabled = false;
+
+    /**
+     * Port of the simulated websocket feed & REST API
+     */
+    public Integer port = 8090;
+
+    /**
+     * Trades generated per second for each subscribed product
+     */
+    public Double rate = 100.0;
+
+    /**
+     * Fraction of the trades which are not sent on the websocket feed (only served by the REST API)
+     */
+    public Double gap = 0.0;
+
+    /**
+     * Trades of each product kept for the REST API
+     */
+    public Integer history = 100000;
+}
@@ -0,0 +1,182 @@
+package tech.gbdevw.colibri.coinbaseetl.service.batching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Micro-batching stage which collects events into batches bounded by size and by time.
+ * 
+ * Events are added from the event loop. Each batch is handed to the sink in one worker
+ * dispatch, in the order batches are closed.
+ */
+public class EventBatcher<T> implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(EventBatcher.class.getSimpleName());
+
+    /**
+     * Name used in logs
+     */
+    private final String name;
+
+    /**
+     * Max. events in a batch
+     */
+    private final int maxSize;
+
+    /**
+     * Max. time in ms between the first event of a batch and its flush
+     */
+    private final long linger;
+
+    /**
+     * Vertx instance used for timers & worker dispatch
+     */
+    private final Vertx vertx;
+
+    /**
+     * Consumer of the batches (called on a worker thread)
+     */
+    private final Consumer<List<T>> sink;
+
+    /**
+     * Batch size histogram
+     */
+    private final Histogram batchSize;
+
+    /**
+     * Flush latency histogram (first event to sink completion)
+     */
+    private final Histogram flushLatency;
+
+    /**
+     * Current batch
+     */
+    private List<T> batch;
+
+    /**
+     * Time at which the first event of the current batch was added (ns)
+     */
+    private long batchStart;
+
+    /**
+     * Generation of the current batch - used to ignore timers of batches already flushed
+     */
+    private long generation;
+
+    /**
+     * Constructor
+     * 
+     * @param name Name used in logs & metrics (ex : topic)
+     * @param maxSize Max. events in a batch
+     * @param linger Max. time in ms between the first event of a batch and its flush
+     * @param vertx Vertx instance
+     * @param registry Registry for batch metrics
+     * @param sink Consumer of the batches
+     */
+    public EventBatcher(String name, int maxSize, long linger, Vertx vertx, MetricRegistry registry, Consumer<List<T>> sink) {
+        if(maxSize < 1 || linger < 1) {
+            throw new IllegalArgumentException("Batch size and linger must be at least 1 : " + maxSize + " - " + linger);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.linger = linger;
+        this.vertx = vertx;
+        this.sink = sink;
+        this.batch = new ArrayList<>(maxSize);
+
+        // Metrics
+        Tag tag = new Tag("batcher", name);
+        this.batchSize = registry.histogram(Metadata.builder()
+            .withName("batch.size")
+            .withDescription("Events in each batch")
+            .build(), tag);
+        this.flushLatency = registry.histogram(Metadata.builder()
+            .withName("batch.flush.latency")
+            .withDescription("Time between the first event of a batch and the end of its flush")
+            .withUnit(MetricUnits.MICROSECONDS)
+            .build(), tag);
+    }
+
+    /**
+     * Add an event to the current batch. The batch is flushed if it is full.
+     * 
+     * @param event Event
+     */
+    public synchronized void add(T event) {
+
+        // First event : start the linger timer
+        if(this.batch.isEmpty()) {
+            this.batchStart = System.nanoTime();
+            long current = this.generation;
+            this.vertx.setTimer(this.linger, id -> this.flushExpired(current));
+        }
+
+        this.batch.add(event);
+        if(this.batch.size() >= this.maxSize) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Flush the batch of a generation if it was not flushed yet
+     * 
+     * @param expired Generation of the batch
+     */
+    private synchronized void flushExpired(long expired) {
+        if(expired == this.generation && !this.batch.isEmpty()) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Close the current batch and hand it to the sink on a worker thread
+     */
+    private void flush() {
+
+        // Close current batch
+        List<T> events = this.batch;
+        long start = this.batchStart;
+        this.batch = new ArrayList<>(this.maxSize);
+        this.generation++;
+        this.batchSize.update(events.size());
+
+        // Dispatch
+        this.vertx.<Void>executeBlocking(promise -> {
+            this.sink.accept(events);
+            promise.complete();
+        }, true, result -> {
+            this.flushLatency.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if(result.failed()) {
+                LOG.error(this.name + " - Batch of " + events.size() + " events could not be processed", result.cause());
+            }
+        });
+    }
+
+    /**
+     * Hand the remaining events to the sink on the calling thread
+     */
+    @Override
+    public synchronized void close() {
+        if(!this.batch.isEmpty()) {
+            List<T> events = this.batch;
+            this.batch = new ArrayList<>(this.maxSize);
+            this.generation++;
+            this.sink.accept(events);
+        }
+    }
+}
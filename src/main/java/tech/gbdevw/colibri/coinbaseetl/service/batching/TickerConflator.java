@@ -0,0 +1,185 @@
+package tech.gbdevw.colibri.coinbaseetl.service.batching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Ticker;
+import io.vertx.core.Vertx;
+
+/**
+ * Conflation stage which keeps only the latest ticker of each product between two sends.
+ *
+ * Each product has a single slot holding its latest ticker : tickers are offered from any
+ * thread without locking and replace the ticker waiting in the slot, which is counted as
+ * conflated. A timer of each product drains its slot at the interval of the product and hands
+ * the ticker to the sink on the event loop. Products with no interval are not conflated.
+ */
+public class TickerConflator implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(TickerConflator.class.getSimpleName());
+
+    /**
+     * Currencies (slots are indexed by unit ordinal * currencies + quote ordinal)
+     */
+    private static final int CURRENCIES = Currency.values().length;
+
+    /**
+     * Latest ticker of each product (null if drained)
+     */
+    private final AtomicReferenceArray<Ticker> slots;
+
+    /**
+     * Tickers replaced before they were sent indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] conflated;
+
+    /**
+     * Vertx instance used for the timers
+     */
+    private final Vertx vertx;
+
+    /**
+     * Consumer of the drained tickers (called on the event loop)
+     */
+    private final Consumer<Ticker> sink;
+
+    /**
+     * Drain timers
+     */
+    private final List<Long> timers;
+
+    /**
+     * Constructor
+     *
+     * @param products Supported products
+     * @param interval Interval in ms between two drains of a product (0 : not conflated)
+     * @param intervals Interval in ms of specific products by product id (0 : not conflated)
+     * @param vertx Vertx instance
+     * @param registry Registry for conflation metrics
+     * @param sink Consumer of the drained tickers
+     */
+    public TickerConflator(CoinbaseProductTable products, long interval, Map<String, Long> intervals, Vertx vertx, MetricRegistry registry, Consumer<Ticker> sink) {
+        this.slots = new AtomicReferenceArray<>(CURRENCIES * CURRENCIES);
+        this.conflated = new Counter [CURRENCIES][CURRENCIES];
+        this.vertx = vertx;
+        this.sink = sink;
+        this.timers = new ArrayList<>();
+        for(String id : intervals.keySet()) {
+            if(!products.getProducts().containsKey(id)) {
+                LOG.warn("Ticker conflation interval of an unsupported product ignored : " + id);
+            }
+        }
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            long drain = intervals.getOrDefault(product.getId(), interval);
+            if(drain <= 0) {
+                continue;
+            }
+            int unit = product.getUnit().ordinal();
+            int quote = product.getQuote().ordinal();
+            this.conflated[unit][quote] = registry.counter(Metadata.builder()
+                .withName("tickers.conflated")
+                .withDescription("Tickers replaced by a more recent ticker before they were sent")
+                .build(), new Tag("product", product.getId()));
+            int slot = unit * CURRENCIES + quote;
+            this.timers.add(vertx.setPeriodic(drain, id -> this.drain(slot, this.sink)));
+            LOG.info("Ticker conflation of " + product.getId() + " : " + drain + " ms");
+        }
+    }
+
+    /**
+     * Parse the intervals of specific products
+     *
+     * @param intervals Intervals in ms by product id (ex : BTC-USD:100,ETH-BTC:1000)
+     * @return Interval of each product
+     * @throws IllegalArgumentException if an interval is not valid
+     */
+    public static Map<String, Long> parseIntervals(String intervals) {
+        Map<String, Long> parsed = new HashMap<>();
+        for(String entry : intervals.split(",")) {
+            if(entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf(':');
+            if(separator < 0) {
+                throw new IllegalArgumentException("Invalid ticker conflation interval : " + entry);
+            }
+            try {
+                parsed.put(entry.substring(0, separator).trim().toUpperCase(), Long.parseLong(entry.substring(separator + 1).trim()));
+            }
+            catch(NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid ticker conflation interval : " + entry, ex);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Replace the ticker waiting in the slot of its product
+     *
+     * @param ticker Ticker
+     * @return False if the product is not conflated (the ticker must be sent)
+     */
+    public boolean offer(Ticker ticker) {
+        Counter conflated = this.conflated[ticker.getUnit().ordinal()][ticker.getQuote().ordinal()];
+        if(conflated == null) {
+            return false;
+        }
+        if(this.slots.getAndSet(ticker.getUnit().ordinal() * CURRENCIES + ticker.getQuote().ordinal(), ticker) != null) {
+            conflated.inc();
+        }
+        return true;
+    }
+
+    /**
+     * Hand the ticker waiting in a slot to a consumer
+     *
+     * @param slot Slot
+     * @param consumer Consumer of the ticker
+     */
+    private void drain(int slot, Consumer<Ticker> consumer) {
+        Ticker ticker = this.slots.getAndSet(slot, null);
+        if(ticker != null) {
+            consumer.accept(ticker);
+        }
+    }
+
+    /**
+     * Stop the timers and hand the remaining tickers to the sink on the calling thread
+     */
+    @Override
+    public void close() {
+        this.close(this.sink);
+    }
+
+    /**
+     * Stop the timers and hand the remaining tickers to a consumer on the calling thread instead
+     * of the sink (ex : to send them synchronously before the producer is closed)
+     *
+     * @param last Consumer of the remaining tickers
+     */
+    public void close(Consumer<Ticker> last) {
+        for(long timer : this.timers) {
+            this.vertx.cancelTimer(timer);
+        }
+        for(int slot = 0; slot < this.slots.length(); slot++) {
+            this.drain(slot, last);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+
+/**
+ * Level2 book of a product built from the snapshot and the l2update messages of the level2
+ * channel. Updates received before the first snapshot are ignored.
+ *
+ * A book is maintained by the thread which processes the messages of its product and is not
+ * thread safe : the book service synchronizes on the book.
+ */
+public class L2Book {
+
+    /**
+     * Product of the book
+     */
+    private final CoinbaseProduct product;
+
+    /**
+     * Bids
+     */
+    private final L2BookSide bids;
+
+    /**
+     * Asks
+     */
+    private final L2BookSide asks;
+
+    /**
+     * True once a snapshot was loaded
+     */
+    private boolean ready;
+
+    /**
+     * Connection which sent the snapshot
+     */
+    private Object source;
+
+    /**
+     * Time of the last update in epoch ms
+     */
+    private long time;
+
+    /**
+     * Lowest depth changed since the depth was last published (Integer.MAX_VALUE if none)
+     */
+    private int changed;
+
+    /**
+     * Time when the depth was last published in epoch ms
+     */
+    private long published;
+
+    /**
+     * Constructor
+     *
+     * @param product Product of the book
+     * @param capacity Initial capacity of each side in levels
+     */
+    public L2Book(CoinbaseProduct product, int capacity) {
+        this.product = product;
+        this.bids = new L2BookSide(true, capacity);
+        this.asks = new L2BookSide(false, capacity);
+        this.ready = false;
+        this.changed = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Replace the levels of the book with a snapshot
+     *
+     * @param snapshot Snapshot message
+     * @param source Connection which sent the snapshot
+     */
+    public void load(CoinbaseWSL2Message snapshot, Object source) {
+        this.bids.clear();
+        this.asks.clear();
+
+        // Levels come best first : insert them from the worst so each one goes to the end
+        for(int i = snapshot.getCount() - 1; i >= 0; i--) {
+            (snapshot.isBid(i) ? this.bids : this.asks).set(snapshot.getPrice(i), snapshot.getSize(i));
+        }
+        this.time = snapshot.getTime();
+        this.source = source;
+        this.ready = true;
+        this.changed = 0;
+    }
+
+    /**
+     * Apply the changes of a l2update message
+     *
+     * @param update l2update message
+     * @return Lowest depth changed by the update (Integer.MAX_VALUE if none) or -1 if the book
+     *         is waiting for its snapshot
+     */
+    public int apply(CoinbaseWSL2Message update) {
+        if(!this.ready) {
+            return -1;
+        }
+        int lowest = Integer.MAX_VALUE;
+        for(int i = 0; i < update.getCount(); i++) {
+            int depth = (update.isBid(i) ? this.bids : this.asks).set(update.getPrice(i), update.getSize(i));
+            if(depth >= 0 && depth < lowest) {
+                lowest = depth;
+            }
+        }
+        this.time = update.getTime();
+        this.changed = Math.min(this.changed, lowest);
+        return lowest;
+    }
+
+    /**
+     * Mark the depth as published
+     *
+     * @param now Current time in epoch ms
+     */
+    void published(long now) {
+        this.changed = Integer.MAX_VALUE;
+        this.published = now;
+    }
+
+    /**
+     * Drop the levels of the book until the next snapshot
+     */
+    public void reset() {
+        this.source = null;
+        this.bids.clear();
+        this.asks.clear();
+        this.ready = false;
+        this.changed = Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return Product of the book
+     */
+    public CoinbaseProduct getProduct() {
+        return this.product;
+    }
+
+    /**
+     * @return Bids
+     */
+    public L2BookSide getBids() {
+        return this.bids;
+    }
+
+    /**
+     * @return Asks
+     */
+    public L2BookSide getAsks() {
+        return this.asks;
+    }
+
+    /**
+     * @return True once a snapshot was loaded
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * @return Connection which sent the snapshot (null if not ready)
+     */
+    public Object getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return Time of the last update in epoch ms
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return Lowest depth changed since the depth was last published
+     */
+    int getChanged() {
+        return this.changed;
+    }
+
+    /**
+     * @return Time when the depth was last published in epoch ms
+     */
+    long getPublished() {
+        return this.published;
+    }
+}
@@ -0,0 +1,156 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+
+/**
+ * Encode the level2 records sent to Kafka in protobuf wire format. The domain has no book
+ * messages : records are written with the following schema (prices & sizes are integers
+ * scaled by 10^scale, currencies use the values of colibri.Currency).
+ *
+ * <pre>
+ * message BookDepth {
+ *     int64 timestamp = 1;         // Time of the last update in epoch ms
+ *     Currency unit = 2;
+ *     Currency quote = 3;
+ *     repeated Level bids = 4;     // Best bid first
+ *     repeated Level asks = 5;     // Best ask first
+ *     int32 scale = 6;
+ *     message Level {
+ *         int64 price = 1;
+ *         int64 size = 2;
+ *     }
+ * }
+ *
+ * message BookDelta {
+ *     int64 timestamp = 1;         // Time of the update in epoch ms
+ *     Currency unit = 2;
+ *     Currency quote = 3;
+ *     repeated Change changes = 4;
+ *     int32 scale = 5;
+ *     message Change {
+ *         bool bid = 1;
+ *         int64 price = 2;
+ *         int64 size = 3;          // 0 if the level is removed
+ *     }
+ * }
+ * </pre>
+ */
+public class L2BookEncoder {
+
+    /**
+     * Encode the top levels of a book as a BookDepth record
+     *
+     * @param book Book
+     * @param depth Max. levels of each side
+     * @return Encoded record
+     */
+    public static byte [] encodeDepth(L2Book book, int depth) {
+        int bids = Math.min(depth, book.getBids().getLevels());
+        int asks = Math.min(depth, book.getAsks().getLevels());
+
+        // Compute the size of the record to allocate it once
+        int size = CodedOutputStream.computeInt64Size(1, book.getTime())
+            + CodedOutputStream.computeEnumSize(2, book.getProduct().getUnit().getNumber())
+            + CodedOutputStream.computeEnumSize(3, book.getProduct().getQuote().getNumber())
+            + CodedOutputStream.computeInt32Size(6, CoinbaseDecimalHelper.SCALE);
+        for(int i = 0; i < bids; i++) {
+            size += levelSize(4, book.getBids().getPrice(i), book.getBids().getSize(i));
+        }
+        for(int i = 0; i < asks; i++) {
+            size += levelSize(5, book.getAsks().getPrice(i), book.getAsks().getSize(i));
+        }
+
+        byte [] record = new byte [size];
+        CodedOutputStream out = CodedOutputStream.newInstance(record);
+        try {
+            out.writeInt64(1, book.getTime());
+            out.writeEnum(2, book.getProduct().getUnit().getNumber());
+            out.writeEnum(3, book.getProduct().getQuote().getNumber());
+            for(int i = 0; i < bids; i++) {
+                writeLevel(out, 4, book.getBids().getPrice(i), book.getBids().getSize(i));
+            }
+            for(int i = 0; i < asks; i++) {
+                writeLevel(out, 5, book.getAsks().getPrice(i), book.getAsks().getSize(i));
+            }
+            out.writeInt32(6, CoinbaseDecimalHelper.SCALE);
+            out.checkNoSpaceLeft();
+        } catch (IOException ex) {
+            // The record is sized before it is written
+            throw new IllegalStateException("Book depth could not be encoded", ex);
+        }
+        return record;
+    }
+
+    /**
+     * Encode a l2update applied to a book as a BookDelta record
+     *
+     * @param update l2update message
+     * @return Encoded record
+     */
+    public static byte [] encodeDelta(CoinbaseWSL2Message update) {
+
+        // Compute the size of the record to allocate it once
+        int size = CodedOutputStream.computeInt64Size(1, update.getTime())
+            + CodedOutputStream.computeEnumSize(2, update.getProduct().getUnit().getNumber())
+            + CodedOutputStream.computeEnumSize(3, update.getProduct().getQuote().getNumber())
+            + CodedOutputStream.computeInt32Size(5, CoinbaseDecimalHelper.SCALE);
+        for(int i = 0; i < update.getCount(); i++) {
+            int change = changeSize(update, i);
+            size += CodedOutputStream.computeTagSize(4) + CodedOutputStream.computeUInt32SizeNoTag(change) + change;
+        }
+
+        byte [] record = new byte [size];
+        CodedOutputStream out = CodedOutputStream.newInstance(record);
+        try {
+            out.writeInt64(1, update.getTime());
+            out.writeEnum(2, update.getProduct().getUnit().getNumber());
+            out.writeEnum(3, update.getProduct().getQuote().getNumber());
+            for(int i = 0; i < update.getCount(); i++) {
+                out.writeTag(4, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                out.writeUInt32NoTag(changeSize(update, i));
+                out.writeBool(1, update.isBid(i));
+                out.writeInt64(2, update.getPrice(i));
+                out.writeInt64(3, update.getSize(i));
+            }
+            out.writeInt32(5, CoinbaseDecimalHelper.SCALE);
+            out.checkNoSpaceLeft();
+        } catch (IOException ex) {
+            // The record is sized before it is written
+            throw new IllegalStateException("Book delta could not be encoded", ex);
+        }
+        return record;
+    }
+
+    /**
+     * @return Size of an embedded Level including its tag & length
+     */
+    private static int levelSize(int field, long price, long size) {
+        int level = CodedOutputStream.computeInt64Size(1, price) + CodedOutputStream.computeInt64Size(2, size);
+        return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(level) + level;
+    }
+
+    /**
+     * Write an embedded Level
+     */
+    private static void writeLevel(CodedOutputStream out, int field, long price, long size) throws IOException {
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(CodedOutputStream.computeInt64Size(1, price) + CodedOutputStream.computeInt64Size(2, size));
+        out.writeInt64(1, price);
+        out.writeInt64(2, size);
+    }
+
+    /**
+     * @return Size of an embedded Change without its tag & length
+     */
+    private static int changeSize(CoinbaseWSL2Message update, int index) {
+        return CodedOutputStream.computeBoolSize(1, update.isBid(index))
+            + CodedOutputStream.computeInt64Size(2, update.getPrice(index))
+            + CodedOutputStream.computeInt64Size(3, update.getSize(index));
+    }
+}
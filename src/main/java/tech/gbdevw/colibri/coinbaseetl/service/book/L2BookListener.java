@@ -0,0 +1,28 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+
+/**
+ * Receives the changes of the level2 books.
+ *
+ * Listeners are called on the thread which maintains the book, while the book is locked : the
+ * book and the message are reused afterwards, so their content must be copied before returning.
+ */
+public interface L2BookListener {
+
+    /**
+     * Called for each l2update applied to a book
+     *
+     * @param book Book
+     * @param update l2update message
+     */
+    void onDelta(L2Book book, CoinbaseWSL2Message update);
+
+    /**
+     * Called when the top levels of a book changed (at most once per publication interval)
+     *
+     * @param book Book
+     * @param depth Levels of each side to publish
+     */
+    void onDepth(L2Book book, int depth);
+}
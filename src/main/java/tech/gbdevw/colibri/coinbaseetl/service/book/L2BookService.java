@@ -0,0 +1,255 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.domain.Currency;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.Vertx;
+
+/**
+ * Level2 books of the supported products, fed by the endpoints with the messages of the level2
+ * channel or by the level3 books when the full channel is enabled.
+ *
+ * Messages are applied on the thread which processes the messages of the product (receive
+ * thread or parser stage of its shard) instead of being dispatched on the bus. The book is
+ * locked while a message is applied : the lock is only contended while a product moves to
+ * another shard.
+ *
+ * The depth of a book is published with the update which changed its top levels, unless the
+ * previous depth was published less than the interval before : a timer publishes the depth of
+ * these books once the interval elapsed so the last change of a quiet book is not held back.
+ */
+@RegisterForReflection
+@ApplicationScoped
+public class L2BookService {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(L2BookService.class.getSimpleName());
+
+    /**
+     * Initial capacity of each side of a book in levels
+     */
+    private static final int CAPACITY = 1024;
+
+    /**
+     * True if the level2 or the full channel is enabled
+     */
+    private final boolean enabled;
+
+    /**
+     * Levels of each side published in depth snapshots
+     */
+    private final int depth;
+
+    /**
+     * Min. interval in ms between two depth snapshots of a book
+     */
+    private final long interval;
+
+    /**
+     * Books indexed by unit and quote currency ordinals
+     */
+    private final L2Book [][] books;
+
+    /**
+     * Changes applied indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] changes;
+
+    /**
+     * Listeners of the books
+     */
+    private final List<L2BookListener> listeners;
+
+    /**
+     * Constructor
+     *
+     * @param config Configuration
+     * @param products Supported products
+     * @param vertx Vertx instance used to publish the pending depths on a worker thread
+     * @param registry Registry for book metrics
+     */
+    public L2BookService(CoinbaseProperties config, CoinbaseProductTable products, Vertx vertx, MetricRegistry registry) {
+        this.enabled = config.level2 || config.level3;
+        this.depth = config.level2Depth;
+        this.interval = config.level2DepthInterval;
+        this.listeners = new CopyOnWriteArrayList<>();
+        int currencies = Currency.values().length;
+        this.books = new L2Book [currencies][currencies];
+        this.changes = new Counter [currencies][currencies];
+        if(!this.enabled) {
+            return;
+        }
+
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            L2Book book = new L2Book(product, CAPACITY);
+            Tag tag = new Tag("product", product.getId());
+            this.books[product.getUnit().ordinal()][product.getQuote().ordinal()] = book;
+            this.changes[product.getUnit().ordinal()][product.getQuote().ordinal()] = registry.counter(Metadata.builder()
+                .withName("book.changes")
+                .withDescription("Level2 changes applied to the book")
+                .build(), tag);
+            registry.register(Metadata.builder()
+                .withName("book.levels")
+                .withDescription("Price levels of a side of the level2 book")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) () -> book.getBids().getLevels(), tag, new Tag("side", "bid"));
+            registry.register(Metadata.builder()
+                .withName("book.levels")
+                .withDescription("Price levels of a side of the level2 book")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) () -> book.getAsks().getLevels(), tag, new Tag("side", "ask"));
+        }
+        if(this.interval > 0) {
+            vertx.setPeriodic(this.interval, id -> vertx.<Void>executeBlocking(promise -> {
+                this.flush(System.currentTimeMillis());
+                promise.complete();
+            }, true, null));
+        }
+        LOG.info("Level2 books enabled - Depth : " + this.depth + " levels every " + this.interval + " ms max.");
+    }
+
+    /**
+     * @return True if the level2 or the full channel is enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Add a listener of the books
+     *
+     * @param listener Listener
+     */
+    public void listen(L2BookListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Replace a book with a snapshot and publish its depth
+     *
+     * @param snapshot Snapshot message
+     * @param source Connection which sent the snapshot
+     */
+    public void snapshot(CoinbaseWSL2Message snapshot, Object source) {
+        L2Book book = this.getBook(snapshot.getProduct());
+        if(book == null) {
+            return;
+        }
+        synchronized(book) {
+            book.load(snapshot, source);
+            LOG.info("Level2 snapshot of " + book.getProduct().getId() + " : " + book.getBids().getLevels() + " bids - " + book.getAsks().getLevels() + " asks");
+            this.publishDepth(book, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Apply a l2update to a book, publish it and publish the depth of the book if its top
+     * levels changed and the publication interval elapsed. A change within the interval is
+     * published with the next update after the interval or by the flush timer.
+     *
+     * @param update l2update message
+     */
+    public void update(CoinbaseWSL2Message update) {
+        L2Book book = this.getBook(update.getProduct());
+        if(book == null) {
+            return;
+        }
+        synchronized(book) {
+            if(book.apply(update) < 0) {
+                return;
+            }
+            this.changes[update.getProduct().getUnit().ordinal()][update.getProduct().getQuote().ordinal()].inc(update.getCount());
+            for(L2BookListener listener : this.listeners) {
+                listener.onDelta(book, update);
+            }
+            if(book.getChanged() < this.depth) {
+                long now = System.currentTimeMillis();
+                if(now - book.getPublished() >= this.interval) {
+                    this.publishDepth(book, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish the depth of the books whose top levels changed within the publication interval
+     * once the interval elapsed
+     *
+     * @param now Current time in epoch ms
+     */
+    void flush(long now) {
+        for(L2Book [] quotes : this.books) {
+            for(L2Book book : quotes) {
+                if(book != null) {
+                    synchronized(book) {
+                        if(book.isReady() && book.getChanged() < this.depth && now - book.getPublished() >= this.interval) {
+                            this.publishDepth(book, now);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the levels of the books loaded from a connection until their next snapshot (the
+     * connection was closed). Books loaded since from another connection are kept.
+     *
+     * @param products Products of the connection
+     * @param source Connection
+     */
+    public void reset(Iterable<String> products, Object source) {
+        for(String id : products) {
+            L2Book book = this.getBook(new CoinbaseProduct(id));
+            if(book != null) {
+                synchronized(book) {
+                    if(book.getSource() == source) {
+                        book.reset();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the book of a product
+     *
+     * @param product Product
+     * @return The book or null if the product is not supported or level2 is disabled
+     */
+    public L2Book getBook(CoinbaseProduct product) {
+        return this.books[product.getUnit().ordinal()][product.getQuote().ordinal()];
+    }
+
+    /**
+     * Publish the depth of a book to the listeners
+     *
+     * @param book Book
+     * @param now Current time in epoch ms
+     */
+    private void publishDepth(L2Book book, long now) {
+        for(L2BookListener listener : this.listeners) {
+            listener.onDepth(book, this.depth);
+        }
+        book.published(now);
+    }
+}
@@ -0,0 +1,126 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import java.util.Arrays;
+
+/**
+ * Price levels of a side of a level2 book, sorted by price in primitive arrays.
+ *
+ * Levels are kept in ascending order of their key with the best level at the end of the arrays
+ * (key = price for bids, -price for asks) : most changes are close to the top of the book, so
+ * inserting or removing a level only shifts the few levels above it.
+ */
+public class L2BookSide {
+
+    /**
+     * True for the bids, false for the asks
+     */
+    private final boolean bids;
+
+    /**
+     * Key of each level (price for bids, -price for asks) in ascending order
+     */
+    private long [] keys;
+
+    /**
+     * Size of each level (1e-8)
+     */
+    private long [] sizes;
+
+    /**
+     * Levels of the side
+     */
+    private int count;
+
+    /**
+     * Constructor
+     *
+     * @param bids True for the bids, false for the asks
+     * @param capacity Initial capacity in levels
+     */
+    public L2BookSide(boolean bids, int capacity) {
+        this.bids = bids;
+        this.keys = new long [Math.max(1, capacity)];
+        this.sizes = new long [this.keys.length];
+        this.count = 0;
+    }
+
+    /**
+     * Set the size of a price level. The level is removed if the size is 0.
+     *
+     * @param price Price (1e-8)
+     * @param size Size (1e-8)
+     * @return Depth of the level (0 for the best level) or -1 if an unknown level was removed
+     */
+    public int set(long price, long size) {
+        long key = this.bids ? price : -price;
+        int index = Arrays.binarySearch(this.keys, 0, this.count, key);
+
+        // Known level : update or remove
+        if(index >= 0) {
+            int depth = this.count - 1 - index;
+            if(size == 0) {
+                System.arraycopy(this.keys, index + 1, this.keys, index, this.count - index - 1);
+                System.arraycopy(this.sizes, index + 1, this.sizes, index, this.count - index - 1);
+                this.count--;
+            }
+            else {
+                this.sizes[index] = size;
+            }
+            return depth;
+        }
+        if(size == 0) {
+            return -1;
+        }
+
+        // New level
+        int insert = -index - 1;
+        if(this.count == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, this.count * 2);
+            this.sizes = Arrays.copyOf(this.sizes, this.count * 2);
+        }
+        System.arraycopy(this.keys, insert, this.keys, insert + 1, this.count - insert);
+        System.arraycopy(this.sizes, insert, this.sizes, insert + 1, this.count - insert);
+        this.keys[insert] = key;
+        this.sizes[insert] = size;
+        this.count++;
+        return this.count - 1 - insert;
+    }
+
+    /**
+     * Remove all the levels
+     */
+    public void clear() {
+        this.count = 0;
+    }
+
+    /**
+     * @return Levels of the side
+     */
+    public int getLevels() {
+        return this.count;
+    }
+
+    /**
+     * @param depth Depth of the level (0 for the best level)
+     * @return Price of the level (1e-8)
+     */
+    public long getPrice(int depth) {
+        long key = this.keys[this.count - 1 - depth];
+        return this.bids ? key : -key;
+    }
+
+    /**
+     * @param depth Depth of the level (0 for the best level)
+     * @return Size of the level (1e-8)
+     */
+    public long getSize(int depth) {
+        return this.sizes[this.count - 1 - depth];
+    }
+
+    /**
+     * @return True for the bids, false for the asks
+     */
+    public boolean isBids() {
+        return this.bids;
+    }
+}
@@ -0,0 +1,717 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import java.util.Arrays;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+
+/**
+ * Level3 book of a product : the resting orders of the full channel in their queue at each
+ * price level.
+ *
+ * Orders and levels are slots of pools of primitive arrays which are reused : a level is an
+ * intrusive FIFO queue of order slots (next & prev links), orders are found by order id and
+ * levels by price with open addressing indexes. The pools double when they are full, up to the
+ * max. number of orders of the book, and never shrink.
+ *
+ * Each change of the size of a level is added to a level2 message so the level2 view of the
+ * book is derived from the same state. A book is not thread safe : the level3 book service
+ * synchronizes on the book.
+ */
+public class L3Book {
+
+    /**
+     * No slot / end of a queue
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Product of the book
+     */
+    private final CoinbaseProduct product;
+
+    /**
+     * Max. resting orders
+     */
+    private final int maxOrders;
+
+    /**
+     * Order slots allocated
+     */
+    private int orderCapacity;
+
+    /**
+     * Most significant bits of the id of each order
+     */
+    private long [] orderHigh;
+
+    /**
+     * Least significant bits of the id of each order
+     */
+    private long [] orderLow;
+
+    /**
+     * Remaining size of each order (1e-8)
+     */
+    private long [] orderSize;
+
+    /**
+     * Level of each order
+     */
+    private int [] orderLevel;
+
+    /**
+     * Next order in the queue of the level (or in the free list)
+     */
+    private int [] orderNext;
+
+    /**
+     * Previous order in the queue of the level
+     */
+    private int [] orderPrev;
+
+    /**
+     * Head of the free list of order slots
+     */
+    private int freeOrder;
+
+    /**
+     * Resting orders
+     */
+    private int orders;
+
+    /**
+     * Order index : slot + 1 of the orders by hash of their id (0 : empty)
+     */
+    private int [] orderIndex;
+
+    /**
+     * Level slots allocated
+     */
+    private int levelCapacity;
+
+    /**
+     * Price of each level (1e-8)
+     */
+    private long [] levelPrice;
+
+    /**
+     * Total size of the orders of each level (1e-8)
+     */
+    private long [] levelSize;
+
+    /**
+     * Side of each level (true : bids)
+     */
+    private boolean [] levelBid;
+
+    /**
+     * Orders of each level
+     */
+    private int [] levelCount;
+
+    /**
+     * First order (oldest) of each level
+     */
+    private int [] levelHead;
+
+    /**
+     * Last order (newest) of each level
+     */
+    private int [] levelTail;
+
+    /**
+     * Head of the free list of level slots (linked by levelHead)
+     */
+    private int freeLevel;
+
+    /**
+     * Price levels of both sides
+     */
+    private int levels;
+
+    /**
+     * Level index : slot + 1 of the levels by hash of their side & price (0 : empty)
+     */
+    private int [] levelIndex;
+
+    /**
+     * Sequence of the last message applied
+     */
+    private long sequence;
+
+    /**
+     * True once the book is synchronized with the feed
+     */
+    private boolean ready;
+
+    /**
+     * True while a snapshot is requested
+     */
+    private boolean resyncing;
+
+    /**
+     * Messages received while the book is not synchronized
+     */
+    private final L3EventQueue pending;
+
+    /**
+     * Level2 changes of the last message
+     */
+    private final CoinbaseWSL2Message changes;
+
+    /**
+     * Constructor
+     *
+     * @param product Product of the book
+     * @param capacity Initial order & level slots
+     * @param maxOrders Max. resting orders
+     * @param pending Max. messages kept while the book is not synchronized
+     */
+    public L3Book(CoinbaseProduct product, int capacity, int maxOrders, int pending) {
+        this.product = product;
+        this.maxOrders = maxOrders;
+        this.orderHigh = new long [0];
+        this.orderLow = new long [0];
+        this.orderSize = new long [0];
+        this.orderLevel = new int [0];
+        this.orderNext = new int [0];
+        this.orderPrev = new int [0];
+        this.levelPrice = new long [0];
+        this.levelSize = new long [0];
+        this.levelBid = new boolean [0];
+        this.levelCount = new int [0];
+        this.levelHead = new int [0];
+        this.levelTail = new int [0];
+        this.freeOrder = NONE;
+        this.freeLevel = NONE;
+        this.growOrders(Math.max(1, Math.min(capacity, maxOrders)));
+        this.growLevels(Math.max(1, Math.min(capacity, maxOrders)));
+        this.pending = new L3EventQueue(pending);
+        this.changes = new CoinbaseWSL2Message();
+    }
+
+    /*********************************************************************************************/
+    /* ORDERS */
+    /*********************************************************************************************/
+
+    /**
+     * Add an order at the end of the queue of its price level
+     *
+     * @param high Most significant bits of the order id
+     * @param low Least significant bits of the order id
+     * @param bid True for a buy order
+     * @param price Price (1e-8)
+     * @param size Remaining size (1e-8)
+     * @return False if the book is full
+     */
+    public boolean open(long high, long low, boolean bid, long price, long size) {
+        if(this.find(high, low) != NONE) {
+            return true;
+        }
+        if(this.freeOrder == NONE) {
+            if(this.orderCapacity >= this.maxOrders) {
+                return false;
+            }
+            this.growOrders(Math.min(this.orderCapacity * 2, this.maxOrders));
+        }
+        int level = this.level(bid, price);
+
+        // Pop a free slot & append it to the queue of the level
+        int order = this.freeOrder;
+        this.freeOrder = this.orderNext[order];
+        this.orderHigh[order] = high;
+        this.orderLow[order] = low;
+        this.orderSize[order] = size;
+        this.orderLevel[order] = level;
+        this.orderNext[order] = NONE;
+        this.orderPrev[order] = this.levelTail[level];
+        if(this.levelTail[level] != NONE) {
+            this.orderNext[this.levelTail[level]] = order;
+        }
+        else {
+            this.levelHead[level] = order;
+        }
+        this.levelTail[level] = order;
+        this.levelCount[level]++;
+        this.levelSize[level] += size;
+        this.orders++;
+        this.insertOrder(order);
+        this.changed(level);
+        return true;
+    }
+
+    /**
+     * Remove an order from the book (orders which are not in the book are ignored)
+     *
+     * @param high Most significant bits of the order id
+     * @param low Least significant bits of the order id
+     */
+    public void done(long high, long low) {
+        int order = this.find(high, low);
+        if(order == NONE) {
+            return;
+        }
+        int level = this.orderLevel[order];
+
+        // Unlink the order from the queue of the level
+        if(this.orderPrev[order] != NONE) {
+            this.orderNext[this.orderPrev[order]] = this.orderNext[order];
+        }
+        else {
+            this.levelHead[level] = this.orderNext[order];
+        }
+        if(this.orderNext[order] != NONE) {
+            this.orderPrev[this.orderNext[order]] = this.orderPrev[order];
+        }
+        else {
+            this.levelTail[level] = this.orderPrev[order];
+        }
+        this.levelSize[level] -= this.orderSize[order];
+        this.levelCount[level]--;
+        this.removeOrder(order);
+        this.orderNext[order] = this.freeOrder;
+        this.freeOrder = order;
+        this.orders--;
+
+        // Release the level once empty
+        if(this.levelCount[level] == 0) {
+            this.changes.add(this.levelBid[level], this.levelPrice[level], 0);
+            this.removeLevel(level);
+        }
+        else {
+            this.changed(level);
+        }
+    }
+
+    /**
+     * Reduce the size of a maker order which was matched (the order stays in the book until
+     * its done message)
+     *
+     * @param high Most significant bits of the order id
+     * @param low Least significant bits of the order id
+     * @param size Size matched (1e-8)
+     */
+    public void match(long high, long low, long size) {
+        int order = this.find(high, low);
+        if(order != NONE) {
+            this.resize(order, Math.max(0, this.orderSize[order] - size));
+        }
+    }
+
+    /**
+     * Change the size of an order : it keeps its place in the queue
+     *
+     * @param high Most significant bits of the order id
+     * @param low Least significant bits of the order id
+     * @param size New size (1e-8)
+     */
+    public void change(long high, long low, long size) {
+        int order = this.find(high, low);
+        if(order != NONE) {
+            this.resize(order, size);
+        }
+    }
+
+    /**
+     * Remove all the orders
+     */
+    public void clear() {
+        Arrays.fill(this.orderIndex, 0);
+        Arrays.fill(this.levelIndex, 0);
+        this.freeOrder = NONE;
+        for(int order = this.orderCapacity - 1; order >= 0; order--) {
+            this.orderNext[order] = this.freeOrder;
+            this.freeOrder = order;
+        }
+        this.freeLevel = NONE;
+        for(int level = this.levelCapacity - 1; level >= 0; level--) {
+            this.levelHead[level] = this.freeLevel;
+            this.freeLevel = level;
+        }
+        this.orders = 0;
+        this.levels = 0;
+        this.changes.clear();
+    }
+
+    /**
+     * Return the slot of an order
+     *
+     * @param high Most significant bits of the order id
+     * @param low Least significant bits of the order id
+     * @return The slot or -1 if the order is not in the book
+     */
+    public int find(long high, long low) {
+        int mask = this.orderIndex.length - 1;
+        for(int i = hash(high ^ Long.rotateLeft(low, 31)) & mask; this.orderIndex[i] != 0; i = (i + 1) & mask) {
+            int order = this.orderIndex[i] - 1;
+            if(this.orderHigh[order] == high && this.orderLow[order] == low) {
+                return order;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Return the position of an order in the queue of its level
+     *
+     * @param order Order slot
+     * @return Orders ahead of the order
+     */
+    public int getPosition(int order) {
+        int position = 0;
+        for(int ahead = this.orderPrev[order]; ahead != NONE; ahead = this.orderPrev[ahead]) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Return the size ahead of an order in the queue of its level
+     *
+     * @param order Order slot
+     * @return Size of the orders ahead of the order (1e-8)
+     */
+    public long getSizeAhead(int order) {
+        long size = 0;
+        for(int ahead = this.orderPrev[order]; ahead != NONE; ahead = this.orderPrev[ahead]) {
+            size += this.orderSize[ahead];
+        }
+        return size;
+    }
+
+    /**
+     * @param order Order slot
+     * @return True for a buy order
+     */
+    public boolean isBid(int order) {
+        return this.levelBid[this.orderLevel[order]];
+    }
+
+    /**
+     * @param order Order slot
+     * @return Price of the order (1e-8)
+     */
+    public long getPrice(int order) {
+        return this.levelPrice[this.orderLevel[order]];
+    }
+
+    /**
+     * @param order Order slot
+     * @return Remaining size of the order (1e-8)
+     */
+    public long getSize(int order) {
+        return this.orderSize[order];
+    }
+
+    /**
+     * @param order Order slot
+     * @return Total size of the level of the order (1e-8)
+     */
+    public long getLevelSize(int order) {
+        return this.levelSize[this.orderLevel[order]];
+    }
+
+    /**
+     * @param order Order slot
+     * @return Orders of the level of the order
+     */
+    public int getLevelCount(int order) {
+        return this.levelCount[this.orderLevel[order]];
+    }
+
+    /*********************************************************************************************/
+    /* LEVEL2 VIEW */
+    /*********************************************************************************************/
+
+    /**
+     * Add all the levels of the book to a level2 message
+     *
+     * @param message Level2 message (not cleared)
+     */
+    public void getLevels(CoinbaseWSL2Message message) {
+        for(int i = 0; i < this.levelIndex.length; i++) {
+            if(this.levelIndex[i] != 0) {
+                int level = this.levelIndex[i] - 1;
+                message.add(this.levelBid[level], this.levelPrice[level], this.levelSize[level]);
+            }
+        }
+    }
+
+    /**
+     * @return Level2 changes of the messages applied since the last clear
+     */
+    public CoinbaseWSL2Message getChanges() {
+        return this.changes;
+    }
+
+    /*********************************************************************************************/
+    /* STATE */
+    /*********************************************************************************************/
+
+    /**
+     * @return Product of the book
+     */
+    public CoinbaseProduct getProduct() {
+        return this.product;
+    }
+
+    /**
+     * @return Resting orders
+     */
+    public int getOrders() {
+        return this.orders;
+    }
+
+    /**
+     * @return Price levels of both sides
+     */
+    public int getLevels() {
+        return this.levels;
+    }
+
+    /**
+     * @return Bytes allocated by the pools, the indexes and the pending messages
+     */
+    public long getFootprint() {
+        return (long) this.orderCapacity * (8 * 3 + 4 * 3) + (long) this.orderIndex.length * 4
+            + (long) this.levelCapacity * (8 * 2 + 1 + 4 * 3) + (long) this.levelIndex.length * 4
+            + this.pending.getFootprint();
+    }
+
+    /**
+     * @return Sequence of the last message applied
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @param sequence Sequence of the last message applied
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return True once the book is synchronized with the feed
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * @param ready True once the book is synchronized with the feed
+     */
+    void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * @return True while a snapshot is requested
+     */
+    boolean isResyncing() {
+        return this.resyncing;
+    }
+
+    /**
+     * @param resyncing True while a snapshot is requested
+     */
+    void setResyncing(boolean resyncing) {
+        this.resyncing = resyncing;
+    }
+
+    /**
+     * @return Messages received while the book is not synchronized
+     */
+    L3EventQueue getPending() {
+        return this.pending;
+    }
+
+    /*********************************************************************************************/
+    /* POOLS & INDEXES */
+    /*********************************************************************************************/
+
+    /**
+     * Set the remaining size of an order
+     */
+    private void resize(int order, long size) {
+        int level = this.orderLevel[order];
+        this.levelSize[level] += size - this.orderSize[order];
+        this.orderSize[order] = size;
+        this.changed(level);
+    }
+
+    /**
+     * Add the size of a level to the level2 changes
+     */
+    private void changed(int level) {
+        this.changes.add(this.levelBid[level], this.levelPrice[level], this.levelSize[level]);
+    }
+
+    /**
+     * Return the slot of a level and create it if needed
+     */
+    private int level(boolean bid, long price) {
+        long key = bid ? price : ~price;
+        int mask = this.levelIndex.length - 1;
+        int i = hash(key) & mask;
+        for(; this.levelIndex[i] != 0; i = (i + 1) & mask) {
+            int level = this.levelIndex[i] - 1;
+            if(this.levelPrice[level] == price && this.levelBid[level] == bid) {
+                return level;
+            }
+        }
+        if(this.freeLevel == NONE) {
+            // A level has at least one order : levels never outnumber orders
+            this.growLevels(Math.min(this.levelCapacity * 2, this.maxOrders));
+            return this.level(bid, price);
+        }
+        int level = this.freeLevel;
+        this.freeLevel = this.levelHead[level];
+        this.levelPrice[level] = price;
+        this.levelBid[level] = bid;
+        this.levelSize[level] = 0;
+        this.levelCount[level] = 0;
+        this.levelHead[level] = NONE;
+        this.levelTail[level] = NONE;
+        this.levelIndex[i] = level + 1;
+        this.levels++;
+        return level;
+    }
+
+    /**
+     * Index an order
+     */
+    private void insertOrder(int order) {
+        int mask = this.orderIndex.length - 1;
+        int i = this.orderHash(order) & mask;
+        while(this.orderIndex[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.orderIndex[i] = order + 1;
+    }
+
+    /**
+     * Remove an order from the index
+     */
+    private void removeOrder(int order) {
+        int mask = this.orderIndex.length - 1;
+        int i = this.orderHash(order) & mask;
+        while(this.orderIndex[i] != order + 1) {
+            i = (i + 1) & mask;
+        }
+        // Shift back the following entries of the cluster which are not at their home slot
+        for(int j = (i + 1) & mask; this.orderIndex[j] != 0; j = (j + 1) & mask) {
+            int home = this.orderHash(this.orderIndex[j] - 1) & mask;
+            if(((j - home) & mask) >= ((j - i) & mask)) {
+                this.orderIndex[i] = this.orderIndex[j];
+                i = j;
+            }
+        }
+        this.orderIndex[i] = 0;
+    }
+
+    /**
+     * Remove a level from the index & release its slot
+     */
+    private void removeLevel(int level) {
+        int mask = this.levelIndex.length - 1;
+        int i = this.levelHash(level) & mask;
+        while(this.levelIndex[i] != level + 1) {
+            i = (i + 1) & mask;
+        }
+        for(int j = (i + 1) & mask; this.levelIndex[j] != 0; j = (j + 1) & mask) {
+            int home = this.levelHash(this.levelIndex[j] - 1) & mask;
+            if(((j - home) & mask) >= ((j - i) & mask)) {
+                this.levelIndex[i] = this.levelIndex[j];
+                i = j;
+            }
+        }
+        this.levelIndex[i] = 0;
+        this.levelHead[level] = this.freeLevel;
+        this.freeLevel = level;
+        this.levels--;
+    }
+
+    /**
+     * Grow the order pool & rebuild the order index (load factor <= 0.5)
+     */
+    private void growOrders(int capacity) {
+        int previous = this.orderCapacity;
+        this.orderHigh = Arrays.copyOf(this.orderHigh, capacity);
+        this.orderLow = Arrays.copyOf(this.orderLow, capacity);
+        this.orderSize = Arrays.copyOf(this.orderSize, capacity);
+        this.orderLevel = Arrays.copyOf(this.orderLevel, capacity);
+        this.orderNext = Arrays.copyOf(this.orderNext, capacity);
+        this.orderPrev = Arrays.copyOf(this.orderPrev, capacity);
+        this.orderCapacity = capacity;
+        for(int order = capacity - 1; order >= previous; order--) {
+            this.orderNext[order] = this.freeOrder;
+            this.freeOrder = order;
+        }
+        int [] index = this.orderIndex;
+        this.orderIndex = new int [Integer.highestOneBit(capacity * 2 - 1) << 1];
+        if(index != null) {
+            for(int entry : index) {
+                if(entry != 0) {
+                    this.insertOrder(entry - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Grow the level pool & rebuild the level index (load factor <= 0.5)
+     */
+    private void growLevels(int capacity) {
+        int previous = this.levelCapacity;
+        this.levelPrice = Arrays.copyOf(this.levelPrice, capacity);
+        this.levelSize = Arrays.copyOf(this.levelSize, capacity);
+        this.levelBid = Arrays.copyOf(this.levelBid, capacity);
+        this.levelCount = Arrays.copyOf(this.levelCount, capacity);
+        this.levelHead = Arrays.copyOf(this.levelHead, capacity);
+        this.levelTail = Arrays.copyOf(this.levelTail, capacity);
+        this.levelCapacity = capacity;
+        for(int level = capacity - 1; level >= previous; level--) {
+            this.levelHead[level] = this.freeLevel;
+            this.freeLevel = level;
+        }
+        int [] index = this.levelIndex;
+        this.levelIndex = new int [Integer.highestOneBit(capacity * 2 - 1) << 1];
+        if(index != null) {
+            int mask = this.levelIndex.length - 1;
+            for(int entry : index) {
+                if(entry != 0) {
+                    int i = this.levelHash(entry - 1) & mask;
+                    while(this.levelIndex[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    this.levelIndex[i] = entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Hash of the id of an order
+     */
+    private int orderHash(int order) {
+        return hash(this.orderHigh[order] ^ Long.rotateLeft(this.orderLow[order], 31));
+    }
+
+    /**
+     * @return Hash of the side & price of a level
+     */
+    private int levelHash(int level) {
+        return hash(this.levelBid[level] ? this.levelPrice[level] : ~this.levelPrice[level]);
+    }
+
+    /**
+     * Spread the bits of a key (Fibonacci hashing)
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,82 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import java.util.Map;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+
+/**
+ * Exposes the state of the level3 books and the queue position of resting orders
+ */
+@Path("/book")
+@Produces(MediaType.APPLICATION_JSON)
+public class L3BookResource {
+
+    /**
+     * Level3 books
+     */
+    private L3BookService books;
+
+    /**
+     * Constructor
+     *
+     * @param books Level3 books
+     */
+    public L3BookResource(L3BookService books) {
+        this.books = books;
+    }
+
+    /**
+     * @param product Product id (ex : BTC-USD)
+     * @return Orders, levels, sequence & footprint of the book of the product
+     */
+    @GET
+    @Path("/{product}")
+    public Map<String, Object> summary(@PathParam("product") String product) {
+        Map<String, Object> summary = this.books.getSummary(this.getProduct(product));
+        if(summary == null) {
+            throw new NotFoundException("No level3 book for " + product);
+        }
+        return summary;
+    }
+
+    /**
+     * @param product Product id (ex : BTC-USD)
+     * @param order Order id
+     * @return Position of the order in the queue of its price level
+     */
+    @GET
+    @Path("/{product}/orders/{order}")
+    public L3OrderPosition position(@PathParam("product") String product, @PathParam("order") String order) {
+        L3OrderPosition position;
+        try {
+            position = this.books.getPosition(this.getProduct(product), order);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new BadRequestException(ex.getMessage());
+        }
+        if(position == null) {
+            throw new NotFoundException("Order " + order + " is not in the level3 book of " + product);
+        }
+        return position;
+    }
+
+    /**
+     * Parse a product id
+     */
+    private CoinbaseProduct getProduct(String product) {
+        try {
+            return new CoinbaseProduct(product);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new NotFoundException("Unknown product " + product);
+        }
+    }
+}
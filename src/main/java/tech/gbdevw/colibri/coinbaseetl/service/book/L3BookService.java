@@ -0,0 +1,400 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseBookReader;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseClient;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseOrderIdHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL3Message;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.domain.Currency;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.Vertx;
+
+/**
+ * Level3 books of the supported products, fed by the endpoints with the messages of the full
+ * channel.
+ *
+ * Messages are applied on the thread which processes the messages of the product, like level2
+ * messages. Each message must follow the last one applied : a book is loaded from the level3
+ * book of the Coinbase Pro API on a worker thread when the first message of its product is
+ * received and again when a sequence gap is detected. Messages received meanwhile are queued
+ * and replayed once the book is loaded.
+ *
+ * The level2 book of each product is derived from its level3 book : each level change is
+ * applied to the level2 book service, which is loaded with the levels of the level3 book after
+ * each resync.
+ */
+@RegisterForReflection
+@ApplicationScoped
+public class L3BookService {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(L3BookService.class.getSimpleName());
+
+    /**
+     * Initial order & level slots of a book
+     */
+    private static final int CAPACITY = 65536;
+
+    /**
+     * Level of detail of the books requested to the API
+     */
+    private static final int LEVEL = 3;
+
+    /**
+     * True if the full channel is enabled
+     */
+    private final boolean enabled;
+
+    /**
+     * Coinbase API client
+     */
+    private final CoinbaseClient client;
+
+    /**
+     * Vertx instance used to load the books on worker threads
+     */
+    private final Vertx vertx;
+
+    /**
+     * Level2 books derived from the level3 books
+     */
+    private final L2BookService l2;
+
+    /**
+     * Delay in ms before requesting again a book after a failure
+     */
+    private final long delay;
+
+    /**
+     * Books indexed by unit and quote currency ordinals
+     */
+    private final L3Book [][] books;
+
+    /**
+     * Sequence gaps indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] gaps;
+
+    /**
+     * Books loaded indexed by unit and quote currency ordinals
+     */
+    private final Counter [][] resyncs;
+
+    /**
+     * Constructor
+     *
+     * @param config Configuration
+     * @param products Supported products
+     * @param client Coinbase API client
+     * @param vertx Vertx instance used to load the books on worker threads
+     * @param l2 Level2 books derived from the level3 books
+     * @param registry Registry for book metrics
+     */
+    public L3BookService(CoinbaseProperties config, CoinbaseProductTable products, @RestClient CoinbaseClient client, Vertx vertx, L2BookService l2, MetricRegistry registry) {
+        this.enabled = config.level3;
+        this.client = client;
+        this.vertx = vertx;
+        this.l2 = l2;
+        this.delay = config.level3ResyncDelay;
+        int currencies = Currency.values().length;
+        this.books = new L3Book [currencies][currencies];
+        this.gaps = new Counter [currencies][currencies];
+        this.resyncs = new Counter [currencies][currencies];
+        if(!this.enabled) {
+            return;
+        }
+
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            L3Book book = new L3Book(product, CAPACITY, config.level3MaxOrders, config.level3Pending);
+            Tag tag = new Tag("product", product.getId());
+            int unit = product.getUnit().ordinal();
+            int quote = product.getQuote().ordinal();
+            this.books[unit][quote] = book;
+            this.gaps[unit][quote] = registry.counter(Metadata.builder()
+                .withName("book.gaps")
+                .withDescription("Sequence gaps detected in the full channel")
+                .build(), tag);
+            this.resyncs[unit][quote] = registry.counter(Metadata.builder()
+                .withName("book.resyncs")
+                .withDescription("Level3 books loaded from the Coinbase Pro API")
+                .build(), tag);
+            registry.register(Metadata.builder()
+                .withName("book.orders")
+                .withDescription("Resting orders of the level3 book")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) () -> book.getOrders(), tag);
+            registry.register(Metadata.builder()
+                .withName("book.memory")
+                .withDescription("Bytes allocated by the level3 book")
+                .withType(MetricType.GAUGE)
+                .withUnit("bytes")
+                .build(), (Gauge<Long>) () -> book.getFootprint(), tag);
+        }
+        LOG.info("Level3 books enabled - " + config.level3MaxOrders + " orders max. per book");
+    }
+
+    /**
+     * @return True if the full channel is enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Apply a message of the full channel to the book of its product. The message is queued
+     * while the book is loaded.
+     *
+     * @param message Message of the full channel
+     */
+    public void apply(CoinbaseWSL3Message message) {
+        L3Book book = this.getBook(message.getProduct());
+        if(book == null) {
+            return;
+        }
+        synchronized(book) {
+            if(!book.isReady()) {
+                book.getPending().add(message);
+                if(!book.isResyncing()) {
+                    this.resync(book, 1);
+                }
+                return;
+            }
+            if(message.getSequence() <= book.getSequence()) {
+                return;
+            }
+            if(message.getSequence() != book.getSequence() + 1) {
+                LOG.warn("Sequence gap in " + book.getProduct().getId() + " : " + book.getSequence() + " - " + message.getSequence());
+                this.gaps[book.getProduct().getUnit().ordinal()][book.getProduct().getQuote().ordinal()].inc();
+                book.getPending().add(message);
+                this.invalidate(book, 1);
+                return;
+            }
+            if(!this.apply(book, message)) {
+                LOG.error("Level3 book of " + book.getProduct().getId() + " is full : " + book.getOrders() + " orders");
+                this.invalidate(book, this.delay);
+                return;
+            }
+            this.publish(book, message.getTime());
+        }
+    }
+
+    /**
+     * Return the book of a product
+     *
+     * @param product Product
+     * @return The book or null if the product is not supported or level3 is disabled
+     */
+    public L3Book getBook(CoinbaseProduct product) {
+        return this.books[product.getUnit().ordinal()][product.getQuote().ordinal()];
+    }
+
+    /**
+     * Return the state of the book of a product
+     *
+     * @param product Product
+     * @return Orders, levels, sequence & footprint of the book or null if there is no book
+     */
+    public Map<String, Object> getSummary(CoinbaseProduct product) {
+        L3Book book = this.getBook(product);
+        if(book == null) {
+            return null;
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        synchronized(book) {
+            summary.put("product", product.getId());
+            summary.put("ready", book.isReady());
+            summary.put("sequence", book.getSequence());
+            summary.put("orders", book.getOrders());
+            summary.put("levels", book.getLevels());
+            summary.put("memory", book.getFootprint());
+        }
+        return summary;
+    }
+
+    /**
+     * Return the position of a resting order in the queue of its price level
+     *
+     * @param product Product
+     * @param order Order id
+     * @return The position or null if the order is not in the book or the book is not loaded
+     * @throws IllegalArgumentException if the order id is not a UUID
+     */
+    public L3OrderPosition getPosition(CoinbaseProduct product, String order) {
+        L3Book book = this.getBook(product);
+        if(book == null) {
+            return null;
+        }
+        long high = CoinbaseOrderIdHelper.getHigh(order);
+        long low = CoinbaseOrderIdHelper.getLow(order);
+        synchronized(book) {
+            int slot = book.isReady() ? book.find(high, low) : -1;
+            if(slot < 0) {
+                return null;
+            }
+            return new L3OrderPosition(CoinbaseOrderIdHelper.toString(high, low), book.isBid(slot) ? "buy" : "sell",
+                CoinbaseDecimalHelper.toDouble(book.getPrice(slot)), CoinbaseDecimalHelper.toDouble(book.getSize(slot)), book.getPosition(slot),
+                CoinbaseDecimalHelper.toDouble(book.getSizeAhead(slot)), book.getLevelCount(slot), CoinbaseDecimalHelper.toDouble(book.getLevelSize(slot)));
+        }
+    }
+
+    /**
+     * Apply a message which follows the last one applied to a book
+     *
+     * @param book Book (locked)
+     * @param message Message
+     * @return False if the book is full
+     */
+    private boolean apply(L3Book book, CoinbaseWSL3Message message) {
+        book.getChanges().clear();
+        switch(message.getType()) {
+            case CoinbaseWSL3Message.OPEN:
+                if(!book.open(message.getOrderHigh(), message.getOrderLow(), message.isBid(), message.getPrice(), message.getSize())) {
+                    return false;
+                }
+                break;
+            case CoinbaseWSL3Message.DONE:
+                book.done(message.getOrderHigh(), message.getOrderLow());
+                break;
+            case CoinbaseWSL3Message.MATCH:
+                book.match(message.getOrderHigh(), message.getOrderLow(), message.getSize());
+                break;
+            case CoinbaseWSL3Message.CHANGE:
+                // Changes of the funds of market orders don't affect the book
+                if(message.getSize() >= 0) {
+                    book.change(message.getOrderHigh(), message.getOrderLow(), message.getSize());
+                }
+                break;
+            default:
+                // Received & activate : orders are not in the book yet
+                break;
+        }
+        book.setSequence(message.getSequence());
+        return true;
+    }
+
+    /**
+     * Apply the level changes of the last message to the level2 book
+     *
+     * @param book Book (locked)
+     * @param time Time of the message in epoch ms
+     */
+    private void publish(L3Book book, long time) {
+        CoinbaseWSL2Message changes = book.getChanges();
+        if(changes.getCount() > 0) {
+            changes.setProduct(book.getProduct());
+            changes.setTime(time);
+            this.l2.update(changes);
+        }
+    }
+
+    /**
+     * Drop a book which is no more synchronized with the feed and its level2 book until it is
+     * loaded again
+     *
+     * @param book Book (locked)
+     * @param delay Delay in ms before loading the book
+     */
+    private void invalidate(L3Book book, long delay) {
+        book.setReady(false);
+        this.l2.reset(Collections.singleton(book.getProduct().getId()), this);
+        this.resync(book, delay);
+    }
+
+    /**
+     * Load a book on a worker thread after a delay
+     *
+     * @param book Book (locked)
+     * @param delay Delay in ms
+     */
+    private void resync(L3Book book, long delay) {
+        book.setResyncing(true);
+        this.vertx.setTimer(Math.max(1, delay), id -> this.vertx.<Void>executeBlocking(promise -> {
+            this.load(book);
+            promise.complete();
+        }, false, null));
+    }
+
+    /**
+     * Load a book from the API and replay the messages queued meanwhile. The orders are loaded
+     * without the lock : the book is not ready, other threads only queue messages.
+     *
+     * @param book Book
+     */
+    void load(L3Book book) {
+        CoinbaseProduct product = book.getProduct();
+        try {
+            LOG.info("Loading level3 book of " + product.getId());
+            book.clear();
+            long sequence;
+            try(InputStream in = this.client.getBook(product.getId(), LEVEL)) {
+                sequence = CoinbaseBookReader.read(in, (bid, price, size, high, low) -> {
+                    if(!book.open(high, low, bid, price, size)) {
+                        throw new IllegalStateException("Level3 book of " + product.getId() + " is full : " + book.getOrders() + " orders");
+                    }
+                });
+            }
+
+            CoinbaseWSL2Message levels = new CoinbaseWSL2Message();
+            synchronized(book) {
+                book.setSequence(sequence);
+                CoinbaseWSL3Message message = new CoinbaseWSL3Message();
+                L3EventQueue pending = book.getPending();
+                for(int i = 0; i < pending.size(); i++) {
+                    pending.get(i, message);
+                    if(message.getSequence() <= book.getSequence()) {
+                        continue;
+                    }
+                    if(message.getSequence() != book.getSequence() + 1 || !this.apply(book, message)) {
+                        // The book is older than the first message queued or too many messages were queued
+                        LOG.warn("Level3 book of " + product.getId() + " can't be replayed : " + book.getSequence() + " - " + message.getSequence());
+                        pending.clear();
+                        this.resync(book, this.delay);
+                        return;
+                    }
+                }
+                pending.clear();
+                book.getChanges().clear();
+                book.setReady(true);
+                book.setResyncing(false);
+                this.resyncs[product.getUnit().ordinal()][product.getQuote().ordinal()].inc();
+                LOG.info("Level3 book of " + product.getId() + " loaded : " + book.getOrders() + " orders - " + book.getLevels() + " levels - sequence " + book.getSequence());
+
+                // Replace the level2 book while messages are not applied
+                levels.setProduct(product);
+                levels.setTime(System.currentTimeMillis());
+                book.getLevels(levels);
+                this.l2.snapshot(levels, this);
+            }
+        }
+        catch(Exception ex) {
+            LOG.warn("Failed to load the level3 book of " + product.getId() + " : " + ex.getMessage());
+            synchronized(book) {
+                book.getPending().clear();
+                this.resync(book, this.delay);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL3Message;
+
+/**
+ * Bounded queue of the messages of the full channel received for a product while its book is
+ * not synchronized. Messages are copied in primitive arrays allocated once : messages added
+ * when the queue is full are dropped (the gap is detected when the queue is replayed).
+ */
+class L3EventQueue {
+
+    /**
+     * Type of each message
+     */
+    private final byte [] types;
+
+    /**
+     * Time of each message in epoch ms
+     */
+    private final long [] times;
+
+    /**
+     * Sequence of each message
+     */
+    private final long [] sequences;
+
+    /**
+     * Most significant bits of the order id of each message
+     */
+    private final long [] orderHigh;
+
+    /**
+     * Least significant bits of the order id of each message
+     */
+    private final long [] orderLow;
+
+    /**
+     * Side of the order of each message (true : buy)
+     */
+    private final boolean [] bids;
+
+    /**
+     * Price of each message (1e-8)
+     */
+    private final long [] prices;
+
+    /**
+     * Size of each message (1e-8)
+     */
+    private final long [] sizes;
+
+    /**
+     * Trade id of each message
+     */
+    private final long [] tradeIds;
+
+    /**
+     * Messages in the queue
+     */
+    private int count;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Max. messages
+     */
+    L3EventQueue(int capacity) {
+        this.types = new byte [capacity];
+        this.times = new long [capacity];
+        this.sequences = new long [capacity];
+        this.orderHigh = new long [capacity];
+        this.orderLow = new long [capacity];
+        this.bids = new boolean [capacity];
+        this.prices = new long [capacity];
+        this.sizes = new long [capacity];
+        this.tradeIds = new long [capacity];
+    }
+
+    /**
+     * Add a copy of a message
+     *
+     * @param message Message
+     * @return False if the queue is full (the message is dropped)
+     */
+    boolean add(CoinbaseWSL3Message message) {
+        if(this.count == this.types.length) {
+            return false;
+        }
+        int i = this.count++;
+        this.types[i] = message.getType();
+        this.times[i] = message.getTime();
+        this.sequences[i] = message.getSequence();
+        this.orderHigh[i] = message.getOrderHigh();
+        this.orderLow[i] = message.getOrderLow();
+        this.bids[i] = message.isBid();
+        this.prices[i] = message.getPrice();
+        this.sizes[i] = message.getSize();
+        this.tradeIds[i] = message.getTradeId();
+        return true;
+    }
+
+    /**
+     * Copy a message of the queue (the product is not kept)
+     *
+     * @param i Index of the message
+     * @param message Message filled with the copy
+     */
+    void get(int i, CoinbaseWSL3Message message) {
+        message.clear(this.types[i]);
+        message.setTime(this.times[i]);
+        message.setSequence(this.sequences[i]);
+        message.setOrder(this.orderHigh[i], this.orderLow[i]);
+        message.setBid(this.bids[i]);
+        message.setPrice(this.prices[i]);
+        message.setSize(this.sizes[i]);
+        message.setTradeId(this.tradeIds[i]);
+    }
+
+    /**
+     * Remove all the messages
+     */
+    void clear() {
+        this.count = 0;
+    }
+
+    /**
+     * @return Messages in the queue
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * @return Bytes allocated by the queue
+     */
+    long getFootprint() {
+        return (long) this.types.length * (1 + 1 + 8 * 7);
+    }
+}
@@ -0,0 +1,129 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Position of a resting order in the queue of its price level
+ */
+@RegisterForReflection
+public class L3OrderPosition {
+
+    /**
+     * Order id
+     */
+    private final String order;
+
+    /**
+     * Side of the order (buy or sell)
+     */
+    private final String side;
+
+    /**
+     * Price of the order
+     */
+    private final double price;
+
+    /**
+     * Remaining size of the order
+     */
+    private final double size;
+
+    /**
+     * Orders ahead of the order at its price level
+     */
+    private final int position;
+
+    /**
+     * Size of the orders ahead of the order at its price level
+     */
+    private final double sizeAhead;
+
+    /**
+     * Orders of the price level
+     */
+    private final int levelCount;
+
+    /**
+     * Total size of the price level
+     */
+    private final double levelSize;
+
+    /**
+     * Constructor
+     *
+     * @param order Order id
+     * @param side Side of the order (buy or sell)
+     * @param price Price of the order
+     * @param size Remaining size of the order
+     * @param position Orders ahead of the order at its price level
+     * @param sizeAhead Size of the orders ahead of the order at its price level
+     * @param levelCount Orders of the price level
+     * @param levelSize Total size of the price level
+     */
+    L3OrderPosition(String order, String side, double price, double size, int position, double sizeAhead, int levelCount, double levelSize) {
+        this.order = order;
+        this.side = side;
+        this.price = price;
+        this.size = size;
+        this.position = position;
+        this.sizeAhead = sizeAhead;
+        this.levelCount = levelCount;
+        this.levelSize = levelSize;
+    }
+
+    /**
+     * @return Order id
+     */
+    public String getOrder() {
+        return this.order;
+    }
+
+    /**
+     * @return Side of the order (buy or sell)
+     */
+    public String getSide() {
+        return this.side;
+    }
+
+    /**
+     * @return Price of the order
+     */
+    public double getPrice() {
+        return this.price;
+    }
+
+    /**
+     * @return Remaining size of the order
+     */
+    public double getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return Orders ahead of the order at its price level
+     */
+    public int getPosition() {
+        return this.position;
+    }
+
+    /**
+     * @return Size of the orders ahead of the order at its price level
+     */
+    public double getSizeAhead() {
+        return this.sizeAhead;
+    }
+
+    /**
+     * @return Orders of the price level
+     */
+    public int getLevelCount() {
+        return this.levelCount;
+    }
+
+    /**
+     * @return Total size of the price level
+     */
+    public double getLevelSize() {
+        return this.levelSize;
+    }
+}
@@ -0,0 +1,280 @@
+package tech.gbdevw.colibri.coinbaseetl.service.candles;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.quarkus.vertx.ConsumeEvent;
+import io.vertx.core.Vertx;
+
+/**
+ * Stage which rolls the deduplicated matches into OHLCV bars (with VWAP & trade count) of each
+ * product for each configured interval.
+ *
+ * Matches are added when they leave the dedupe stage : from the deduplicated match address in
+ * bus pipeline mode (and for the trades of the syncer in ring pipeline mode) and from the dedupe
+ * stage of the shard pipelines in ring pipeline mode. A timer closes the bars whose grace window
+ * elapsed and publishes them to the listeners on a worker thread, along with the bars in
+ * progress which changed if in-progress updates are enabled. Trades of a closed bar are dropped
+ * and counted. Listeners are called while the series of the product are locked : they must not
+ * block (see CandleListener).
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Startup
+public class CandleAggregator {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CandleAggregator.class.getSimpleName());
+
+    /**
+     * True if candles are enabled
+     */
+    private final boolean enabled;
+
+    /**
+     * Duration of the bars of each series in ms
+     */
+    private final long [] intervals;
+
+    /**
+     * Time in ms during which a bar stays open after its end
+     */
+    private final long grace;
+
+    /**
+     * True to publish the bars in progress
+     */
+    private final boolean updates;
+
+    /**
+     * Series of each interval indexed by unit and quote currency ordinals (also the lock of the
+     * series of the product)
+     */
+    private final CandleSeries [][][] series;
+
+    /**
+     * Bars closed indexed by unit and quote currency ordinals then interval
+     */
+    private final Counter [][][] closed;
+
+    /**
+     * Trades dropped because their bar was closed indexed by unit and quote currency ordinals
+     * then interval
+     */
+    private final Counter [][][] late;
+
+    /**
+     * Listeners of the bars
+     */
+    private final List<CandleListener> listeners;
+
+    /**
+     * Counts the closed bars and dispatches the bars to the listeners
+     */
+    private final CandleListener dispatcher;
+
+    /**
+     * Constructor
+     *
+     * @param config Configuration
+     * @param products Supported products
+     * @param vertx Vertx instance used to flush the bars on a worker thread
+     * @param registry Registry for candle metrics
+     * @param busMetrics Metrics of the event bus
+     */
+    public CandleAggregator(CoinbaseProperties config, CoinbaseProductTable products, Vertx vertx, MetricRegistry registry, BusMetrics busMetrics) {
+        this.enabled = config.candles;
+        this.grace = config.candlesGrace;
+        this.updates = config.candlesUpdates;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.dispatcher = this::dispatch;
+        int currencies = Currency.values().length;
+        this.series = new CandleSeries [currencies][currencies][];
+        this.closed = new Counter [currencies][currencies][];
+        this.late = new Counter [currencies][currencies][];
+        busMetrics.consumer(CoinbaseWsEventAddresses.dedupedMatchEventAddress);
+        if(!this.enabled) {
+            this.intervals = new long [0];
+            return;
+        }
+
+        String [] names = config.candlesIntervals.split(",");
+        this.intervals = new long [names.length];
+        for(int i = 0; i < names.length; i++) {
+            this.intervals[i] = parseInterval(names[i]);
+        }
+
+        long now = System.currentTimeMillis();
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            int unit = product.getUnit().ordinal();
+            int quote = product.getQuote().ordinal();
+            this.series[unit][quote] = new CandleSeries [names.length];
+            this.closed[unit][quote] = new Counter [names.length];
+            this.late[unit][quote] = new Counter [names.length];
+            for(int i = 0; i < names.length; i++) {
+                Tag [] tags = { new Tag("product", product.getId()), new Tag("interval", names[i].trim()) };
+                this.series[unit][quote][i] = new CandleSeries(product, this.intervals[i], (int) (this.grace / this.intervals[i]) + 3, now);
+                this.closed[unit][quote][i] = registry.counter(Metadata.builder()
+                    .withName("candles.closed")
+                    .withDescription("Bars closed")
+                    .build(), tags);
+                this.late[unit][quote][i] = registry.counter(Metadata.builder()
+                    .withName("candles.late")
+                    .withDescription("Trades dropped because their bar was closed")
+                    .build(), tags);
+            }
+        }
+        vertx.setPeriodic(config.candlesFlushInterval, id -> vertx.<Void>executeBlocking(promise -> {
+            this.flush(System.currentTimeMillis());
+            promise.complete();
+        }, true, null));
+        LOG.info("Candles enabled - Intervals : " + config.candlesIntervals + " - Grace : " + this.grace + " ms - Updates : " + this.updates);
+    }
+
+    /**
+     * Parse an interval made of a number and a unit (s, m, h or d)
+     *
+     * @param interval Interval (ex : 5m)
+     * @return Interval in ms
+     * @throws IllegalArgumentException if the interval is not valid
+     */
+    public static long parseInterval(String interval) {
+        String value = interval.trim();
+        long unit;
+        switch(value.isEmpty() ? ' ' : value.charAt(value.length() - 1)) {
+            case 's':
+                unit = 1000L;
+                break;
+            case 'm':
+                unit = 60000L;
+                break;
+            case 'h':
+                unit = 3600000L;
+                break;
+            case 'd':
+                unit = 86400000L;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid candle interval : " + interval);
+        }
+        try {
+            long count = Long.parseLong(value.substring(0, value.length() - 1));
+            if(count <= 0) {
+                throw new IllegalArgumentException("Invalid candle interval : " + interval);
+            }
+            return count * unit;
+        }
+        catch(NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid candle interval : " + interval, ex);
+        }
+    }
+
+    /**
+     * @return True if candles are enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Add a listener of the bars
+     *
+     * @param listener Listener
+     */
+    public void listen(CandleListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Add a deduplicated match published on the bus
+     *
+     * @param match Match event
+     */
+    @ConsumeEvent(value = CoinbaseWsEventAddresses.dedupedMatchEventAddress)
+    public void consumeMatchEvent(Match match) {
+        this.add(match);
+    }
+
+    /**
+     * Add a deduplicated match to the bars of its product
+     *
+     * @param match Match event
+     */
+    public void add(Match match) {
+        if(!this.enabled) {
+            return;
+        }
+        CandleSeries [] series = this.series[match.getUnit().ordinal()][match.getQuote().ordinal()];
+        if(series == null) {
+            return;
+        }
+        long size = CoinbaseDecimalHelper.fromDouble(match.getSize());
+        synchronized(series) {
+            for(int i = 0; i < series.length; i++) {
+                if(!series[i].add(match.getTimestamp(), match.getId(), match.getPrice(), size, this.dispatcher)) {
+                    this.late[match.getUnit().ordinal()][match.getQuote().ordinal()][i].inc();
+                    if(LOG.isTraceEnabled()) {
+                        LOG.trace("Late trade dropped from the " + series[i].getInterval() + " ms bars : " + match.getId());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the bars whose grace window elapsed & publish the bars in progress
+     *
+     * @param now Current time in epoch ms
+     */
+    void flush(long now) {
+        for(CandleSeries [][] quotes : this.series) {
+            for(CandleSeries [] series : quotes) {
+                if(series != null) {
+                    synchronized(series) {
+                        for(CandleSeries interval : series) {
+                            interval.flush(now, this.grace, this.updates, this.dispatcher);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Count a closed bar & publish a bar to the listeners
+     */
+    private void dispatch(CandleSeries series, int slot, boolean closed) {
+        if(closed) {
+            for(int i = 0; i < this.intervals.length; i++) {
+                if(this.intervals[i] == series.getInterval()) {
+                    this.closed[series.getProduct().getUnit().ordinal()][series.getProduct().getQuote().ordinal()][i].inc();
+                    break;
+                }
+            }
+        }
+        for(CandleListener listener : this.listeners) {
+            listener.onCandle(series, slot, closed);
+        }
+    }
+}
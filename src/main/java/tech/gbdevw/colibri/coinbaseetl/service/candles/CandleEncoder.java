@@ -0,0 +1,78 @@
+package tech.gbdevw.colibri.coinbaseetl.service.candles;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Encode the candle records sent to Kafka in protobuf wire format. The domain has no candle
+ * message : records are written with the following schema (currencies use the values of
+ * colibri.Currency).
+ *
+ * <pre>
+ * message Candle {
+ *     int64 timestamp = 1;         // Start of the bar in epoch ms
+ *     Currency unit = 2;
+ *     Currency quote = 3;
+ *     int64 interval = 4;          // Duration of the bar in ms
+ *     double open = 5;
+ *     double high = 6;
+ *     double low = 7;
+ *     double close = 8;
+ *     double volume = 9;
+ *     double vwap = 10;
+ *     int32 trades = 11;
+ *     int64 first_trade_id = 12;   // Trade of the open price
+ *     int64 last_trade_id = 13;    // Trade of the close price
+ *     bool closed = 14;            // False for the updates of a bar in progress
+ * }
+ * </pre>
+ */
+public class CandleEncoder {
+
+    /**
+     * Encode a bar as a Candle record
+     *
+     * @param series Series of the bar
+     * @param slot Slot of the bar in the series
+     * @param closed True if the bar is closed
+     * @return Encoded record
+     */
+    public static byte [] encode(CandleSeries series, int slot, boolean closed) {
+
+        // Compute the size of the record to allocate it once
+        int size = CodedOutputStream.computeInt64Size(1, series.getStart(slot))
+            + CodedOutputStream.computeEnumSize(2, series.getProduct().getUnit().getNumber())
+            + CodedOutputStream.computeEnumSize(3, series.getProduct().getQuote().getNumber())
+            + CodedOutputStream.computeInt64Size(4, series.getInterval())
+            + 6 * CodedOutputStream.computeDoubleSize(5, 0)
+            + CodedOutputStream.computeInt32Size(11, series.getTrades(slot))
+            + CodedOutputStream.computeInt64Size(12, series.getFirstId(slot))
+            + CodedOutputStream.computeInt64Size(13, series.getLastId(slot))
+            + CodedOutputStream.computeBoolSize(14, closed);
+
+        byte [] record = new byte [size];
+        CodedOutputStream out = CodedOutputStream.newInstance(record);
+        try {
+            out.writeInt64(1, series.getStart(slot));
+            out.writeEnum(2, series.getProduct().getUnit().getNumber());
+            out.writeEnum(3, series.getProduct().getQuote().getNumber());
+            out.writeInt64(4, series.getInterval());
+            out.writeDouble(5, series.getOpen(slot));
+            out.writeDouble(6, series.getHigh(slot));
+            out.writeDouble(7, series.getLow(slot));
+            out.writeDouble(8, series.getClose(slot));
+            out.writeDouble(9, series.getVolume(slot));
+            out.writeDouble(10, series.getVwap(slot));
+            out.writeInt32(11, series.getTrades(slot));
+            out.writeInt64(12, series.getFirstId(slot));
+            out.writeInt64(13, series.getLastId(slot));
+            out.writeBool(14, closed);
+            out.checkNoSpaceLeft();
+        } catch (IOException ex) {
+            // The record is sized before it is written
+            throw new IllegalStateException("Candle could not be encoded", ex);
+        }
+        return record;
+    }
+}
@@ -0,0 +1,22 @@
+package tech.gbdevw.colibri.coinbaseetl.service.candles;
+
+/**
+ * Receives the bars of the candle series.
+ *
+ * Listeners are called on the thread which adds the trade or flushes the series, while the
+ * series of the product are locked : the slot is reused afterwards, so the content of the bar
+ * must be copied before returning. The thread may be the event loop and the dedupe stage waits
+ * for the lock : listeners must not block (ex : hand the copy to another thread to send it).
+ */
+public interface CandleListener {
+
+    /**
+     * Called when a bar is closed or, if in-progress updates are enabled, when an open bar
+     * changed since the last flush
+     *
+     * @param series Series of the bar
+     * @param slot Slot of the bar in the series
+     * @param closed True if the bar is closed (final)
+     */
+    void onCandle(CandleSeries series, int slot, boolean closed);
+}
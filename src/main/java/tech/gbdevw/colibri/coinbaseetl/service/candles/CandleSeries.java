@@ -0,0 +1,311 @@
+package tech.gbdevw.colibri.coinbaseetl.service.candles;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+
+/**
+ * OHLCV bars of a product for one interval, accumulated trade by trade.
+ *
+ * Bars are aligned on the epoch (a 1h bar starts at the top of an UTC hour) and kept in a small
+ * ring of slots of primitive arrays while they are open : a bar stays open for the grace window
+ * after its end so that late trades (ex : trades backfilled by the syncer) are still added. The
+ * open & close prices are the prices of the lowest & highest trade ids of the bar : they do not
+ * depend on the order in which trades are received. Volumes are summed as longs scaled by 10^8 :
+ * they are exact whatever the number of trades. The bar in progress when the series is
+ * created only holds the trades received since.
+ *
+ * The series is not thread safe.
+ */
+public class CandleSeries {
+
+    /**
+     * Product
+     */
+    private final CoinbaseProduct product;
+
+    /**
+     * Duration of a bar in ms
+     */
+    private final long interval;
+
+    /**
+     * Start of each bar in epoch ms
+     */
+    private final long [] start;
+
+    /**
+     * Trade id of the open price of each bar
+     */
+    private final long [] openId;
+
+    /**
+     * Trade id of the close price of each bar
+     */
+    private final long [] closeId;
+
+    /**
+     * Open price of each bar
+     */
+    private final double [] open;
+
+    /**
+     * Highest price of each bar
+     */
+    private final double [] high;
+
+    /**
+     * Lowest price of each bar
+     */
+    private final double [] low;
+
+    /**
+     * Close price of each bar
+     */
+    private final double [] close;
+
+    /**
+     * Traded size of each bar (1e-8)
+     */
+    private final long [] volume;
+
+    /**
+     * Sum of price x size (1e-8) of each bar (VWAP numerator)
+     */
+    private final double [] notional;
+
+    /**
+     * Trades of each bar (0 if the slot is free)
+     */
+    private final int [] trades;
+
+    /**
+     * True if a bar changed since it was last published
+     */
+    private final boolean [] dirty;
+
+    /**
+     * Bars starting before this time are closed
+     */
+    private long closed;
+
+    /**
+     * Constructor
+     *
+     * @param product Product
+     * @param interval Duration of a bar in ms
+     * @param slots Bars kept open at the same time (grace / interval + 2 at least)
+     * @param now Current time in epoch ms : trades of the previous bars are dropped
+     */
+    public CandleSeries(CoinbaseProduct product, long interval, int slots, long now) {
+        this.product = product;
+        this.interval = interval;
+        this.start = new long [slots];
+        this.openId = new long [slots];
+        this.closeId = new long [slots];
+        this.open = new double [slots];
+        this.high = new double [slots];
+        this.low = new double [slots];
+        this.close = new double [slots];
+        this.volume = new long [slots];
+        this.notional = new double [slots];
+        this.trades = new int [slots];
+        this.dirty = new boolean [slots];
+        this.closed = Math.floorDiv(now, interval) * interval;
+    }
+
+    /**
+     * Add a trade to its bar. A bar whose slot is needed by a more recent bar is closed first.
+     *
+     * @param time Time of the trade in epoch ms
+     * @param id Trade id
+     * @param price Price
+     * @param size Size (1e-8)
+     * @param listener Receives the bar closed to free the slot (if any)
+     * @return False if the bar of the trade is already closed (the trade is dropped)
+     */
+    public boolean add(long time, long id, double price, long size, CandleListener listener) {
+        long begin = Math.floorDiv(time, this.interval) * this.interval;
+        if(begin < this.closed) {
+            return false;
+        }
+        int slot = (int) Math.floorMod(Math.floorDiv(time, this.interval), (long) this.trades.length);
+        if(this.trades[slot] > 0 && this.start[slot] != begin) {
+            if(this.start[slot] > begin) {
+                return false;
+            }
+            this.closed = this.start[slot] + this.interval;
+            this.publish(slot, true, listener);
+        }
+
+        if(this.trades[slot] == 0) {
+            this.start[slot] = begin;
+            this.openId[slot] = id;
+            this.closeId[slot] = id;
+            this.open[slot] = price;
+            this.high[slot] = price;
+            this.low[slot] = price;
+            this.close[slot] = price;
+            this.volume[slot] = 0;
+            this.notional[slot] = 0;
+        }
+        else {
+            if(id < this.openId[slot]) {
+                this.openId[slot] = id;
+                this.open[slot] = price;
+            }
+            if(id > this.closeId[slot]) {
+                this.closeId[slot] = id;
+                this.close[slot] = price;
+            }
+            this.high[slot] = Math.max(this.high[slot], price);
+            this.low[slot] = Math.min(this.low[slot], price);
+        }
+        this.volume[slot] += size;
+        this.notional[slot] += price * size;
+        this.trades[slot]++;
+        this.dirty[slot] = true;
+        return true;
+    }
+
+    /**
+     * Close the bars whose grace window elapsed and publish the bars updated since the last
+     * flush if required.
+     *
+     * @param now Current time in epoch ms
+     * @param grace Grace window in ms
+     * @param updates True to publish the bars in progress
+     * @param listener Receives the bars
+     * @return Bars closed
+     */
+    public int flush(long now, long grace, boolean updates, CandleListener listener) {
+        this.closed = Math.max(this.closed, Math.floorDiv(now - grace, this.interval) * this.interval);
+        int count = 0;
+        for(int slot = 0; slot < this.trades.length; slot++) {
+            if(this.trades[slot] == 0) {
+                continue;
+            }
+            if(this.start[slot] < this.closed) {
+                this.publish(slot, true, listener);
+                count++;
+            }
+            else if(updates && this.dirty[slot]) {
+                this.publish(slot, false, listener);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Publish a bar and free its slot if it is closed
+     */
+    private void publish(int slot, boolean closed, CandleListener listener) {
+        if(listener != null) {
+            listener.onCandle(this, slot, closed);
+        }
+        this.dirty[slot] = false;
+        if(closed) {
+            this.trades[slot] = 0;
+        }
+    }
+
+    /**
+     * @return Product
+     */
+    public CoinbaseProduct getProduct() {
+        return this.product;
+    }
+
+    /**
+     * @return Duration of a bar in ms
+     */
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * @return Bars starting before this time are closed
+     */
+    public long getClosed() {
+        return this.closed;
+    }
+
+    /**
+     * @param slot Slot
+     * @return Start of the bar in epoch ms
+     */
+    public long getStart(int slot) {
+        return this.start[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Open price of the bar
+     */
+    public double getOpen(int slot) {
+        return this.open[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Highest price of the bar
+     */
+    public double getHigh(int slot) {
+        return this.high[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Lowest price of the bar
+     */
+    public double getLow(int slot) {
+        return this.low[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Close price of the bar
+     */
+    public double getClose(int slot) {
+        return this.close[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Traded size of the bar
+     */
+    public double getVolume(int slot) {
+        return CoinbaseDecimalHelper.toDouble(this.volume[slot]);
+    }
+
+    /**
+     * @param slot Slot
+     * @return Volume weighted average price of the bar
+     */
+    public double getVwap(int slot) {
+        return this.volume[slot] > 0 ? this.notional[slot] / this.volume[slot] : this.close[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Trades of the bar
+     */
+    public int getTrades(int slot) {
+        return this.trades[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Trade id of the open price of the bar
+     */
+    public long getFirstId(int slot) {
+        return this.openId[slot];
+    }
+
+    /**
+     * @param slot Slot
+     * @return Trade id of the close price of the bar
+     */
+    public long getLastId(int slot) {
+        return this.closeId[slot];
+    }
+}
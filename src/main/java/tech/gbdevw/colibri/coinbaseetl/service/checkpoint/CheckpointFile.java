@@ -0,0 +1,269 @@
+package tech.gbdevw.colibri.coinbaseetl.service.checkpoint;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memory-mapped file which stores, for each product, the last trade id and the last ticker
+ * sequence acknowledged by Kafka.
+ * 
+ * Layout : a 64 bytes header (magic, version, slots) followed by one 64 bytes slot per product
+ * (product id on 32 bytes, trade id, ticker sequence). Values only move forward and are
+ * updated lock-free with compare-and-set on the mapped memory. They reach the page cache
+ * immediately, {@link #force()} writes them to disk.
+ */
+public class CheckpointFile implements AutoCloseable {
+
+    /**
+     * File identifier
+     */
+    private static final long MAGIC = 0x43424554_4C43504BL;
+
+    /**
+     * Layout version
+     */
+    private static final long VERSION = 1;
+
+    /**
+     * Size of the header and of each slot
+     */
+    private static final int SLOT_SIZE = 64;
+
+    /**
+     * Max. length of a product id
+     */
+    private static final int ID_SIZE = 32;
+
+    /**
+     * Offset of the trade id in a slot
+     */
+    private static final int TRADE_ID = 32;
+
+    /**
+     * Offset of the ticker sequence in a slot
+     */
+    private static final int SEQUENCE = 40;
+
+    /**
+     * Atomic access to the longs of the mapped memory
+     */
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long [].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * File channel
+     */
+    private final FileChannel channel;
+
+    /**
+     * Mapped memory
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Number of product slots
+     */
+    private final int slots;
+
+    /**
+     * Offset of the slot of each product
+     */
+    private final Map<String, Integer> offsets;
+
+    /**
+     * True if values changed since the last force
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Open or create a checkpoint file
+     * 
+     * @param path Path of the file
+     * @param slots Number of product slots of a new file
+     * @param products Products to checkpoint
+     * @throws IOException if the file cannot be opened or is not a checkpoint file
+     */
+    public CheckpointFile(Path path, int slots, Collection<String> products) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = this.channel.size() == 0;
+
+        // Read the layout of an existing file
+        if(!created) {
+            MappedByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, SLOT_SIZE);
+            if((long) LONGS.get(header, 0) != MAGIC || (long) LONGS.get(header, 8) != VERSION) {
+                this.channel.close();
+                throw new IOException("Not a checkpoint file : " + path);
+            }
+            slots = (int) (long) LONGS.get(header, 16);
+        }
+
+        this.slots = slots;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SLOT_SIZE * (slots + 1));
+        if(created) {
+            LONGS.set(this.buffer, 0, MAGIC);
+            LONGS.set(this.buffer, 8, VERSION);
+            LONGS.set(this.buffer, 16, (long) slots);
+        }
+
+        // Index existing slots & allocate slots of new products
+        this.offsets = new ConcurrentHashMap<>();
+        for(int slot = 1; slot <= slots; slot++) {
+            String id = this.readId(slot * SLOT_SIZE);
+            if(!id.isEmpty()) {
+                this.offsets.put(id, slot * SLOT_SIZE);
+            }
+        }
+        for(String product : products) {
+            this.offset(product);
+        }
+        this.buffer.force();
+    }
+
+    /**
+     * Record the last trade id acknowledged for a product
+     * 
+     * @param product Product id
+     * @param tradeId Trade id - ignored if lower than the checkpointed one
+     */
+    public void updateTradeId(String product, long tradeId) {
+        this.updateMax(this.offset(product) + TRADE_ID, tradeId);
+    }
+
+    /**
+     * Record the last ticker sequence acknowledged for a product
+     * 
+     * @param product Product id
+     * @param sequence Ticker sequence - ignored if lower than the checkpointed one
+     */
+    public void updateSequence(String product, long sequence) {
+        this.updateMax(this.offset(product) + SEQUENCE, sequence);
+    }
+
+    /**
+     * @param product Product id
+     * @return Last trade id acknowledged for the product (0 if none)
+     */
+    public long getTradeId(String product) {
+        Integer offset = this.offsets.get(product);
+        return offset == null ? 0 : (long) LONGS.getVolatile(this.buffer, offset + TRADE_ID);
+    }
+
+    /**
+     * @param product Product id
+     * @return Last ticker sequence acknowledged for the product (0 if none)
+     */
+    public long getSequence(String product) {
+        Integer offset = this.offsets.get(product);
+        return offset == null ? 0 : (long) LONGS.getVolatile(this.buffer, offset + SEQUENCE);
+    }
+
+    /**
+     * Write the values changed since the last call to disk
+     * 
+     * @return True if values were written
+     */
+    public boolean force() {
+        if(!this.dirty) {
+            return false;
+        }
+        this.dirty = false;
+        this.buffer.force();
+        return true;
+    }
+
+    /**
+     * Write the values to disk & close the file
+     */
+    @Override
+    public void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+    /**
+     * Set a long of the mapped memory if the value is greater than the current one
+     * 
+     * @param offset Offset of the long
+     * @param value Value
+     */
+    private void updateMax(int offset, long value) {
+        long current = (long) LONGS.getVolatile(this.buffer, offset);
+        while(value > current) {
+            if(LONGS.compareAndSet(this.buffer, offset, current, value)) {
+                this.dirty = true;
+                return;
+            }
+            current = (long) LONGS.getVolatile(this.buffer, offset);
+        }
+    }
+
+    /**
+     * Get the offset of the slot of a product, allocate a slot for a new product
+     * 
+     * @param product Product id
+     * @return Offset of the slot
+     */
+    private int offset(String product) {
+        Integer offset = this.offsets.get(product);
+        return offset != null ? offset : this.allocate(product);
+    }
+
+    /**
+     * Allocate a slot for a product
+     * 
+     * @param product Product id
+     * @return Offset of the slot
+     * @throws IllegalStateException if all slots are used
+     * @throws IllegalArgumentException if the product id is too long
+     */
+    private synchronized int allocate(String product) {
+        Integer existing = this.offsets.get(product);
+        if(existing != null) {
+            return existing;
+        }
+        byte [] id = product.getBytes(StandardCharsets.US_ASCII);
+        if(id.length == 0 || id.length >= ID_SIZE) {
+            throw new IllegalArgumentException("Invalid product id : " + product);
+        }
+        for(int slot = 1; slot <= this.slots; slot++) {
+            int offset = slot * SLOT_SIZE;
+            if(this.buffer.get(offset) == 0) {
+                for(int i = 0; i < id.length; i++) {
+                    this.buffer.put(offset + i, id[i]);
+                }
+                this.offsets.put(product, offset);
+                this.dirty = true;
+                return offset;
+            }
+        }
+        throw new IllegalStateException("No checkpoint slot left for " + product);
+    }
+
+    /**
+     * Read the product id of a slot
+     * 
+     * @param offset Offset of the slot
+     * @return Product id (empty if the slot is free)
+     */
+    private String readId(int offset) {
+        int length = 0;
+        while(length < ID_SIZE && this.buffer.get(offset + length) != 0) {
+            length++;
+        }
+        byte [] id = new byte [length];
+        for(int i = 0; i < length; i++) {
+            id[i] = this.buffer.get(offset + i);
+        }
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+}
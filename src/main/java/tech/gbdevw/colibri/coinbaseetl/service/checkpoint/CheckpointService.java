@@ -0,0 +1,216 @@
+package tech.gbdevw.colibri.coinbaseetl.service.checkpoint;
+
+import java.nio.file.Paths;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.domain.Currency;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.Vertx;
+
+/**
+ * Service which checkpoints, for each product, the last trade id and ticker sequence
+ * acknowledged by Kafka so a restarted process resumes where the previous one stopped.
+ * 
+ * The trade id checkpointed is a contiguous low-watermark : it does not move past a trade
+ * which is not acknowledged yet (trade of a pending backfill, spooled or failed trade) even
+ * if later trades are acknowledged, so the gap is backfilled again after a restart.
+ * 
+ * Producers update the checkpoint from the acknowledgements, values are written to disk
+ * periodically on a worker thread. The service does nothing if no checkpoint file is
+ * configured.
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Startup
+public class CheckpointService implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointService.class.getSimpleName());
+
+    /**
+     * Product slots of a new checkpoint file
+     */
+    private static final int SLOTS = 256;
+
+    /**
+     * Trade ids acknowledged above the watermark which are tracked for each product
+     */
+    private static final int WATERMARK_WINDOW = 1 << 16;
+
+    /**
+     * Configuration
+     */
+    private ConfluentProperties config;
+
+    /**
+     * Supported products
+     */
+    private CoinbaseProductTable products;
+
+    /**
+     * Vertx instance used for sync timers
+     */
+    private Vertx vertx;
+
+    /**
+     * Checkpoint file (null if disabled)
+     */
+    private CheckpointFile file;
+
+    /**
+     * Trade id watermark of each product indexed by unit and quote currency ordinals (also the
+     * lock of the watermark)
+     */
+    private TradeWatermark [][] watermarks;
+
+    /**
+     * Sync timer id
+     */
+    private long timer;
+
+    /**
+     * Constructor
+     * 
+     * @param config Configuration
+     * @param products Supported products
+     * @param vertx Vertx instance
+     */
+    public CheckpointService(ConfluentProperties config, CoinbaseProductTable products, Vertx vertx) {
+        this.config = config;
+        this.products = products;
+        this.vertx = vertx;
+        this.timer = -1;
+    }
+
+    /**
+     * Open the checkpoint file & start the sync timer
+     * 
+     * @throws Exception if the checkpoint file cannot be opened
+     */
+    @PostConstruct
+    public void start() throws Exception {
+
+        if(this.config.checkpoint.isEmpty()) {
+            LOG.info("Checkpoint disabled");
+            return;
+        }
+
+        this.file = new CheckpointFile(Paths.get(this.config.checkpoint.get()), SLOTS, this.products.getProducts().keySet());
+        int currencies = Currency.values().length;
+        this.watermarks = new TradeWatermark [currencies][currencies];
+        for(CoinbaseProduct product : this.products.getProducts().values()) {
+            LOG.info("Checkpoint " + product.getId() + " - Trade id : " + this.file.getTradeId(product.getId()) + " - Ticker sequence : " + this.file.getSequence(product.getId()));
+            this.watermarks[product.getUnit().ordinal()][product.getQuote().ordinal()] = new TradeWatermark(WATERMARK_WINDOW, this.file.getTradeId(product.getId()));
+        }
+
+        // Write changes to disk in batches
+        this.timer = this.vertx.setPeriodic(this.config.checkpointSync, id -> this.vertx.<Void>executeBlocking(promise -> {
+            this.file.force();
+            promise.complete();
+        }, false, null));
+    }
+
+    /**
+     * @return True if a checkpoint file is used
+     */
+    public boolean isEnabled() {
+        return this.file != null;
+    }
+
+    /**
+     * Start the trade flow of a product which has no checkpoint yet : trade ids up to the
+     * provided one are not expected.
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     * @param tradeId Last trade id before the first trade published
+     */
+    public void startTrades(Currency unit, Currency quote, long tradeId) {
+        if(this.file != null) {
+            TradeWatermark watermark = this.watermarks[unit.ordinal()][quote.ordinal()];
+            synchronized(watermark) {
+                watermark.start(tradeId);
+            }
+        }
+    }
+
+    /**
+     * Record a trade acknowledged by Kafka. The checkpoint moves up to the highest trade id
+     * below which all trades were acknowledged.
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     * @param tradeId Trade id
+     */
+    public void ackTrade(Currency unit, Currency quote, long tradeId) {
+        if(this.file != null) {
+            TradeWatermark watermark = this.watermarks[unit.ordinal()][quote.ordinal()];
+            long checkpoint;
+            long skipped;
+            synchronized(watermark) {
+                skipped = watermark.getSkipped();
+                checkpoint = watermark.ack(tradeId);
+                skipped = watermark.getSkipped() - skipped;
+            }
+            String product = this.products.get(unit, quote).getId();
+            if(skipped > 0) {
+                LOG.warn("Checkpoint " + product + " - " + skipped + " trades never acknowledged before " + checkpoint + " - Skipped");
+            }
+            this.file.updateTradeId(product, checkpoint);
+        }
+    }
+
+    /**
+     * Record a ticker acknowledged by Kafka
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     * @param sequence Ticker sequence
+     */
+    public void ackTicker(Currency unit, Currency quote, long sequence) {
+        if(this.file != null) {
+            this.file.updateSequence(this.products.get(unit, quote).getId(), sequence);
+        }
+    }
+
+    /**
+     * @param product Product id
+     * @return Highest trade id below which all trades of the product were acknowledged (0 if
+     *         none or disabled)
+     */
+    public long getTradeId(String product) {
+        return this.file != null ? this.file.getTradeId(product) : 0;
+    }
+
+    /**
+     * @param product Product id
+     * @return Last ticker sequence acknowledged for the product (0 if none or disabled)
+     */
+    public long getSequence(String product) {
+        return this.file != null ? this.file.getSequence(product) : 0;
+    }
+
+    /**
+     * Stop the sync timer, write the checkpoint to disk & close the file
+     */
+    @Override
+    @PreDestroy
+    public void close() throws Exception {
+        if(this.file != null) {
+            this.vertx.cancelTimer(this.timer);
+            this.file.close();
+        }
+    }
+}
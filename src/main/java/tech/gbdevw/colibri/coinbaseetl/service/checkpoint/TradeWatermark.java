@@ -0,0 +1,175 @@
+package tech.gbdevw.colibri.coinbaseetl.service.checkpoint;
+
+import java.util.Arrays;
+
+/**
+ * Contiguous low-watermark of the trade ids of a product acknowledged by Kafka : every trade id
+ * up to the watermark was acknowledged.
+ * 
+ * Trades are acknowledged out of order (backfilled trades after the live trade which revealed
+ * the gap, spooled trades after the next ones) : the ids acknowledged above the watermark are
+ * kept in a bitset stored in a ring of longs, bit (id % capacity) telling if the trade id was
+ * acknowledged. The watermark moves up while the next id is acknowledged. When an id is
+ * acknowledged more than the capacity above the watermark, the watermark is moved up so that
+ * the id fits in the window : the missing ids skipped are counted as lost.
+ * 
+ * This class is not thread-safe.
+ */
+public class TradeWatermark {
+
+    /**
+     * Bits of the ids acknowledged above the watermark
+     */
+    private final long [] words;
+
+    /**
+     * Number of trade ids in the window (power of 2)
+     */
+    private final int capacity;
+
+    /**
+     * capacity - 1
+     */
+    private final long mask;
+
+    /**
+     * Highest trade id such that every trade id up to it was acknowledged (0 if not started)
+     */
+    private long watermark;
+
+    /**
+     * Missing trade ids skipped because the window was full
+     */
+    private long skipped;
+
+    /**
+     * Constructor
+     * 
+     * @param capacity Number of trade ids in the window (rounded up to a power of 2, 64 min.)
+     * @param watermark Initial watermark (0 if not started)
+     */
+    public TradeWatermark(int capacity, long watermark) {
+        if(capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid window capacity : " + capacity);
+        }
+        this.capacity = Math.max(64, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.words = new long [this.capacity >>> 6];
+        this.watermark = watermark;
+        this.skipped = 0;
+    }
+
+    /**
+     * Start the watermark below the first trade expected if it is not started yet
+     * 
+     * @param id Last trade id before the first trade expected
+     * @return False if the watermark was already started
+     */
+    public boolean start(long id) {
+        if(this.watermark != 0) {
+            return false;
+        }
+        this.watermark = id;
+        return true;
+    }
+
+    /**
+     * Record an acknowledged trade id. The watermark starts below the first trade id
+     * acknowledged if it was not started.
+     * 
+     * @param id Trade id
+     * @return Watermark
+     */
+    public long ack(long id) {
+
+        if(this.watermark == 0) {
+            this.watermark = id - 1;
+        }
+
+        // Already below the watermark
+        if(id <= this.watermark) {
+            return this.watermark;
+        }
+
+        // Window full : skip the oldest missing ids
+        if(id - this.watermark > this.capacity) {
+            long target = id - this.capacity;
+            if(target - this.watermark >= this.capacity) {
+                long acked = 0;
+                for(long word : this.words) {
+                    acked += Long.bitCount(word);
+                }
+                Arrays.fill(this.words, 0L);
+                this.skipped += target - this.watermark - acked;
+                this.watermark = target;
+            }
+            else {
+                while(this.watermark < target) {
+                    this.watermark++;
+                    if(!this.clear(this.watermark)) {
+                        this.skipped++;
+                    }
+                }
+            }
+        }
+
+        // Move up while the next id is acknowledged
+        this.words[this.index(id)] |= this.bit(id);
+        while(this.clear(this.watermark + 1)) {
+            this.watermark++;
+        }
+        return this.watermark;
+    }
+
+    /**
+     * @return Highest trade id such that every trade id up to it was acknowledged (0 if not
+     *         started)
+     */
+    public long getWatermark() {
+        return this.watermark;
+    }
+
+    /**
+     * @return Missing trade ids skipped because the window was full
+     */
+    public long getSkipped() {
+        return this.skipped;
+    }
+
+    /**
+     * @return Number of trade ids in the window
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Clear the bit of a trade id
+     * 
+     * @param id Trade id
+     * @return True if the trade id was acknowledged
+     */
+    private boolean clear(long id) {
+        int index = this.index(id);
+        long bit = this.bit(id);
+        boolean set = (this.words[index] & bit) != 0;
+        this.words[index] &= ~bit;
+        return set;
+    }
+
+    /**
+     * @param id Trade id
+     * @return Index of the word of the trade id
+     */
+    private int index(long id) {
+        return (int) ((id & this.mask) >>> 6);
+    }
+
+    /**
+     * @param id Trade id
+     * @return Bit of the trade id in its word
+     */
+    private long bit(long id) {
+        return 1L << (id & 63);
+    }
+}
@@ -0,0 +1,161 @@
+package tech.gbdevw.colibri.coinbaseetl.service.dedupe;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.codecs.MatchMessageCodec;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.domain.Match;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.quarkus.vertx.ConsumeEvent;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+
+/**
+ * Stage which drops duplicate matches before they reach the producers.
+ * 
+ * Matches are published by the websocket feed (match & last_match) and by the syncer (REST
+ * backfill) : the same trade can be received several times. Each product has a window over its
+ * latest trade ids, matches whose trade id is in the window are dropped and the others are
+ * published to the deduplicated match address.
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Startup
+public class MatchDeduplicator {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(MatchDeduplicator.class.getSimpleName());
+
+    /**
+     * Supported products
+     */
+    private CoinbaseProductTable products;
+
+    /**
+     * Bus used to publish deduplicated matches
+     */
+    private EventBus bus;
+
+    /**
+     * Registry for dedupe metrics
+     */
+    private MetricRegistry registry;
+
+    /**
+     * Trade ids in each window
+     */
+    private int capacity;
+
+    /**
+     * Window of each product
+     */
+    private Map<String, TradeIdWindow> windows;
+
+    /**
+     * Duplicates dropped for each product
+     */
+    private Map<String, Counter> duplicates;
+
+    /**
+     * Delivery options used to publish matches
+     */
+    private DeliveryOptions options;
+
+    /**
+     * Constructor
+     * 
+     * @param config Configuration
+     * @param products Supported products
+     * @param bus Bus used to publish deduplicated matches
+     * @param registry Registry for dedupe metrics
+     * @param busMetrics Metrics of the event bus
+     */
+    public MatchDeduplicator(CoinbaseProperties config, CoinbaseProductTable products, EventBus bus, MetricRegistry registry, BusMetrics busMetrics) {
+        this.products = products;
+        this.bus = bus;
+        this.registry = registry;
+        this.capacity = config.dedupeWindow;
+        this.windows = new ConcurrentHashMap<>();
+        this.duplicates = new ConcurrentHashMap<>();
+        this.options = new DeliveryOptions().setCodecName(MatchMessageCodec.class.getName());
+        for(String product : products.getProducts().keySet()) {
+            this.newWindow(product);
+        }
+        busMetrics.consumer(CoinbaseWsEventAddresses.websocketMatchEventAddress);
+        LOG.info("Dedupe window : " + this.capacity + " trades per product");
+    }
+
+    /**
+     * Publish a match to the deduplicated match address unless its trade id was already seen.
+     * 
+     * @param match Match event
+     */
+    @ConsumeEvent(value = CoinbaseWsEventAddresses.websocketMatchEventAddress)
+    public void consumeMatchEvent(Match match) {
+        if(this.isNew(match)) {
+            this.bus.publish(CoinbaseWsEventAddresses.dedupedMatchEventAddress, match, this.options);
+        }
+    }
+
+    /**
+     * Check if the trade id of a match was not seen yet and add it to the window of its product.
+     * 
+     * @param match Match event
+     * @return False if the match is a duplicate
+     */
+    public boolean isNew(Match match) {
+        CoinbaseProduct product = this.products.get(match.getUnit(), match.getQuote());
+        TradeIdWindow window = this.windows.get(product.getId());
+        if(window == null) {
+            window = this.newWindow(product.getId());
+        }
+
+        boolean added;
+        synchronized(window) {
+            added = window.add(match.getId());
+        }
+        if(!added) {
+            this.duplicates.get(product.getId()).inc();
+            if(LOG.isTraceEnabled()) {
+                LOG.trace("Duplicate match dropped : " + match.getId());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Create the window & duplicate counter of a product
+     * 
+     * @param product Product id
+     * @return Window of the product
+     */
+    private synchronized TradeIdWindow newWindow(String product) {
+        TradeIdWindow window = this.windows.get(product);
+        if(window == null) {
+            this.duplicates.put(product, this.registry.counter(Metadata.builder()
+                .withName("matches.duplicates")
+                .withDescription("Duplicate matches dropped")
+                .build(), new Tag("product", product)));
+            window = new TradeIdWindow(this.capacity);
+            this.windows.put(product, window);
+        }
+        return window;
+    }
+}
@@ -0,0 +1,119 @@
+package tech.gbdevw.colibri.coinbaseetl.service.dedupe;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window over the latest trade ids of a product, used to detect duplicate trades.
+ * 
+ * The window is a bitset stored in a ring of longs : bit (id % capacity) tells if the trade
+ * id was seen. When a newer trade id is added, the bits of the ids which leave the window are
+ * cleared. Memory use is constant and checks are O(1) (amortized when the window slides).
+ * 
+ * Trade ids older than the window cannot be checked and are accepted. This class is not
+ * thread-safe.
+ */
+public class TradeIdWindow {
+
+    /**
+     * Bits of the window
+     */
+    private final long [] words;
+
+    /**
+     * Number of trade ids in the window (power of 2)
+     */
+    private final int capacity;
+
+    /**
+     * capacity - 1
+     */
+    private final long mask;
+
+    /**
+     * Highest trade id added (-1 if none)
+     */
+    private long high;
+
+    /**
+     * Constructor
+     * 
+     * @param capacity Number of trade ids in the window (rounded up to a power of 2, 64 min.)
+     */
+    public TradeIdWindow(int capacity) {
+        if(capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid window capacity : " + capacity);
+        }
+        this.capacity = Math.max(64, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.words = new long [this.capacity >>> 6];
+        this.high = -1;
+    }
+
+    /**
+     * Add a trade id to the window
+     * 
+     * @param id Trade id
+     * @return False if the trade id is a duplicate, true otherwise
+     */
+    public boolean add(long id) {
+
+        // Newer trade : slide the window
+        if(id > this.high) {
+            if(this.high < 0 || id - this.high >= this.capacity) {
+                Arrays.fill(this.words, 0L);
+            }
+            else {
+                for(long cleared = this.high + 1; cleared < id; cleared++) {
+                    this.words[this.index(cleared)] &= ~this.bit(cleared);
+                }
+            }
+            this.high = id;
+            this.words[this.index(id)] |= this.bit(id);
+            return true;
+        }
+
+        // Older than the window : cannot be checked
+        if(id <= this.high - this.capacity) {
+            return true;
+        }
+
+        // In the window
+        int index = this.index(id);
+        long bit = this.bit(id);
+        if((this.words[index] & bit) != 0) {
+            return false;
+        }
+        this.words[index] |= bit;
+        return true;
+    }
+
+    /**
+     * @return Number of trade ids in the window
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return Highest trade id added (-1 if none)
+     */
+    public long getHigh() {
+        return this.high;
+    }
+
+    /**
+     * @param id Trade id
+     * @return Index of the word of the trade id
+     */
+    private int index(long id) {
+        return (int) ((id & this.mask) >>> 6);
+    }
+
+    /**
+     * @param id Trade id
+     * @return Bit of the trade id in its word
+     */
+    private long bit(long id) {
+        return 1L << (id & 63);
+    }
+}
@@ -0,0 +1,26 @@
+package tech.gbdevw.colibri.coinbaseetl.service.latency;
+
+/**
+ * Monotonic clock of the epoch time in ns. The wall clock is read once, later times are
+ * derived from System.nanoTime so intervals are not affected by clock adjustments.
+ */
+public final class EpochClock {
+
+    /**
+     * Epoch time in ns of the monotonic clock origin
+     */
+    private static final long OFFSET = System.currentTimeMillis() * 1000000L - System.nanoTime();
+
+    /**
+     * Utility class
+     */
+    private EpochClock() {
+    }
+
+    /**
+     * @return Current epoch time in ns (monotonic)
+     */
+    public static long now() {
+        return OFFSET + System.nanoTime();
+    }
+}
@@ -0,0 +1,121 @@
+package tech.gbdevw.colibri.coinbaseetl.service.latency;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.eclipse.microprofile.metrics.Snapshot;
+
+/**
+ * Snapshot of the values of a latency histogram
+ */
+class HdrSnapshot extends Snapshot {
+
+    /**
+     * Values of the snapshot
+     */
+    private final Histogram histogram;
+
+    /**
+     * Constructor
+     * 
+     * @param histogram Values of the snapshot (not modified afterwards)
+     */
+    HdrSnapshot(Histogram histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * @param quantile Quantile in [0, 1]
+     * @return Value at the quantile
+     * @throws IllegalArgumentException if the quantile is not in [0, 1]
+     */
+    @Override
+    public double getValue(double quantile) {
+        if(quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        return this.histogram.getValueAtPercentile(quantile * 100.0);
+    }
+
+    /**
+     * @return Value of each recorded bucket (one entry per bucket, in ascending order)
+     */
+    @Override
+    public long[] getValues() {
+        long[] values = new long[this.buckets()];
+        int i = 0;
+        for(HistogramIterationValue value : this.histogram.recordedValues()) {
+            values[i++] = value.getValueIteratedTo();
+        }
+        return values;
+    }
+
+    /**
+     * @return Number of values of the snapshot
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(this.histogram.getTotalCount(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return Highest value (0 if empty)
+     */
+    @Override
+    public long getMax() {
+        return this.histogram.getTotalCount() > 0 ? this.histogram.getMaxValue() : 0;
+    }
+
+    /**
+     * @return Mean value (0 if empty)
+     */
+    @Override
+    public double getMean() {
+        return this.histogram.getTotalCount() > 0 ? this.histogram.getMean() : 0.0;
+    }
+
+    /**
+     * @return Lowest value (0 if empty)
+     */
+    @Override
+    public long getMin() {
+        return this.histogram.getTotalCount() > 0 ? this.histogram.getMinValue() : 0;
+    }
+
+    /**
+     * @return Standard deviation of the values (0 if empty)
+     */
+    @Override
+    public double getStdDev() {
+        return this.histogram.getTotalCount() > 0 ? this.histogram.getStdDeviation() : 0.0;
+    }
+
+    /**
+     * Write the value of each recorded bucket and its count, one bucket per line
+     * 
+     * @param output Output stream
+     */
+    @Override
+    public void dump(OutputStream output) {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        for(HistogramIterationValue value : this.histogram.recordedValues()) {
+            out.println(value.getValueIteratedTo() + " " + value.getCountAtValueIteratedTo());
+        }
+        out.flush();
+    }
+
+    /**
+     * @return Number of recorded buckets
+     */
+    private int buckets() {
+        int buckets = 0;
+        for(@SuppressWarnings("unused") HistogramIterationValue value : this.histogram.recordedValues()) {
+            buckets++;
+        }
+        return buckets;
+    }
+}
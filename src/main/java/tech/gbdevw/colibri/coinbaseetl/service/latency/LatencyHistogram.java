@@ -0,0 +1,129 @@
+package tech.gbdevw.colibri.coinbaseetl.service.latency;
+
+import org.HdrHistogram.Recorder;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Snapshot;
+
+/**
+ * Histogram backed by an HdrHistogram recorder.
+ * 
+ * Values are recorded without allocation or lock by the hot path. Recorded values are
+ * drained when the histogram is read, snapshots cover the values of the current and of the
+ * previous window so percentiles reflect the recent latency and not the whole uptime.
+ */
+public class LatencyHistogram implements Histogram {
+
+    /**
+     * Recorder written by the hot path
+     */
+    private final Recorder recorder;
+
+    /**
+     * Highest recorded value (larger values are clamped)
+     */
+    private final long highest;
+
+    /**
+     * Duration of a window in ms
+     */
+    private final long window;
+
+    /**
+     * Values drained from the recorder (recycled at each drain)
+     */
+    private org.HdrHistogram.Histogram interval;
+
+    /**
+     * Values of the current window
+     */
+    private org.HdrHistogram.Histogram current;
+
+    /**
+     * Values of the previous window
+     */
+    private org.HdrHistogram.Histogram previous;
+
+    /**
+     * Start time of the current window in ms
+     */
+    private long started;
+
+    /**
+     * Values recorded since the histogram was created
+     */
+    private long count;
+
+    /**
+     * Constructor
+     * 
+     * @param highest Highest recorded value (larger values are clamped)
+     * @param digits Significant decimal digits of the recorded values
+     * @param window Duration of a window in ms
+     */
+    public LatencyHistogram(long highest, int digits, long window) {
+        this.recorder = new Recorder(highest, digits);
+        this.highest = highest;
+        this.window = window;
+        this.current = new org.HdrHistogram.Histogram(highest, digits);
+        this.previous = new org.HdrHistogram.Histogram(highest, digits);
+        this.started = System.currentTimeMillis();
+    }
+
+    /**
+     * Record a value. Negative values (clock skew) are recorded as 0.
+     * 
+     * @param value Value
+     */
+    @Override
+    public void update(long value) {
+        this.recorder.recordValue(value < 0 ? 0 : Math.min(value, this.highest));
+    }
+
+    /**
+     * Record a value. Negative values (clock skew) are recorded as 0.
+     * 
+     * @param value Value
+     */
+    @Override
+    public void update(int value) {
+        this.update((long) value);
+    }
+
+    /**
+     * @return Values recorded since the histogram was created
+     */
+    @Override
+    public synchronized long getCount() {
+        this.drain();
+        return this.count;
+    }
+
+    /**
+     * @return Snapshot of the values of the current and of the previous window
+     */
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        this.drain();
+        org.HdrHistogram.Histogram values = this.previous.copy();
+        values.add(this.current);
+        return new HdrSnapshot(values);
+    }
+
+    /**
+     * Move the recorded values to the current window, rotate the windows if the current
+     * one is over
+     */
+    private void drain() {
+        this.interval = this.recorder.getIntervalHistogram(this.interval);
+        this.count += this.interval.getTotalCount();
+        long now = System.currentTimeMillis();
+        if(now - this.started >= this.window) {
+            org.HdrHistogram.Histogram recycled = this.previous;
+            recycled.reset();
+            this.previous = this.current;
+            this.current = recycled;
+            this.started = now;
+        }
+        this.current.add(this.interval);
+    }
+}
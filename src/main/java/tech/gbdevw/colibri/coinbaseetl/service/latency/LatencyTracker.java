@@ -0,0 +1,313 @@
+package tech.gbdevw.colibri.coinbaseetl.service.latency;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Tracks the latency of the events of the feed from the exchange to the Kafka acknowledgement.
+ * 
+ * Each stage is recorded in a histogram per product and per message type (in µs) :
+ * - latency.receive : exchange time -> websocket receive
+ * - latency.dispatch : websocket receive -> bus (or pipeline) dispatch
+ * - latency.send : dispatch -> producer send
+ * - latency.ack : producer send -> broker acknowledgement
+ * 
+ * Dispatch and send times are kept in a ring of slots indexed by the event id so later stages
+ * find them without allocation. Events which were not dispatched from the feed (backfill,
+ * spool) or whose slot was reused are not tracked.
+ */
+@RegisterForReflection
+@ApplicationScoped
+public class LatencyTracker {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(LatencyTracker.class.getSimpleName());
+
+    /**
+     * Match events
+     */
+    private static final int MATCH = 0;
+
+    /**
+     * Ticker events
+     */
+    private static final int TICKER = 1;
+
+    /**
+     * Tag value of each message type
+     */
+    private static final String [] TYPES = { "match", "ticker" };
+
+    /**
+     * Slots of the ring of each product & message type (power of 2)
+     */
+    private static final int SLOTS = 4096;
+
+    /**
+     * Highest recorded latency in µs (1 minute)
+     */
+    private static final long HIGHEST = 60000000L;
+
+    /**
+     * Significant decimal digits of the recorded latencies
+     */
+    private static final int DIGITS = 2;
+
+    /**
+     * Latencies indexed by message type, unit and quote currency ordinals (null if disabled)
+     */
+    private final Stages [][][] stages;
+
+    /**
+     * Constructor
+     * 
+     * @param config Configuration
+     * @param products Supported products
+     * @param registry Registry for latency histograms
+     */
+    public LatencyTracker(CoinbaseProperties config, CoinbaseProductTable products, MetricRegistry registry) {
+        if(!config.latency) {
+            LOG.info("Latency tracking disabled");
+            this.stages = null;
+            return;
+        }
+        int currencies = Currency.values().length;
+        this.stages = new Stages [TYPES.length][currencies][currencies];
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            for(int type = 0; type < TYPES.length; type++) {
+                Tag [] tags = { new Tag("product", product.getId()), new Tag("type", TYPES[type]) };
+                this.stages[type][product.getUnit().ordinal()][product.getQuote().ordinal()] = new Stages(
+                    this.register(registry, "latency.receive", "Time between the exchange time of an event and its receipt", config.latencyWindow, tags),
+                    this.register(registry, "latency.dispatch", "Time between the receipt of an event and its dispatch", config.latencyWindow, tags),
+                    this.register(registry, "latency.send", "Time between the dispatch of an event and its send to Kafka", config.latencyWindow, tags),
+                    this.register(registry, "latency.ack", "Time between the send of an event to Kafka and its acknowledgement", config.latencyWindow, tags));
+            }
+        }
+        LOG.info("Latency tracking enabled - Window : " + config.latencyWindow + " ms");
+    }
+
+    /**
+     * Record the receipt & dispatch of a match
+     * 
+     * @param match Match
+     * @param received Receive time in epoch ns
+     */
+    public void matchDispatched(Match match, long received) {
+        this.dispatched(this.get(MATCH, match.getUnit(), match.getQuote()), match.getId(), match.getTimestamp(), received);
+    }
+
+    /**
+     * Record the receipt & dispatch of a ticker
+     * 
+     * @param ticker Ticker
+     * @param received Receive time in epoch ns
+     */
+    public void tickerDispatched(Ticker ticker, long received) {
+        this.dispatched(this.get(TICKER, ticker.getUnit(), ticker.getQuote()), ticker.getId(), ticker.getTimestamp(), received);
+    }
+
+    /**
+     * Record the send of a match to Kafka
+     * 
+     * @param match Match
+     */
+    public void matchSent(Match match) {
+        this.sent(this.get(MATCH, match.getUnit(), match.getQuote()), match.getId());
+    }
+
+    /**
+     * Record the send of a ticker to Kafka
+     * 
+     * @param ticker Ticker
+     */
+    public void tickerSent(Ticker ticker) {
+        this.sent(this.get(TICKER, ticker.getUnit(), ticker.getQuote()), ticker.getId());
+    }
+
+    /**
+     * Record the acknowledgement of a match by Kafka
+     * 
+     * @param match Match
+     */
+    public void matchAcked(Match match) {
+        this.acked(this.get(MATCH, match.getUnit(), match.getQuote()), match.getId());
+    }
+
+    /**
+     * Record the acknowledgement of a ticker by Kafka
+     * 
+     * @param ticker Ticker
+     */
+    public void tickerAcked(Ticker ticker) {
+        this.acked(this.get(TICKER, ticker.getUnit(), ticker.getQuote()), ticker.getId());
+    }
+
+    /**
+     * @param type Message type
+     * @param unit Unit currency
+     * @param quote Quote currency
+     * @return Latencies of the product (null if disabled or not supported)
+     */
+    private Stages get(int type, Currency unit, Currency quote) {
+        return this.stages != null ? this.stages[type][unit.ordinal()][quote.ordinal()] : null;
+    }
+
+    /**
+     * Record the receive & dispatch latencies of an event and keep its dispatch time
+     * 
+     * @param stages Latencies of the product
+     * @param id Event id
+     * @param timestamp Exchange time in epoch ms
+     * @param received Receive time in epoch ns
+     */
+    private void dispatched(Stages stages, long id, long timestamp, long received) {
+        if(stages == null) {
+            return;
+        }
+        long now = EpochClock.now();
+        stages.receive.update((received - timestamp * 1000000L) / 1000L);
+        stages.dispatch.update((now - received) / 1000L);
+        int slot = (int) id & (SLOTS - 1);
+        stages.dispatched[slot] = now;
+        stages.sent[slot] = 0;
+        // Publish the times with the id
+        stages.ids.lazySet(slot, id);
+    }
+
+    /**
+     * Record the send latency of an event and keep its send time
+     * 
+     * @param stages Latencies of the product
+     * @param id Event id
+     */
+    private void sent(Stages stages, long id) {
+        if(stages == null) {
+            return;
+        }
+        int slot = (int) id & (SLOTS - 1);
+        if(stages.ids.get(slot) != id) {
+            return;
+        }
+        long now = EpochClock.now();
+        stages.send.update((now - stages.dispatched[slot]) / 1000L);
+        stages.sent[slot] = now;
+    }
+
+    /**
+     * Record the acknowledgement latency of an event
+     * 
+     * @param stages Latencies of the product
+     * @param id Event id
+     */
+    private void acked(Stages stages, long id) {
+        if(stages == null) {
+            return;
+        }
+        int slot = (int) id & (SLOTS - 1);
+        long sent = stages.sent[slot];
+        if(sent == 0 || stages.ids.get(slot) != id) {
+            return;
+        }
+        stages.ack.update((EpochClock.now() - sent) / 1000L);
+    }
+
+    /**
+     * Create & register a latency histogram
+     * 
+     * @param registry Metric registry
+     * @param name Metric name
+     * @param description Metric description
+     * @param window Duration of a histogram window in ms
+     * @param tags Metric tags
+     * @return Latency histogram
+     */
+    private LatencyHistogram register(MetricRegistry registry, String name, String description, long window, Tag [] tags) {
+        return registry.register(Metadata.builder()
+            .withName(name)
+            .withDescription(description)
+            .withType(MetricType.HISTOGRAM)
+            .withUnit(MetricUnits.MICROSECONDS)
+            .build(), new LatencyHistogram(HIGHEST, DIGITS, window), tags);
+    }
+
+    /**
+     * Latencies & ring of the events of a product for a message type
+     */
+    private static final class Stages {
+
+        /**
+         * Exchange time -> receive
+         */
+        private final LatencyHistogram receive;
+
+        /**
+         * Receive -> dispatch
+         */
+        private final LatencyHistogram dispatch;
+
+        /**
+         * Dispatch -> send
+         */
+        private final LatencyHistogram send;
+
+        /**
+         * Send -> acknowledgement
+         */
+        private final LatencyHistogram ack;
+
+        /**
+         * Id of the event of each slot
+         */
+        private final AtomicLongArray ids;
+
+        /**
+         * Dispatch time of the event of each slot in epoch ns
+         */
+        private final long [] dispatched;
+
+        /**
+         * Send time of the event of each slot in epoch ns (0 if not sent yet)
+         */
+        private final long [] sent;
+
+        /**
+         * Constructor
+         * 
+         * @param receive Exchange time -> receive
+         * @param dispatch Receive -> dispatch
+         * @param send Dispatch -> send
+         * @param ack Send -> acknowledgement
+         */
+        private Stages(LatencyHistogram receive, LatencyHistogram dispatch, LatencyHistogram send, LatencyHistogram ack) {
+            this.receive = receive;
+            this.dispatch = dispatch;
+            this.send = send;
+            this.ack = ack;
+            this.ids = new AtomicLongArray(SLOTS);
+            this.dispatched = new long [SLOTS];
+            this.sent = new long [SLOTS];
+            for(int i = 0; i < SLOTS; i++) {
+                this.ids.set(i, -1);
+            }
+        }
+    }
+}
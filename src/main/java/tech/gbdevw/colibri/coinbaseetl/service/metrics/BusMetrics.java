@@ -0,0 +1,136 @@
+package tech.gbdevw.colibri.coinbaseetl.service.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.Tag;
+
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.eventbus.DeliveryContext;
+import io.vertx.core.eventbus.EventBus;
+
+/**
+ * Tracks the deliveries of the event bus which are waiting for their consumer.
+ * 
+ * Consumers declare the address they listen to. Outbound interceptors count the deliveries
+ * expected for each message (one per consumer when published) and inbound interceptors count
+ * the deliveries handed to a consumer. Addresses without a declared consumer are ignored.
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Startup
+public class BusMetrics {
+
+    /**
+     * Event bus
+     */
+    private EventBus bus;
+
+    /**
+     * Registry for bus metrics
+     */
+    private MetricRegistry registry;
+
+    /**
+     * Deliveries of each tracked address
+     */
+    private Map<String, Deliveries> addresses;
+
+    /**
+     * Constructor
+     * 
+     * @param bus Event bus
+     * @param registry Registry for bus metrics
+     */
+    public BusMetrics(EventBus bus, MetricRegistry registry) {
+        this.bus = bus;
+        this.registry = registry;
+        this.addresses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Intercept the messages of the bus
+     */
+    @PostConstruct
+    public void start() {
+        this.bus.addOutboundInterceptor(this::onSend);
+        this.bus.addInboundInterceptor(this::onDeliver);
+    }
+
+    /**
+     * Declare a consumer of an address
+     * 
+     * @param address Address
+     */
+    public synchronized void consumer(String address) {
+        Deliveries deliveries = this.addresses.get(address);
+        if(deliveries == null) {
+            Deliveries created = new Deliveries();
+            this.registry.register(Metadata.builder()
+                .withName("bus.pending")
+                .withDescription("Deliveries of the event bus waiting for their consumer")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Long>) () -> Math.max(0L, created.expected.sum() - created.delivered.sum()), new Tag("address", address));
+            this.addresses.put(address, created);
+            deliveries = created;
+        }
+        deliveries.consumers++;
+    }
+
+    /**
+     * Count the deliveries expected for a message sent or published
+     * 
+     * @param context Delivery context
+     */
+    private void onSend(DeliveryContext<Object> context) {
+        Deliveries deliveries = this.addresses.get(context.message().address());
+        if(deliveries != null) {
+            int consumers = deliveries.consumers;
+            deliveries.expected.add(context.send() ? Math.min(consumers, 1) : consumers);
+        }
+        context.next();
+    }
+
+    /**
+     * Count a message handed to a consumer
+     * 
+     * @param context Delivery context
+     */
+    private void onDeliver(DeliveryContext<Object> context) {
+        Deliveries deliveries = this.addresses.get(context.message().address());
+        if(deliveries != null) {
+            deliveries.delivered.increment();
+        }
+        context.next();
+    }
+
+    /**
+     * Deliveries of an address
+     */
+    private static final class Deliveries {
+
+        /**
+         * Consumers of the address
+         */
+        private volatile int consumers;
+
+        /**
+         * Deliveries expected for the messages sent to the address
+         */
+        private final LongAdder expected = new LongAdder();
+
+        /**
+         * Deliveries handed to a consumer
+         */
+        private final LongAdder delivered = new LongAdder();
+    }
+}
@@ -0,0 +1,70 @@
+package tech.gbdevw.colibri.coinbaseetl.service.metrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+
+/**
+ * Exports the usage of the Vert.x worker pool (blocking code of the producers, batchers,
+ * backfill, spool & checkpoint). Active threads close to the pool size mean the pool is
+ * saturated.
+ * 
+ * Tasks which wait behind the previous ordered task of the same context are queued by
+ * Vert.x before the pool and are not counted.
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Startup
+public class WorkerPoolMetrics {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerPoolMetrics.class.getSimpleName());
+
+    /**
+     * Constructor
+     * 
+     * @param vertx Vertx instance
+     * @param registry Registry for worker pool metrics
+     */
+    public WorkerPoolMetrics(Vertx vertx, MetricRegistry registry) {
+
+        // The worker pool is only exposed by the internal API
+        ExecutorService pool = vertx instanceof VertxInternal ? ((VertxInternal) vertx).getWorkerPool() : null;
+        if(!(pool instanceof ThreadPoolExecutor)) {
+            LOG.warn("Worker pool metrics not available");
+            return;
+        }
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) pool;
+        registry.register(Metadata.builder()
+            .withName("worker.pool.size")
+            .withDescription("Threads of the worker pool")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Integer>) executor::getMaximumPoolSize);
+        registry.register(Metadata.builder()
+            .withName("worker.pool.active")
+            .withDescription("Threads of the worker pool running a task")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Integer>) executor::getActiveCount);
+        registry.register(Metadata.builder()
+            .withName("worker.pool.queued")
+            .withDescription("Tasks waiting for a thread of the worker pool")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Integer>) () -> executor.getQueue().size());
+    }
+}
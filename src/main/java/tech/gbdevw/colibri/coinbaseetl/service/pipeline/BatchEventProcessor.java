@@ -0,0 +1,99 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumer of a ring buffer running a pipeline stage on its own thread. All available events
+ * are processed in a batch before the sequence of the stage is updated.
+ */
+public class BatchEventProcessor<E> implements Runnable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(BatchEventProcessor.class.getSimpleName());
+
+    /**
+     * Ring buffer
+     */
+    private final RingBuffer<E> ring;
+
+    /**
+     * Barrier of the stage
+     */
+    private final SequenceBarrier barrier;
+
+    /**
+     * Handler of the stage
+     */
+    private final EventHandler<E> handler;
+
+    /**
+     * Last sequence processed by the stage
+     */
+    private final Sequence sequence;
+
+    /**
+     * Name used in logs
+     */
+    private final String name;
+
+    /**
+     * Constructor
+     * 
+     * @param name Name used in logs
+     * @param ring Ring buffer
+     * @param barrier Barrier of the stage
+     * @param handler Handler of the stage
+     */
+    public BatchEventProcessor(String name, RingBuffer<E> ring, SequenceBarrier barrier, EventHandler<E> handler) {
+        this.name = name;
+        this.ring = ring;
+        this.barrier = barrier;
+        this.handler = handler;
+        this.sequence = new Sequence();
+    }
+
+    /**
+     * Process events until the processor is halted. Events published before are processed.
+     */
+    @Override
+    public void run() {
+        long next = this.sequence.get() + 1;
+        while(true) {
+            long available = this.barrier.waitFor(next);
+            if(available < next) {
+                if(this.barrier.isAlerted() && this.ring.getCursor() < next) {
+                    break;
+                }
+                continue;
+            }
+
+            for(long current = next; current <= available; current++) {
+                try {
+                    this.handler.onEvent(this.ring.get(current), current, current == available);
+                }
+                catch(Exception ex) {
+                    LOG.error(this.name + " failed to process event " + current, ex);
+                }
+            }
+            this.sequence.set(available);
+            next = available + 1;
+        }
+    }
+
+    /**
+     * Stop the processor once the published events are processed
+     */
+    public void halt() {
+        this.barrier.alert();
+    }
+
+    /**
+     * @return Last sequence processed by the stage
+     */
+    public Sequence getSequence() {
+        return this.sequence;
+    }
+}
@@ -0,0 +1,18 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+/**
+ * Handler of a pipeline stage.
+ */
+@FunctionalInterface
+public interface EventHandler<E> {
+
+    /**
+     * Process an event
+     * 
+     * @param event Event (slot of the ring buffer - must not be kept)
+     * @param sequence Sequence of the event
+     * @param endOfBatch True if this is the last available event
+     * @throws Exception An error occured while processing the event
+     */
+    void onEvent(E event, long sequence, boolean endOfBatch) throws Exception;
+}
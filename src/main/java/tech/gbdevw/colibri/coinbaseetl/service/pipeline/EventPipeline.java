@@ -0,0 +1,175 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.candles.CandleAggregator;
+import tech.gbdevw.colibri.coinbaseetl.service.dedupe.MatchDeduplicator;
+import tech.gbdevw.colibri.coinbaseetl.service.producers.MatchProducer;
+import tech.gbdevw.colibri.coinbaseetl.service.producers.TickerProducer;
+import tech.gbdevw.colibri.coinbaseetl.service.syncer.MatchSyncer;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Factory of the ring buffer pipelines of the websocket shards (ring pipeline mode).
+ * 
+ * In this mode, websocket events do not go through the event bus : they are decoded, deduplicated
+ * and sent to Kafka by the stages of the pipeline of their shard. The event bus still carries
+ * the trades fetched by the syncer. Matches are added to the candle stage by the dedupe stage.
+ */
+@RegisterForReflection
+@ApplicationScoped
+public class EventPipeline {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(EventPipeline.class.getSimpleName());
+
+    /**
+     * Configuration
+     */
+    private CoinbaseProperties config;
+
+    /**
+     * Kafka configuration
+     */
+    private ConfluentProperties producerConfig;
+
+    /**
+     * Dedupe stage
+     */
+    private MatchDeduplicator deduplicator;
+
+    /**
+     * Candle stage
+     */
+    private CandleAggregator candles;
+
+    /**
+     * Syncer which tracks the trade flow
+     */
+    private MatchSyncer syncer;
+
+    /**
+     * Match producer (if Kafka is enabled)
+     */
+    private Instance<MatchProducer> matchProducer;
+
+    /**
+     * Ticker producer (if Kafka is enabled)
+     */
+    private Instance<TickerProducer> tickerProducer;
+
+    /**
+     * Constructor
+     * 
+     * @param config Configuration
+     * @param producerConfig Kafka configuration
+     * @param deduplicator Dedupe stage
+     * @param candles Candle stage
+     * @param syncer Syncer which tracks the trade flow
+     * @param matchProducer Match producer
+     * @param tickerProducer Ticker producer
+     */
+    @Inject
+    public EventPipeline(CoinbaseProperties config, ConfluentProperties producerConfig, MatchDeduplicator deduplicator, CandleAggregator candles, MatchSyncer syncer, Instance<MatchProducer> matchProducer, Instance<TickerProducer> tickerProducer) {
+        this.config = config;
+        this.producerConfig = producerConfig;
+        this.deduplicator = deduplicator;
+        this.candles = candles;
+        this.syncer = syncer;
+        this.matchProducer = matchProducer;
+        this.tickerProducer = tickerProducer;
+    }
+
+    /**
+     * @return True if websocket events go through ring buffer pipelines instead of the event bus
+     */
+    public boolean isEnabled() {
+        return CoinbaseProperties.RING_PIPELINE.equalsIgnoreCase(this.config.pipeline);
+    }
+
+    /**
+     * Create & start the pipeline of a shard
+     * 
+     * @param shard Shard id
+     * @return Pipeline of the shard
+     */
+    public ShardPipeline create(int shard) {
+
+        LOG.info("Shard " + shard + " pipeline - Wait strategy : " + this.config.pipelineWaitStrategy);
+
+        // Decode the message on the parser thread
+        EventHandler<PipelineEvent> parser = (event, sequence, endOfBatch) -> event.getEndpoint().process(event.getSession(), event.getMessage(), event.getReceived(), event);
+
+        // Track the trade flow, flag duplicates & roll the other matches into candles
+        EventHandler<PipelineEvent> dedupe = (event, sequence, endOfBatch) -> {
+            Match match = event.getMatch();
+            if(match != null) {
+                this.syncer.consumeMatchEvent(match);
+                event.setDuplicate(!this.deduplicator.isNew(match));
+                if(!event.isDuplicate()) {
+                    this.candles.add(match);
+                }
+            }
+        };
+
+        // Send matches to Kafka - in batches of available events when batching is enabled
+        EventHandler<PipelineEvent> matchSink = (event, sequence, endOfBatch) -> {};
+        if(this.matchProducer.isResolvable()) {
+            MatchProducer producer = this.matchProducer.get();
+            List<Match> batch = new ArrayList<>();
+            matchSink = (event, sequence, endOfBatch) -> {
+                Match match = event.getMatch();
+                if(match != null && !event.isDuplicate()) {
+                    if(this.producerConfig.batch) {
+                        batch.add(match);
+                    }
+                    else {
+                        producer.produceMatchEvent(match);
+                    }
+                }
+                if(!batch.isEmpty() && (endOfBatch || batch.size() >= this.producerConfig.batchSize)) {
+                    producer.produceMatchEvents(batch);
+                    batch.clear();
+                }
+            };
+        }
+
+        // Send tickers to Kafka - in batches of available events when batching is enabled, conflated tickers are sent by the producer
+        EventHandler<PipelineEvent> tickerSink = (event, sequence, endOfBatch) -> {};
+        if(this.tickerProducer.isResolvable()) {
+            TickerProducer producer = this.tickerProducer.get();
+            List<Ticker> batch = new ArrayList<>();
+            tickerSink = (event, sequence, endOfBatch) -> {
+                Ticker ticker = event.getTicker();
+                if(ticker != null && !producer.conflateTickerEvent(ticker)) {
+                    if(this.producerConfig.batch) {
+                        batch.add(ticker);
+                    }
+                    else {
+                        producer.produceTickerEvent(ticker);
+                    }
+                }
+                if(!batch.isEmpty() && (endOfBatch || batch.size() >= this.producerConfig.batchSize)) {
+                    producer.produceTickerEvents(batch);
+                    batch.clear();
+                }
+            };
+        }
+
+        return new ShardPipeline("pipeline-" + shard, this.config.pipelineSize, WaitStrategy.create(this.config.pipelineWaitStrategy), parser, dedupe, matchSink, tickerSink);
+    }
+}
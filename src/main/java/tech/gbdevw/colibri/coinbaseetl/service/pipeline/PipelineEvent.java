@@ -0,0 +1,137 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import javax.websocket.Session;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.CoinbaseWSClientEndpoint;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Slot of the ring buffer of a shard. The receive thread sets the raw message, the parser
+ * stage sets the decoded event and the dedupe stage flags duplicate matches.
+ */
+public class PipelineEvent {
+
+    /**
+     * Endpoint which received the message
+     */
+    private CoinbaseWSClientEndpoint endpoint;
+
+    /**
+     * Session which received the message
+     */
+    private Session session;
+
+    /**
+     * Raw message
+     */
+    private String message;
+
+    /**
+     * Receive time in epoch ns
+     */
+    private long received;
+
+    /**
+     * Decoded match (null if the message is not a match)
+     */
+    private Match match;
+
+    /**
+     * Decoded ticker (null if the message is not a ticker)
+     */
+    private Ticker ticker;
+
+    /**
+     * True if the match is a duplicate
+     */
+    private boolean duplicate;
+
+    /**
+     * Set the raw message & clear the decoded event
+     * 
+     * @param endpoint Endpoint which received the message
+     * @param session Session which received the message
+     * @param message Raw message
+     * @param received Receive time in epoch ns
+     */
+    public void set(CoinbaseWSClientEndpoint endpoint, Session session, String message, long received) {
+        this.endpoint = endpoint;
+        this.session = session;
+        this.message = message;
+        this.received = received;
+        this.match = null;
+        this.ticker = null;
+        this.duplicate = false;
+    }
+
+    /**
+     * @return Endpoint which received the message
+     */
+    public CoinbaseWSClientEndpoint getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * @return Session which received the message
+     */
+    public Session getSession() {
+        return this.session;
+    }
+
+    /**
+     * @return Raw message
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * @return Receive time in epoch ns
+     */
+    public long getReceived() {
+        return this.received;
+    }
+
+    /**
+     * @return Decoded match (null if the message is not a match)
+     */
+    public Match getMatch() {
+        return this.match;
+    }
+
+    /**
+     * @param match Decoded match
+     */
+    public void setMatch(Match match) {
+        this.match = match;
+    }
+
+    /**
+     * @return Decoded ticker (null if the message is not a ticker)
+     */
+    public Ticker getTicker() {
+        return this.ticker;
+    }
+
+    /**
+     * @param ticker Decoded ticker
+     */
+    public void setTicker(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    /**
+     * @return True if the match is a duplicate
+     */
+    public boolean isDuplicate() {
+        return this.duplicate;
+    }
+
+    /**
+     * @param duplicate True if the match is a duplicate
+     */
+    public void setDuplicate(boolean duplicate) {
+        this.duplicate = duplicate;
+    }
+}
@@ -0,0 +1,143 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Pre-allocated ring buffer of events with a single producer.
+ * 
+ * The producer claims the next sequence, fills its slot and publishes it. It waits while the
+ * slot is still used by the slowest consumer (gating sequences). Slots are reused : no event
+ * is allocated once the buffer is created.
+ */
+public class RingBuffer<E> {
+
+    /**
+     * Slots
+     */
+    private final Object [] entries;
+
+    /**
+     * Size - 1
+     */
+    private final int mask;
+
+    /**
+     * Last published sequence
+     */
+    private final Sequence cursor;
+
+    /**
+     * Wait strategy of the consumers
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Sequences of the last stages (slowest consumers)
+     */
+    private Sequence [] gating;
+
+    /**
+     * Next sequence to claim (producer only)
+     */
+    private long next;
+
+    /**
+     * Cached min. of the gating sequences (producer only)
+     */
+    private long cachedGating;
+
+    /**
+     * Constructor
+     * 
+     * @param factory Factory of the slots
+     * @param size Number of slots (power of 2)
+     * @param waitStrategy Wait strategy of the consumers
+     */
+    public RingBuffer(Supplier<E> factory, int size, WaitStrategy waitStrategy) {
+        if(size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of 2 : " + size);
+        }
+        this.entries = new Object [size];
+        for(int i = 0; i < size; i++) {
+            this.entries[i] = factory.get();
+        }
+        this.mask = size - 1;
+        this.cursor = new Sequence();
+        this.waitStrategy = waitStrategy;
+        this.gating = new Sequence [0];
+        this.next = 0;
+        this.cachedGating = Sequence.INITIAL;
+    }
+
+    /**
+     * Set the sequences of the last stages. Must be called before the first publication.
+     * 
+     * @param gating Sequences of the last stages
+     */
+    public void setGatingSequences(Sequence... gating) {
+        this.gating = gating;
+    }
+
+    /**
+     * Create the barrier of a consumer
+     * 
+     * @param dependents Sequences of the stages the consumer depends on (none for the first stage)
+     * @return Sequence barrier
+     */
+    public SequenceBarrier newBarrier(Sequence... dependents) {
+        return new SequenceBarrier(this.cursor, dependents, this.waitStrategy);
+    }
+
+    /**
+     * Claim the next sequence. Waits while the ring buffer is full.
+     * 
+     * @return Claimed sequence
+     */
+    public long next() {
+        long sequence = this.next;
+        long wrap = sequence - this.entries.length;
+        if(wrap > this.cachedGating) {
+            long min;
+            while(wrap > (min = Sequence.min(this.gating, sequence - 1))) {
+                LockSupport.parkNanos(1_000L);
+            }
+            this.cachedGating = min;
+        }
+        this.next = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * @param sequence Sequence
+     * @return Slot of the sequence
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) this.entries[(int) (sequence & this.mask)];
+    }
+
+    /**
+     * Publish a claimed sequence to the consumers
+     * 
+     * @param sequence Claimed sequence
+     */
+    public void publish(long sequence) {
+        this.cursor.set(sequence);
+        this.waitStrategy.signalAll();
+    }
+
+    /**
+     * @return Last published sequence
+     */
+    public long getCursor() {
+        return this.cursor.get();
+    }
+
+    /**
+     * @return Number of slots
+     */
+    public int getSize() {
+        return this.entries.length;
+    }
+}
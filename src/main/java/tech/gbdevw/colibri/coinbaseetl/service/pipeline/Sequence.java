@@ -0,0 +1,81 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Sequence of a ring buffer cursor or consumer, padded to sit alone on its cache line so
+ * sequences updated by different threads do not share a line (false sharing).
+ */
+public class Sequence {
+
+    /**
+     * Initial value : nothing published or consumed
+     */
+    public static final long INITIAL = -1L;
+
+    /**
+     * Access to the value with memory ordering
+     */
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Sequence.class, "value", long.class);
+        }
+        catch(ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Padding before the value
+     */
+    protected long p1, p2, p3, p4, p5, p6, p7;
+
+    /**
+     * Value
+     */
+    private volatile long value;
+
+    /**
+     * Padding after the value
+     */
+    protected long p9, p10, p11, p12, p13, p14, p15;
+
+    /**
+     * Constructor
+     */
+    public Sequence() {
+        this.value = INITIAL;
+    }
+
+    /**
+     * @return Value (volatile read)
+     */
+    public long get() {
+        return this.value;
+    }
+
+    /**
+     * Set the value (release store : writes made before are visible to readers of the value)
+     * 
+     * @param value Value
+     */
+    public void set(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    /**
+     * @param sequences Sequences
+     * @param minimum Value returned if there is no sequence
+     * @return Min. value of the sequences
+     */
+    public static long min(Sequence [] sequences, long minimum) {
+        long min = sequences.length == 0 ? minimum : Long.MAX_VALUE;
+        for(Sequence sequence : sequences) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+}
@@ -0,0 +1,67 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+/**
+ * Barrier used by a consumer to wait for the sequences published by the producer and
+ * processed by the stages it depends on.
+ */
+public class SequenceBarrier {
+
+    /**
+     * Cursor of the ring buffer
+     */
+    private final Sequence cursor;
+
+    /**
+     * Sequences of the stages to wait for
+     */
+    private final Sequence [] dependents;
+
+    /**
+     * Wait strategy
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Set to stop waiting
+     */
+    private volatile boolean alerted;
+
+    /**
+     * Constructor
+     * 
+     * @param cursor Cursor of the ring buffer
+     * @param dependents Sequences of the stages to wait for
+     * @param waitStrategy Wait strategy
+     */
+    public SequenceBarrier(Sequence cursor, Sequence [] dependents, WaitStrategy waitStrategy) {
+        this.cursor = cursor;
+        this.dependents = dependents;
+        this.waitStrategy = waitStrategy;
+        this.alerted = false;
+    }
+
+    /**
+     * Wait until a sequence is available
+     * 
+     * @param sequence Sequence
+     * @return Highest available sequence (lower than the sequence if the barrier was alerted)
+     */
+    public long waitFor(long sequence) {
+        return this.waitStrategy.waitFor(sequence, this.cursor, this.dependents, this);
+    }
+
+    /**
+     * Stop waiting
+     */
+    public void alert() {
+        this.alerted = true;
+        this.waitStrategy.signalAll();
+    }
+
+    /**
+     * @return True if the barrier was alerted
+     */
+    public boolean isAlerted() {
+        return this.alerted;
+    }
+}
@@ -0,0 +1,124 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.websocket.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.CoinbaseWSClientEndpoint;
+
+/**
+ * Ring buffer pipeline of a websocket shard.
+ * 
+ * The receive thread of the websocket connection is the single producer : it copies the raw
+ * message into the next slot. Each stage runs on its own thread and processes the slots in
+ * order, once the stages it depends on processed them :
+ * 
+ * parser -> dedupe -> match sink
+ *        -> ticker sink
+ */
+public class ShardPipeline implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ShardPipeline.class.getSimpleName());
+
+    /**
+     * Names of the stages
+     */
+    public static final String [] STAGES = {"parser", "dedupe", "matches", "tickers"};
+
+    /**
+     * Ring buffer
+     */
+    private final RingBuffer<PipelineEvent> ring;
+
+    /**
+     * Stages
+     */
+    private final List<BatchEventProcessor<PipelineEvent>> processors;
+
+    /**
+     * Threads of the stages
+     */
+    private final List<Thread> threads;
+
+    /**
+     * Constructor : start the stages
+     * 
+     * @param name Name of the pipeline (thread names)
+     * @param size Number of slots of the ring buffer (power of 2)
+     * @param waitStrategy Wait strategy of the stages
+     * @param parser Parser stage
+     * @param dedupe Dedupe stage (after the parser)
+     * @param matchSink Match sink (after the dedupe stage)
+     * @param tickerSink Ticker sink (after the parser)
+     */
+    public ShardPipeline(String name, int size, WaitStrategy waitStrategy, EventHandler<PipelineEvent> parser, EventHandler<PipelineEvent> dedupe, EventHandler<PipelineEvent> matchSink, EventHandler<PipelineEvent> tickerSink) {
+
+        this.ring = new RingBuffer<>(PipelineEvent::new, size, waitStrategy);
+        this.processors = new ArrayList<>();
+        this.threads = new ArrayList<>();
+
+        // Build the stages
+        BatchEventProcessor<PipelineEvent> parserStage = new BatchEventProcessor<>(name + "-parser", this.ring, this.ring.newBarrier(), parser);
+        BatchEventProcessor<PipelineEvent> dedupeStage = new BatchEventProcessor<>(name + "-dedupe", this.ring, this.ring.newBarrier(parserStage.getSequence()), dedupe);
+        BatchEventProcessor<PipelineEvent> matchStage = new BatchEventProcessor<>(name + "-matches", this.ring, this.ring.newBarrier(dedupeStage.getSequence()), matchSink);
+        BatchEventProcessor<PipelineEvent> tickerStage = new BatchEventProcessor<>(name + "-tickers", this.ring, this.ring.newBarrier(parserStage.getSequence()), tickerSink);
+        this.ring.setGatingSequences(matchStage.getSequence(), tickerStage.getSequence());
+
+        // Start the stages
+        this.processors.add(parserStage);
+        this.processors.add(dedupeStage);
+        this.processors.add(matchStage);
+        this.processors.add(tickerStage);
+        for(int i = 0; i < this.processors.size(); i++) {
+            Thread thread = new Thread(this.processors.get(i), name + "-" + STAGES[i]);
+            thread.setDaemon(true);
+            thread.start();
+            this.threads.add(thread);
+        }
+        LOG.info("Pipeline " + name + " started - Ring buffer : " + size + " slots");
+    }
+
+    /**
+     * Publish a message received from the feed. Called by the receive thread of the shard -
+     * synchronized as the previous connection of the shard may still deliver a message while
+     * a new connection starts.
+     * 
+     * @param endpoint Endpoint which received the message
+     * @param session Session which received the message
+     * @param message Raw message
+     * @param received Receive time in epoch ns
+     */
+    public synchronized void publish(CoinbaseWSClientEndpoint endpoint, Session session, String message, long received) {
+        long sequence = this.ring.next();
+        this.ring.get(sequence).set(endpoint, session, message, received);
+        this.ring.publish(sequence);
+    }
+
+    /**
+     * @param stage Index of the stage in STAGES
+     * @return Messages published and not yet processed by the stage
+     */
+    public long getPending(int stage) {
+        return this.ring.getCursor() - this.processors.get(stage).getSequence().get();
+    }
+
+    /**
+     * Stop the stages once the published messages are processed
+     */
+    @Override
+    public void close() throws Exception {
+        for(BatchEventProcessor<PipelineEvent> processor : this.processors) {
+            processor.halt();
+        }
+        for(Thread thread : this.threads) {
+            thread.join(5000);
+        }
+    }
+}
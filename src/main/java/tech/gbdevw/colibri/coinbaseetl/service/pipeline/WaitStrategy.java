@@ -0,0 +1,209 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Strategy used by consumers to wait for a sequence to be available. Strategies trade
+ * latency for CPU usage.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Consumers spin on the sequence (lowest latency, one core per consumer)
+     */
+    public static final String BUSY_SPIN = "busy-spin";
+
+    /**
+     * Consumers spin then yield their thread
+     */
+    public static final String YIELDING = "yielding";
+
+    /**
+     * Consumers spin, yield then park for short periods
+     */
+    public static final String SLEEPING = "sleeping";
+
+    /**
+     * Consumers block on a lock until the producer signals them (lowest CPU usage)
+     */
+    public static final String BLOCKING = "blocking";
+
+    /**
+     * Wait until a sequence is available
+     * 
+     * @param sequence Sequence to wait for
+     * @param cursor Cursor of the ring buffer
+     * @param dependents Sequences of the stages to wait for (the cursor if empty)
+     * @param barrier Barrier of the consumer, checked for alerts
+     * @return Highest available sequence (may be lower than the sequence if alerted)
+     */
+    long waitFor(long sequence, Sequence cursor, Sequence [] dependents, SequenceBarrier barrier);
+
+    /**
+     * Wake up the consumers waiting for a sequence
+     */
+    void signalAll();
+
+    /**
+     * Create a wait strategy
+     * 
+     * @param name Strategy name
+     * @return Wait strategy
+     * @throws IllegalArgumentException if the strategy is not supported
+     */
+    public static WaitStrategy create(String name) {
+        switch(name.toLowerCase()) {
+            case BUSY_SPIN:
+                return new BusySpinWaitStrategy();
+            case YIELDING:
+                return new YieldingWaitStrategy();
+            case SLEEPING:
+                return new SleepingWaitStrategy();
+            case BLOCKING:
+                return new BlockingWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Wait strategy not supported : " + name);
+        }
+    }
+
+    /**
+     * @param cursor Cursor of the ring buffer
+     * @param dependents Sequences of the stages to wait for
+     * @return Highest sequence available to a consumer
+     */
+    static long available(Sequence cursor, Sequence [] dependents) {
+        return dependents.length == 0 ? cursor.get() : Sequence.min(dependents, cursor.get());
+    }
+
+    /**
+     * Spin on the sequence
+     */
+    static class BusySpinWaitStrategy implements WaitStrategy {
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence [] dependents, SequenceBarrier barrier) {
+            long available;
+            while((available = available(cursor, dependents)) < sequence && !barrier.isAlerted()) {
+                Thread.onSpinWait();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Spin then yield
+     */
+    static class YieldingWaitStrategy implements WaitStrategy {
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence [] dependents, SequenceBarrier barrier) {
+            int spins = 100;
+            long available;
+            while((available = available(cursor, dependents)) < sequence && !barrier.isAlerted()) {
+                if(spins > 0) {
+                    spins--;
+                    Thread.onSpinWait();
+                }
+                else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Spin, yield then park
+     */
+    static class SleepingWaitStrategy implements WaitStrategy {
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence [] dependents, SequenceBarrier barrier) {
+            int retries = 200;
+            long available;
+            while((available = available(cursor, dependents)) < sequence && !barrier.isAlerted()) {
+                if(retries > 100) {
+                    retries--;
+                    Thread.onSpinWait();
+                }
+                else if(retries > 0) {
+                    retries--;
+                    Thread.yield();
+                }
+                else {
+                    LockSupport.parkNanos(100_000L);
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Block on a condition signaled by the producer. Consumers of later stages wait on the
+     * condition as well and re-check their dependents periodically.
+     */
+    static class BlockingWaitStrategy implements WaitStrategy {
+
+        /**
+         * Lock of the condition
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Signaled when a sequence is published
+         */
+        private final Condition published = this.lock.newCondition();
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence [] dependents, SequenceBarrier barrier) {
+            if(cursor.get() < sequence) {
+                this.lock.lock();
+                try {
+                    while(cursor.get() < sequence && !barrier.isAlerted()) {
+                        this.published.await(1, TimeUnit.MILLISECONDS);
+                    }
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    barrier.alert();
+                }
+                finally {
+                    this.lock.unlock();
+                }
+            }
+
+            // Later stages : wait for the previous stages
+            long available;
+            while((available = available(cursor, dependents)) < sequence && !barrier.isAlerted()) {
+                LockSupport.parkNanos(1_000L);
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+            this.lock.lock();
+            try {
+                this.published.signalAll();
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Liveness;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.candles.CandleAggregator;
+import tech.gbdevw.colibri.coinbaseetl.service.candles.CandleEncoder;
+import tech.gbdevw.colibri.coinbaseetl.service.candles.CandleListener;
+import tech.gbdevw.colibri.coinbaseetl.service.candles.CandleSeries;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Class which sends the bars of the candle stage to the underlying messaging system (see
+ * CandleEncoder for the record format). Records are keyed by product id.
+ *
+ * Records are encoded on the thread which closes or updates the bar, while the series are
+ * locked, then sent in order by the send thread of the producer without waiting for their
+ * acknowledgement : the event loop and the series lock never wait for Kafka.
+ */
+@RegisterForReflection
+@ApplicationScoped
+@IfBuildProperty(name = "confluent.enabled", stringValue = "true")
+@Startup
+@Liveness
+public class CandleProducer implements CandleListener, AutoCloseable, HealthCheck {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CandleProducer.class.getSimpleName());
+
+    /**
+     * Time in ms given to the send thread to send the pending records when closing
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * Kafka producer (null if the candles are not produced)
+     */
+    private Producer<String, byte []> candleProducer;
+
+    /**
+     * Topic of the candles of each product (null if not produced)
+     */
+    private KafkaTopicRouter candles;
+
+    /**
+     * Producer configuration
+     */
+    private ConfluentProperties producerProps;
+
+    /**
+     * Health indicator
+     */
+    private volatile boolean healthy;
+
+    /**
+     * Callback of the sends
+     */
+    private Callback callback;
+
+    /**
+     * Send thread
+     */
+    private ExecutorService sender;
+
+    /**
+     * Constructor.
+     *
+     * @param config Properties to configure Kafka & candle topics
+     * @param products Supported products
+     * @param aggregator Candle stage
+     */
+    public CandleProducer(ConfluentProperties config, CoinbaseProductTable products, CandleAggregator aggregator) {
+
+        this.producerProps = config;
+        this.healthy = true;
+        this.callback = (metadata, ex) -> {
+            if(ex != null) {
+                LOG.error("An error occured while sending a candle", ex);
+                this.healthy = false;
+            }
+        };
+        if(aggregator.isEnabled() && config.candles.isPresent()) {
+            this.candles = new KafkaTopicRouter(config.candles.get(), products);
+            LOG.info("Candle topics : " + this.candles.getTopics());
+            aggregator.listen(this);
+        }
+    }
+
+    /**
+     * Start the candle producer
+     */
+    @PostConstruct
+    public void start () throws Exception {
+
+        // Nothing to produce
+        if(this.candles == null) {
+            return;
+        }
+
+        // Stream to read configuration
+        InputStream is = null;
+
+        if(this.producerProps.resource.isPresent()) {
+            // Read config from resources
+            is = this.getClass().getResourceAsStream(this.producerProps.resource.get());
+            LOG.info("Loading configuration from resources");
+        }
+        else {
+            // Read config from file
+            is = new FileInputStream(new File(this.producerProps.file.get()));
+            LOG.info("Loading configuration from file");
+        }
+
+        // Load properties
+        Properties props = new Properties ();
+        props.load(is);
+        props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+
+        // Create the producer
+        this.start(new KafkaProducer<String, byte []>(props));
+    }
+
+    /**
+     * Start the candle producer with the provided Kafka producer
+     *
+     * @param producer Kafka producer
+     */
+    void start (Producer<String, byte []> producer) {
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "candle-producer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.candleProducer = producer;
+    }
+
+    /**
+     * Encode a closed bar or the update of a bar in progress and send it to the topic of its
+     * product on the send thread
+     *
+     * @param series Series of the bar
+     * @param slot Slot of the bar in the series
+     * @param closed True if the bar is closed
+     */
+    @Override
+    public void onCandle(CandleSeries series, int slot, boolean closed) {
+        if(this.candleProducer == null) {
+            return;
+        }
+        CoinbaseProduct product = series.getProduct();
+        ProducerRecord<String, byte []> record = new ProducerRecord<String, byte []>(this.candles.getTopic(product.getUnit(), product.getQuote()), product.getId(), CandleEncoder.encode(series, slot, closed));
+        try {
+            this.sender.execute(() -> this.send(record));
+        } catch (Exception ex) {
+            LOG.error("An error occured while sending a candle", ex);
+            this.healthy = false;
+        }
+    }
+
+    /**
+     * Send a record on the send thread
+     *
+     * @param record Candle record
+     */
+    private void send(ProducerRecord<String, byte []> record) {
+        try {
+            this.candleProducer.send(record, this.callback);
+        } catch (Exception ex) {
+            LOG.error("An error occured while sending a candle", ex);
+            this.healthy = false;
+        }
+    }
+
+    /**
+     * Indicates whether the service is healty or not
+     *
+     * @return Service  health
+     */
+    @Override
+    public HealthCheckResponse call() {
+        return this.healthy ? HealthCheckResponse.up("Candle producer OK") : HealthCheckResponse.down("Candle producer KO");
+    }
+
+    /**
+     * Close all the underlying resources
+     *
+     * @throws Exception An exception occured while closing resources
+     */
+    @Override
+    public void close() throws Exception {
+        if(this.candleProducer != null) {
+            this.sender.shutdown();
+            this.sender.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            this.candleProducer.close();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded window of records sent to Kafka and not yet acknowledged.
+ * 
+ * Records are sent with a callback instead of waiting for each acknowledgement. When the window
+ * is full, the sending thread is blocked until the broker acknowledges a record (backpressure).
+ * Acknowledgements and failures are tracked from the callbacks.
+ * 
+ * Records sent with a failure handler are kept in send order until they are acknowledged. Once
+ * one of them fails, the window stops sending : the next call to send or failover hands every
+ * record still in flight to its failure handler in send order, on the sending thread, followed
+ * by the records sent until the window is resumed. A record handed over this way is not
+ * acknowledged even if the broker acknowledges it later.
+ */
+public class KafkaSendWindow {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaSendWindow.class.getSimpleName());
+
+    /**
+     * Name used in logs
+     */
+    private final String name;
+
+    /**
+     * Max. records in flight
+     */
+    private final int maxInFlight;
+
+    /**
+     * Permits for records in flight
+     */
+    private final Semaphore permits;
+
+    /**
+     * Acknowledged records
+     */
+    private final AtomicLong acked;
+
+    /**
+     * Failed records
+     */
+    private final AtomicLong failed;
+
+    /**
+     * Health indicator - false once a record without failure handler failed
+     */
+    private volatile boolean healthy;
+
+    /**
+     * Failure handlers of the records sent and not yet acknowledged, by send sequence
+     */
+    private final ConcurrentSkipListMap<Long, Runnable> inFlight;
+
+    /**
+     * Sequence of the next record sent
+     */
+    private long sequence;
+
+    /**
+     * True once a record with a failure handler failed, until the window is resumed
+     */
+    private volatile boolean failing;
+
+    /**
+     * Constructor
+     * 
+     * @param name Name used in logs
+     * @param maxInFlight Max. records sent and not yet acknowledged
+     */
+    public KafkaSendWindow(String name, int maxInFlight) {
+        if(maxInFlight < 1) {
+            throw new IllegalArgumentException("Max. in flight records must be at least 1 : " + maxInFlight);
+        }
+        this.name = name;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.acked = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.healthy = true;
+        this.inFlight = new ConcurrentSkipListMap<>();
+        this.sequence = 0;
+        this.failing = false;
+    }
+
+    /**
+     * Send a record. Blocks while the window is full.
+     * 
+     * Sends are serialized so records reach the producer in the order this method is called.
+     * 
+     * @param producer Kafka producer
+     * @param record Record to send
+     * @param id Record id used to track failures
+     * @throws InterruptedException if the thread is interrupted while waiting for the window
+     */
+    public <K, V> void send(Producer<K, V> producer, ProducerRecord<K, V> record, long id) throws InterruptedException {
+        this.send(producer, record, id, null, null);
+    }
+
+    /**
+     * Send a record. Blocks while the window is full.
+     * 
+     * Sends are serialized so records reach the producer in the order this method is called.
+     * While the window is failing, the record is not sent : the records in flight then the
+     * record are handed to their failure handlers.
+     * 
+     * @param producer Kafka producer
+     * @param record Record to send
+     * @param id Record id used to track failures
+     * @param onAck Called when the record is acknowledged (optional)
+     * @param onFailure Called when the record could not be sent (optional) - the window stays
+     *                  healthy if the failure is handled
+     * @throws InterruptedException if the thread is interrupted while waiting for the window
+     * @throws RuntimeException if the record could not be sent and has no failure handler
+     */
+    public synchronized <K, V> void send(Producer<K, V> producer, ProducerRecord<K, V> record, long id, Runnable onAck, Runnable onFailure) throws InterruptedException {
+
+        // Keep the order of the records handed to the failure handlers
+        if(onFailure != null && this.failing) {
+            this.failover();
+            onFailure.run();
+            return;
+        }
+
+        // Wait for a free slot
+        this.permits.acquire();
+
+        long seq = this.sequence++;
+        if(onFailure != null) {
+            this.inFlight.put(seq, onFailure);
+        }
+        try {
+            producer.send(record, (metadata, ex) -> {
+                this.permits.release();
+                if(ex == null) {
+                    this.acked.incrementAndGet();
+                    if(onFailure == null) {
+                        if(onAck != null) {
+                            onAck.run();
+                        }
+                    }
+                    else if(this.inFlight.remove(seq) != null && onAck != null) {
+                        onAck.run();
+                    }
+                }
+                else if(onFailure != null) {
+                    // Handled with the records in flight by the sending thread
+                    this.failed.incrementAndGet();
+                    this.failing = true;
+                    LOG.warn(this.name + " record " + id + " could not be sent - Sends suspended", ex);
+                }
+                else {
+                    this.failed.incrementAndGet();
+                    this.healthy = false;
+                    LOG.error(this.name + " record " + id + " could not be sent", ex);
+                }
+            });
+        }
+        catch(RuntimeException ex) {
+            // Record was not sent : release its slot
+            this.inFlight.remove(seq);
+            this.permits.release();
+            if(onFailure == null) {
+                throw ex;
+            }
+            this.failed.incrementAndGet();
+            this.failing = true;
+            LOG.warn(this.name + " record " + id + " could not be sent - Sends suspended", ex);
+            this.failover();
+            onFailure.run();
+        }
+    }
+
+    /**
+     * Hand the records in flight to their failure handlers in send order if a record failed.
+     * New records are not sent until the window is resumed.
+     * 
+     * @return Records handed to their failure handlers
+     */
+    public synchronized int failover() {
+        if(!this.failing) {
+            return 0;
+        }
+        int count = 0;
+        for(Map.Entry<Long, Runnable> entry = this.inFlight.pollFirstEntry(); entry != null; entry = this.inFlight.pollFirstEntry()) {
+            entry.getValue().run();
+            count++;
+        }
+        if(count > 0) {
+            LOG.warn(this.name + " " + count + " records in flight handed to the failure handler");
+        }
+        return count;
+    }
+
+    /**
+     * Send records again once the failed records were handled (ex : the spool they were
+     * handed to is empty)
+     */
+    public synchronized void resume() {
+        if(this.failing) {
+            this.failover();
+            this.failing = false;
+            LOG.info(this.name + " sends resumed");
+        }
+    }
+
+    /**
+     * @return True once a record with a failure handler failed, until the window is resumed
+     */
+    public boolean isFailing() {
+        return this.failing;
+    }
+
+    /**
+     * @return Records sent and not yet acknowledged
+     */
+    public int getInFlight() {
+        return this.maxInFlight - this.permits.availablePermits();
+    }
+
+    /**
+     * @return Acknowledged records
+     */
+    public long getAcked() {
+        return this.acked.get();
+    }
+
+    /**
+     * @return Failed records
+     */
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+    /**
+     * @return False once a record without failure handler failed
+     */
+    public boolean isHealthy() {
+        return this.healthy;
+    }
+}
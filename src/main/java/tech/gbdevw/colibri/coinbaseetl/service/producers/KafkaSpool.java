@@ -0,0 +1,163 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.service.spool.DiskSpool;
+
+/**
+ * Events which could not be sent to Kafka, kept in a disk spool and replayed in order once
+ * the broker recovers.
+ * 
+ * While the spool is not empty, new events are appended to it instead of being sent so
+ * they reach Kafka in their original order.
+ */
+public class KafkaSpool<V extends MessageLite> implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaSpool.class.getSimpleName());
+
+    /**
+     * Disk spool of the serialized events
+     */
+    private final DiskSpool spool;
+
+    /**
+     * Parser of the serialized events
+     */
+    private final Parser<V> parser;
+
+    /**
+     * Topic of an event
+     */
+    private final Function<V, String> topic;
+
+    /**
+     * Record key of an event
+     */
+    private final ToLongFunction<V> key;
+
+    /**
+     * Called when a replayed event is acknowledged
+     */
+    private final Consumer<V> onAck;
+
+    /**
+     * Events replayed before waiting for their acknowledgements
+     */
+    private final int batchSize;
+
+    /**
+     * Constructor
+     * 
+     * @param spool Disk spool of the serialized events
+     * @param parser Parser of the serialized events
+     * @param topic Topic of an event
+     * @param key Record key of an event
+     * @param onAck Called when a replayed event is acknowledged
+     * @param batchSize Events replayed before waiting for their acknowledgements
+     */
+    public KafkaSpool(DiskSpool spool, Parser<V> parser, Function<V, String> topic, ToLongFunction<V> key, Consumer<V> onAck, int batchSize) {
+        this.spool = spool;
+        this.parser = parser;
+        this.topic = topic;
+        this.key = key;
+        this.onAck = onAck;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return True if events are waiting to be replayed : new events must be spooled
+     */
+    public boolean isActive() {
+        return !this.spool.isEmpty();
+    }
+
+    /**
+     * Spool an event
+     * 
+     * @param event Event
+     * @return False if the event was dropped because the spool is full
+     */
+    public boolean append(V event) {
+        try {
+            if(this.spool.append(event.toByteArray())) {
+                return true;
+            }
+            LOG.error("Spool " + this.spool.getName() + " full - Event dropped");
+        }
+        catch(IOException ex) {
+            LOG.error("Spool " + this.spool.getName() + " failed - Event dropped", ex);
+        }
+        return false;
+    }
+
+    /**
+     * Replay the spooled events to Kafka in order, until the spool is empty or a send fails.
+     * 
+     * @param producer Kafka producer
+     * @return Events replayed
+     * @throws Exception if an event could not be sent - it stays in the spool with the next ones
+     */
+    public long drain(Producer<Long, V> producer) throws Exception {
+        long replayed = 0;
+        List<byte []> records = this.spool.peek(this.batchSize);
+        while(!records.isEmpty()) {
+
+            // Send the batch then wait for the acknowledgements
+            List<V> events = new ArrayList<>(records.size());
+            List<Future<RecordMetadata>> acks = new ArrayList<>(records.size());
+            for(byte [] record : records) {
+                V event = this.parser.parseFrom(record);
+                events.add(event);
+                acks.add(producer.send(new ProducerRecord<Long, V>(this.topic.apply(event), this.key.applyAsLong(event), event)));
+            }
+
+            // Remove the acknowledged events even if a later one failed, so they are not replayed twice
+            int acked = 0;
+            try {
+                for(; acked < acks.size(); acked++) {
+                    acks.get(acked).get();
+                    this.onAck.accept(events.get(acked));
+                }
+            }
+            finally {
+                this.spool.remove(acked);
+                replayed += acked;
+            }
+            records = this.spool.peek(this.batchSize);
+        }
+        return replayed;
+    }
+
+    /**
+     * @return Events dropped because the spool was full
+     */
+    public long getDropped() {
+        return this.spool.getDropped();
+    }
+
+    /**
+     * Close the spool
+     */
+    @Override
+    public void close() throws Exception {
+        this.spool.close();
+    }
+}
@@ -0,0 +1,89 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.domain.Currency;
+
+/**
+ * Class which resolves the topic of a product from a topic template.
+ * 
+ * The {product} placeholder of the template is replaced by the lower case product id
+ * (ex : coinbase-{product}-matches -> coinbase-btc-usd-matches). A template without
+ * placeholder routes all products to the same topic.
+ */
+public class KafkaTopicRouter {
+
+    /**
+     * Placeholder replaced by the product id
+     */
+    public static final String PRODUCT_PLACEHOLDER = "{product}";
+
+    /**
+     * Topic template
+     */
+    private final String template;
+
+    /**
+     * Supported products
+     */
+    private final CoinbaseProductTable products;
+
+    /**
+     * Topics indexed by unit and quote currency ordinals
+     */
+    private final String [][] topics;
+
+    /**
+     * Constructor
+     * 
+     * @param template Topic template
+     * @param products Supported products
+     */
+    public KafkaTopicRouter(String template, CoinbaseProductTable products) {
+        this.template = template;
+        this.products = products;
+        int currencies = Currency.values().length;
+        this.topics = new String [currencies][currencies];
+        for(CoinbaseProduct product : products.getProducts().values()) {
+            this.topics[product.getUnit().ordinal()][product.getQuote().ordinal()] = this.resolve(product);
+        }
+    }
+
+    /**
+     * Return the topic of a product
+     * 
+     * @param unit Unit currency
+     * @param quote Quote currency
+     * @return The topic
+     */
+    public String getTopic(Currency unit, Currency quote) {
+        String topic = this.topics[unit.ordinal()][quote.ordinal()];
+        return topic != null ? topic : this.resolve(this.products.get(unit, quote));
+    }
+
+    /**
+     * @return Topics of the supported products
+     */
+    public Set<String> getTopics() {
+        Set<String> all = new TreeSet<>();
+        for(CoinbaseProduct product : this.products.getProducts().values()) {
+            all.add(this.resolve(product));
+        }
+        return Collections.unmodifiableSet(all);
+    }
+
+    /**
+     * Resolve the topic of a product from the template
+     * 
+     * @param product Product
+     * @return The topic
+     */
+    private String resolve(CoinbaseProduct product) {
+        return this.template.replace(PRODUCT_PLACEHOLDER, product.getId().toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,262 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Liveness;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L2Book;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L2BookEncoder;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L2BookListener;
+import tech.gbdevw.colibri.coinbaseetl.service.book.L2BookService;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Class which sends the level2 updates and the depth snapshots of the books to the underlying
+ * messaging system (see L2BookEncoder for the record format). Records are keyed by product id.
+ *
+ * Records are encoded on the thread which maintains the book, while the book is locked, then
+ * sent in order by the send thread of the producer without waiting for their acknowledgement :
+ * the websocket thread and the book lock never wait for Kafka. A depth snapshot supersedes the
+ * previous ones, so failed records are not spooled.
+ */
+@RegisterForReflection
+@ApplicationScoped
+@IfBuildProperty(name = "confluent.enabled", stringValue = "true")
+@Startup
+@Liveness
+public class L2BookProducer implements L2BookListener, AutoCloseable, HealthCheck {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(L2BookProducer.class.getSimpleName());
+
+    /**
+     * Time in ms given to the send thread to send the pending records when closing
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * Kafka producer (null if the books are not produced)
+     */
+    private Producer<String, byte []> bookProducer;
+
+    /**
+     * Topic of the level2 updates of each product (null if not produced)
+     */
+    private KafkaTopicRouter deltas;
+
+    /**
+     * Topic of the depth snapshots of each product (null if not produced)
+     */
+    private KafkaTopicRouter depths;
+
+    /**
+     * Producer configuration
+     */
+    private ConfluentProperties producerProps;
+
+    /**
+     * Health indicator
+     */
+    private volatile boolean healthy;
+
+    /**
+     * Callback of the sends
+     */
+    private Callback callback;
+
+    /**
+     * Send thread
+     */
+    private ExecutorService sender;
+
+    /**
+     * Constructor.
+     *
+     * @param config Properties to configure Kafka & book topics
+     * @param products Supported products
+     * @param books Level2 books
+     */
+    public L2BookProducer(ConfluentProperties config, CoinbaseProductTable products, L2BookService books) {
+
+        this.producerProps = config;
+        this.healthy = true;
+        this.callback = (metadata, ex) -> {
+            if(ex != null) {
+                LOG.error("An error occured while sending a book record", ex);
+                this.healthy = false;
+            }
+        };
+        if(!books.isEnabled()) {
+            return;
+        }
+        if(config.level2.isPresent()) {
+            this.deltas = new KafkaTopicRouter(config.level2.get(), products);
+            LOG.info("Level2 topics : " + this.deltas.getTopics());
+        }
+        if(config.depth.isPresent()) {
+            this.depths = new KafkaTopicRouter(config.depth.get(), products);
+            LOG.info("Depth topics : " + this.depths.getTopics());
+        }
+        if(this.deltas != null || this.depths != null) {
+            books.listen(this);
+        }
+    }
+
+    /**
+     * Start the book producer
+     */
+    @PostConstruct
+    public void start () throws Exception {
+
+        // Nothing to produce
+        if(this.deltas == null && this.depths == null) {
+            return;
+        }
+
+        // Stream to read configuration
+        InputStream is = null;
+
+        if(this.producerProps.resource.isPresent()) {
+            // Read config from resources
+            is = this.getClass().getResourceAsStream(this.producerProps.resource.get());
+            LOG.info("Loading configuration from resources");
+        }
+        else {
+            // Read config from file
+            is = new FileInputStream(new File(this.producerProps.file.get()));
+            LOG.info("Loading configuration from file");
+        }
+
+        // Load properties
+        Properties props = new Properties ();
+        props.load(is);
+        props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+
+        // Create the producer
+        this.start(new KafkaProducer<String, byte []>(props));
+    }
+
+    /**
+     * Start the book producer with the provided Kafka producer
+     *
+     * @param producer Kafka producer
+     */
+    void start (Producer<String, byte []> producer) {
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "book-producer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bookProducer = producer;
+    }
+
+    /**
+     * Encode a level2 update applied to a book and send it on the send thread
+     *
+     * @param book Book
+     * @param update l2update message
+     */
+    @Override
+    public void onDelta(L2Book book, CoinbaseWSL2Message update) {
+        if(this.deltas != null && this.bookProducer != null) {
+            this.send(this.deltas, book.getProduct(), L2BookEncoder.encodeDelta(update));
+        }
+    }
+
+    /**
+     * Encode the depth snapshot of a book and send it on the send thread
+     *
+     * @param book Book
+     * @param depth Levels of each side
+     */
+    @Override
+    public void onDepth(L2Book book, int depth) {
+        if(this.depths != null && this.bookProducer != null) {
+            this.send(this.depths, book.getProduct(), L2BookEncoder.encodeDepth(book, depth));
+        }
+    }
+
+    /**
+     * Hand a book record to the send thread
+     *
+     * @param router Topics of the record type
+     * @param product Product
+     * @param value Encoded record
+     */
+    private void send(KafkaTopicRouter router, CoinbaseProduct product, byte [] value) {
+        ProducerRecord<String, byte []> record = new ProducerRecord<String, byte []>(router.getTopic(product.getUnit(), product.getQuote()), product.getId(), value);
+        try {
+            this.sender.execute(() -> this.send(record));
+        } catch (Exception ex) {
+            LOG.error("An error occured while sending a book record", ex);
+            this.healthy = false;
+        }
+    }
+
+    /**
+     * Send a book record to the topic of its product on the send thread
+     *
+     * @param record Book record
+     */
+    private void send(ProducerRecord<String, byte []> record) {
+        try {
+            this.bookProducer.send(record, this.callback);
+        } catch (Exception ex) {
+            LOG.error("An error occured while sending a book record", ex);
+            this.healthy = false;
+        }
+    }
+
+    /**
+     * Indicates whether the service is healty or not
+     *
+     * @return Service  health
+     */
+    @Override
+    public HealthCheckResponse call() {
+        return this.healthy ? HealthCheckResponse.up("Book producer OK") : HealthCheckResponse.down("Book producer KO");
+    }
+
+    /**
+     * Close all the underlying resources
+     *
+     * @throws Exception An exception occured while closing resources
+     */
+    @Override
+    public void close() throws Exception {
+        if(this.bookProducer != null) {
+            this.sender.shutdown();
+            this.sender.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            this.bookProducer.close();
+        }
+    }
+}
@@ -3,7 +3,13 @@ package tech.gbdevw.colibri.coinbaseetl.service.producers;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -12,21 +18,34 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.LongSerializer;
 import org.eclipse.microprofile.health.HealthCheck;
 import org.eclipse.microprofile.health.HealthCheckResponse;
 import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
 import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.batching.EventBatcher;
+import tech.gbdevw.colibri.coinbaseetl.service.checkpoint.CheckpointService;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.LatencyTracker;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.coinbaseetl.service.spool.DiskSpool;
 import tech.gbdevw.colibri.domain.Match;
 import tech.gbdevw.colibri.domain.serde.MatchSerializer;
 import io.quarkus.arc.properties.IfBuildProperty;
 import io.quarkus.runtime.Startup;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import io.quarkus.vertx.ConsumeEvent;
+import io.vertx.core.Vertx;
 
 /**
  * This class provides a service to handle match events and send them on a messaging system.
@@ -49,9 +68,9 @@ public class MatchProducer implements AutoCloseable, HealthCheck {
     private Producer<Long, Match> matchProducer;
 
     /**
-     * Topic to use
+     * Topic of each product
      */
-    private String topic;
+    private KafkaTopicRouter router;
 
     /**
      * Producer configuration
@@ -63,16 +82,74 @@ public class MatchProducer implements AutoCloseable, HealthCheck {
      */
     private boolean healthy;
 
+    /**
+     * Window of records in flight (asynchronous sends only)
+     */
+    private KafkaSendWindow window;
+
+    /**
+     * Vertx instance used to dispatch events to worker threads
+     */
+    private Vertx vertx;
+
+    /**
+     * Registry for producer metrics
+     */
+    private MetricRegistry registry;
+
+    /**
+     * Batching stage of each topic (batching only)
+     */
+    private Map<String, EventBatcher<Match>> batchers;
+
+    /**
+     * Checkpoint of the acknowledged events
+     */
+    private CheckpointService checkpoint;
+
+    /**
+     * Spool of the events which could not be sent (spooling only)
+     */
+    private KafkaSpool<Match> spool;
+
+    /**
+     * Latency of the sent events
+     */
+    private LatencyTracker latency;
+
     /**
      * Constructor.
      * 
      * @param config Properties to configure Kafka and the match producer
+     * @param products Supported products
+     * @param vertx Vertx instance
+     * @param registry Metric registry
+     * @param checkpoint Checkpoint of the acknowledged events
+     * @param latency Latency of the sent events
+     * @param busMetrics Metrics of the event bus
      */
-    public MatchProducer(ConfluentProperties config) throws Exception {
+    public MatchProducer(ConfluentProperties config, CoinbaseProductTable products, Vertx vertx, MetricRegistry registry, CheckpointService checkpoint, LatencyTracker latency, BusMetrics busMetrics) throws Exception {
 
         this.producerProps = config;
-        this.topic = config.match.get();
+        this.vertx = vertx;
+        this.registry = registry;
+        this.checkpoint = checkpoint;
+        this.latency = latency;
+        this.router = new KafkaTopicRouter(config.match.get(), products);
+        LOG.info("Topics : " + this.router.getTopics());
         this.healthy = true;
+
+        // Asynchronous sends with a bounded window of records in flight
+        if(config.async) {
+            this.window = new KafkaSendWindow("Match producer", config.maxInFlight);
+            registry.register(Metadata.builder()
+                .withName("kafka.inflight")
+                .withDescription("Records sent to Kafka and not yet acknowledged")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) this.window::getInFlight, new Tag("producer", "match"));
+            LOG.info("Asynchronous sends enabled - Max. in flight : " + config.maxInFlight);
+        }
+        busMetrics.consumer(CoinbaseWsEventAddresses.dedupedMatchEventAddress);
     }
 
     /**
@@ -101,23 +178,197 @@ public class MatchProducer implements AutoCloseable, HealthCheck {
         props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class.getName());
         props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, MatchSerializer.class.getName());
 
+        // Retries must not reorder records when several records are in flight
+        if(this.window != null) {
+            props.putIfAbsent(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+        }
+
         // Create the producer
-        this.matchProducer = new KafkaProducer<Long, Match>(props);
+        this.start(new KafkaProducer<Long, Match>(props));
+    }
+
+    /**
+     * Start the match producer with the provided Kafka producer
+     * 
+     * @param producer Kafka producer
+     */
+    void start (Producer<Long, Match> producer) throws Exception {
+
+        this.matchProducer = producer;
+
+        // Spool events on disk while Kafka is unreachable & replay them periodically
+        if(this.producerProps.spool.isPresent()) {
+            DiskSpool disk = new DiskSpool(Paths.get(this.producerProps.spool.get(), "matches"), "matches", this.producerProps.spoolSegmentSize, this.producerProps.spoolMaxSize, this.registry);
+            this.spool = new KafkaSpool<>(disk, Match.parser(), match -> this.router.getTopic(match.getUnit(), match.getQuote()), Match::getId, match -> this.checkpoint.ackTrade(match.getUnit(), match.getQuote(), match.getId()), this.producerProps.batchSize);
+            this.vertx.setPeriodic(this.producerProps.spoolDrainInterval, id -> this.vertx.<Void>executeBlocking(promise -> {
+                this.drainSpool();
+                promise.complete();
+            }, true, null));
+            LOG.info("Spooling enabled - Directory : " + this.producerProps.spool.get() + " - Max. size : " + this.producerProps.spoolMaxSize + " bytes");
+        }
+
+        // Batch events of each topic bounded by size & time
+        if(this.producerProps.batch) {
+            this.batchers = new ConcurrentHashMap<>();
+            for(String topic : this.router.getTopics()) {
+                this.batchers.put(topic, this.newBatcher(topic));
+            }
+            LOG.info("Batching enabled - Size : " + this.producerProps.batchSize + " - Linger : " + this.producerProps.batchLinger + " ms");
+        }
     }
 
-    @ConsumeEvent(value = CoinbaseWsEventAddresses.websocketMatchEventAddress, blocking = true)
+    /**
+     * Consume a match event on the event loop and dispatch it to a worker thread, directly
+     * or in a batch.
+     * 
+     * @param match Match event
+     */
+    @ConsumeEvent(value = CoinbaseWsEventAddresses.dedupedMatchEventAddress)
+    public void consumeMatchEvent(Match match) {
+        if(this.batchers != null) {
+            this.batchers.computeIfAbsent(this.router.getTopic(match.getUnit(), match.getQuote()), this::newBatcher).add(match);
+        }
+        else {
+            this.vertx.<Void>executeBlocking(promise -> {
+                this.produceMatchEvent(match);
+                promise.complete();
+            }, true, null);
+        }
+    }
+
+    /**
+     * Send a Match event to the underlying messaging system.
+     * 
+     * @param match Match event
+     */
     public void produceMatchEvent(Match match) {
         try {
-            LOG.trace("Processing match event : " + match.getId());
-            ProducerRecord<Long, Match> record = new ProducerRecord<Long, Match>(this.topic, match.getId(), match);
-            this.matchProducer.send(record).get();
-            LOG.info("Match event processed : " + match.getId());
+            // Keep the order of the events waiting in the spool
+            if(this.spool != null && this.spool.isActive()) {
+                this.spoolMatchEvent(match);
+                return;
+            }
+            ProducerRecord<Long, Match> record = new ProducerRecord<Long, Match>(this.router.getTopic(match.getUnit(), match.getQuote()), match.getId(), match);
+            this.latency.matchSent(match);
+            if(this.window != null) {
+                // Failures are tracked by the send window
+                this.window.send(this.matchProducer, record, match.getId(), () -> this.ackMatchEvent(match), this.spool != null ? () -> this.spoolMatchEvent(match) : null);
+            }
+            else {
+                this.matchProducer.send(record).get();
+                this.ackMatchEvent(match);
+            }
+        } catch (Exception ex) {
+            if(this.spool != null) {
+                LOG.warn("Match event " + match.getId() + " could not be sent - Spooled", ex);
+                this.spoolMatchEvent(match);
+            }
+            else {
+                LOG.error("An error occured while processing the match event", ex);
+                this.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Send a batch of Match events to the underlying messaging system. All records are sent
+     * before waiting for their acknowledgements.
+     * 
+     * @param matches Match events
+     */
+    public void produceMatchEvents(List<Match> matches) {
+        // Events acknowledged or handed to the send window, in order
+        int handled = 0;
+        try {
+            // Keep the order of the events waiting in the spool
+            if(this.spool != null && this.spool.isActive()) {
+                matches.forEach(this::spoolMatchEvent);
+                return;
+            }
+            List<Future<RecordMetadata>> acks = new ArrayList<>(matches.size());
+            for(Match match : matches) {
+                ProducerRecord<Long, Match> record = new ProducerRecord<Long, Match>(this.router.getTopic(match.getUnit(), match.getQuote()), match.getId(), match);
+                this.latency.matchSent(match);
+                if(this.window != null) {
+                    // Failures are tracked by the send window
+                    this.window.send(this.matchProducer, record, match.getId(), () -> this.ackMatchEvent(match), this.spool != null ? () -> this.spoolMatchEvent(match) : null);
+                    handled++;
+                }
+                else {
+                    acks.add(this.matchProducer.send(record));
+                }
+            }
+            for(int i = 0; i < acks.size(); i++) {
+                acks.get(i).get();
+                this.ackMatchEvent(matches.get(i));
+                handled++;
+            }
         } catch (Exception ex) {
-            LOG.error("An error occured while processing the match event", ex);
+            if(this.spool != null) {
+                // Events acknowledged or handed to the send window are not spooled again
+                LOG.warn("Match batch could not be sent - " + (matches.size() - handled) + " events spooled", ex);
+                matches.subList(handled, matches.size()).forEach(this::spoolMatchEvent);
+            }
+            else {
+                LOG.error("An error occured while processing the match batch", ex);
+                this.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Record the acknowledgement of a Match event by Kafka
+     * 
+     * @param match Match event
+     */
+    private void ackMatchEvent(Match match) {
+        this.latency.matchAcked(match);
+        this.checkpoint.ackTrade(match.getUnit(), match.getQuote(), match.getId());
+    }
+
+    /**
+     * Append a Match event to the spool. The producer is unhealthy once an event is dropped.
+     * 
+     * @param match Match event
+     */
+    private void spoolMatchEvent(Match match) {
+        if(!this.spool.append(match)) {
             this.healthy = false;
         }
     }
 
+    /**
+     * Replay the spooled events to the underlying messaging system. A failed replay is
+     * retried at the next drain. The send window is resumed once the spool is empty.
+     */
+    private void drainSpool() {
+        try {
+            // Spool the records in flight when a record of the send window failed
+            if(this.window != null) {
+                this.window.failover();
+            }
+            long replayed = this.spool.drain(this.matchProducer);
+            if(replayed > 0) {
+                LOG.info("Spool drained : " + replayed + " events");
+            }
+            if(this.window != null) {
+                this.window.resume();
+            }
+        } catch (Exception ex) {
+            LOG.warn("Spool could not be drained", ex);
+        }
+    }
+
+    /**
+     * Create the batching stage of a topic
+     * 
+     * @param topic Topic
+     * @return Batching stage
+     */
+    private EventBatcher<Match> newBatcher(String topic) {
+        return new EventBatcher<>(topic, this.producerProps.batchSize, this.producerProps.batchLinger, this.vertx, this.registry, this::produceMatchEvents);
+    }
+
     /**
      * Indicates whether the service is healty or not
      * 
@@ -125,7 +376,7 @@ public class MatchProducer implements AutoCloseable, HealthCheck {
      */
     @Override
     public HealthCheckResponse call() {
-        return this.healthy ? HealthCheckResponse.up("Match producer OK") : HealthCheckResponse.down("Match producer KO");
+        return this.healthy && (this.window == null || this.window.isHealthy()) ? HealthCheckResponse.up("Match producer OK") : HealthCheckResponse.down("Match producer KO");
     }
 
     /**
@@ -135,6 +386,18 @@ public class MatchProducer implements AutoCloseable, HealthCheck {
      */
     @Override
     public void close() throws Exception {
+        if(this.batchers != null) {
+            for(EventBatcher<Match> batcher : this.batchers.values()) {
+                batcher.close();
+            }
+        }
         this.matchProducer.close();
+        if(this.spool != null) {
+            // Spool the records of the send window which failed while closing
+            if(this.window != null) {
+                this.window.failover();
+            }
+            this.spool.close();
+        }
     }
 }
\ No newline at end of file
@@ -3,7 +3,13 @@ package tech.gbdevw.colibri.coinbaseetl.service.producers;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -12,21 +18,35 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.LongSerializer;
 import org.eclipse.microprofile.health.HealthCheck;
 import org.eclipse.microprofile.health.HealthCheckResponse;
 import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
 import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.batching.EventBatcher;
+import tech.gbdevw.colibri.coinbaseetl.service.batching.TickerConflator;
+import tech.gbdevw.colibri.coinbaseetl.service.checkpoint.CheckpointService;
+import tech.gbdevw.colibri.coinbaseetl.service.latency.LatencyTracker;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.coinbaseetl.service.spool.DiskSpool;
 import tech.gbdevw.colibri.domain.Ticker;
 import tech.gbdevw.colibri.domain.serde.TickerSerializer;
 import io.quarkus.arc.properties.IfBuildProperty;
 import io.quarkus.runtime.Startup;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import io.quarkus.vertx.ConsumeEvent;
+import io.vertx.core.Vertx;
 
 /**
  * Class which send ticker eventsto the undelrying messaging system
@@ -49,9 +69,14 @@ public class TickerProducer implements AutoCloseable, HealthCheck {
     private Producer<Long, Ticker> tickerProducer;
 
     /**
-     * Topic to use
+     * Supported products
      */
-    private String topic;
+    private CoinbaseProductTable products;
+
+    /**
+     * Topic of each product
+     */
+    private KafkaTopicRouter router;
 
     /**
      * Producer configuration
@@ -63,16 +88,80 @@ public class TickerProducer implements AutoCloseable, HealthCheck {
      */
     private boolean healthy;
 
+    /**
+     * Window of records in flight (asynchronous sends only)
+     */
+    private KafkaSendWindow window;
+
+    /**
+     * Vertx instance used to dispatch events to worker threads
+     */
+    private Vertx vertx;
+
+    /**
+     * Registry for producer metrics
+     */
+    private MetricRegistry registry;
+
+    /**
+     * Batching stage of each topic (batching only)
+     */
+    private Map<String, EventBatcher<Ticker>> batchers;
+
+    /**
+     * Latest ticker of each product waiting to be sent (conflation only)
+     */
+    private TickerConflator conflator;
+
+    /**
+     * Checkpoint of the acknowledged events
+     */
+    private CheckpointService checkpoint;
+
+    /**
+     * Spool of the events which could not be sent (spooling only)
+     */
+    private KafkaSpool<Ticker> spool;
+
+    /**
+     * Latency of the sent events
+     */
+    private LatencyTracker latency;
+
     /**
      * Constructor.
      * 
      * @param config Properties to configure Kafka & ticker producer
+     * @param products Supported products
+     * @param vertx Vertx instance
+     * @param registry Metric registry
+     * @param checkpoint Checkpoint of the acknowledged events
+     * @param latency Latency of the sent events
+     * @param busMetrics Metrics of the event bus
      */
-    public TickerProducer(ConfluentProperties config) throws Exception {
+    public TickerProducer(ConfluentProperties config, CoinbaseProductTable products, Vertx vertx, MetricRegistry registry, CheckpointService checkpoint, LatencyTracker latency, BusMetrics busMetrics) throws Exception {
 
         this.producerProps = config;
-        this.topic = config.ticker.get();
+        this.products = products;
+        this.vertx = vertx;
+        this.registry = registry;
+        this.checkpoint = checkpoint;
+        this.latency = latency;
+        this.router = new KafkaTopicRouter(config.ticker.get(), products);
+        LOG.info("Topics : " + this.router.getTopics());
         this.healthy = true;
+
+        // Asynchronous sends with a bounded window of records in flight
+        if(config.async) {
+            this.window = new KafkaSendWindow("Ticker producer", config.maxInFlight);
+            registry.register(Metadata.builder()
+                .withName("kafka.inflight")
+                .withDescription("Records sent to Kafka and not yet acknowledged")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) this.window::getInFlight, new Tag("producer", "ticker"));
+            LOG.info("Asynchronous sends enabled - Max. in flight : " + config.maxInFlight);
+        }
+        busMetrics.consumer(CoinbaseWsEventAddresses.websocketTickEventAddress);
     }
 
     /**
@@ -101,8 +190,90 @@ public class TickerProducer implements AutoCloseable, HealthCheck {
         props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class.getName());
         props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, TickerSerializer.class.getName());
 
+        // Retries must not reorder records when several records are in flight
+        if(this.window != null) {
+            props.putIfAbsent(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+        }
+
         // Create the producer
-        this.tickerProducer = new KafkaProducer<Long, Ticker>(props);
+        this.start(new KafkaProducer<Long, Ticker>(props));
+    }
+
+    /**
+     * Start the ticker producer with the provided Kafka producer
+     * 
+     * @param producer Kafka producer
+     */
+    void start (Producer<Long, Ticker> producer) throws Exception {
+
+        this.tickerProducer = producer;
+
+        // Spool events on disk while Kafka is unreachable & replay them periodically
+        if(this.producerProps.spool.isPresent()) {
+            DiskSpool disk = new DiskSpool(Paths.get(this.producerProps.spool.get(), "tickers"), "tickers", this.producerProps.spoolSegmentSize, this.producerProps.spoolMaxSize, this.registry);
+            this.spool = new KafkaSpool<>(disk, Ticker.parser(), ticker -> this.router.getTopic(ticker.getUnit(), ticker.getQuote()), Ticker::getId, ticker -> this.checkpoint.ackTicker(ticker.getUnit(), ticker.getQuote(), ticker.getId()), this.producerProps.batchSize);
+            this.vertx.setPeriodic(this.producerProps.spoolDrainInterval, id -> this.vertx.<Void>executeBlocking(promise -> {
+                this.drainSpool();
+                promise.complete();
+            }, true, null));
+            LOG.info("Spooling enabled - Directory : " + this.producerProps.spool.get() + " - Max. size : " + this.producerProps.spoolMaxSize + " bytes");
+        }
+
+        // Batch events of each topic bounded by size & time
+        if(this.producerProps.batch) {
+            this.batchers = new ConcurrentHashMap<>();
+            for(String topic : this.router.getTopics()) {
+                this.batchers.put(topic, this.newBatcher(topic));
+            }
+            LOG.info("Batching enabled - Size : " + this.producerProps.batchSize + " - Linger : " + this.producerProps.batchLinger + " ms");
+        }
+
+        // Send only the latest ticker of each product at the conflation interval of the product
+        if(this.producerProps.tickerConflation > 0 || this.producerProps.tickerConflationProducts.isPresent()) {
+            this.conflator = new TickerConflator(this.products, this.producerProps.tickerConflation, TickerConflator.parseIntervals(this.producerProps.tickerConflationProducts.orElse("")), this.vertx, this.registry, this::dispatchTickerEvent);
+        }
+    }
+
+    /**
+     * Consume a ticker event on the event loop and dispatch it to a worker thread, directly
+     * or in a batch, unless it is conflated.
+     * 
+     * @param ticker Ticker event
+     */
+    @ConsumeEvent(value = CoinbaseWsEventAddresses.websocketTickEventAddress)
+    public void consumeTickerEvent(Ticker ticker) {
+        if(!this.conflateTickerEvent(ticker)) {
+            this.dispatchTickerEvent(ticker);
+        }
+    }
+
+    /**
+     * Replace the ticker waiting to be sent for the product of a ticker event. The event can be
+     * offered from any thread.
+     * 
+     * @param ticker Ticker event
+     * @return False if the tickers of the product are not conflated (the event must be sent)
+     */
+    public boolean conflateTickerEvent(Ticker ticker) {
+        return this.conflator != null && this.conflator.offer(ticker);
+    }
+
+    /**
+     * Dispatch a ticker event to a worker thread, directly or in a batch. Called on the event
+     * loop.
+     * 
+     * @param ticker Ticker event
+     */
+    private void dispatchTickerEvent(Ticker ticker) {
+        if(this.batchers != null) {
+            this.batchers.computeIfAbsent(this.router.getTopic(ticker.getUnit(), ticker.getQuote()), this::newBatcher).add(ticker);
+        }
+        else {
+            this.vertx.<Void>executeBlocking(promise -> {
+                this.produceTickerEvent(ticker);
+                promise.complete();
+            }, true, null);
+        }
     }
 
     /**
@@ -110,19 +281,134 @@ public class TickerProducer implements AutoCloseable, HealthCheck {
      * 
      * @param ticker Ticker event
      */
-    @ConsumeEvent(value = CoinbaseWsEventAddresses.websocketTickEventAddress, blocking = true)
     public void produceTickerEvent(Ticker ticker) {
         try {
-            LOG.trace("Processing ticker event : " + ticker.getId());
-            ProducerRecord<Long, Ticker> record = new ProducerRecord<Long, Ticker>(this.topic, ticker.getId(), ticker);
-            this.tickerProducer.send(record).get();
-            LOG.info("Match ticker processed : " + ticker.getId());
+            // Keep the order of the events waiting in the spool
+            if(this.spool != null && this.spool.isActive()) {
+                this.spoolTickerEvent(ticker);
+                return;
+            }
+            ProducerRecord<Long, Ticker> record = new ProducerRecord<Long, Ticker>(this.router.getTopic(ticker.getUnit(), ticker.getQuote()), ticker.getId(), ticker);
+            this.latency.tickerSent(ticker);
+            if(this.window != null) {
+                // Failures are tracked by the send window
+                this.window.send(this.tickerProducer, record, ticker.getId(), () -> this.ackTickerEvent(ticker), this.spool != null ? () -> this.spoolTickerEvent(ticker) : null);
+            }
+            else {
+                this.tickerProducer.send(record).get();
+                this.ackTickerEvent(ticker);
+            }
         } catch (Exception ex) {
-            LOG.error("An error occured while processing the ticker event", ex);
+            if(this.spool != null) {
+                LOG.warn("Ticker event " + ticker.getId() + " could not be sent - Spooled", ex);
+                this.spoolTickerEvent(ticker);
+            }
+            else {
+                LOG.error("An error occured while processing the ticker event", ex);
+                this.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Send a batch of Ticker events to the underlying messaging system. All records are sent
+     * before waiting for their acknowledgements.
+     * 
+     * @param tickers Ticker events
+     */
+    public void produceTickerEvents(List<Ticker> tickers) {
+        // Events acknowledged or handed to the send window, in order
+        int handled = 0;
+        try {
+            // Keep the order of the events waiting in the spool
+            if(this.spool != null && this.spool.isActive()) {
+                tickers.forEach(this::spoolTickerEvent);
+                return;
+            }
+            List<Future<RecordMetadata>> acks = new ArrayList<>(tickers.size());
+            for(Ticker ticker : tickers) {
+                ProducerRecord<Long, Ticker> record = new ProducerRecord<Long, Ticker>(this.router.getTopic(ticker.getUnit(), ticker.getQuote()), ticker.getId(), ticker);
+                this.latency.tickerSent(ticker);
+                if(this.window != null) {
+                    // Failures are tracked by the send window
+                    this.window.send(this.tickerProducer, record, ticker.getId(), () -> this.ackTickerEvent(ticker), this.spool != null ? () -> this.spoolTickerEvent(ticker) : null);
+                    handled++;
+                }
+                else {
+                    acks.add(this.tickerProducer.send(record));
+                }
+            }
+            for(int i = 0; i < acks.size(); i++) {
+                acks.get(i).get();
+                this.ackTickerEvent(tickers.get(i));
+                handled++;
+            }
+        } catch (Exception ex) {
+            if(this.spool != null) {
+                // Events acknowledged or handed to the send window are not spooled again
+                LOG.warn("Ticker batch could not be sent - " + (tickers.size() - handled) + " events spooled", ex);
+                tickers.subList(handled, tickers.size()).forEach(this::spoolTickerEvent);
+            }
+            else {
+                LOG.error("An error occured while processing the ticker batch", ex);
+                this.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Record the acknowledgement of a Ticker event by Kafka
+     * 
+     * @param ticker Ticker event
+     */
+    private void ackTickerEvent(Ticker ticker) {
+        this.latency.tickerAcked(ticker);
+        this.checkpoint.ackTicker(ticker.getUnit(), ticker.getQuote(), ticker.getId());
+    }
+
+    /**
+     * Append a Ticker event to the spool. The producer is unhealthy once an event is dropped.
+     * 
+     * @param ticker Ticker event
+     */
+    private void spoolTickerEvent(Ticker ticker) {
+        if(!this.spool.append(ticker)) {
             this.healthy = false;
         }
     }
 
+    /**
+     * Replay the spooled events to the underlying messaging system. A failed replay is
+     * retried at the next drain. The send window is resumed once the spool is empty.
+     */
+    private void drainSpool() {
+        try {
+            // Spool the records in flight when a record of the send window failed
+            if(this.window != null) {
+                this.window.failover();
+            }
+            long replayed = this.spool.drain(this.tickerProducer);
+            if(replayed > 0) {
+                LOG.info("Spool drained : " + replayed + " events");
+            }
+            if(this.window != null) {
+                this.window.resume();
+            }
+        } catch (Exception ex) {
+            LOG.warn("Spool could not be drained", ex);
+        }
+    }
+
+    /**
+     * Create the batching stage of a topic
+     * 
+     * @param topic Topic
+     * @return Batching stage
+     */
+    private EventBatcher<Ticker> newBatcher(String topic) {
+        return new EventBatcher<>(topic, this.producerProps.batchSize, this.producerProps.batchLinger, this.vertx, this.registry, this::produceTickerEvents);
+    }
+
     /**
      * Indicates whether the service is healty or not
      * 
@@ -130,7 +416,7 @@ public class TickerProducer implements AutoCloseable, HealthCheck {
      */
     @Override
     public HealthCheckResponse call() {
-        return this.healthy ? HealthCheckResponse.up("Match producer OK") : HealthCheckResponse.down("Match producer KO");
+        return this.healthy && (this.window == null || this.window.isHealthy()) ? HealthCheckResponse.up("Ticker producer OK") : HealthCheckResponse.down("Ticker producer KO");
     }
 
     /**
@@ -140,6 +426,28 @@ public class TickerProducer implements AutoCloseable, HealthCheck {
      */
     @Override
     public void close() throws Exception {
+
+        // Stop the conflation : its last tickers are sent after the pending batches, on the
+        // calling thread so they are sent before the producer is closed
+        List<Ticker> conflated = new ArrayList<>();
+        if(this.conflator != null) {
+            this.conflator.close(conflated::add);
+        }
+        if(this.batchers != null) {
+            for(EventBatcher<Ticker> batcher : this.batchers.values()) {
+                batcher.close();
+            }
+        }
+        if(!conflated.isEmpty()) {
+            this.produceTickerEvents(conflated);
+        }
         this.tickerProducer.close();
+        if(this.spool != null) {
+            // Spool the records of the send window which failed while closing
+            if(this.window != null) {
+                this.window.failover();
+            }
+            this.spool.close();
+        }
     }
 }
\ No newline at end of file
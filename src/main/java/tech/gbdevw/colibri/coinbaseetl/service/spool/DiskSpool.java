@@ -0,0 +1,280 @@
+package tech.gbdevw.colibri.coinbaseetl.service.spool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.Meter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk-backed FIFO of records, made of memory-mapped append-only segments.
+ * 
+ * Records are appended to the last segment and read from the first one in the order they
+ * were appended. A segment is deleted once all its records are removed. Records are dropped
+ * when the spool would use more than its disk budget. Segments of a previous process are
+ * replayed first.
+ */
+public class DiskSpool implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DiskSpool.class.getSimpleName());
+
+    /**
+     * Extension of the segment files
+     */
+    private static final String EXTENSION = ".spool";
+
+    /**
+     * Directory of the segments
+     */
+    private final Path directory;
+
+    /**
+     * Name used in logs & metrics
+     */
+    private final String name;
+
+    /**
+     * Size of a segment in bytes
+     */
+    private final int segmentSize;
+
+    /**
+     * Max. segments (disk budget)
+     */
+    private final int maxSegments;
+
+    /**
+     * Segments, oldest first
+     */
+    private final Deque<SpoolSegment> segments;
+
+    /**
+     * Sequence number of the last segment
+     */
+    private long lastSegment;
+
+    /**
+     * Records in the spool
+     */
+    private volatile long records;
+
+    /**
+     * Bytes of the records in the spool
+     */
+    private volatile long bytes;
+
+    /**
+     * Records removed after replay
+     */
+    private final Meter drained;
+
+    /**
+     * Records dropped because the spool was full
+     */
+    private final Counter dropped;
+
+    /**
+     * Constructor
+     * 
+     * @param directory Directory of the segments
+     * @param name Name used in logs & metrics
+     * @param segmentSize Size of a segment in bytes
+     * @param maxSize Max. disk used by the segments in bytes
+     * @param registry Registry for spool metrics
+     * @throws IOException if the segments cannot be opened
+     */
+    public DiskSpool(Path directory, String name, int segmentSize, long maxSize, MetricRegistry registry) throws IOException {
+        if(segmentSize <= SpoolSegment.HEADER + Integer.BYTES || maxSize < segmentSize) {
+            throw new IllegalArgumentException("Invalid spool size : " + segmentSize + " - " + maxSize);
+        }
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxSize / segmentSize);
+        this.segments = new ArrayDeque<>();
+        this.lastSegment = 0;
+
+        // Open the segments of a previous process, oldest first
+        Files.createDirectories(directory);
+        List<Path> existing;
+        try(Stream<Path> files = Files.list(directory)) {
+            existing = files.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).sorted().collect(Collectors.toList());
+        }
+        for(Path file : existing) {
+            SpoolSegment segment = new SpoolSegment(file, segmentSize);
+            String fileName = file.getFileName().toString();
+            this.lastSegment = Math.max(this.lastSegment, Long.parseLong(fileName.substring(0, fileName.length() - EXTENSION.length())));
+            if(segment.getRecords() == 0) {
+                segment.delete();
+                continue;
+            }
+            this.segments.addLast(segment);
+            this.records += segment.getRecords();
+            this.bytes += segment.getBytes();
+        }
+        if(this.records > 0) {
+            LOG.info("Spool " + name + " : " + this.records + " records to replay");
+        }
+
+        // Metrics
+        Tag tag = new Tag("spool", name);
+        registry.register(Metadata.builder()
+            .withName("spool.backlog.records")
+            .withDescription("Records waiting in the spool")
+            .withType(MetricType.GAUGE)
+            .build(), (Gauge<Long>) () -> this.records, tag);
+        registry.register(Metadata.builder()
+            .withName("spool.backlog.size")
+            .withDescription("Size of the records waiting in the spool")
+            .withType(MetricType.GAUGE)
+            .withUnit(MetricUnits.BYTES)
+            .build(), (Gauge<Long>) () -> this.bytes, tag);
+        this.drained = registry.meter(Metadata.builder()
+            .withName("spool.drained")
+            .withDescription("Records replayed from the spool")
+            .build(), tag);
+        this.dropped = registry.counter(Metadata.builder()
+            .withName("spool.dropped")
+            .withDescription("Records dropped because the spool was full")
+            .build(), tag);
+    }
+
+    /**
+     * Append a record
+     * 
+     * @param record Record bytes
+     * @return False if the record was dropped because the spool is full
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized boolean append(byte [] record) throws IOException {
+        if(record.length == 0 || SpoolSegment.HEADER + Integer.BYTES + record.length > this.segmentSize) {
+            throw new IllegalArgumentException("Record size not supported : " + record.length);
+        }
+
+        SpoolSegment segment = this.segments.peekLast();
+        if(segment == null || !segment.append(record)) {
+            if(this.segments.size() >= this.maxSegments) {
+                this.dropped.inc();
+                return false;
+            }
+            this.lastSegment++;
+            segment = new SpoolSegment(this.directory.resolve(String.format("%020d", this.lastSegment) + EXTENSION), this.segmentSize);
+            this.segments.addLast(segment);
+            segment.append(record);
+        }
+        this.records++;
+        this.bytes += Integer.BYTES + record.length;
+        return true;
+    }
+
+    /**
+     * Read the oldest records without removing them
+     * 
+     * @param max Max. records to read
+     * @return Oldest records (empty if the spool is empty)
+     */
+    public synchronized List<byte []> peek(int max) {
+        List<byte []> peeked = new ArrayList<>((int) Math.min(max, this.records));
+        for(SpoolSegment segment : this.segments) {
+            int offset = segment.getReadOffset();
+            while(offset < segment.getWriteOffset() && peeked.size() < max) {
+                peeked.add(segment.read(offset));
+                offset = segment.next(offset);
+            }
+            if(peeked.size() >= max) {
+                break;
+            }
+        }
+        return peeked;
+    }
+
+    /**
+     * Remove the oldest records
+     * 
+     * @param count Records to remove
+     * @throws IOException if an empty segment cannot be deleted
+     */
+    public synchronized void remove(int count) throws IOException {
+        int removed = 0;
+        while(removed < count && !this.segments.isEmpty()) {
+            SpoolSegment segment = this.segments.peekFirst();
+            int offset = segment.getReadOffset();
+            int segmentRemoved = 0;
+            while(offset < segment.getWriteOffset() && removed < count) {
+                this.bytes -= segment.next(offset) - offset;
+                offset = segment.next(offset);
+                segmentRemoved++;
+                removed++;
+            }
+            segment.remove(offset, segmentRemoved);
+
+            // Delete segments which were entirely replayed, except the one being written
+            if(segment.getRecords() == 0 && this.segments.size() > 1) {
+                this.segments.removeFirst();
+                segment.delete();
+            }
+            else if(segment.getRecords() == 0) {
+                break;
+            }
+        }
+        this.records -= removed;
+        this.drained.mark(removed);
+    }
+
+    /**
+     * @return True if the spool has no record
+     */
+    public boolean isEmpty() {
+        return this.records == 0;
+    }
+
+    /**
+     * @return Records in the spool
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return Records dropped because the spool was full
+     */
+    public long getDropped() {
+        return this.dropped.getCount();
+    }
+
+    /**
+     * @return Name used in logs & metrics
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Write the segments to disk & close them
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for(SpoolSegment segment : this.segments) {
+            segment.close();
+        }
+        this.segments.clear();
+    }
+}
@@ -0,0 +1,189 @@
+package tech.gbdevw.colibri.coinbaseetl.service.spool;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped, append-only segment of a spool.
+ * 
+ * Layout : the read offset (long) followed by records. Each record is its length (int)
+ * followed by its bytes. The length is written after the bytes, a zero length marks the end
+ * of the segment. The read offset is updated when records are removed so a restarted process
+ * resumes the replay where it stopped.
+ */
+class SpoolSegment implements AutoCloseable {
+
+    /**
+     * Size of the header (read offset)
+     */
+    static final int HEADER = Long.BYTES;
+
+    /**
+     * Path of the segment file
+     */
+    private final Path path;
+
+    /**
+     * File channel
+     */
+    private final FileChannel channel;
+
+    /**
+     * Mapped memory
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Offset of the next record to write
+     */
+    private int writeOffset;
+
+    /**
+     * Offset of the next record to read
+     */
+    private int readOffset;
+
+    /**
+     * Records written and not removed
+     */
+    private int records;
+
+    /**
+     * Open or create a segment
+     * 
+     * @param path Path of the segment file
+     * @param size Size of the segment in bytes
+     * @throws IOException if the file cannot be mapped
+     */
+    SpoolSegment(Path path, int size) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        // Recover offsets of an existing segment
+        this.readOffset = (int) Math.max(HEADER, this.buffer.getLong(0));
+        this.writeOffset = HEADER;
+        this.records = 0;
+        while(this.writeOffset + Integer.BYTES <= size) {
+            int length = this.buffer.getInt(this.writeOffset);
+            if(length <= 0 || this.writeOffset + Integer.BYTES + length > size) {
+                break;
+            }
+            if(this.writeOffset >= this.readOffset) {
+                this.records++;
+            }
+            this.writeOffset += Integer.BYTES + length;
+        }
+    }
+
+    /**
+     * Append a record
+     * 
+     * @param record Record bytes
+     * @return False if the segment is full
+     */
+    boolean append(byte [] record) {
+        if(this.writeOffset + Integer.BYTES + record.length > this.buffer.capacity()) {
+            return false;
+        }
+        for(int i = 0; i < record.length; i++) {
+            this.buffer.put(this.writeOffset + Integer.BYTES + i, record[i]);
+        }
+        this.buffer.putInt(this.writeOffset, record.length);
+        this.writeOffset += Integer.BYTES + record.length;
+        this.records++;
+        return true;
+    }
+
+    /**
+     * Read the record at an offset
+     * 
+     * @param offset Offset of the record
+     * @return Record bytes
+     */
+    byte [] read(int offset) {
+        byte [] record = new byte [this.buffer.getInt(offset)];
+        for(int i = 0; i < record.length; i++) {
+            record[i] = this.buffer.get(offset + Integer.BYTES + i);
+        }
+        return record;
+    }
+
+    /**
+     * Offset of the record which follows a record
+     * 
+     * @param offset Offset of a record
+     * @return Offset of the next record
+     */
+    int next(int offset) {
+        return offset + Integer.BYTES + this.buffer.getInt(offset);
+    }
+
+    /**
+     * Remove the records before an offset
+     * 
+     * @param offset New read offset
+     * @param removed Number of removed records
+     */
+    void remove(int offset, int removed) {
+        this.readOffset = offset;
+        this.records -= removed;
+        this.buffer.putLong(0, offset);
+    }
+
+    /**
+     * @return Offset of the next record to read
+     */
+    int getReadOffset() {
+        return this.readOffset;
+    }
+
+    /**
+     * @return Offset of the next record to write
+     */
+    int getWriteOffset() {
+        return this.writeOffset;
+    }
+
+    /**
+     * @return Records written and not removed
+     */
+    int getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return Bytes of the records written and not removed
+     */
+    long getBytes() {
+        return this.writeOffset - this.readOffset;
+    }
+
+    /**
+     * Write the segment to disk
+     */
+    void force() {
+        this.buffer.force();
+    }
+
+    /**
+     * Close the segment
+     */
+    @Override
+    public void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+    /**
+     * Close & delete the segment
+     */
+    void delete() throws IOException {
+        this.channel.close();
+        Files.deleteIfExists(this.path);
+    }
+}
@@ -1,6 +1,11 @@
 package tech.gbdevw.colibri.coinbaseetl.service.syncer;
 
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -11,19 +16,34 @@ import org.slf4j.LoggerFactory;
 
 import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseClient;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseTrade;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseSideHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseTimeHelper;
 import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
 import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.checkpoint.CheckpointService;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
 import tech.gbdevw.colibri.domain.Match;
-import tech.gbdevw.colibri.domain.Currency;
-import tech.gbdevw.colibri.domain.Side;
 import io.quarkus.runtime.Startup;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import io.quarkus.vertx.ConsumeEvent;
+import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
 
 /**
- * Class which fetch the latest trades at the application startup in order
- * to sync. the trade flow.
+ * Class which keeps the trade flow of each product gap-free.
+ * 
+ * The syncer tracks the last trade id published for each product, starting from the
+ * checkpoint of the previous process when there is one. Coinbase trade ids are
+ * sequential per product : when a match skips ids (startup, reconnection, lost messages), the
+ * missing trades are fetched from the Coinbase Pro API by paging backwards and published in
+ * id order.
+ * 
+ * The last trade id is moved forward when the gap is detected : the gap stays pending until its
+ * trades are fetched. The older part of a gap truncated by the max. number of requests is
+ * fetched after the retry delay, a failed backfill is retried with an exponential backoff.
  */
 @RegisterForReflection
 @ApplicationScoped
@@ -41,64 +61,267 @@ public class MatchSyncer {
     private CoinbaseClient client;
 
     /**
-     * Product supported
+     * Supported products
      */
-    private String product;
+    private CoinbaseProductTable products;
 
     /**
      * Bus to produce Match messages
      */
     private EventBus bus;
 
+    /**
+     * Vertx instance used to fetch trades on worker threads
+     */
+    private Vertx vertx;
+
+    /**
+     * Trades fetched per request (100 max.)
+     */
+    private int pageSize;
+
+    /**
+     * Max. requests to fill a gap
+     */
+    private int maxPages;
+
+    /**
+     * Trades fetched at startup when no trade was published yet
+     */
+    private long initial;
+
+    /**
+     * Delay in ms before the first retry of a failed backfill
+     */
+    private long retryDelay;
+
+    /**
+     * Max. delay in ms between two retries of a failed backfill
+     */
+    private long retryMaxDelay;
+
+    /**
+     * Consecutive failed attempts after which a gap is given up
+     */
+    private int retries;
+
+    /**
+     * Last trade id published for each product
+     */
+    private Map<String, AtomicLong> lastTradeIds;
+
+    /**
+     * Checkpoint of the trades acknowledged by the previous process
+     */
+    private CheckpointService checkpoint;
+
     /**
      * Constructor
      * 
-     * @param props Coinbase properties
+     * @param products Supported products
      * @param client Coinbase API client
      * @param bus Bus used to produce Match events
+     * @param vertx Vertx instance used to fetch trades on worker threads
+     * @param config Configuration
+     * @param checkpoint Checkpoint of the trades acknowledged by the previous process
+     * @param busMetrics Metrics of the event bus
      */
     @Inject
-    public MatchSyncer (CoinbaseProperties props, @RestClient CoinbaseClient client, EventBus bus) {
+    public MatchSyncer (CoinbaseProductTable products, @RestClient CoinbaseClient client, EventBus bus, Vertx vertx, CoinbaseProperties config, CheckpointService checkpoint, BusMetrics busMetrics) {
         this.client = client;
         this.bus = bus;
-        this.product = props.product;
+        this.vertx = vertx;
+        this.products = products;
+        this.pageSize = config.backfillPageSize;
+        this.maxPages = config.backfillMaxPages;
+        this.initial = config.backfillInitial;
+        this.retryDelay = config.backfillRetryDelay;
+        this.retryMaxDelay = config.backfillRetryMaxDelay;
+        this.retries = config.backfillRetries;
+        this.lastTradeIds = new ConcurrentHashMap<>();
+        this.checkpoint = checkpoint;
+        busMetrics.consumer(CoinbaseWsEventAddresses.websocketMatchEventAddress);
     }
 
     /**
-     * Fetch the latest trades when a LAST_MATCH event is received and publish a
-     * MATCH event for each fetched trade.
+     * Track the last trade id published for the product of each MATCH event and fetch the
+     * missing trades when ids are skipped.
      * 
-     * @throws Exception
+     * @param match Published match
      */
-    @ConsumeEvent(value = CoinbaseWsEventAddresses.websocketLastMatchEventAddress, blocking = true)
-    public void fetchLatestTrades(Long lastMatchId) {
+    @ConsumeEvent(value = CoinbaseWsEventAddresses.websocketMatchEventAddress)
+    public void consumeMatchEvent(Match match) {
 
+        CoinbaseProduct product = this.products.get(match.getUnit(), match.getQuote());
+        AtomicLong last = this.lastTradeIds.computeIfAbsent(product.getId(), id -> new AtomicLong(this.checkpoint.getTradeId(id)));
+        long from = last.get();
+        long to = match.getId();
+
+        // Backfilled or duplicate trade
+        if(to <= from) {
+            return;
+        }
+        last.set(to);
+
+        // Nothing published yet & no checkpoint : fetch the latest trades
+        if(from == 0) {
+            from = Math.max(0, to - this.initial - 1);
+            this.checkpoint.startTrades(match.getUnit(), match.getQuote(), from);
+        }
+
+        // Fetch missing trades on a worker thread
+        if(to - from > 1) {
+            this.schedule(product, from, to, 0, 0);
+        }
+    }
+
+    /**
+     * Fetch the trades of a gap on a worker thread after a delay
+     * 
+     * @param product Product
+     * @param from Last trade id published before the gap
+     * @param to First trade id published after the gap
+     * @param delay Delay in ms (0 to fetch now)
+     * @param attempt Consecutive failed attempts
+     */
+    private void schedule(CoinbaseProduct product, long from, long to, long delay, int attempt) {
+        if(delay <= 0) {
+            this.vertx.<Void>executeBlocking(promise -> {
+                this.backfill(product, from, to, attempt);
+                promise.complete();
+            }, false, null);
+        }
+        else {
+            this.vertx.setTimer(delay, id -> this.schedule(product, from, to, 0, attempt));
+        }
+    }
+
+    /**
+     * Fetch and publish the trades of a product whose id is between two trade ids.
+     * 
+     * @param product Product
+     * @param from Last trade id published before the gap
+     * @param to First trade id published after the gap
+     * @return First trade id fetched (to if none) : the trades between from and this id are
+     *         still missing
+     * @throws Exception if the trades could not be fetched
+     */
+    public long backfill(CoinbaseProduct product, long from, long to) throws Exception {
+
+        LOG.info("Fetching trades " + product.getId() + " : " + from + " - " + to);
+        List<CoinbaseTrade> trades = this.fetchTrades(product, from, to);
+        for(CoinbaseTrade trade : trades) {
+            // Convert to match
+            Match match = Match.newBuilder()
+            .setTimestamp(CoinbaseTimeHelper.toEpochMilli(trade.time))
+            .setId(Long.parseLong(trade.trade_id))
+            .setUnit(product.getUnit())
+            .setQuote(product.getQuote())
+            .setSide(CoinbaseSideHelper.getSide(trade.side))
+            .setPrice(CoinbaseDecimalHelper.parseDouble(trade.price))
+            .setSize(CoinbaseDecimalHelper.parseDouble(trade.size))
+            .build();
+
+            // Publish match event
+            this.bus.publish(CoinbaseWsEventAddresses.websocketMatchEventAddress, match);
+            LOG.trace("Match " + match.getId() + " fetched and published");
+        }
+        return trades.isEmpty() ? to : Long.parseLong(trades.get(0).trade_id);
+    }
+
+    /**
+     * Fetch and publish the trades of a gap. The rest of a truncated gap is fetched after the
+     * retry delay, a failed attempt is retried with an exponential backoff until the gap is
+     * given up.
+     * 
+     * @param product Product
+     * @param from Last trade id published before the gap
+     * @param to First trade id published after the gap
+     * @param attempt Consecutive failed attempts
+     */
+    private void backfill(CoinbaseProduct product, long from, long to, int attempt) {
         try {
-            LOG.info("Fetching latest trades");
+            long first = this.backfill(product, from, to);
+            if(first - from > 1) {
+                // Truncated gap : fetch the older trades (a gap without any trade is a failure)
+                int failures = first < to ? 0 : attempt + 1;
+                if(failures < this.retries) {
+                    LOG.info("Trades " + product.getId() + " : " + from + " - " + first + " still missing - Next attempt in " + this.retryDelay(failures) + " ms");
+                    this.schedule(product, from, first, this.retryDelay(failures), failures);
+                }
+                else {
+                    LOG.error("Trades " + product.getId() + " : " + from + " - " + first + " not fetched after " + failures + " attempts - Gap given up");
+                }
+            }
+        }
+        catch(Exception ex) {
+            if(attempt + 1 < this.retries) {
+                LOG.warn("Failed to fetch trades " + product.getId() + " : " + from + " - " + to + " - Attempt : " + (attempt + 1) + " - Next attempt in " + this.retryDelay(attempt + 1) + " ms", ex);
+                this.schedule(product, from, to, this.retryDelay(attempt + 1), attempt + 1);
+            }
+            else {
+                LOG.error("Failed to fetch trades " + product.getId() + " : " + from + " - " + to + " after " + (attempt + 1) + " attempts - Gap given up", ex);
+            }
+        }
+    }
+
+    /**
+     * @param failures Consecutive failed attempts
+     * @return Delay in ms before the next attempt
+     */
+    private long retryDelay(int failures) {
+        if(failures <= 1) {
+            return this.retryDelay;
+        }
+        // retryDelay * 2^(failures - 1) without overflow
+        return failures - 1 < Long.numberOfLeadingZeros(this.retryDelay) - 1 ? Math.min(this.retryMaxDelay, this.retryDelay << (failures - 1)) : this.retryMaxDelay;
+    }
+
+    /**
+     * Page backwards through the trades of a product, starting before a trade id, until a
+     * trade id is reached.
+     * 
+     * @param product Product
+     * @param from Last trade id published before the gap (excluded)
+     * @param to First trade id published after the gap (excluded)
+     * @return Trades whose id is between from and to, in id order
+     */
+    public List<CoinbaseTrade> fetchTrades(CoinbaseProduct product, long from, long to) {
+
+        List<CoinbaseTrade> missing = new ArrayList<>();
+        long cursor = to;
+        boolean reached = false;
+
+        for(int page = 0; !reached && page < this.maxPages; page++) {
+
+            // Trades older than the cursor, newest first
+            CoinbaseTrade [] trades = this.client.getTrades(product.getId(), this.pageSize, null, cursor);
+            if(trades == null || trades.length == 0) {
+                break;
+            }
+
+            for(CoinbaseTrade trade : trades) {
+                long id = Long.parseLong(trade.trade_id);
+                if(id <= from) {
+                    reached = true;
+                }
+                else if(id < to) {
+                    missing.add(trade);
+                }
+                cursor = Math.min(cursor, id);
+            }
             
-            // Fetch latest trades using Coinbase Pro API
-           CoinbaseTrade [] trades = this.client.getLatestTrades(this.product.toLowerCase(), 100);
-               
-           for(CoinbaseTrade trade : trades) {
-                // Convert to match
-                Match match = Match.newBuilder()
-                .setTimestamp(Instant.parse(trade.time).toEpochMilli())
-                .setId(Long.parseLong(trade.trade_id))
-                .setUnit(Currency.valueOf(this.product.split("-")[0]))
-                .setQuote(Currency.valueOf(this.product.split("-")[1]))
-                .setSide(Side.valueOf(trade.side.toUpperCase()))
-                .setPrice(Double.parseDouble(trade.price))
-                .setSize(Double.parseDouble(trade.size))
-                .build();
-
-                // Publish match event
-                this.bus.publish(CoinbaseWsEventAddresses.websocketMatchEventAddress, match);
-                LOG.trace("Match " + match.getId() + " fetched and published");
-           }
+            // First trade of the product
+            if(cursor <= 1) {
+                reached = true;
+            }
         }
-        catch(Exception ex) 
-        {
-            LOG.error("Failed to fetch latest trades", ex);
+
+        if(!reached) {
+            LOG.warn("Trades " + product.getId() + " not fetched after " + this.maxPages + " requests : " + from + " - " + cursor);
         }
+
+        missing.sort(Comparator.comparingLong(trade -> Long.parseLong(trade.trade_id)));
+        return missing;
     }
-}
\ No newline at end of file
+}
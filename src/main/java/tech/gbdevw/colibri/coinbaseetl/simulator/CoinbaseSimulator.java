@@ -0,0 +1,523 @@
+package tech.gbdevw.colibri.coinbaseetl.simulator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.ServerWebSocket;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSMsgTypes;
+
+/**
+ * Simulator of the Coinbase websocket feed and of the trades of the Coinbase Pro API, to run and
+ * load test the application without network.
+ * 
+ * The websocket feed accepts the subscribe message sent by the endpoints, answers with the
+ * subscriptions message and streams synthetic match, last_match, ticker, level2, full and
+ * heartbeat messages for the subscribed products. Trades are generated at a fixed rate for each
+ * product once it has been subscribed to and are shared by all connections. The latest trades of
+ * each product are served by GET /products/{id}/trades with the limit, before & after parameters
+ * and its level3 book by GET /products/{id}/book?level=3.
+ */
+public class CoinbaseSimulator implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CoinbaseSimulator.class.getSimpleName());
+
+    /**
+     * Interval in ms between two generation rounds
+     */
+    private static final long TICK = 10;
+
+    /**
+     * Interval in ms between two heartbeats
+     */
+    private static final long HEARTBEAT = 1000;
+
+    /**
+     * Max. trades of a REST page
+     */
+    private static final int MAX_LIMIT = 100;
+
+    /**
+     * Path of the trades of a product
+     */
+    private static final Pattern TRADES_PATH = Pattern.compile("/products/([A-Za-z0-9]+-[A-Za-z0-9]+)/trades/?");
+
+    /**
+     * Path of the book of a product
+     */
+    private static final Pattern BOOK_PATH = Pattern.compile("/products/([A-Za-z0-9]+-[A-Za-z0-9]+)/book/?");
+
+    /**
+     * Format of the product ids
+     */
+    private static final Pattern PRODUCT_ID = Pattern.compile("[A-Z0-9]+-[A-Z0-9]+");
+
+    /**
+     * Supported channels
+     */
+    private static final Set<String> CHANNELS = Set.of("matches", "ticker", "level2", "full", "heartbeat");
+
+    /**
+     * Vertx instance
+     */
+    private final Vertx vertx;
+
+    /**
+     * Trades generated per second for each product
+     */
+    private final double rate;
+
+    /**
+     * Fraction of the trades not sent on the feed
+     */
+    private final double gap;
+
+    /**
+     * Trades of each product kept for the REST API
+     */
+    private final int history;
+
+    /**
+     * Random generator
+     */
+    private final Random random;
+
+    /**
+     * Products subscribed to at least once
+     */
+    private final Map<String, SimulatedProduct> products;
+
+    /**
+     * Subscribed connections
+     */
+    private final List<Subscriber> subscribers;
+
+    /**
+     * Server of the feed & the API
+     */
+    private HttpServer server;
+
+    /**
+     * Generation timer
+     */
+    private long generator;
+
+    /**
+     * Heartbeat timer
+     */
+    private long heartbeats;
+
+    /**
+     * Time in ns of the last generation round
+     */
+    private long lastTick;
+
+    /**
+     * Constructor
+     * 
+     * @param vertx Vertx instance
+     * @param rate Trades generated per second for each product
+     * @param gap Fraction of the trades which are not sent on the feed (only served by the API)
+     * @param history Trades of each product kept for the REST API
+     */
+    public CoinbaseSimulator(Vertx vertx, double rate, double gap, int history) {
+        this.vertx = vertx;
+        this.rate = rate;
+        this.gap = gap;
+        this.history = history;
+        this.random = new Random();
+        this.products = new ConcurrentHashMap<>();
+        this.subscribers = new CopyOnWriteArrayList<>();
+        this.generator = -1;
+        this.heartbeats = -1;
+    }
+
+    /**
+     * Start the simulator
+     * 
+     * @param port Port of the feed & the API (0 for any free port)
+     * @return Port of the feed & the API
+     * @throws Exception if the server could not be started
+     */
+    public int start(int port) throws Exception {
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        this.vertx.createHttpServer()
+            .webSocketHandler(this::onConnect)
+            .requestHandler(this::onRequest)
+            .listen(port, result -> {
+                if(result.succeeded()) {
+                    listening.complete(result.result());
+                }
+                else {
+                    listening.completeExceptionally(result.cause());
+                }
+            });
+        this.server = listening.get(30, TimeUnit.SECONDS);
+        this.lastTick = System.nanoTime();
+        this.generator = this.vertx.setPeriodic(TICK, id -> this.generate());
+        this.heartbeats = this.vertx.setPeriodic(HEARTBEAT, id -> this.heartbeat());
+        LOG.info("Coinbase simulator listening on port " + this.server.actualPort() + " - " + this.rate + " trades/s per product");
+        return this.server.actualPort();
+    }
+
+    /*********************************************************************************************/
+    /* Websocket feed */
+    /*********************************************************************************************/
+
+    /**
+     * Called when a websocket connection is opened : wait for the subscribe message
+     * 
+     * @param socket Websocket
+     */
+    private void onConnect(ServerWebSocket socket) {
+        Subscriber subscriber = new Subscriber(socket);
+        socket.textMessageHandler(message -> this.onSubscribe(subscriber, message));
+        socket.closeHandler(v -> this.subscribers.remove(subscriber));
+        socket.exceptionHandler(ex -> LOG.warn("Websocket error", ex));
+    }
+
+    /**
+     * Validate a subscribe message, answer with the subscriptions and start streaming
+     * 
+     * @param subscriber Connection
+     * @param message Subscribe message
+     */
+    private void onSubscribe(Subscriber subscriber, String message) {
+        try {
+            JsonObject subscribe = JsonParser.parseString(message).getAsJsonObject();
+            JsonElement type = subscribe.get("type");
+            if(type == null || !CoinbaseWSMsgTypes.SUBSCRIBE.equals(type.getAsString())) {
+                throw new IllegalArgumentException("Type must be subscribe");
+            }
+            Set<String> products = this.readList(subscribe, "product_ids");
+            for(String product : products) {
+                if(!PRODUCT_ID.matcher(product).matches()) {
+                    throw new IllegalArgumentException(product + " is not a valid product");
+                }
+            }
+            Set<String> channels = this.readList(subscribe, "channels");
+            for(String channel : channels) {
+                if(!CHANNELS.contains(channel)) {
+                    throw new IllegalArgumentException(channel + " is not a valid channel");
+                }
+            }
+
+            // Answer with the subscriptions
+            StringBuilder json = new StringBuilder("{\"type\":\"subscriptions\",\"channels\":[");
+            String separator = "";
+            for(String channel : channels) {
+                json.append(separator).append("{\"name\":\"").append(channel).append("\",\"product_ids\":[");
+                String productSeparator = "";
+                for(String product : products) {
+                    json.append(productSeparator).append('"').append(product).append('"');
+                    productSeparator = ",";
+                }
+                json.append("]}");
+                separator = ",";
+            }
+            subscriber.socket.writeTextMessage(json.append("]}").toString());
+
+            // Latest trade of each product
+            long now = now();
+            for(String product : products) {
+                SimulatedProduct simulated = this.products.computeIfAbsent(product, id -> new SimulatedProduct(id, this.history, new Random(), now));
+                if(channels.contains("matches")) {
+                    json.setLength(0);
+                    simulated.appendMatch(json, CoinbaseWSMsgTypes.LASTMATCH, simulated.getLastTradeId(), this.random);
+                    subscriber.socket.writeTextMessage(json.toString());
+                }
+                if(channels.contains("level2")) {
+                    json.setLength(0);
+                    simulated.appendL2Snapshot(json, this.random);
+                    subscriber.socket.writeTextMessage(json.toString());
+                }
+            }
+
+            subscriber.subscribe(products, channels);
+            if(!this.subscribers.contains(subscriber)) {
+                this.subscribers.add(subscriber);
+            }
+            LOG.info("Subscribed to " + channels + " for " + products);
+        }
+        catch(Exception ex) {
+            LOG.warn("Invalid subscribe message : " + message, ex);
+            subscriber.socket.writeTextMessage("{\"type\":\"error\",\"message\":\"Failed to subscribe\",\"reason\":\"" + String.valueOf(ex.getMessage()).replace('"', '\'') + "\"}");
+        }
+    }
+
+    /**
+     * Read a non empty list of strings from a subscribe message
+     */
+    private Set<String> readList(JsonObject subscribe, String name) {
+        JsonElement element = subscribe.get(name);
+        if(element == null || !element.isJsonArray() || element.getAsJsonArray().size() == 0) {
+            throw new IllegalArgumentException(name + " must be a non empty array");
+        }
+        Set<String> values = new LinkedHashSet<>();
+        for(JsonElement value : element.getAsJsonArray()) {
+            values.add(value.getAsString());
+        }
+        return values;
+    }
+
+    /**
+     * Generate the trades due since the last round and stream them to the subscribers
+     */
+    private void generate() {
+        long tick = System.nanoTime();
+        double elapsed = (tick - this.lastTick) / 1e9;
+        this.lastTick = tick;
+        long now = now();
+
+        StringBuilder json = new StringBuilder(512);
+        for(SimulatedProduct product : this.products.values()) {
+            boolean subscribed = false;
+            for(Subscriber subscriber : this.subscribers) {
+                subscribed |= subscriber.full && subscriber.products.contains(product.getId());
+            }
+            List<String> full = subscribed ? new ArrayList<>() : null;
+            for(int i = product.due(this.rate * elapsed); i > 0; i--) {
+                if(full != null) {
+                    full.clear();
+                }
+                long tradeId = product.trade(this.random, now, full);
+                if(this.gap > 0 && this.random.nextDouble() < this.gap) {
+                    continue;
+                }
+                String match = null;
+                String ticker = null;
+                String level2 = null;
+                for(Subscriber subscriber : this.subscribers) {
+                    if(!subscriber.products.contains(product.getId())) {
+                        continue;
+                    }
+                    if(subscriber.matches) {
+                        if(match == null) {
+                            json.setLength(0);
+                            product.appendMatch(json, CoinbaseWSMsgTypes.MATCH, tradeId, this.random);
+                            match = json.toString();
+                        }
+                        this.send(subscriber, match);
+                    }
+                    if(subscriber.ticker) {
+                        if(ticker == null) {
+                            json.setLength(0);
+                            product.appendTicker(json, tradeId);
+                            ticker = json.toString();
+                        }
+                        this.send(subscriber, ticker);
+                    }
+                    if(subscriber.level2) {
+                        if(level2 == null) {
+                            json.setLength(0);
+                            product.appendL2Update(json, tradeId, this.random);
+                            level2 = json.toString();
+                        }
+                        this.send(subscriber, level2);
+                    }
+                    if(subscriber.full && full != null) {
+                        for(String message : full) {
+                            this.send(subscriber, message);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a heartbeat for each product to the subscribers of the heartbeat channel
+     */
+    private void heartbeat() {
+        long now = now();
+        StringBuilder json = new StringBuilder(256);
+        for(Subscriber subscriber : this.subscribers) {
+            if(subscriber.heartbeat) {
+                for(String product : subscriber.products) {
+                    json.setLength(0);
+                    this.products.get(product).appendHeartbeat(json, now);
+                    this.send(subscriber, json.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a message to a subscriber. Slow subscribers are disconnected like on the real feed.
+     * 
+     * @param subscriber Connection
+     * @param message Message
+     */
+    private void send(Subscriber subscriber, String message) {
+        if(subscriber.socket.writeQueueFull()) {
+            if(this.subscribers.remove(subscriber)) {
+                LOG.warn("Subscriber too slow - Disconnected");
+                subscriber.socket.close((short) 1008, "Slow consumer");
+            }
+            return;
+        }
+        subscriber.socket.writeTextMessage(message);
+    }
+
+    /*********************************************************************************************/
+    /* REST API */
+    /*********************************************************************************************/
+
+    /**
+     * Serve the trades or the book of a product
+     * 
+     * @param request HTTP request
+     */
+    private void onRequest(HttpServerRequest request) {
+        Matcher path = TRADES_PATH.matcher(request.path());
+        Matcher book = BOOK_PATH.matcher(request.path());
+        boolean trades = path.matches();
+        if(request.method() != HttpMethod.GET || (!trades && !book.matches())) {
+            request.response().setStatusCode(404).putHeader("Content-Type", "application/json").end("{\"message\":\"NotFound\"}");
+            return;
+        }
+        SimulatedProduct product = this.products.get((trades ? path : book).group(1).toUpperCase());
+        if(product == null) {
+            request.response().setStatusCode(404).putHeader("Content-Type", "application/json").end("{\"message\":\"NotFound\"}");
+            return;
+        }
+        if(!trades) {
+            // Only the level3 book is simulated
+            if(!"3".equals(request.getParam("level"))) {
+                request.response().setStatusCode(400).putHeader("Content-Type", "application/json").end("{\"message\":\"Invalid level\"}");
+                return;
+            }
+            StringBuilder json = new StringBuilder(65536);
+            product.appendBook(json);
+            request.response().putHeader("Content-Type", "application/json").end(json.toString());
+            return;
+        }
+
+        int limit;
+        Long before;
+        Long after;
+        try {
+            limit = request.getParam("limit") != null ? Math.min(MAX_LIMIT, Math.max(1, Integer.parseInt(request.getParam("limit")))) : MAX_LIMIT;
+            before = request.getParam("before") != null ? Long.valueOf(request.getParam("before")) : null;
+            after = request.getParam("after") != null ? Long.valueOf(request.getParam("after")) : null;
+        }
+        catch(NumberFormatException ex) {
+            request.response().setStatusCode(400).putHeader("Content-Type", "application/json").end("{\"message\":\"Invalid parameter\"}");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder(limit * 128);
+        long[] page = product.appendTrades(json, limit, before, after);
+        if(page.length > 0) {
+            request.response().putHeader("CB-BEFORE", String.valueOf(page[0])).putHeader("CB-AFTER", String.valueOf(page[1]));
+        }
+        request.response().putHeader("Content-Type", "application/json").end(json.toString());
+    }
+
+    /*********************************************************************************************/
+    /* UTILITY */
+    /*********************************************************************************************/
+
+    /**
+     * @return Current epoch time in micros
+     */
+    private static long now() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1000000L + now.getNano() / 1000;
+    }
+
+    /**
+     * Stop streaming and close the server
+     */
+    @Override
+    public void close() {
+        this.vertx.cancelTimer(this.generator);
+        this.vertx.cancelTimer(this.heartbeats);
+        for(Subscriber subscriber : new ArrayList<>(this.subscribers)) {
+            subscriber.socket.close();
+        }
+        this.subscribers.clear();
+        if(this.server != null) {
+            this.server.close();
+        }
+    }
+
+    /**
+     * Websocket connection and its subscriptions
+     */
+    private static class Subscriber {
+
+        /**
+         * Websocket
+         */
+        private final ServerWebSocket socket;
+
+        /**
+         * Subscribed products
+         */
+        private volatile Set<String> products;
+
+        /**
+         * Subscribed to the matches channel
+         */
+        private volatile boolean matches;
+
+        /**
+         * Subscribed to the ticker channel
+         */
+        private volatile boolean ticker;
+
+        /**
+         * Subscribed to the level2 channel
+         */
+        private volatile boolean level2;
+
+        /**
+         * Subscribed to the full channel
+         */
+        private volatile boolean full;
+
+        /**
+         * Subscribed to the heartbeat channel
+         */
+        private volatile boolean heartbeat;
+
+        Subscriber(ServerWebSocket socket) {
+            this.socket = socket;
+            this.products = Set.of();
+        }
+
+        void subscribe(Set<String> products, Set<String> channels) {
+            this.matches = channels.contains("matches");
+            this.ticker = channels.contains("ticker");
+            this.level2 = channels.contains("level2");
+            this.full = channels.contains("full");
+            this.heartbeat = channels.contains("heartbeat");
+            this.products = products;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tech.gbdevw.colibri.coinbaseetl.simulator;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.configuration.SimulatorProperties;
+
+/**
+ * Runs the Coinbase simulator with the application. Point the websocket feed and the API of the
+ * application to the simulator port (see the sim profile).
+ */
+@RegisterForReflection
+@ApplicationScoped
+@Startup
+@IfBuildProperty(name = "simulator.enabled", stringValue = "true")
+public class CoinbaseSimulatorService implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CoinbaseSimulatorService.class.getSimpleName());
+
+    /**
+     * Configuration
+     */
+    private SimulatorProperties config;
+
+    /**
+     * Simulator
+     */
+    private CoinbaseSimulator simulator;
+
+    /**
+     * Constructor
+     * 
+     * @param config Configuration
+     * @param vertx Vertx instance
+     */
+    public CoinbaseSimulatorService(SimulatorProperties config, Vertx vertx) {
+        this.config = config;
+        this.simulator = new CoinbaseSimulator(vertx, config.rate, config.gap, config.history);
+    }
+
+    /**
+     * Start the simulator
+     * 
+     * @throws Exception if the simulator could not be started
+     */
+    @PostConstruct
+    public void start() throws Exception {
+        this.simulator.start(this.config.port);
+        LOG.info("Coinbase simulator started - Gap : " + this.config.gap + " - History : " + this.config.history + " trades per product");
+    }
+
+    /**
+     * Stop the simulator
+     */
+    @Override
+    @PreDestroy
+    public void close() {
+        this.simulator.close();
+    }
+}
@@ -0,0 +1,613 @@
+package tech.gbdevw.colibri.coinbaseetl.simulator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSMsgTypes;
+
+/**
+ * Synthetic market of a product : a random walk of trades with the latest trades kept in a
+ * ring for the REST API. Prices are in cents and sizes in units of 1e-8.
+ *
+ * The product also keeps a small level3 book : each trade matches a maker order opened at the
+ * trade price and a few orders are opened, canceled or changed around it. The messages of the
+ * full channel are numbered with the sequences between two trades.
+ */
+class SimulatedProduct {
+
+    /**
+     * Levels of each side of the level2 snapshots
+     */
+    private static final int BOOK_LEVELS = 50;
+
+    /**
+     * Max. resting orders of the level3 book (the oldest orders are canceled)
+     */
+    private static final int MAX_ORDERS = 1000;
+
+    /**
+     * Product id
+     */
+    private final String id;
+
+    /**
+     * Trades kept for the REST API
+     */
+    private final int capacity;
+
+    /**
+     * Time of each trade (epoch micros)
+     */
+    private final long[] times;
+
+    /**
+     * Sequence of each trade
+     */
+    private final long[] sequences;
+
+    /**
+     * Price of each trade (cents)
+     */
+    private final long[] prices;
+
+    /**
+     * Size of each trade (1e-8)
+     */
+    private final long[] sizes;
+
+    /**
+     * Side of each trade (true : buy)
+     */
+    private final boolean[] buys;
+
+    /**
+     * Id of the oldest trade kept
+     */
+    private long firstTradeId;
+
+    /**
+     * Id of the latest trade
+     */
+    private long lastTradeId;
+
+    /**
+     * Latest feed sequence
+     */
+    private long sequence;
+
+    /**
+     * Trades due but not generated yet (fraction of a trade)
+     */
+    private double due;
+
+    /**
+     * Resting orders of the level3 book by id, oldest first
+     */
+    private final Map<UUID, SimulatedOrder> orders;
+
+    /**
+     * Constructor : the product starts with one trade
+     * 
+     * @param id Product id
+     * @param capacity Trades kept for the REST API
+     * @param random Random generator
+     * @param time Time of the first trade (epoch micros)
+     */
+    SimulatedProduct(String id, int capacity, Random random, long time) {
+        this.id = id;
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.sequences = new long[capacity];
+        this.prices = new long[capacity];
+        this.sizes = new long[capacity];
+        this.buys = new boolean[capacity];
+        this.firstTradeId = 1000000L + random.nextInt(1000000);
+        this.lastTradeId = this.firstTradeId - 1;
+        this.sequence = 100000000L + random.nextInt(100000000);
+        this.orders = new LinkedHashMap<>();
+        long price = 1000000L + random.nextInt(1000000000);
+        for(int i = 0; i < MAX_ORDERS / 10; i++) {
+            SimulatedOrder order = this.order(random, i % 2 == 0, price);
+            this.orders.put(order.id, order);
+        }
+        this.trade(random, time, price, null);
+    }
+
+    /**
+     * @return Product id
+     */
+    String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return Id of the latest trade
+     */
+    synchronized long getLastTradeId() {
+        return this.lastTradeId;
+    }
+
+    /**
+     * Add trades due for an elapsed time
+     * 
+     * @param trades Trades due (may be fractional)
+     * @return Trades to generate now
+     */
+    synchronized int due(double trades) {
+        this.due += trades;
+        int now = (int) this.due;
+        this.due -= now;
+        return now;
+    }
+
+    /**
+     * Generate a trade close to the latest price
+     * 
+     * @param random Random generator
+     * @param time Time of the trade (epoch micros)
+     * @param full Messages of the full channel of the trade (null if not needed)
+     * @return Trade id
+     */
+    synchronized long trade(Random random, long time, List<String> full) {
+        long last = this.prices[this.slot(this.lastTradeId)];
+        long price = Math.max(1, last + Math.round(last * 0.0001 * random.nextGaussian()));
+        return this.trade(random, time, price, full);
+    }
+
+    /**
+     * Record a trade at a price and update the level3 book
+     */
+    private long trade(Random random, long time, long price, List<String> full) {
+        long tradeId = ++this.lastTradeId;
+        if(tradeId - this.firstTradeId >= this.capacity) {
+            this.firstTradeId = tradeId - this.capacity + 1;
+        }
+        int slot = this.slot(tradeId);
+        long size = 1 + random.nextInt(200000000);
+        boolean buy = random.nextBoolean();
+        this.times[slot] = time;
+        this.prices[slot] = price;
+        this.sizes[slot] = size;
+        this.buys[slot] = buy;
+
+        // Maker order resting at the trade price
+        SimulatedOrder maker = new SimulatedOrder(new UUID(random.nextLong(), random.nextLong()), buy, price, random.nextBoolean() ? size : size + 1 + random.nextInt(100000000));
+        this.received(full, maker.id, buy, price, maker.size, time);
+        this.open(full, maker, time);
+
+        // Orders opened, canceled or changed before the trade
+        for(int i = random.nextInt(3); i > 0; i--) {
+            SimulatedOrder oldest = this.orders.values().iterator().next();
+            switch(random.nextInt(3)) {
+                case 0:
+                    SimulatedOrder order = this.order(random, random.nextBoolean(), price);
+                    this.received(full, order.id, order.buy, order.price, order.size, time);
+                    this.open(full, order, time);
+                    break;
+                case 1:
+                    if(oldest != maker) {
+                        this.done(full, oldest, "canceled", time);
+                    }
+                    break;
+                default:
+                    if(oldest != maker && oldest.size > 1) {
+                        this.change(full, oldest, oldest.size / 2, time);
+                    }
+                    break;
+            }
+        }
+
+        // Taker order matched with the maker order
+        UUID taker = new UUID(random.nextLong(), random.nextLong());
+        this.received(full, taker, !buy, 0, size, time);
+        this.sequences[slot] = ++this.sequence;
+        maker.size -= size;
+        if(full != null) {
+            StringBuilder json = this.event(CoinbaseWSMsgTypes.MATCH, null, buy, time);
+            json.append(",\"trade_id\":").append(tradeId)
+                .append(",\"maker_order_id\":\"").append(maker.id)
+                .append("\",\"taker_order_id\":\"").append(taker)
+                .append("\",\"size\":\"");
+            appendDecimal(json, size, 8);
+            json.append("\",\"price\":\"");
+            appendDecimal(json, price, 2);
+            full.add(json.append("\"}").toString());
+        }
+        this.done(full, new SimulatedOrder(taker, !buy, 0, 0), "filled", time);
+        if(maker.size == 0) {
+            this.done(full, maker, "filled", time);
+        }
+
+        // Keep the book bounded
+        while(this.orders.size() > MAX_ORDERS) {
+            this.done(full, this.orders.values().iterator().next(), "canceled", time);
+        }
+        return tradeId;
+    }
+
+    /**
+     * Build a random limit order close to a price
+     */
+    private SimulatedOrder order(Random random, boolean buy, long price) {
+        long distance = 1 + random.nextInt(50);
+        return new SimulatedOrder(new UUID(random.nextLong(), random.nextLong()), buy, Math.max(1, buy ? price - distance : price + distance), 1 + random.nextInt(1000000000));
+    }
+
+    /**
+     * Add a received message (price 0 for a market order)
+     */
+    private void received(List<String> full, UUID order, boolean buy, long price, long size, long time) {
+        this.sequence++;
+        if(full != null) {
+            StringBuilder json = this.event(CoinbaseWSMsgTypes.RECEIVED, order, buy, time);
+            json.append(",\"order_type\":\"").append(price > 0 ? "limit" : "market").append("\",\"size\":\"");
+            appendDecimal(json, size, 8);
+            if(price > 0) {
+                json.append("\",\"price\":\"");
+                appendDecimal(json, price, 2);
+            }
+            full.add(json.append("\"}").toString());
+        }
+    }
+
+    /**
+     * Add an order to the book and its open message
+     */
+    private void open(List<String> full, SimulatedOrder order, long time) {
+        this.sequence++;
+        this.orders.put(order.id, order);
+        if(full != null) {
+            StringBuilder json = this.event(CoinbaseWSMsgTypes.OPEN, order.id, order.buy, time);
+            json.append(",\"price\":\"");
+            appendDecimal(json, order.price, 2);
+            json.append("\",\"remaining_size\":\"");
+            appendDecimal(json, order.size, 8);
+            full.add(json.append("\"}").toString());
+        }
+    }
+
+    /**
+     * Remove an order from the book and add its done message (price 0 for a market order)
+     */
+    private void done(List<String> full, SimulatedOrder order, String reason, long time) {
+        this.sequence++;
+        this.orders.remove(order.id);
+        if(full != null) {
+            StringBuilder json = this.event(CoinbaseWSMsgTypes.DONE, order.id, order.buy, time);
+            json.append(",\"reason\":\"").append(reason).append("\",\"remaining_size\":\"");
+            appendDecimal(json, order.size, 8);
+            if(order.price > 0) {
+                json.append("\",\"price\":\"");
+                appendDecimal(json, order.price, 2);
+            }
+            full.add(json.append("\"}").toString());
+        }
+    }
+
+    /**
+     * Change the size of an order and add its change message
+     */
+    private void change(List<String> full, SimulatedOrder order, long size, long time) {
+        this.sequence++;
+        if(full != null) {
+            StringBuilder json = this.event(CoinbaseWSMsgTypes.CHANGE, order.id, order.buy, time);
+            json.append(",\"new_size\":\"");
+            appendDecimal(json, size, 8);
+            json.append("\",\"old_size\":\"");
+            appendDecimal(json, order.size, 8);
+            json.append("\",\"price\":\"");
+            appendDecimal(json, order.price, 2);
+            full.add(json.append("\"}").toString());
+        }
+        order.size = size;
+    }
+
+    /**
+     * Start a message of the full channel with the current sequence
+     */
+    private StringBuilder event(String type, UUID order, boolean buy, long time) {
+        StringBuilder json = new StringBuilder(320);
+        json.append("{\"type\":\"").append(type);
+        if(order != null) {
+            json.append("\",\"order_id\":\"").append(order);
+        }
+        json.append("\",\"side\":\"").append(buy ? "buy" : "sell")
+            .append("\",\"product_id\":\"").append(this.id)
+            .append("\",\"sequence\":").append(this.sequence)
+            .append(",\"time\":\"");
+        appendTime(json, time);
+        return json.append('"');
+    }
+
+    /**
+     * Append a match (or last_match) message of a trade
+     * 
+     * @param json Message
+     * @param type match or last_match
+     * @param tradeId Trade id
+     * @param random Random generator (order ids)
+     */
+    synchronized void appendMatch(StringBuilder json, String type, long tradeId, Random random) {
+        int slot = this.slot(tradeId);
+        json.append("{\"type\":\"").append(type)
+            .append("\",\"trade_id\":").append(tradeId)
+            .append(",\"maker_order_id\":\"").append(new UUID(random.nextLong(), random.nextLong()))
+            .append("\",\"taker_order_id\":\"").append(new UUID(random.nextLong(), random.nextLong()))
+            .append("\",\"side\":\"").append(this.buys[slot] ? "buy" : "sell")
+            .append("\",\"size\":\"");
+        appendDecimal(json, this.sizes[slot], 8);
+        json.append("\",\"price\":\"");
+        appendDecimal(json, this.prices[slot], 2);
+        json.append("\",\"product_id\":\"").append(this.id)
+            .append("\",\"sequence\":").append(this.sequences[slot])
+            .append(",\"time\":\"");
+        appendTime(json, this.times[slot]);
+        json.append("\"}");
+    }
+
+    /**
+     * Append the ticker message following a trade
+     * 
+     * @param json Message
+     * @param tradeId Trade id
+     */
+    synchronized void appendTicker(StringBuilder json, long tradeId) {
+        int slot = this.slot(tradeId);
+        long price = this.prices[slot];
+        json.append("{\"type\":\"ticker\",\"sequence\":").append(this.sequences[slot])
+            .append(",\"product_id\":\"").append(this.id)
+            .append("\",\"price\":\"");
+        appendDecimal(json, price, 2);
+        json.append("\",\"open_24h\":\"");
+        appendDecimal(json, price, 2);
+        json.append("\",\"volume_24h\":\"0.00000000\",\"low_24h\":\"");
+        appendDecimal(json, price, 2);
+        json.append("\",\"high_24h\":\"");
+        appendDecimal(json, price, 2);
+        json.append("\",\"volume_30d\":\"0.00000000\",\"best_bid\":\"");
+        appendDecimal(json, Math.max(0, price - 1), 2);
+        json.append("\",\"best_ask\":\"");
+        appendDecimal(json, price + 1, 2);
+        json.append("\",\"side\":\"").append(this.buys[slot] ? "buy" : "sell")
+            .append("\",\"time\":\"");
+        appendTime(json, this.times[slot]);
+        json.append("\",\"trade_id\":").append(tradeId)
+            .append(",\"last_size\":\"");
+        appendDecimal(json, this.sizes[slot], 8);
+        json.append("\"}");
+    }
+
+    /**
+     * Append a level2 snapshot around the latest price : one level per cent on each side
+     * 
+     * @param json Message
+     * @param random Random generator (sizes)
+     */
+    synchronized void appendL2Snapshot(StringBuilder json, Random random) {
+        long price = this.prices[this.slot(this.lastTradeId)];
+        json.append("{\"type\":\"snapshot\",\"product_id\":\"").append(this.id).append("\",\"bids\":[");
+        for(int i = 1; i <= BOOK_LEVELS && price - i > 0; i++) {
+            json.append(i > 1 ? ",[" : "[");
+            appendLevel(json, price - i, random);
+            json.append(']');
+        }
+        json.append("],\"asks\":[");
+        for(int i = 1; i <= BOOK_LEVELS; i++) {
+            json.append(i > 1 ? ",[" : "[");
+            appendLevel(json, price + i, random);
+            json.append(']');
+        }
+        json.append("]}");
+    }
+
+    /**
+     * Append the l2update following a trade : the levels next to the trade price are updated
+     * 
+     * @param json Message
+     * @param tradeId Trade id
+     * @param random Random generator (sizes)
+     */
+    synchronized void appendL2Update(StringBuilder json, long tradeId, Random random) {
+        int slot = this.slot(tradeId);
+        long price = this.prices[slot];
+        json.append("{\"type\":\"l2update\",\"product_id\":\"").append(this.id).append("\",\"changes\":[");
+        if(price > 1) {
+            json.append("[\"buy\",");
+            appendLevel(json, price - 1, random);
+            json.append("],");
+        }
+        json.append("[\"sell\",");
+        appendLevel(json, price + 1, random);
+        json.append("]],\"time\":\"");
+        appendTime(json, this.times[slot]);
+        json.append("\"}");
+    }
+
+    /**
+     * Append the price & a random size of a level ("price","size")
+     */
+    private static void appendLevel(StringBuilder json, long price, Random random) {
+        json.append('"');
+        appendDecimal(json, price, 2);
+        json.append("\",\"");
+        appendDecimal(json, 1 + random.nextInt(1000000000), 8);
+        json.append('"');
+    }
+
+    /**
+     * Append the level3 book as returned by /products/{id}/book?level=3 : orders of each level
+     * in their queue order
+     * 
+     * @param json Book
+     */
+    synchronized void appendBook(StringBuilder json) {
+        List<SimulatedOrder> bids = new ArrayList<>();
+        List<SimulatedOrder> asks = new ArrayList<>();
+        for(SimulatedOrder order : this.orders.values()) {
+            (order.buy ? bids : asks).add(order);
+        }
+        // Stable sorts : orders of a level stay oldest first
+        bids.sort(Comparator.comparingLong((SimulatedOrder order) -> order.price).reversed());
+        asks.sort(Comparator.comparingLong((SimulatedOrder order) -> order.price));
+        json.append("{\"sequence\":").append(this.sequence).append(",\"bids\":");
+        appendOrders(json, bids);
+        json.append(",\"asks\":");
+        appendOrders(json, asks);
+        json.append('}');
+    }
+
+    /**
+     * Append the [price, size, order_id] orders of a side of the level3 book
+     */
+    private static void appendOrders(StringBuilder json, List<SimulatedOrder> orders) {
+        json.append('[');
+        for(int i = 0; i < orders.size(); i++) {
+            SimulatedOrder order = orders.get(i);
+            json.append(i > 0 ? ",[\"" : "[\"");
+            appendDecimal(json, order.price, 2);
+            json.append("\",\"");
+            appendDecimal(json, order.size, 8);
+            json.append("\",\"").append(order.id).append("\"]");
+        }
+        json.append(']');
+    }
+
+    /**
+     * Append a heartbeat message
+     * 
+     * @param json Message
+     * @param time Time of the heartbeat (epoch micros)
+     */
+    synchronized void appendHeartbeat(StringBuilder json, long time) {
+        json.append("{\"type\":\"heartbeat\",\"last_trade_id\":").append(this.lastTradeId)
+            .append(",\"product_id\":\"").append(this.id)
+            .append("\",\"sequence\":").append(this.sequence)
+            .append(",\"time\":\"");
+        appendTime(json, time);
+        json.append("\"}");
+    }
+
+    /**
+     * Append a page of trades, newest first, as returned by /products/{id}/trades
+     * 
+     * @param json Trades (JSON array)
+     * @param limit Max. number of trades
+     * @param before Return trades newer than this trade id (null if not set)
+     * @param after Return trades older than this trade id (null if not set)
+     * @return Ids of the newest and oldest trades of the page (empty if no trade)
+     */
+    synchronized long[] appendTrades(StringBuilder json, int limit, Long before, Long after) {
+        long newest;
+        long oldest;
+        if(after != null) {
+            newest = Math.min(after - 1, this.lastTradeId);
+            oldest = Math.max(newest - limit + 1, this.firstTradeId);
+        }
+        else if(before != null) {
+            oldest = Math.max(before + 1, this.firstTradeId);
+            newest = Math.min(oldest + limit - 1, this.lastTradeId);
+        }
+        else {
+            newest = this.lastTradeId;
+            oldest = Math.max(newest - limit + 1, this.firstTradeId);
+        }
+
+        json.append('[');
+        for(long tradeId = newest; tradeId >= oldest; tradeId--) {
+            int slot = this.slot(tradeId);
+            if(tradeId != newest) {
+                json.append(',');
+            }
+            json.append("{\"time\":\"");
+            appendTime(json, this.times[slot]);
+            json.append("\",\"trade_id\":").append(tradeId)
+                .append(",\"price\":\"");
+            appendDecimal(json, this.prices[slot], 2);
+            json.append("\",\"size\":\"");
+            appendDecimal(json, this.sizes[slot], 8);
+            json.append("\",\"side\":\"").append(this.buys[slot] ? "buy" : "sell")
+                .append("\"}");
+        }
+        json.append(']');
+        return newest >= oldest ? new long[] { newest, oldest } : new long[0];
+    }
+
+    /**
+     * @param tradeId Trade id
+     * @return Slot of the trade in the ring
+     */
+    private int slot(long tradeId) {
+        return (int) (tradeId % this.capacity);
+    }
+
+    /**
+     * Append a fixed point decimal
+     * 
+     * @param json Output
+     * @param value Value in units of 10^-scale
+     * @param scale Digits after the decimal point
+     */
+    static void appendDecimal(StringBuilder json, long value, int scale) {
+        String digits = Long.toString(value);
+        int integer = digits.length() - scale;
+        if(integer <= 0) {
+            json.append("0.");
+            for(int i = integer; i < 0; i++) {
+                json.append('0');
+            }
+            json.append(digits);
+        }
+        else {
+            json.append(digits, 0, integer).append('.').append(digits, integer, digits.length());
+        }
+    }
+
+    /**
+     * Append a timestamp (ISO-8601, micros)
+     * 
+     * @param json Output
+     * @param time Epoch micros
+     */
+    static void appendTime(StringBuilder json, long time) {
+        json.append(Instant.ofEpochSecond(time / 1000000L, (time % 1000000L) * 1000L));
+    }
+
+    /**
+     * Resting order of the level3 book
+     */
+    private static class SimulatedOrder {
+
+        /**
+         * Order id
+         */
+        private final UUID id;
+
+        /**
+         * Side (true : buy)
+         */
+        private final boolean buy;
+
+        /**
+         * Price (cents) - 0 for a market order
+         */
+        private final long price;
+
+        /**
+         * Remaining size (1e-8)
+         */
+        private long size;
+
+        SimulatedOrder(UUID id, boolean buy, long price, long size) {
+            this.id = id;
+            this.buy = buy;
+            this.price = price;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package tech.gbdevw.colibri.coinbaseetl.codecs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.buffer.Buffer;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Side;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Test class for the protobuf event bus codecs
+ */
+public class ProtobufMessageCodecTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(ProtobufMessageCodecTest.class.getSimpleName());
+
+    /**
+     * The test encodes messages after existing content in a small buffer (so it must grow)
+     * and checks they are decoded back at their positions.
+     */
+    @Test
+    public void testRoundTrip () {
+
+        LOG.info("testRoundTrip - START");
+
+        MatchMessageCodec matchCodec = new MatchMessageCodec();
+        TickerMessageCodec tickerCodec = new TickerMessageCodec();
+
+        Match match = Match.newBuilder()
+            .setTimestamp(1600000000000000000L)
+            .setId(104503241L)
+            .setUnit(Currency.BTC)
+            .setQuote(Currency.USD)
+            .setSide(Side.SELL)
+            .setPrice(10543.21)
+            .setSize(0.0125)
+            .build();
+
+        Ticker ticker = Ticker.newBuilder()
+            .setTimestamp(1600000000000000001L)
+            .setId(17123456789L)
+            .setUnit(Currency.ETH)
+            .setQuote(Currency.EUR)
+            .setBestBid(340.12)
+            .setBestAsk(340.15)
+            .setLastTradeSide(Side.BUY)
+            .setLastTradePrice(340.13)
+            .setLastTradeSize(1.5)
+            .build();
+
+        Buffer buffer = Buffer.buffer(4);
+        buffer.appendByte((byte) 42);
+
+        int matchPos = buffer.length();
+        matchCodec.encodeToWire(buffer, match);
+        int tickerPos = buffer.length();
+        tickerCodec.encodeToWire(buffer, ticker);
+        int emptyPos = buffer.length();
+        matchCodec.encodeToWire(buffer, Match.getDefaultInstance());
+
+        assertEquals(emptyPos + Integer.BYTES, buffer.length());
+        assertEquals(tickerPos + Integer.BYTES + ticker.getSerializedSize(), emptyPos);
+        assertEquals(42, buffer.getByte(0));
+        assertEquals(match, matchCodec.decodeFromWire(matchPos, buffer));
+        assertEquals(ticker, tickerCodec.decodeFromWire(tickerPos, buffer));
+        assertEquals(Match.getDefaultInstance(), matchCodec.decodeFromWire(emptyPos, buffer));
+
+        LOG.info("testRoundTrip - SUCCESS");
+    }
+}
@@ -31,7 +31,7 @@ public class CoinbaseClientTest {
         int limit = 100;
 
         // Get the 100 latest trades
-        CoinbaseTrade [] trades = this.client.getLatestTrades(product, limit);
+        CoinbaseTrade [] trades = this.client.getTrades(product, limit, null, null);
         assertEquals(trades.length, limit);
 
         for (CoinbaseTrade coinbaseTrade : trades) {
@@ -54,7 +54,7 @@ public class CoinbaseClientTest {
         int limit = 10;
 
         // Get the 10 latest trades
-        CoinbaseTrade [] trades = this.client.getLatestTrades(product, limit);
+        CoinbaseTrade [] trades = this.client.getTrades(product, limit, null, null);
         assertEquals(trades.length, limit);
 
         for (CoinbaseTrade coinbaseTrade : trades) {
@@ -81,7 +81,7 @@ public class CoinbaseClientTest {
 
         try {
             // Get the 101 latest trades
-            CoinbaseTrade [] trades = this.client.getLatestTrades(product, limit);
+            CoinbaseTrade [] trades = this.client.getTrades(product, limit, null, null);
             assertEquals(trades.length, limit);
 
             for (CoinbaseTrade coinbaseTrade : trades) {
@@ -114,7 +114,7 @@ public class CoinbaseClientTest {
 
         try {
             // Get the 0 latest trades
-            CoinbaseTrade [] trades = this.client.getLatestTrades(product, limit);
+            CoinbaseTrade [] trades = this.client.getTrades(product, limit, null, null);
             assertEquals(trades.length, limit);
 
             for (CoinbaseTrade coinbaseTrade : trades) {
@@ -147,7 +147,7 @@ public class CoinbaseClientTest {
 
         try {
             // Get the -1 latest trades
-            CoinbaseTrade [] trades = this.client.getLatestTrades(product, limit);
+            CoinbaseTrade [] trades = this.client.getTrades(product, limit, null, null);
             assertEquals(trades.length, limit);
 
             for (CoinbaseTrade coinbaseTrade : trades) {
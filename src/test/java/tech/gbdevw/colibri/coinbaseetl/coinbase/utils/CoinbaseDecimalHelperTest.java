@@ -0,0 +1,73 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for CoinbaseDecimalHelper
+ */
+public class CoinbaseDecimalHelperTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseDecimalHelperTest.class.getSimpleName());
+
+    /**
+     * The test checks that decimal strings are parsed to scaled longs and back to strings.
+     */
+    @Test
+    public void testParse () {
+
+        LOG.info("testParse - START");
+
+        assertEquals(1010110000000L, CoinbaseDecimalHelper.parse("10101.1"));
+        assertEquals(1010110000000L, CoinbaseDecimalHelper.parse("10101.10000000"));
+        assertEquals(1L, CoinbaseDecimalHelper.parse("0.00000001"));
+        assertEquals(1L, CoinbaseDecimalHelper.parse("0.000000019"));
+        assertEquals(-50000000L, CoinbaseDecimalHelper.parse("-0.5"));
+        assertEquals(4200000000L, CoinbaseDecimalHelper.parse("42"));
+        assertThrows(NumberFormatException.class, () -> CoinbaseDecimalHelper.parse("1e5"));
+        assertThrows(NumberFormatException.class, () -> CoinbaseDecimalHelper.parse("."));
+        assertEquals("10101.10000000", CoinbaseDecimalHelper.append(new StringBuilder(), 1010110000000L).toString());
+        assertEquals("-0.00000001", CoinbaseDecimalHelper.append(new StringBuilder(), -1L).toString());
+
+        LOG.info("testParse - SUCCESS");
+    }
+
+    /**
+     * The test checks that decimal strings are converted to doubles like Double.parseDouble
+     * does and that the doubles convert back to the exact scaled values.
+     */
+    @Test
+    public void testParseDouble () {
+
+        LOG.info("testParseDouble - START");
+
+        String [] values = new String [] {
+            "9000.01", "0.1", "0.00000001", "10543.21000000", "0.0125", "123456789.12345678",
+            "0.000000011", "1e-3", "1.5E+4", "00012.50", "-3.25", "99999999999.99999999"
+        };
+        for(String value : values) {
+            assertEquals(Double.parseDouble(value), CoinbaseDecimalHelper.parseDouble(value), value);
+        }
+
+        Random random = new Random(42);
+        for(int i = 0; i < 100000; i++) {
+            long scaled = (random.nextLong() >>> (11 + random.nextInt(40)));
+            String value = BigDecimal.valueOf(scaled, CoinbaseDecimalHelper.SCALE).toPlainString();
+            double parsed = CoinbaseDecimalHelper.parseDouble(value);
+            assertEquals(Double.parseDouble(value), parsed, value);
+            if(scaled < (1L << 51)) {
+                assertEquals(scaled, CoinbaseDecimalHelper.fromDouble(parsed), value);
+            }
+        }
+        assertThrows(NumberFormatException.class, () -> CoinbaseDecimalHelper.parseDouble("abc"));
+
+        LOG.info("testParseDouble - SUCCESS");
+    }
+}
@@ -0,0 +1,97 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Side;
+
+/**
+ * Test class for CoinbaseProductTable & CoinbaseSideHelper
+ */
+public class CoinbaseProductTableTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseProductTableTest.class.getSimpleName());
+
+    /**
+     * The test checks that products are resolved to their currencies and canonical id.
+     */
+    @Test
+    public void testGet () {
+
+        LOG.info("testGet - START");
+
+        CoinbaseProductTable table = new CoinbaseProductTable(List.of("BTC-USD", "ETH-EUR"));
+
+        CoinbaseProduct product = table.get(new String("BTC-USD"));
+        assertEquals(Currency.BTC, product.getUnit());
+        assertEquals(Currency.USD, product.getQuote());
+        assertSame("BTC-USD", product.getId());
+        assertSame(product, table.get("BTC-USD"));
+
+        // Product not in the table
+        product = table.get("ETH-USD");
+        assertEquals(Currency.ETH, product.getUnit());
+        assertEquals(Currency.USD, product.getQuote());
+
+        LOG.info("testGet - SUCCESS");
+    }
+
+    /**
+     * The test checks that products are resolved from their currencies.
+     */
+    @Test
+    public void testGetByCurrencies () {
+
+        LOG.info("testGetByCurrencies - START");
+
+        CoinbaseProductTable table = new CoinbaseProductTable(List.of("BTC-USD", "ETH-EUR"));
+
+        assertSame(table.get("ETH-EUR"), table.get(Currency.ETH, Currency.EUR));
+        assertEquals("BTC-EUR", table.get(Currency.BTC, Currency.EUR).getId());
+
+        LOG.info("testGetByCurrencies - SUCCESS");
+    }
+
+    /**
+     * The test checks that an exception is thrown for invalid products.
+     */
+    @Test
+    public void testGetInvalid () {
+
+        LOG.info("testGetInvalid - START");
+
+        try {
+            new CoinbaseProductTable(List.of("BTCUSD"));
+
+            LOG.info("testGetInvalid - FAILURE");
+            fail("CoinbaseProductTable should throw an exception");
+        }
+        catch(IllegalArgumentException ex) {
+            LOG.info("testGetInvalid - SUCCESS");
+        }
+    }
+
+    /**
+     * The test checks that sides are resolved whatever their case.
+     */
+    @Test
+    public void testGetSide () {
+
+        LOG.info("testGetSide - START");
+
+        assertEquals(Side.BUY, CoinbaseSideHelper.getSide("buy"));
+        assertEquals(Side.SELL, CoinbaseSideHelper.getSide("sell"));
+        assertEquals(Side.SELL, CoinbaseSideHelper.getSide("SELL"));
+        assertEquals(Side.BUY, CoinbaseSideHelper.getSide("Buy"));
+
+        LOG.info("testGetSide - SUCCESS");
+    }
+}
@@ -0,0 +1,92 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for CoinbaseTimeHelper
+ */
+public class CoinbaseTimeHelperTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseTimeHelperTest.class.getSimpleName());
+
+    /**
+     * The test checks that Coinbase timestamps are converted like Instant.parse does.
+     */
+    @Test
+    public void testToEpochMilli () {
+
+        LOG.info("testToEpochMilli - START");
+
+        String [] timestamps = new String [] {
+            "2020-07-12T17:49:47.169497Z",
+            "2020-07-12T17:49:47.169Z",
+            "2020-07-12T17:59:59.999999Z",
+            "2020-07-12T18:00:00.000001Z",
+            "2020-07-12T17:49:47.1Z",
+            "2020-07-12T17:49:47.123456789Z",
+            "2020-07-12T17:49:47Z",
+            "2020-02-29T23:59:59.5Z",
+            "2021-01-01T00:00:00.000000Z",
+            "1970-01-01T00:00:00Z",
+            "1969-12-31T23:59:59.999Z",
+            "2100-03-01T12:30:00.250000Z"
+        };
+
+        for(String timestamp : timestamps) {
+            assertEquals(Instant.parse(timestamp).toEpochMilli(), CoinbaseTimeHelper.toEpochMilli(timestamp), timestamp);
+        }
+
+        LOG.info("testToEpochMilli - SUCCESS");
+    }
+
+    /**
+     * The test checks that timestamps in another format are converted with the fallback.
+     */
+    @Test
+    public void testToEpochMilliFallback () {
+
+        LOG.info("testToEpochMilliFallback - START");
+
+        String timestamp = "+12020-07-12T17:49:47.169497Z";
+        assertEquals(Instant.parse(timestamp).toEpochMilli(), CoinbaseTimeHelper.toEpochMilli(timestamp));
+
+        LOG.info("testToEpochMilliFallback - SUCCESS");
+    }
+
+    /**
+     * The test checks that an exception is thrown for invalid timestamps.
+     */
+    @Test
+    public void testToEpochMilliInvalid () {
+
+        LOG.info("testToEpochMilliInvalid - START");
+
+        String [] timestamps = new String [] {
+            "2019-02-29T17:49:47.169497Z",
+            "2020-07-12T24:49:47.169497Z",
+            "2020-07-12 17:49:47.169497Z",
+            "not a timestamp"
+        };
+
+        for(String timestamp : timestamps) {
+            try {
+                CoinbaseTimeHelper.toEpochMilli(timestamp);
+                LOG.info("testToEpochMilliInvalid - FAILURE");
+                fail("toEpochMilli should throw an exception : " + timestamp);
+            }
+            catch(DateTimeParseException ex) {
+                // Expected
+            }
+        }
+
+        LOG.info("testToEpochMilliInvalid - SUCCESS");
+    }
+}
@@ -0,0 +1,70 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.flight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for FlightRecorder
+ */
+public class FlightRecorderTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(FlightRecorderTest.class.getSimpleName());
+
+    /**
+     * The test records more frames than the recorder keeps and checks the last ones are copied
+     * in order with their outcome, and that long frames are truncated without splitting a
+     * character.
+     */
+    @Test
+    public void testRecord () throws Exception {
+
+        LOG.info("testRecord - START");
+
+        FlightRecorder recorder = new FlightRecorder(3, 8, 64);
+        assertTrue(recorder.snapshot().isEmpty());
+
+        // Only the last 8 frames are kept
+        for(int i = 0; i < 20; i++) {
+            recorder.record(1000 + i, "{\"type\":\"match\",\"trade_id\":" + i + "}");
+            recorder.outcome(i % 2 == 0 ? FlightRecorder.PROCESSED : FlightRecorder.FAILED);
+        }
+        List<FlightRecord> records = recorder.snapshot();
+        assertEquals(8, records.size());
+        for(int i = 0; i < 8; i++) {
+            FlightRecord record = records.get(i);
+            assertEquals(3, record.getShard());
+            assertEquals(12 + i, record.getSequence());
+            assertEquals(1012 + i, record.getReceived());
+            assertEquals(i % 2 == 0 ? "processed" : "failed", record.getOutcome());
+            assertEquals("{\"type\":\"match\",\"trade_id\":" + (12 + i) + "}", record.getFrame());
+            assertFalse(record.isTruncated());
+        }
+
+        // Last frame is pending until its outcome is set
+        recorder.record(2000, "{\"type\":\"ticker\",\"product_id\":\"BTC-EUR\",\"price\":\"10000€\"}");
+        FlightRecord last = recorder.snapshot().get(7);
+        assertEquals("pending", last.getOutcome());
+        assertEquals("{\"type\":\"ticker\",\"product_id\":\"BTC-EUR\",\"price\":\"10000€\"}", last.getFrame());
+        assertFalse(last.isTruncated());
+
+        // Frames longer than the slot are truncated (the 3 bytes character does not fit)
+        String frame = "x".repeat(62) + "€€";
+        recorder.record(3000, frame);
+        last = recorder.snapshot().get(7);
+        assertEquals("x".repeat(62), last.getFrame());
+        assertTrue(last.isTruncated());
+        recorder.record(4000, "y".repeat(100));
+        last = recorder.snapshot().get(7);
+        assertEquals("y".repeat(64), last.getFrame());
+        assertTrue(last.isTruncated());
+
+        LOG.info("testRecord - SUCCESS");
+    }
+}
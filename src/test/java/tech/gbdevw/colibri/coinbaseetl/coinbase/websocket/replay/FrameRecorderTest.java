@@ -0,0 +1,137 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * Test class for FrameRecorder, FrameReader & FrameReplayer
+ */
+public class FrameRecorderTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(FrameRecorderTest.class.getSimpleName());
+
+    /**
+     * The test records frames in several segments and checks they are read back in order,
+     * including the complete frames of a truncated segment.
+     */
+    @Test
+    public void testRecordAndRead () throws Exception {
+
+        LOG.info("testRecordAndRead - START");
+
+        Path dir = Files.createTempDirectory("frames");
+
+        // Record frames in small segments
+        FrameRecorder recorder = new FrameRecorder(dir, 4096, 10000, new MetricsRegistryImpl());
+        long start = recorder.now();
+        for(int i = 0; i < 1000; i++) {
+            assertTrue(recorder.record(i % 3, start + i, "{\"type\":\"match\",\"trade_id\":" + i + "}"));
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDropped());
+
+        List<Path> segments;
+        try (Stream<Path> list = Files.list(dir)) {
+            segments = list.sorted().collect(Collectors.toList());
+        }
+        assertTrue(segments.size() > 1);
+
+        // Read frames back
+        try (FrameReader reader = new FrameReader(dir)) {
+            for(int i = 0; i < 1000; i++) {
+                assertTrue(reader.next());
+                assertEquals(start + i, reader.getTimestamp());
+                assertEquals(i % 3, reader.getShard());
+                assertEquals("{\"type\":\"match\",\"trade_id\":" + i + "}", reader.getMessage());
+            }
+            assertFalse(reader.next());
+        }
+
+        // Truncate the last segment : its complete frames are still read
+        Path last = segments.get(segments.size() - 1);
+        byte[] bytes = Files.readAllBytes(last);
+        Files.write(last, Arrays.copyOf(bytes, bytes.length / 2));
+        int frames = 0;
+        try (FrameReader reader = new FrameReader(dir)) {
+            while(reader.next()) {
+                assertEquals(start + frames, reader.getTimestamp());
+                frames++;
+            }
+        }
+        assertTrue(frames < 1000);
+
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+
+        LOG.info("testRecordAndRead - SUCCESS");
+    }
+
+    /**
+     * The test checks that frames are replayed in order and paced according to the speed, on a
+     * simulated clock advanced by the waits of the replayer.
+     */
+    @Test
+    public void testReplay () throws Exception {
+
+        LOG.info("testReplay - START");
+
+        Path dir = Files.createTempDirectory("frames");
+
+        // 11 frames over 200 ms
+        FrameRecorder recorder = new FrameRecorder(dir, 1 << 20, 100, new MetricsRegistryImpl());
+        for(int i = 0; i <= 10; i++) {
+            recorder.record(0, i * 20000000L, "frame-" + i);
+        }
+        recorder.close();
+
+        // 2x speed : one frame every 10 ms
+        AtomicLong clock = new AtomicLong(1000000000L);
+        List<String> replayed = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        try (FrameReader reader = new FrameReader(dir)) {
+            FrameReplayer replayer = new FrameReplayer(reader, 2.0, (shard, message) -> {
+                replayed.add(message);
+                times.add(clock.get());
+            }, clock::get, clock::addAndGet);
+            assertEquals(11, replayer.replay());
+        }
+        for(int i = 0; i <= 10; i++) {
+            assertEquals("frame-" + i, replayed.get(i));
+            assertEquals(i * 10000000L, times.get(i) - times.get(0));
+        }
+
+        // As fast as possible : no wait
+        replayed.clear();
+        List<Long> waits = new ArrayList<>();
+        try (FrameReader reader = new FrameReader(dir)) {
+            assertEquals(11, new FrameReplayer(reader, 0, (shard, message) -> replayed.add(message), clock::get, waits::add).replay());
+        }
+        assertEquals(11, replayed.size());
+        assertEquals("frame-10", replayed.get(10));
+        assertTrue(waits.isEmpty());
+
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+
+        LOG.info("testReplay - SUCCESS");
+    }
+}
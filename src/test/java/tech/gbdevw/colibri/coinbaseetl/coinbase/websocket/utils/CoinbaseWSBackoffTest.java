@@ -0,0 +1,70 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for CoinbaseWSBackoff
+ */
+public class CoinbaseWSBackoffTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseWSBackoffTest.class.getSimpleName());
+
+    /**
+     * Test of the reconnect delays.
+     * 
+     * The method test that delays double up to the cap, stay within the jitter bounds and that
+     * the circuit opens after too many failures then closes after a success.
+     */
+    @Test
+    public void testBackoff () {
+
+        LOG.info("testBackoff - START");
+
+        // Without jitter : exact delays
+        CoinbaseWSBackoff backoff = new CoinbaseWSBackoff(100, 1000, 0, 6, 60000);
+        assertEquals(100, backoff.firstDelay());
+        assertEquals(200, backoff.onFailure());
+        assertEquals(400, backoff.onFailure());
+        assertEquals(800, backoff.onFailure());
+        assertEquals(1000, backoff.onFailure());
+        assertEquals(1000, backoff.onFailure());
+        assertFalse(backoff.isOpen());
+
+        // Circuit opens after 6 consecutive failures and stays open on failure (half-open attempt)
+        assertEquals(60000, backoff.onFailure());
+        assertTrue(backoff.isOpen());
+        assertEquals(60000, backoff.firstDelay());
+        assertEquals(60000, backoff.onFailure());
+
+        // Success closes the circuit
+        backoff.onSuccess();
+        assertFalse(backoff.isOpen());
+        assertEquals(100, backoff.firstDelay());
+
+        // Large number of failures does not overflow
+        backoff = new CoinbaseWSBackoff(100, 1000, 0, Integer.MAX_VALUE, 60000);
+        for(int i = 0; i < 100; i++) {
+            long delay = backoff.onFailure();
+            assertTrue(delay > 0 && delay <= 1000);
+        }
+
+        // With jitter : delays stay within bounds
+        backoff = new CoinbaseWSBackoff(1000, 8000, 0.5, 100, 60000);
+        for(int i = 0; i < 1000; i++) {
+            long delay = backoff.firstDelay();
+            assertTrue(delay >= 500 && delay <= 1000);
+        }
+
+        // A zero delay would never grow
+        assertThrows(IllegalArgumentException.class, () -> new CoinbaseWSBackoff(0, 1000, 0, 10, 60000));
+
+        LOG.info("testBackoff - SUCCESS");
+    }
+}
@@ -0,0 +1,86 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for CoinbaseWSShardingHelper
+ */
+public class CoinbaseWSShardingHelperTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseWSShardingHelperTest.class.getSimpleName());
+
+    /**
+     * Test of method assignExplicit.
+     * 
+     * The method test that products are assigned as configured and that invalid assignments
+     * are rejected.
+     */
+    @Test
+    public void testAssignExplicit () {
+
+        LOG.info("testAssignExplicit - START");
+
+        List<String> products = Arrays.asList("BTC-USD", "ETH-EUR", "LTC-USD");
+        List<Set<String>> shards = CoinbaseWSShardingHelper.assignExplicit("BTC-USD, ETH-EUR;LTC-USD", products);
+        assertEquals(2, shards.size());
+        assertEquals(new HashSet<>(Arrays.asList("BTC-USD", "ETH-EUR")), shards.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("LTC-USD")), shards.get(1));
+
+        for(String invalid : new String [] {"BTC-USD;ETH-EUR", "BTC-USD,ETH-EUR;LTC-USD,BTC-USD", "BTC-USD,ETH-EUR;LTC-USD,XRP-EUR"}) {
+            try {
+                CoinbaseWSShardingHelper.assignExplicit(invalid, products);
+                fail("Invalid assignment accepted : " + invalid);
+            }
+            catch(IllegalArgumentException ex) {
+                // OK
+            }
+        }
+
+        LOG.info("testAssignExplicit - SUCCESS");
+    }
+
+    /**
+     * Test of methods assignHash and assignWeighted.
+     * 
+     * The method test that all products are assigned once and that weighted assignment balances
+     * the load of the connections.
+     */
+    @Test
+    public void testAssignAutomatic () {
+
+        LOG.info("testAssignAutomatic - START");
+
+        // Hash : every product is assigned to exactly one connection
+        List<String> products = Arrays.asList("BTC-USD", "ETH-EUR", "LTC-USD", "BTC-EUR", "ETH-USD");
+        List<Set<String>> shards = CoinbaseWSShardingHelper.assignHash(products, 3);
+        assertEquals(3, shards.size());
+        Set<String> assigned = new HashSet<>();
+        shards.forEach(assigned::addAll);
+        assertEquals(new HashSet<>(products), assigned);
+        assertEquals(products.size(), shards.stream().mapToInt(Set::size).sum());
+
+        // Weighted : the busiest product gets its own connection
+        Map<String, Long> weights = new HashMap<>();
+        weights.put("BTC-USD", 100L);
+        weights.put("ETH-EUR", 40L);
+        weights.put("LTC-USD", 30L);
+        weights.put("BTC-EUR", 20L);
+        shards = CoinbaseWSShardingHelper.assignWeighted(weights, 2);
+        assertEquals(new HashSet<>(Arrays.asList("BTC-USD")), shards.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("ETH-EUR", "LTC-USD", "BTC-EUR")), shards.get(1));
+
+        LOG.info("testAssignAutomatic - SUCCESS");
+    }
+}
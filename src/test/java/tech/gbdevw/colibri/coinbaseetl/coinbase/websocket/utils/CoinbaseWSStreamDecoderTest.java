@@ -0,0 +1,282 @@
+package tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Test class for CoinbaseWSStreamDecoder
+ */
+public class CoinbaseWSStreamDecoderTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseWSStreamDecoderTest.class.getSimpleName());
+
+    private final static CoinbaseProductTable PRODUCTS = new CoinbaseProductTable(List.of("BTC-USD"));
+
+    /**
+     * Read a test message from resources
+     */
+    private String readMessage (String resource) throws Exception {
+        InputStream in = this.getClass().getResourceAsStream(resource);
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The test checks that the streaming decoder and the tree helper build the same match.
+     */
+    @Test
+    public void testReadMatch () throws Exception {
+
+        LOG.info("testReadMatch - START");
+
+        String message = this.readMessage("/messages/CoinbaseMatchMessage.json");
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        assertEquals(CoinbaseWSMsgTypes.MATCH, CoinbaseWSStreamDecoder.readType(reader));
+        Match actual = CoinbaseWSStreamDecoder.readMatch(reader, PRODUCTS);
+
+        JsonObject raw = JsonParser.parseString(message).getAsJsonObject();
+        assertEquals(CoinbaseWsMatchHelper.getMatch(raw, PRODUCTS), actual);
+
+        LOG.info("testReadMatch - SUCCESS");
+    }
+
+    /**
+     * The test checks that the streaming decoder and the tree helper build the same last match.
+     */
+    @Test
+    public void testReadLastMatch () throws Exception {
+
+        LOG.info("testReadLastMatch - START");
+
+        String message = this.readMessage("/messages/CoinbaseLastMatchMessage.json");
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        assertEquals(CoinbaseWSMsgTypes.LASTMATCH, CoinbaseWSStreamDecoder.readType(reader));
+        Match actual = CoinbaseWSStreamDecoder.readMatch(reader, PRODUCTS);
+
+        JsonObject raw = JsonParser.parseString(message).getAsJsonObject();
+        assertEquals(CoinbaseWsLastMatchHelper.getLastMatch(raw, PRODUCTS), actual);
+        assertEquals(CoinbaseWsLastMatchHelper.getLastTradeId(raw), actual.getId());
+
+        LOG.info("testReadLastMatch - SUCCESS");
+    }
+
+    /**
+     * The test checks that the streaming decoder and the tree helper build the same ticker.
+     */
+    @Test
+    public void testReadTicker () throws Exception {
+
+        LOG.info("testReadTicker - START");
+
+        String message = this.readMessage("/messages/CoinbaseTickerMessage.json");
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        assertEquals(CoinbaseWSMsgTypes.TICKER, CoinbaseWSStreamDecoder.readType(reader));
+        Ticker actual = CoinbaseWSStreamDecoder.readTicker(reader, PRODUCTS);
+
+        JsonObject raw = JsonParser.parseString(message).getAsJsonObject();
+        assertEquals(CoinbaseWSTickHelper.getTicker(raw, PRODUCTS), actual);
+
+        LOG.info("testReadTicker - SUCCESS");
+    }
+
+    /**
+     * The test checks that no type is returned when "type" is not the first property.
+     */
+    @Test
+    public void testReadTypeNotFirst () throws Exception {
+
+        LOG.info("testReadTypeNotFirst - START");
+
+        JsonReader reader = new JsonReader(new StringReader("{\"sequence\":1,\"type\":\"ticker\"}"));
+        assertNull(CoinbaseWSStreamDecoder.readType(reader));
+
+        LOG.info("testReadTypeNotFirst - SUCCESS");
+    }
+
+    /**
+     * The test checks that an exception is thrown when a property is missing.
+     */
+    @Test
+    public void testReadMatchMissingProperty () throws Exception {
+
+        LOG.info("testReadMatchMissingProperty - START");
+
+        try {
+            JsonReader reader = new JsonReader(new StringReader("{\"type\":\"match\",\"trade_id\":1,\"side\":\"buy\"}"));
+            CoinbaseWSStreamDecoder.readType(reader);
+            CoinbaseWSStreamDecoder.readMatch(reader, PRODUCTS);
+
+            LOG.info("testReadMatchMissingProperty - FAILURE");
+            fail("readMatch should throw an exception");
+        }
+        catch(NoSuchElementException ex) {
+            LOG.info("testReadMatchMissingProperty - SUCCESS");
+        }
+    }
+
+    /**
+     * The test checks that the streaming decoder and the tree helper read the same levels from
+     * a level2 snapshot.
+     */
+    @Test
+    public void testReadL2Snapshot () throws Exception {
+
+        LOG.info("testReadL2Snapshot - START");
+
+        String message = this.readMessage("/messages/CoinbaseL2SnapshotMessage.json");
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        assertEquals(CoinbaseWSMsgTypes.SNAPSHOT, CoinbaseWSStreamDecoder.readType(reader));
+        CoinbaseWSL2Message actual = new CoinbaseWSL2Message();
+        CoinbaseWSStreamDecoder.readL2Snapshot(reader, PRODUCTS, actual);
+
+        CoinbaseWSL2Message expected = new CoinbaseWSL2Message();
+        CoinbaseWSL2Helper.getSnapshot(JsonParser.parseString(message).getAsJsonObject(), PRODUCTS, expected);
+        this.assertL2Equals(expected, actual);
+
+        assertEquals("BTC-USD", actual.getProduct().getId());
+        assertEquals(5, actual.getCount());
+        assertEquals(921650000000L, actual.getPrice(0));
+        assertEquals(125000000L, actual.getSize(0));
+        assertEquals(921500000000L, actual.getPrice(2));
+        assertEquals(false, actual.isBid(3));
+        assertEquals(200000001L, actual.getSize(4));
+
+        LOG.info("testReadL2Snapshot - SUCCESS");
+    }
+
+    /**
+     * The test checks that the streaming decoder and the tree helper read the same changes from
+     * a l2update.
+     */
+    @Test
+    public void testReadL2Update () throws Exception {
+
+        LOG.info("testReadL2Update - START");
+
+        String message = this.readMessage("/messages/CoinbaseL2UpdateMessage.json");
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        assertEquals(CoinbaseWSMsgTypes.L2UPDATE, CoinbaseWSStreamDecoder.readType(reader));
+        CoinbaseWSL2Message actual = new CoinbaseWSL2Message();
+        CoinbaseWSStreamDecoder.readL2Update(reader, PRODUCTS, actual);
+
+        CoinbaseWSL2Message expected = new CoinbaseWSL2Message();
+        CoinbaseWSL2Helper.getUpdate(JsonParser.parseString(message).getAsJsonObject(), PRODUCTS, expected);
+        this.assertL2Equals(expected, actual);
+
+        assertEquals(1594576187169L, actual.getTime());
+        assertEquals(2, actual.getCount());
+        assertEquals(true, actual.isBid(0));
+        assertEquals(0L, actual.getSize(0));
+        assertEquals(false, actual.isBid(1));
+        assertEquals(921660000000L, actual.getPrice(1));
+        assertEquals(75000000L, actual.getSize(1));
+
+        LOG.info("testReadL2Update - SUCCESS");
+    }
+
+    /**
+     * The test checks that the streaming decoder and the tree helper read the same open message.
+     */
+    @Test
+    public void testReadL3Open () throws Exception {
+
+        LOG.info("testReadL3Open - START");
+
+        CoinbaseWSL3Message actual = this.readL3("/messages/CoinbaseL3OpenMessage.json", CoinbaseWSMsgTypes.OPEN);
+        assertEquals(CoinbaseWSL3Message.OPEN, actual.getType());
+        assertEquals(184479384L, actual.getSequence());
+        assertEquals(0x890872bfd5824c96L, actual.getOrderHigh());
+        assertEquals(0x9ffcf3d15895c873L, actual.getOrderLow());
+        assertEquals(false, actual.isBid());
+        assertEquals(920990000000L, actual.getPrice());
+        assertEquals(150000000L, actual.getSize());
+
+        LOG.info("testReadL3Open - SUCCESS");
+    }
+
+    /**
+     * The test checks that a match of the full channel builds the same match as the matches
+     * channel and that null properties of a change message are ignored.
+     */
+    @Test
+    public void testReadL3Match () throws Exception {
+
+        LOG.info("testReadL3Match - START");
+
+        CoinbaseWSL3Message match = this.readL3("/messages/CoinbaseMatchMessage.json", CoinbaseWSMsgTypes.MATCH);
+        assertEquals(0x890872bfd5824c96L, match.getOrderHigh());
+        assertEquals(109421995L, match.getSize());
+        JsonObject raw = JsonParser.parseString(this.readMessage("/messages/CoinbaseMatchMessage.json")).getAsJsonObject();
+        assertEquals(CoinbaseWsMatchHelper.getMatch(raw, PRODUCTS), match.getMatch());
+
+        CoinbaseWSL3Message change = this.readL3("/messages/CoinbaseL3ChangeMessage.json", CoinbaseWSMsgTypes.CHANGE);
+        assertEquals(CoinbaseWSL3Message.CHANGE, change.getType());
+        assertEquals(0L, change.getPrice());
+        assertEquals(20000000L, change.getSize());
+
+        LOG.info("testReadL3Match - SUCCESS");
+    }
+
+    /**
+     * Read a message of the full channel with both decoders and check they are equal
+     */
+    private CoinbaseWSL3Message readL3 (String resource, String type) throws Exception {
+        String message = this.readMessage(resource);
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        assertEquals(type, CoinbaseWSStreamDecoder.readType(reader));
+        CoinbaseWSL3Message actual = new CoinbaseWSL3Message();
+        CoinbaseWSStreamDecoder.readL3(reader, CoinbaseWSL3Message.getType(type), PRODUCTS, actual);
+
+        CoinbaseWSL3Message expected = new CoinbaseWSL3Message();
+        CoinbaseWSL3Helper.getMessage(JsonParser.parseString(message).getAsJsonObject(), CoinbaseWSL3Message.getType(type), PRODUCTS, expected);
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getProduct(), actual.getProduct());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getSequence(), actual.getSequence());
+        assertEquals(expected.getOrderHigh(), actual.getOrderHigh());
+        assertEquals(expected.getOrderLow(), actual.getOrderLow());
+        assertEquals(expected.isBid(), actual.isBid());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getTradeId(), actual.getTradeId());
+        return actual;
+    }
+
+    /**
+     * Check that two level2 messages are equal
+     */
+    private void assertL2Equals (CoinbaseWSL2Message expected, CoinbaseWSL2Message actual) {
+        assertEquals(expected.getProduct(), actual.getProduct());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getCount(), actual.getCount());
+        for(int i = 0; i < expected.getCount(); i++) {
+            assertEquals(expected.isBid(i), actual.isBid(i));
+            assertEquals(expected.getPrice(i), actual.getPrice(i));
+            assertEquals(expected.getSize(i), actual.getSize(i));
+        }
+    }
+}
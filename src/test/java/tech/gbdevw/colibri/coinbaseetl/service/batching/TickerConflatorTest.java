@@ -0,0 +1,88 @@
+package tech.gbdevw.colibri.coinbaseetl.service.batching;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Test class for TickerConflator
+ */
+public class TickerConflatorTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(TickerConflatorTest.class.getSimpleName());
+
+    /**
+     * The test checks that only the latest ticker of a conflated product is sent, that replaced
+     * tickers are counted and that products without interval are not conflated.
+     */
+    @Test
+    public void testConflation () throws Exception {
+
+        LOG.info("testConflation - START");
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            MetricsRegistryImpl registry = new MetricsRegistryImpl();
+            List<Ticker> sent = new CopyOnWriteArrayList<>();
+            Map<String, Long> intervals = TickerConflator.parseIntervals("btc-usd:50, ETH-EUR:0");
+            assertEquals(Map.of("BTC-USD", 50L, "ETH-EUR", 0L), intervals);
+            TickerConflator conflator = new TickerConflator(new CoinbaseProductTable(List.of("BTC-USD", "ETH-EUR")), 3600000L, intervals, vertx, registry, sent::add);
+
+            for(long id = 1; id <= 100; id++) {
+                assertTrue(conflator.offer(this.ticker(Currency.BTC, Currency.USD, id)));
+            }
+            assertFalse(conflator.offer(this.ticker(Currency.ETH, Currency.EUR, 1)));
+            for(int i = 0; i < 500 && sent.isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, sent.size());
+            assertEquals(100L, sent.get(0).getId());
+            assertEquals(99, registry.getCounters().get(new MetricID("tickers.conflated", new Tag("product", "BTC-USD"))).getCount());
+
+            // Remaining ticker sent when closed
+            conflator.offer(this.ticker(Currency.BTC, Currency.USD, 101));
+            conflator.close();
+            assertEquals(101L, sent.get(sent.size() - 1).getId());
+
+            // Remaining ticker handed to another consumer when closed
+            List<Ticker> last = new ArrayList<>();
+            TickerConflator closing = new TickerConflator(new CoinbaseProductTable(List.of("BTC-USD")), 3600000L, Map.of(), vertx, new MetricsRegistryImpl(), sent::add);
+            closing.offer(this.ticker(Currency.BTC, Currency.USD, 102));
+            closing.close(last::add);
+            assertEquals(1, last.size());
+            assertEquals(102L, last.get(0).getId());
+            assertEquals(101L, sent.get(sent.size() - 1).getId());
+            assertThrows(IllegalArgumentException.class, () -> TickerConflator.parseIntervals("BTC-USD"));
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testConflation - SUCCESS");
+    }
+
+    /**
+     * Build a ticker
+     */
+    private Ticker ticker(Currency unit, Currency quote, long id) {
+        return Ticker.newBuilder().setUnit(unit).setQuote(quote).setId(id).build();
+    }
+}
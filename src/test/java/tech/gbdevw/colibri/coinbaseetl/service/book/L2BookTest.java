@@ -0,0 +1,250 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.protobuf.CodedInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL2Message;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.domain.Currency;
+
+/**
+ * Test class for L2Book, L2BookSide, L2BookEncoder & L2BookService
+ */
+public class L2BookTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(L2BookTest.class.getSimpleName());
+
+    private final static CoinbaseProduct PRODUCT = new CoinbaseProduct("BTC-USD");
+
+    /**
+     * Build a snapshot : bids 100, 99, 98 - asks 101, 102
+     */
+    private CoinbaseWSL2Message snapshot () {
+        CoinbaseWSL2Message snapshot = new CoinbaseWSL2Message();
+        snapshot.setProduct(PRODUCT);
+        snapshot.setTime(1000L);
+        snapshot.add(true, 100, 1);
+        snapshot.add(true, 99, 2);
+        snapshot.add(true, 98, 3);
+        snapshot.add(false, 101, 4);
+        snapshot.add(false, 102, 5);
+        return snapshot;
+    }
+
+    /**
+     * The test checks that updates are ignored until the snapshot is loaded, then applied with
+     * the lowest depth they changed.
+     */
+    @Test
+    public void testApply () {
+
+        LOG.info("testApply - START");
+
+        L2Book book = new L2Book(PRODUCT, 2);
+        CoinbaseWSL2Message update = new CoinbaseWSL2Message();
+        update.setProduct(PRODUCT);
+        update.setTime(2000L);
+        update.add(true, 99, 7);
+        assertEquals(-1, book.apply(update));
+        assertFalse(book.isReady());
+
+        // Snapshot : best levels first
+        book.load(this.snapshot(), this);
+        assertTrue(book.isReady());
+        assertEquals(this, book.getSource());
+        assertEquals(3, book.getBids().getLevels());
+        assertEquals(2, book.getAsks().getLevels());
+        assertEquals(100, book.getBids().getPrice(0));
+        assertEquals(98, book.getBids().getPrice(2));
+        assertEquals(101, book.getAsks().getPrice(0));
+        assertEquals(5, book.getAsks().getSize(1));
+
+        // Update of the second bid
+        assertEquals(1, book.apply(update));
+        assertEquals(7, book.getBids().getSize(1));
+        assertEquals(2000L, book.getTime());
+
+        // New best ask & removal of the best bid
+        update.clear();
+        update.setProduct(PRODUCT);
+        update.add(false, 100, 9);
+        update.add(true, 100, 0);
+        assertEquals(0, book.apply(update));
+        assertEquals(100, book.getAsks().getPrice(0));
+        assertEquals(3, book.getAsks().getLevels());
+        assertEquals(99, book.getBids().getPrice(0));
+        assertEquals(2, book.getBids().getLevels());
+
+        // Removal of an unknown level & deep level
+        update.clear();
+        update.setProduct(PRODUCT);
+        update.add(true, 50, 0);
+        update.add(false, 150, 1);
+        assertEquals(3, book.apply(update));
+        assertEquals(2, book.getBids().getLevels());
+
+        // Reset until the next snapshot
+        book.reset();
+        assertFalse(book.isReady());
+        assertEquals(0, book.getBids().getLevels());
+        assertEquals(-1, book.apply(update));
+
+        LOG.info("testApply - SUCCESS");
+    }
+
+    /**
+     * The test checks that a side stays sorted like a TreeMap through random changes.
+     */
+    @Test
+    public void testSide () {
+
+        LOG.info("testSide - START");
+
+        Random random = new Random(42);
+        L2BookSide asks = new L2BookSide(false, 1);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        for(int i = 0; i < 10000; i++) {
+            long price = 1000 + random.nextInt(200);
+            long size = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(1000);
+            asks.set(price, size);
+            if(size == 0) {
+                expected.remove(price);
+            }
+            else {
+                expected.put(price, size);
+            }
+        }
+
+        assertEquals(expected.size(), asks.getLevels());
+        int depth = 0;
+        for(Map.Entry<Long, Long> level : expected.entrySet()) {
+            assertEquals(level.getKey(), asks.getPrice(depth));
+            assertEquals(level.getValue(), asks.getSize(depth));
+            depth++;
+        }
+
+        LOG.info("testSide - SUCCESS");
+    }
+
+    /**
+     * The test checks that the depth record contains the top levels of the book.
+     */
+    @Test
+    public void testEncodeDepth () throws Exception {
+
+        LOG.info("testEncodeDepth - START");
+
+        L2Book book = new L2Book(PRODUCT, 16);
+        book.load(this.snapshot(), this);
+
+        CodedInputStream in = CodedInputStream.newInstance(L2BookEncoder.encodeDepth(book, 2));
+        int bids = 0;
+        int asks = 0;
+        for(int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch(tag >>> 3) {
+                case 1:
+                    assertEquals(1000L, in.readInt64());
+                    break;
+                case 2:
+                    assertEquals(Currency.BTC.getNumber(), in.readEnum());
+                    break;
+                case 3:
+                    assertEquals(Currency.USD.getNumber(), in.readEnum());
+                    break;
+                case 4:
+                case 5:
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    in.readTag();
+                    long price = in.readInt64();
+                    in.readTag();
+                    long size = in.readInt64();
+                    in.popLimit(limit);
+                    if((tag >>> 3) == 4) {
+                        assertEquals(book.getBids().getPrice(bids), price);
+                        assertEquals(book.getBids().getSize(bids++), size);
+                    }
+                    else {
+                        assertEquals(book.getAsks().getPrice(asks), price);
+                        assertEquals(book.getAsks().getSize(asks++), size);
+                    }
+                    break;
+                case 6:
+                    assertEquals(8, in.readInt32());
+                    break;
+                default:
+                    throw new AssertionError("Unexpected field " + (tag >>> 3));
+            }
+        }
+        assertEquals(2, bids);
+        assertEquals(2, asks);
+
+        LOG.info("testEncodeDepth - SUCCESS");
+    }
+
+    /**
+     * The test checks that a top level change within the publication interval is published by
+     * the flush once the interval elapsed, and only once.
+     */
+    @Test
+    public void testDepthFlush () {
+
+        LOG.info("testDepthFlush - START");
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            CoinbaseProperties config = new CoinbaseProperties();
+            config.level2 = true;
+            config.level2DepthInterval = 3600000L;
+            L2BookService service = new L2BookService(config, new CoinbaseProductTable(List.of("BTC-USD")), vertx, new MetricsRegistryImpl());
+            List<Long> depths = new ArrayList<>();
+            service.listen(new L2BookListener() {
+                @Override
+                public void onDelta(L2Book book, CoinbaseWSL2Message update) {
+                }
+
+                @Override
+                public void onDepth(L2Book book, int depth) {
+                    depths.add(book.getBids().getPrice(0));
+                }
+            });
+
+            // Snapshot published, removal of the best bid held back by the interval
+            service.snapshot(this.snapshot(), this);
+            CoinbaseWSL2Message update = new CoinbaseWSL2Message();
+            update.setProduct(PRODUCT);
+            update.add(true, 100, 0);
+            service.update(update);
+            assertEquals(List.of(100L), depths);
+            service.flush(System.currentTimeMillis());
+            assertEquals(1, depths.size());
+
+            // Interval elapsed : published once
+            service.flush(System.currentTimeMillis() + config.level2DepthInterval);
+            assertEquals(List.of(100L, 99L), depths);
+            service.flush(System.currentTimeMillis() + 2 * config.level2DepthInterval);
+            assertEquals(2, depths.size());
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testDepthFlush - SUCCESS");
+    }
+}
@@ -0,0 +1,259 @@
+package tech.gbdevw.colibri.coinbaseetl.service.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseClient;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseTrade;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseOrderIdHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSL3Message;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+
+/**
+ * Test class for L3Book & L3BookService
+ */
+public class L3BookTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(L3BookTest.class.getSimpleName());
+
+    private final static CoinbaseProductTable PRODUCTS = new CoinbaseProductTable(List.of("BTC-USD"));
+
+    private final static CoinbaseProduct PRODUCT = PRODUCTS.get("BTC-USD");
+
+    private final static String ORDER_1 = "890872bf-d582-4c96-9ffc-f3d15895c873";
+    private final static String ORDER_2 = "339196c4-79ef-4f75-8a89-121e5ba4e467";
+    private final static String ORDER_3 = "3b0f1225-7f84-490b-a29f-0faef9de823a";
+    private final static String ORDER_4 = "00000000-0000-0000-0000-000000000004";
+
+    /**
+     * Client serving a level3 book : bids ORDER_1 & ORDER_2 at 100, ask ORDER_3 at 101
+     */
+    private static class BookClient implements CoinbaseClient {
+
+        volatile long sequence = 10;
+
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public CoinbaseTrade[] getTrades(String product, Integer limit, Long before, Long after) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream getBook(String product, Integer level) {
+            this.requests.incrementAndGet();
+            String book = "{\"sequence\":" + this.sequence
+                + ",\"bids\":[[\"100.00\",\"1\",\"" + ORDER_1 + "\"],[\"100.00\",\"2\",\"" + ORDER_2 + "\"]]"
+                + ",\"asks\":[[\"101.00\",\"3\",\"" + ORDER_3 + "\"]]}";
+            return new ByteArrayInputStream(book.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The test checks that orders keep their place in the queue of their level through matches,
+     * changes and cancellations and that each level change is reported.
+     */
+    @Test
+    public void testQueue () {
+
+        LOG.info("testQueue - START");
+
+        L3Book book = new L3Book(PRODUCT, 1, 16, 16);
+        for(long id = 1; id <= 3; id++) {
+            assertTrue(book.open(0, id, true, 100, id * 10));
+        }
+        assertTrue(book.open(0, 4, false, 100, 5));
+        assertEquals(4, book.getOrders());
+        assertEquals(2, book.getLevels());
+
+        // FIFO queue of the bid level
+        int third = book.find(0, 3);
+        assertEquals(2, book.getPosition(third));
+        assertEquals(30, book.getSizeAhead(third));
+        assertEquals(60, book.getLevelSize(third));
+        assertEquals(3, book.getLevelCount(third));
+        assertFalse(book.isBid(book.find(0, 4)));
+
+        // Match & change : same place
+        book.getChanges().clear();
+        book.match(0, 1, 4);
+        book.change(0, 2, 15);
+        assertEquals(2, book.getPosition(third));
+        assertEquals(21, book.getSizeAhead(third));
+        assertEquals(2, book.getChanges().getCount());
+        assertEquals(51, book.getChanges().getSize(1));
+
+        // Cancel of the head & removal of the ask level
+        book.getChanges().clear();
+        book.done(0, 1);
+        book.done(0, 4);
+        book.done(0, 4);
+        assertEquals(-1, book.find(0, 1));
+        assertEquals(1, book.getPosition(third));
+        assertEquals(1, book.getLevels());
+        assertEquals(2, book.getChanges().getCount());
+        assertEquals(false, book.getChanges().isBid(1));
+        assertEquals(0, book.getChanges().getSize(1));
+
+        // Full book
+        for(long id = 5; book.getOrders() < 16; id++) {
+            assertTrue(book.open(0, id, id % 2 == 0, 50 + id, 1));
+        }
+        assertFalse(book.open(0, 100, true, 100, 1));
+        book.clear();
+        assertEquals(0, book.getOrders());
+        assertEquals(0, book.getLevels());
+        assertTrue(book.open(0, 100, true, 100, 1));
+
+        LOG.info("testQueue - SUCCESS");
+    }
+
+    /**
+     * The test checks that the book stays consistent with a simple model through random opens
+     * and cancellations while its pools grow.
+     */
+    @Test
+    public void testChurn () {
+
+        LOG.info("testChurn - START");
+
+        Random random = new Random(42);
+        L3Book book = new L3Book(PRODUCT, 4, 1 << 16, 16);
+        Map<Long, long []> expected = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for(int i = 0; i < 200000; i++) {
+            if(ids.isEmpty() || random.nextInt(5) < 3) {
+                long id = random.nextLong();
+                long price = 1000 + random.nextInt(100);
+                boolean bid = random.nextBoolean();
+                assertTrue(book.open(id, ~id, bid, price, 1 + random.nextInt(100)));
+                expected.put(id, new long [] { price, bid ? 1 : 0 });
+                ids.add(id);
+            }
+            else {
+                int index = random.nextInt(ids.size());
+                long id = ids.get(index);
+                ids.set(index, ids.get(ids.size() - 1));
+                ids.remove(ids.size() - 1);
+                book.done(id, ~id);
+                expected.remove(id);
+            }
+        }
+
+        assertEquals(expected.size(), book.getOrders());
+        for(Map.Entry<Long, long []> order : expected.entrySet()) {
+            int slot = book.find(order.getKey(), ~order.getKey());
+            assertTrue(slot >= 0);
+            assertEquals(order.getValue()[0], book.getPrice(slot));
+            assertEquals(order.getValue()[1] == 1, book.isBid(slot));
+        }
+
+        LOG.info("testChurn - SUCCESS");
+    }
+
+    /**
+     * The test checks that the book is loaded when the first message is received, that queued
+     * messages are replayed and that a sequence gap loads the book again.
+     */
+    @Test
+    public void testResync () throws Exception {
+
+        LOG.info("testResync - START");
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            CoinbaseProperties config = new CoinbaseProperties();
+            config.level3 = true;
+            config.level3ResyncDelay = 10L;
+            BookClient client = new BookClient();
+            L2BookService l2 = new L2BookService(config, PRODUCTS, vertx, new MetricsRegistryImpl());
+            L3BookService service = new L3BookService(config, PRODUCTS, client, vertx, l2, new MetricsRegistryImpl());
+            L3Book book = service.getBook(PRODUCT);
+
+            // Messages before & after the sequence of the book
+            CoinbaseWSL3Message message = new CoinbaseWSL3Message();
+            this.order(message, CoinbaseWSL3Message.OPEN, 9, ORDER_4, 100);
+            service.apply(message);
+            this.order(message, CoinbaseWSL3Message.OPEN, 11, ORDER_4, 100);
+            service.apply(message);
+            this.order(message, CoinbaseWSL3Message.DONE, 12, ORDER_1, 100);
+            service.apply(message);
+            this.waitFor(() -> service.getSummary(PRODUCT).get("ready").equals(true));
+
+            assertEquals(12L, service.getSummary(PRODUCT).get("sequence"));
+            assertEquals(3, service.getSummary(PRODUCT).get("orders"));
+            L3OrderPosition position = service.getPosition(PRODUCT, ORDER_4);
+            assertEquals("buy", position.getSide());
+            assertEquals(100.0, position.getPrice());
+            assertEquals(1, position.getPosition());
+            assertEquals(2.0, position.getSizeAhead());
+            assertEquals(3.0, position.getLevelSize());
+            assertEquals(ORDER_4, position.getOrder());
+
+            // Level2 book derived from the level3 book
+            synchronized(l2.getBook(PRODUCT)) {
+                assertEquals(10000000000L, l2.getBook(PRODUCT).getBids().getPrice(0));
+                assertEquals(300000000L, l2.getBook(PRODUCT).getBids().getSize(0));
+                assertEquals(1, l2.getBook(PRODUCT).getAsks().getLevels());
+            }
+
+            // Sequence gap : the book is loaded again
+            client.sequence = 14;
+            this.order(message, CoinbaseWSL3Message.DONE, 14, ORDER_2, 100);
+            service.apply(message);
+            this.waitFor(() -> client.requests.get() == 2 && service.getSummary(PRODUCT).get("ready").equals(true));
+            assertEquals(14L, book.getSequence());
+            assertEquals(3, book.getOrders());
+            assertEquals(null, service.getPosition(PRODUCT, ORDER_4));
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testResync - SUCCESS");
+    }
+
+    /**
+     * Fill a message of the full channel for a bid of 1 at a price
+     */
+    private void order(CoinbaseWSL3Message message, byte type, long sequence, String order, long price) {
+        message.clear(type);
+        message.setProduct(PRODUCT);
+        message.setTime(1000L);
+        message.setSequence(sequence);
+        message.setOrder(CoinbaseOrderIdHelper.getHigh(order), CoinbaseOrderIdHelper.getLow(order));
+        message.setBid(true);
+        message.setPrice(price * 100000000L);
+        message.setSize(100000000L);
+    }
+
+    /**
+     * Wait until a condition is true (5 s max.)
+     */
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for(int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
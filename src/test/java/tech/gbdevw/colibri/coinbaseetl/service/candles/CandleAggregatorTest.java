@@ -0,0 +1,212 @@
+package tech.gbdevw.colibri.coinbaseetl.service.candles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseDecimalHelper;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+
+/**
+ * Test class for CandleSeries, CandleAggregator & CandleEncoder
+ */
+public class CandleAggregatorTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CandleAggregatorTest.class.getSimpleName());
+
+    private final static CoinbaseProduct PRODUCT = new CoinbaseProduct("BTC-USD");
+
+    private final static long UNIT = CoinbaseDecimalHelper.UNIT;
+
+    /**
+     * Copy of a published bar : start, open, high, low, close, volume, vwap, trades, closed
+     */
+    private static double [] copy(CandleSeries series, int slot, boolean closed) {
+        return new double [] { series.getStart(slot), series.getOpen(slot), series.getHigh(slot), series.getLow(slot), series.getClose(slot),
+            series.getVolume(slot), series.getVwap(slot), series.getTrades(slot), closed ? 1 : 0 };
+    }
+
+    /**
+     * The test checks the OHLCV values of bars fed out of order, their closing after the grace
+     * window and the trades dropped once their bar is closed.
+     */
+    @Test
+    public void testSeries () {
+
+        LOG.info("testSeries - START");
+
+        List<double []> bars = new ArrayList<>();
+        CandleListener listener = (series, slot, closed) -> bars.add(copy(series, slot, closed));
+        CandleSeries series = new CandleSeries(PRODUCT, 1000, 4, 10000);
+
+        // Previous bar
+        assertFalse(series.add(9999, 1, 100, 1 * UNIT, listener));
+
+        // Trades of the bar [10000, 11000) received out of order
+        assertTrue(series.add(10100, 3, 102, 1 * UNIT, listener));
+        assertTrue(series.add(10000, 2, 100, 1 * UNIT, listener));
+        assertTrue(series.add(10900, 5, 99, 2 * UNIT, listener));
+        assertTrue(series.add(10500, 4, 105, 1 * UNIT, listener));
+        assertTrue(series.add(11000, 6, 110, 1 * UNIT, listener));
+
+        // Bars in progress
+        assertEquals(0, series.flush(11500, 1000, true, listener));
+        assertEquals(2, bars.size());
+        bars.clear();
+        assertEquals(0, series.flush(11600, 1000, true, listener));
+        assertEquals(0, bars.size());
+
+        // Late trade within the grace window
+        assertTrue(series.add(10950, 7, 98, 1 * UNIT, listener));
+        assertEquals(1, series.flush(12000, 1000, false, listener));
+        assertEquals(1, bars.size());
+        double [] bar = bars.get(0);
+        assertEquals(10000, bar[0]);
+        assertEquals(100, bar[1]);
+        assertEquals(105, bar[2]);
+        assertEquals(98, bar[3]);
+        assertEquals(98, bar[4]);
+        assertEquals(6, bar[5]);
+        assertEquals((102 + 100 + 99 * 2 + 105 + 98) / 6.0, bar[6], 1e-9);
+        assertEquals(5, bar[7]);
+        assertEquals(1, bar[8]);
+
+        // Late trade after the grace window
+        assertFalse(series.add(10999, 8, 100, 1 * UNIT, listener));
+
+        // Slot needed by a more recent bar
+        bars.clear();
+        assertTrue(series.add(15000, 9, 120, 1 * UNIT, listener));
+        assertEquals(1, bars.size());
+        assertEquals(11000, bars.get(0)[0]);
+        assertFalse(series.add(11999, 10, 100, 1 * UNIT, listener));
+
+        LOG.info("testSeries - SUCCESS");
+    }
+
+    /**
+     * The test checks that the aggregator rolls matches into each interval, counts late trades
+     * and publishes encoded bars to its listeners.
+     */
+    @Test
+    public void testAggregator () throws Exception {
+
+        LOG.info("testAggregator - START");
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            CoinbaseProperties config = new CoinbaseProperties();
+            config.candles = true;
+            config.candlesIntervals = "1s, 1m";
+            config.candlesGrace = 2000L;
+            config.candlesFlushInterval = 3600000L;
+            MetricsRegistryImpl registry = new MetricsRegistryImpl();
+            CandleAggregator aggregator = new CandleAggregator(config, new CoinbaseProductTable(List.of("BTC-USD")), vertx, registry, new BusMetrics(null, registry));
+            List<byte []> records = new ArrayList<>();
+            aggregator.listen((series, slot, closed) -> records.add(CandleEncoder.encode(series, slot, closed)));
+
+            long minute = (System.currentTimeMillis() / 60000 + 1) * 60000;
+            aggregator.add(this.match(1, minute, 100, 0.5));
+            aggregator.add(this.match(2, minute + 1500, 101, 0.5));
+            aggregator.flush(minute + 4000);
+            assertEquals(2, records.size());
+            aggregator.add(this.match(3, minute + 900, 99, 1));
+            assertEquals(1, this.count(registry, "candles.late", "1s"));
+            assertEquals(0, this.count(registry, "candles.late", "1m"));
+            assertEquals(2, this.count(registry, "candles.closed", "1s"));
+
+            // 1m bar
+            records.clear();
+            aggregator.flush(minute + 62000);
+            assertEquals(1, records.size());
+            CodedInputStream in = CodedInputStream.newInstance(records.get(0));
+            for(int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+                switch(tag >>> 3) {
+                    case 1:
+                        assertEquals(minute, in.readInt64());
+                        break;
+                    case 2:
+                        assertEquals(Currency.BTC.getNumber(), in.readEnum());
+                        break;
+                    case 3:
+                        assertEquals(Currency.USD.getNumber(), in.readEnum());
+                        break;
+                    case 4:
+                        assertEquals(60000L, in.readInt64());
+                        break;
+                    case 5:
+                        assertEquals(100.0, in.readDouble());
+                        break;
+                    case 6:
+                        assertEquals(101.0, in.readDouble());
+                        break;
+                    case 7:
+                    case 8:
+                        assertEquals(99.0, in.readDouble());
+                        break;
+                    case 9:
+                        assertEquals(2.0, in.readDouble());
+                        break;
+                    case 10:
+                        assertEquals(99.75, in.readDouble(), 1e-9);
+                        break;
+                    case 11:
+                        assertEquals(3, in.readInt32());
+                        break;
+                    case 12:
+                        assertEquals(1L, in.readInt64());
+                        break;
+                    case 13:
+                        assertEquals(3L, in.readInt64());
+                        break;
+                    case 14:
+                        assertTrue(in.readBool());
+                        break;
+                    default:
+                        throw new AssertionError("Unexpected field " + (tag >>> 3));
+                }
+            }
+            assertEquals(1, this.count(registry, "candles.closed", "1m"));
+            assertThrows(IllegalArgumentException.class, () -> CandleAggregator.parseInterval("5x"));
+            assertEquals(300000L, CandleAggregator.parseInterval("5m"));
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testAggregator - SUCCESS");
+    }
+
+    /**
+     * Build a BTC-USD match
+     */
+    private Match match(long id, long time, double price, double size) {
+        return Match.newBuilder().setUnit(Currency.BTC).setQuote(Currency.USD).setId(id).setTimestamp(time).setPrice(price).setSize(size).build();
+    }
+
+    /**
+     * Get a candle counter of BTC-USD
+     */
+    private long count(MetricsRegistryImpl registry, String name, String interval) {
+        return registry.getCounters().get(new MetricID(name, new Tag("product", "BTC-USD"), new Tag("interval", interval))).getCount();
+    }
+}
@@ -0,0 +1,83 @@
+package tech.gbdevw.colibri.coinbaseetl.service.checkpoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for CheckpointFile
+ */
+public class CheckpointFileTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CheckpointFileTest.class.getSimpleName());
+
+    /**
+     * The test checks that values only move forward and are read back by the next process.
+     */
+    @Test
+    public void testCheckpoint () throws Exception {
+
+        LOG.info("testCheckpoint - START");
+
+        Path path = Files.createTempFile("checkpoint", ".bin");
+        Files.delete(path);
+
+        try {
+            // First process
+            try(CheckpointFile file = new CheckpointFile(path, 4, List.of("BTC-USD", "ETH-EUR"))) {
+                assertEquals(0, file.getTradeId("BTC-USD"));
+                file.updateTradeId("BTC-USD", 1000);
+                file.updateTradeId("BTC-USD", 999);
+                file.updateSequence("BTC-USD", 5000);
+                file.updateTradeId("ETH-EUR", 42);
+                assertEquals(1000, file.getTradeId("BTC-USD"));
+                assertTrue(file.force());
+                assertFalse(file.force());
+            }
+
+            // Next process with a new product
+            try(CheckpointFile file = new CheckpointFile(path, 16, List.of("BTC-USD", "LTC-USD"))) {
+                assertEquals(1000, file.getTradeId("BTC-USD"));
+                assertEquals(5000, file.getSequence("BTC-USD"));
+                assertEquals(42, file.getTradeId("ETH-EUR"));
+                assertEquals(0, file.getTradeId("LTC-USD"));
+                file.updateTradeId("LTC-USD", 7);
+
+                // All slots used (4 slots from the first process)
+                file.updateTradeId("XRP-EUR", 1);
+                try {
+                    file.updateTradeId("BCH-EUR", 1);
+                    fail("Slot allocated in a full checkpoint file");
+                }
+                catch(IllegalStateException ex) {
+                    // OK
+                }
+            }
+
+            // Not a checkpoint file
+            Files.write(path, new byte [128]);
+            try {
+                new CheckpointFile(path, 4, List.of("BTC-USD")).close();
+                fail("Invalid checkpoint file opened");
+            }
+            catch(IOException ex) {
+                // OK
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+
+        LOG.info("testCheckpoint - SUCCESS");
+    }
+}
@@ -0,0 +1,61 @@
+package tech.gbdevw.colibri.coinbaseetl.service.checkpoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for TradeWatermark
+ */
+public class TradeWatermarkTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(TradeWatermarkTest.class.getSimpleName());
+
+    /**
+     * The test checks that the watermark does not move past a trade which is not acknowledged,
+     * catches up once the gap is acknowledged and skips the missing trades older than the window.
+     */
+    @Test
+    public void testAck () {
+
+        LOG.info("testAck - START");
+
+        TradeWatermark watermark = new TradeWatermark(100, 0);
+        assertEquals(128, watermark.getCapacity());
+
+        // Started by the first trade expected
+        assertTrue(watermark.start(999));
+        assertFalse(watermark.start(500));
+        assertEquals(1000, watermark.ack(1000));
+
+        // Live trade acknowledged before the backfilled trades of the gap
+        assertEquals(1000, watermark.ack(1010));
+        for(long id = 1009; id > 1001; id--) {
+            assertEquals(1000, watermark.ack(id));
+        }
+        assertEquals(1010, watermark.ack(1001));
+        assertEquals(1010, watermark.ack(1005));
+
+        // Trade never acknowledged : skipped once the window is full
+        for(long id = 1012; id <= 1010 + 128; id++) {
+            assertEquals(1010, watermark.ack(id));
+        }
+        assertEquals(1010 + 129, watermark.ack(1010 + 129));
+        assertEquals(1, watermark.getSkipped());
+
+        // Jump larger than the window
+        assertEquals(100000 - 128, watermark.ack(100000));
+        assertEquals(100000 - 128, watermark.getWatermark());
+        assertEquals(1 + (100000 - 128) - (1010 + 129), watermark.getSkipped());
+
+        // Not started : starts below the first trade acknowledged
+        TradeWatermark fallback = new TradeWatermark(64, 0);
+        assertEquals(41, fallback.ack(41));
+
+        LOG.info("testAck - SUCCESS");
+    }
+}
@@ -0,0 +1,60 @@
+package tech.gbdevw.colibri.coinbaseetl.service.dedupe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for TradeIdWindow
+ */
+public class TradeIdWindowTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(TradeIdWindowTest.class.getSimpleName());
+
+    /**
+     * The test checks that duplicates are detected in the window, out of order and after the
+     * window slid.
+     */
+    @Test
+    public void testAdd () {
+
+        LOG.info("testAdd - START");
+
+        TradeIdWindow window = new TradeIdWindow(100);
+        assertEquals(128, window.getCapacity());
+
+        // In order, then duplicates
+        for(long id = 1000; id < 1100; id++) {
+            assertTrue(window.add(id));
+        }
+        for(long id = 1000; id < 1100; id++) {
+            assertFalse(window.add(id));
+        }
+
+        // Gap then late trades of the gap (backfill)
+        assertTrue(window.add(1150));
+        for(long id = 1100; id < 1150; id++) {
+            assertTrue(window.add(id));
+        }
+        assertFalse(window.add(1120));
+        assertFalse(window.add(1150));
+        assertEquals(1150, window.getHigh());
+
+        // Window slid : trades older than the window cannot be checked
+        assertTrue(window.add(1100 + 128));
+        assertTrue(window.add(1100));
+        assertFalse(window.add(1101));
+
+        // Jump larger than the window clears it
+        assertTrue(window.add(10000));
+        assertTrue(window.add(10000 - 127));
+        assertFalse(window.add(10000 - 127));
+        assertFalse(window.add(10000));
+
+        LOG.info("testAdd - SUCCESS");
+    }
+}
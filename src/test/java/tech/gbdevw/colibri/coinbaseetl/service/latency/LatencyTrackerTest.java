@@ -0,0 +1,128 @@
+package tech.gbdevw.colibri.coinbaseetl.service.latency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Snapshot;
+import org.eclipse.microprofile.metrics.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+import tech.gbdevw.colibri.domain.Ticker;
+
+/**
+ * Test class for LatencyTracker & LatencyHistogram
+ */
+public class LatencyTrackerTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(LatencyTrackerTest.class.getSimpleName());
+
+    /**
+     * The test checks that each stage is recorded per product & message type and that events
+     * which were not dispatched from the feed are not tracked.
+     */
+    @Test
+    public void testStages () {
+
+        LOG.info("testStages - START");
+
+        MetricRegistry registry = new MetricsRegistryImpl();
+        LatencyTracker tracker = new LatencyTracker(new CoinbaseProperties(), new CoinbaseProductTable(List.of("BTC-USD", "ETH-EUR")), registry);
+        assertEquals(16, registry.getHistograms().size());
+
+        // Exchange time 5 ms before the receipt
+        long received = EpochClock.now();
+        Match match = Match.newBuilder().setUnit(Currency.BTC).setQuote(Currency.USD).setId(42).setTimestamp(received / 1000000L - 5).build();
+        tracker.matchDispatched(match, received);
+        tracker.matchSent(match);
+        tracker.matchAcked(match);
+
+        Snapshot receive = this.get(registry, "latency.receive", "BTC-USD", "match").getSnapshot();
+        assertTrue(receive.getMax() >= 4900 && receive.getMax() <= 6100);
+        assertEquals(1, this.get(registry, "latency.dispatch", "BTC-USD", "match").getCount());
+        assertEquals(1, this.get(registry, "latency.send", "BTC-USD", "match").getCount());
+        assertEquals(1, this.get(registry, "latency.ack", "BTC-USD", "match").getCount());
+        assertEquals(0, this.get(registry, "latency.receive", "BTC-USD", "ticker").getCount());
+        assertEquals(0, this.get(registry, "latency.receive", "ETH-EUR", "match").getCount());
+
+        // Backfilled match & ticker sent without being dispatched : not tracked
+        Match backfilled = match.toBuilder().setId(41).build();
+        tracker.matchSent(backfilled);
+        tracker.matchAcked(backfilled);
+        Ticker ticker = Ticker.newBuilder().setUnit(Currency.ETH).setQuote(Currency.EUR).setId(42).build();
+        tracker.tickerSent(ticker);
+        tracker.tickerAcked(ticker);
+        assertEquals(1, this.get(registry, "latency.send", "BTC-USD", "match").getCount());
+        assertEquals(0, this.get(registry, "latency.send", "ETH-EUR", "ticker").getCount());
+
+        // Slot reused by a later match
+        tracker.matchDispatched(match.toBuilder().setId(42 + 4096).build(), received);
+        tracker.matchSent(match);
+        assertEquals(1, this.get(registry, "latency.send", "BTC-USD", "match").getCount());
+
+        // Disabled
+        CoinbaseProperties disabled = new CoinbaseProperties();
+        disabled.latency = false;
+        MetricRegistry empty = new MetricsRegistryImpl();
+        LatencyTracker noop = new LatencyTracker(disabled, new CoinbaseProductTable(List.of("BTC-USD")), empty);
+        noop.matchDispatched(match, received);
+        noop.matchSent(match);
+        noop.matchAcked(match);
+        assertEquals(0, empty.getHistograms().size());
+
+        LOG.info("testStages - SUCCESS");
+    }
+
+    /**
+     * The test checks that values are clamped and that snapshots cover the current and the
+     * previous window only.
+     */
+    @Test
+    public void testWindows () throws Exception {
+
+        LOG.info("testWindows - START");
+
+        LatencyHistogram histogram = new LatencyHistogram(1000000L, 2, 100);
+        histogram.update(-5);
+        histogram.update(100);
+        histogram.update(5000000L);
+        Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(3, histogram.getCount());
+        assertEquals(3, snapshot.size());
+        assertEquals(0, snapshot.getMin());
+        assertTrue(snapshot.getMax() >= 1000000L && snapshot.getMax() < 1010000L);
+        assertEquals(100, snapshot.getMedian(), 1.0);
+        assertEquals(3, snapshot.getValues().length);
+
+        // Values move to the previous window, then leave the snapshot
+        Thread.sleep(150);
+        histogram.update(200);
+        assertEquals(4, histogram.getSnapshot().size());
+        Thread.sleep(150);
+        histogram.update(300);
+        snapshot = histogram.getSnapshot();
+        assertEquals(5, histogram.getCount());
+        assertEquals(2, snapshot.size());
+        assertEquals(200, snapshot.getMin(), 2);
+
+        LOG.info("testWindows - SUCCESS");
+    }
+
+    /**
+     * Get a latency histogram from the registry
+     */
+    private Histogram get(MetricRegistry registry, String name, String product, String type) {
+        return registry.getHistograms().get(new MetricID(name, new Tag("product", product), new Tag("type", type)));
+    }
+}
@@ -0,0 +1,102 @@
+package tech.gbdevw.colibri.coinbaseetl.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+
+/**
+ * Test class for BusMetrics
+ */
+public class BusMetricsTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(BusMetricsTest.class.getSimpleName());
+
+    /**
+     * Wait until a condition is true
+     */
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * The test checks that the deliveries waiting behind a busy consumer are pending, that a
+     * published message is expected once per consumer and that the undeclared addresses are
+     * not tracked.
+     */
+    @Test
+    public void testPending () throws Exception {
+
+        LOG.info("testPending - START");
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            MetricsRegistryImpl registry = new MetricsRegistryImpl();
+            BusMetrics metrics = new BusMetrics(vertx.eventBus(), registry);
+            metrics.start();
+
+            // Consumer blocked by the first message
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger received = new AtomicInteger();
+            vertx.eventBus().<String>consumer("test", message -> {
+                if(received.incrementAndGet() == 1) {
+                    try {
+                        release.await(1, TimeUnit.SECONDS);
+                    }
+                    catch(InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            metrics.consumer("test");
+            @SuppressWarnings("unchecked")
+            Gauge<Long> pending = (Gauge<Long>) registry.getGauges().get(new MetricID("bus.pending", new Tag("address", "test")));
+
+            // First message delivered, the next ones wait for the consumer
+            for(int i = 0; i < 3; i++) {
+                vertx.eventBus().send("test", "message");
+            }
+            assertTrue(await(() -> received.get() == 1));
+            assertTrue(await(() -> pending.getValue() == 2L));
+            release.countDown();
+            assertTrue(await(() -> received.get() == 3));
+            assertTrue(await(() -> pending.getValue() == 0L));
+
+            // Published message expected by each consumer
+            vertx.eventBus().<String>consumer("test", message -> received.incrementAndGet());
+            metrics.consumer("test");
+            vertx.eventBus().publish("test", "message");
+            assertTrue(await(() -> received.get() == 5));
+            assertTrue(await(() -> pending.getValue() == 0L));
+
+            // Address without a declared consumer
+            vertx.eventBus().send("other", "message");
+            assertNull(registry.getGauges().get(new MetricID("bus.pending", new Tag("address", "other"))));
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testPending - SUCCESS");
+    }
+}
@@ -0,0 +1,76 @@
+package tech.gbdevw.colibri.coinbaseetl.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+
+/**
+ * Test class for WorkerPoolMetrics
+ */
+public class WorkerPoolMetricsTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(WorkerPoolMetricsTest.class.getSimpleName());
+
+    /**
+     * The test checks the size, active threads and queued tasks of a saturated worker pool.
+     */
+    @Test
+    public void testGauges () throws Exception {
+
+        LOG.info("testGauges - START");
+
+        Vertx vertx = Vertx.vertx(new VertxOptions().setWorkerPoolSize(2));
+        try {
+            MetricsRegistryImpl registry = new MetricsRegistryImpl();
+            new WorkerPoolMetrics(vertx, registry);
+            Gauge<?> size = registry.getGauges().get(new MetricID("worker.pool.size"));
+            Gauge<?> active = registry.getGauges().get(new MetricID("worker.pool.active"));
+            Gauge<?> queued = registry.getGauges().get(new MetricID("worker.pool.queued"));
+            assertEquals(2, size.getValue());
+            assertEquals(0, active.getValue());
+            assertEquals(0, queued.getValue());
+
+            // 3 tasks blocked on 2 threads
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(3);
+            for(int i = 0; i < 3; i++) {
+                vertx.<Void>executeBlocking(promise -> {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                    catch(InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    promise.complete();
+                }, false, result -> done.countDown());
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(2, active.getValue());
+            assertEquals(1, queued.getValue());
+
+            // Pool drained
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, queued.getValue());
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testGauges - SUCCESS");
+    }
+}
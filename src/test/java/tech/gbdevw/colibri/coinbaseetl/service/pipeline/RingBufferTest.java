@@ -0,0 +1,91 @@
+package tech.gbdevw.colibri.coinbaseetl.service.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for RingBuffer & BatchEventProcessor
+ */
+public class RingBufferTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(RingBufferTest.class.getSimpleName());
+
+    /**
+     * Slot of the test ring buffer
+     */
+    private static class Slot {
+        long value;
+        long doubled;
+    }
+
+    /**
+     * The test checks that a two stages pipeline processes all events in order with each
+     * wait strategy, the ring buffer being much smaller than the number of events.
+     */
+    @Test
+    public void testPipeline () throws Exception {
+
+        LOG.info("testPipeline - START");
+
+        for(String strategy : new String [] {WaitStrategy.BUSY_SPIN, WaitStrategy.YIELDING, WaitStrategy.SLEEPING, WaitStrategy.BLOCKING}) {
+
+            RingBuffer<Slot> ring = new RingBuffer<>(Slot::new, 64, WaitStrategy.create(strategy));
+
+            // Stage 1 computes a value, stage 2 checks the order & reads the value of stage 1
+            List<Long> received = new ArrayList<>();
+            BatchEventProcessor<Slot> first = new BatchEventProcessor<>("first", ring, ring.newBarrier(), (slot, sequence, endOfBatch) -> slot.doubled = slot.value * 2);
+            BatchEventProcessor<Slot> second = new BatchEventProcessor<>("second", ring, ring.newBarrier(first.getSequence()), (slot, sequence, endOfBatch) -> {
+                if(slot.doubled != slot.value * 2) {
+                    throw new IllegalStateException("Stage 1 not done : " + sequence);
+                }
+                received.add(slot.value);
+            });
+            ring.setGatingSequences(second.getSequence());
+            Thread t1 = new Thread(first);
+            Thread t2 = new Thread(second);
+            t1.start();
+            t2.start();
+
+            // Publish
+            int events = 100000;
+            for(long i = 0; i < events; i++) {
+                long sequence = ring.next();
+                ring.get(sequence).value = i;
+                ring.publish(sequence);
+            }
+
+            // Halt once all events are processed
+            first.halt();
+            second.halt();
+            t1.join(10000);
+            t2.join(10000);
+            if(t1.isAlive() || t2.isAlive()) {
+                fail("Pipeline not halted : " + strategy);
+            }
+
+            assertEquals(events, received.size());
+            for(int i = 0; i < events; i++) {
+                assertEquals(i, received.get(i).longValue());
+            }
+            assertEquals(events - 1, second.getSequence().get());
+        }
+
+        // Invalid configuration
+        try {
+            WaitStrategy.create("unknown");
+            fail("Unknown wait strategy created");
+        }
+        catch(IllegalArgumentException ex) {
+            // OK
+        }
+
+        LOG.info("testPipeline - SUCCESS");
+    }
+}
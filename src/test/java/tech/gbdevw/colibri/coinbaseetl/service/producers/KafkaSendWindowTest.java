@@ -0,0 +1,116 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test class for KafkaSendWindow
+ */
+public class KafkaSendWindowTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(KafkaSendWindowTest.class.getSimpleName());
+
+    /**
+     * The test checks that the window blocks when full and tracks acknowledgements and failures.
+     */
+    @Test
+    public void testSend () throws Exception {
+
+        LOG.info("testSend - START");
+
+        MockProducer<Long, Long> producer = new MockProducer<>(false, new LongSerializer(), new LongSerializer());
+        KafkaSendWindow window = new KafkaSendWindow("Test producer", 2);
+
+        // Fill the window
+        window.send(producer, new ProducerRecord<>("test", 1L, 1L), 1L);
+        window.send(producer, new ProducerRecord<>("test", 2L, 2L), 2L);
+        assertEquals(2, window.getInFlight());
+
+        // Third send must wait for an acknowledgement
+        CountDownLatch sent = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            try {
+                window.send(producer, new ProducerRecord<>("test", 3L, 3L), 3L);
+                sent.countDown();
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sender.start();
+        assertFalse(sent.await(200, TimeUnit.MILLISECONDS));
+
+        // Acknowledge first record & fail the second one
+        assertTrue(producer.completeNext());
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertTrue(producer.errorNext(new RuntimeException("Broker unavailable")));
+        assertTrue(producer.completeNext());
+        sender.join();
+
+        // Check records are sent in order & results are tracked
+        assertEquals(3, producer.history().size());
+        assertEquals(1L, producer.history().get(0).key());
+        assertEquals(3L, producer.history().get(2).key());
+        assertEquals(0, window.getInFlight());
+        assertEquals(2, window.getAcked());
+        assertEquals(1, window.getFailed());
+        assertFalse(window.isHealthy());
+
+        LOG.info("testSend - SUCCESS");
+    }
+
+    /**
+     * The test checks that the records in flight are handed to their failure handlers in send
+     * order once a record failed and that no record is sent until the window is resumed.
+     */
+    @Test
+    public void testFailover () throws Exception {
+
+        LOG.info("testFailover - START");
+
+        MockProducer<Long, Long> producer = new MockProducer<>(false, new LongSerializer(), new LongSerializer());
+        KafkaSendWindow window = new KafkaSendWindow("Test producer", 10);
+        List<Long> acked = new CopyOnWriteArrayList<>();
+        List<Long> spooled = new CopyOnWriteArrayList<>();
+        for(long id = 1; id <= 4; id++) {
+            final long record = id;
+            window.send(producer, new ProducerRecord<>("test", id, id), id, () -> acked.add(record), () -> spooled.add(record));
+        }
+
+        // Record 1 acknowledged, record 2 failed : records 2 to 4 are spooled in order
+        assertTrue(producer.completeNext());
+        assertTrue(producer.errorNext(new RuntimeException("Broker unavailable")));
+        assertTrue(window.isFailing());
+        assertTrue(spooled.isEmpty());
+        window.send(producer, new ProducerRecord<>("test", 5L, 5L), 5L, () -> acked.add(5L), () -> spooled.add(5L));
+        assertEquals(List.of(2L, 3L, 4L, 5L), spooled);
+        assertEquals(4, producer.history().size());
+
+        // Late acknowledgement of a spooled record is ignored
+        assertTrue(producer.completeNext());
+        assertEquals(List.of(1L), acked);
+        assertTrue(window.isHealthy());
+
+        // Sends resumed
+        window.resume();
+        assertFalse(window.isFailing());
+        window.send(producer, new ProducerRecord<>("test", 6L, 6L), 6L, () -> acked.add(6L), () -> spooled.add(6L));
+        assertEquals(5, producer.history().size());
+        assertEquals(0, window.failover());
+
+        LOG.info("testFailover - SUCCESS");
+    }
+}
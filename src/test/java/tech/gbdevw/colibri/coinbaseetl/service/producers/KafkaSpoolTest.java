@@ -0,0 +1,92 @@
+package tech.gbdevw.colibri.coinbaseetl.service.producers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import tech.gbdevw.colibri.coinbaseetl.service.spool.DiskSpool;
+import tech.gbdevw.colibri.domain.Currency;
+import tech.gbdevw.colibri.domain.Match;
+
+/**
+ * Test class for KafkaSpool
+ */
+public class KafkaSpoolTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(KafkaSpoolTest.class.getSimpleName());
+
+    /**
+     * The test checks that the events acknowledged before a failure are removed from the spool
+     * and that only the next ones are replayed by the next drain.
+     */
+    @Test
+    public void testDrain () throws Exception {
+
+        LOG.info("testDrain - START");
+
+        Path directory = Files.createTempDirectory("spool");
+
+        try {
+            List<Long> acked = new CopyOnWriteArrayList<>();
+            try(KafkaSpool<Match> spool = new KafkaSpool<>(new DiskSpool(directory, "test", 4096, 16384, new MetricsRegistryImpl()), Match.parser(),
+                match -> "test", Match::getId, match -> acked.add(match.getId()), 5)) {
+                for(long id = 1; id <= 5; id++) {
+                    assertTrue(spool.append(Match.newBuilder().setUnit(Currency.BTC).setQuote(Currency.USD).setId(id).build()));
+                }
+
+                // Two events acknowledged then a failure
+                MockProducer<Long, Match> producer = new MockProducer<>(false, new LongSerializer(), (topic, match) -> match.toByteArray());
+                AtomicReference<Exception> error = new AtomicReference<>();
+                Thread drain = new Thread(() -> {
+                    try {
+                        spool.drain(producer);
+                    }
+                    catch(Exception ex) {
+                        error.set(ex);
+                    }
+                });
+                drain.start();
+                while(producer.history().size() < 5) {
+                    Thread.sleep(10);
+                }
+                assertTrue(producer.completeNext());
+                assertTrue(producer.completeNext());
+                assertTrue(producer.errorNext(new RuntimeException("Broker unavailable")));
+                drain.join(5000);
+                assertNotNull(error.get());
+                assertEquals(List.of(1L, 2L), acked);
+
+                // Only the events not acknowledged are replayed
+                MockProducer<Long, Match> recovered = new MockProducer<>(true, new LongSerializer(), (topic, match) -> match.toByteArray());
+                assertEquals(3, spool.drain(recovered));
+                assertEquals(List.of(3L, 4L, 5L), recovered.history().stream().map(record -> record.key()).collect(Collectors.toList()));
+                assertEquals(List.of(1L, 2L, 3L, 4L, 5L), acked);
+                assertFalse(spool.isActive());
+            }
+        }
+        finally {
+            try(Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        LOG.info("testDrain - SUCCESS");
+    }
+}
@@ -0,0 +1,100 @@
+package tech.gbdevw.colibri.coinbaseetl.service.spool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * Test class for DiskSpool
+ */
+public class DiskSpoolTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(DiskSpoolTest.class.getSimpleName());
+
+    /**
+     * Build a record of 24 bytes holding a number
+     * 
+     * @param value Number
+     * @return Record
+     */
+    private static byte [] record(long value) {
+        return ByteBuffer.allocate(24).putLong(value).putLong(value).putLong(value).array();
+    }
+
+    /**
+     * The test checks that records are replayed in order across segments and processes and
+     * that records are dropped once the disk budget is used.
+     */
+    @Test
+    public void testSpool () throws Exception {
+
+        LOG.info("testSpool - START");
+
+        Path directory = Files.createTempDirectory("spool");
+
+        try {
+            // 4 records of 28 bytes per segment, 3 segments max.
+            MetricRegistry registry = new MetricsRegistryImpl();
+            try(DiskSpool spool = new DiskSpool(directory, "test", 8 + 4 * 28, 3 * (8 + 4 * 28), registry)) {
+                assertTrue(spool.isEmpty());
+                for(long i = 0; i < 12; i++) {
+                    assertTrue(spool.append(record(i)));
+                }
+                assertFalse(spool.append(record(12)));
+                assertEquals(1, spool.getDropped());
+                assertEquals(12, spool.getRecords());
+
+                // Replay 6 records in order
+                List<byte []> records = spool.peek(6);
+                assertEquals(6, records.size());
+                for(int i = 0; i < 6; i++) {
+                    assertArrayEquals(record(i), records.get(i));
+                }
+                spool.remove(6);
+                assertEquals(6, spool.getRecords());
+
+                // First segment deleted : room for new records
+                assertTrue(spool.append(record(12)));
+            }
+
+            // Next process replays the remaining records
+            try(DiskSpool spool = new DiskSpool(directory, "test", 8 + 4 * 28, 3 * (8 + 4 * 28), new MetricsRegistryImpl())) {
+                assertEquals(7, spool.getRecords());
+                List<byte []> records = spool.peek(100);
+                assertEquals(7, records.size());
+                for(int i = 0; i < 7; i++) {
+                    assertArrayEquals(record(6 + i), records.get(i));
+                }
+                spool.remove(7);
+                assertTrue(spool.isEmpty());
+                assertTrue(spool.peek(100).isEmpty());
+
+                // Spool is used again after it was drained
+                assertTrue(spool.append(record(13)));
+                assertArrayEquals(record(13), spool.peek(1).get(0));
+            }
+        }
+        finally {
+            try(Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+
+        LOG.info("testSpool - SUCCESS");
+    }
+}
@@ -0,0 +1,166 @@
+package tech.gbdevw.colibri.coinbaseetl.service.syncer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.codecs.MatchMessageCodec;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseClient;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseTrade;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProduct;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWsEventAddresses;
+import tech.gbdevw.colibri.coinbaseetl.configuration.CoinbaseProperties;
+import tech.gbdevw.colibri.coinbaseetl.configuration.ConfluentProperties;
+import tech.gbdevw.colibri.coinbaseetl.service.checkpoint.CheckpointService;
+import tech.gbdevw.colibri.coinbaseetl.service.metrics.BusMetrics;
+import tech.gbdevw.colibri.domain.Match;
+
+/**
+ * Test class for MatchSyncer
+ */
+public class MatchSyncerTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(MatchSyncerTest.class.getSimpleName());
+
+    /**
+     * Client serving trades 1 to 1000 with Coinbase pagination (newest first, after = older)
+     */
+    private static class PagedClient implements CoinbaseClient {
+
+        int requests = 0;
+
+        /**
+         * Requests which fail before trades are served
+         */
+        int failures = 0;
+
+        @Override
+        public CoinbaseTrade[] getTrades(String product, Integer limit, Long before, Long after) {
+            this.requests++;
+            if(this.requests <= this.failures) {
+                throw new IllegalStateException("Service unavailable");
+            }
+            List<CoinbaseTrade> trades = new ArrayList<>();
+            for(long id = (after == null ? 1000 : after - 1); id > 0 && trades.size() < limit; id--) {
+                CoinbaseTrade trade = new CoinbaseTrade();
+                trade.trade_id = String.valueOf(id);
+                trade.time = "2020-07-12T17:49:47.123Z";
+                trade.side = "buy";
+                trade.price = "9000.01";
+                trade.size = "0.1";
+                trades.add(trade);
+            }
+            return trades.toArray(new CoinbaseTrade[trades.size()]);
+        }
+
+        @Override
+        public InputStream getBook(String product, Integer level) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The test checks that exactly the trades of the gap are fetched, in id order, whatever
+     * the size of the gap.
+     */
+    @Test
+    public void testFetchTrades () {
+
+        LOG.info("testFetchTrades - START");
+
+        CoinbaseProperties config = new CoinbaseProperties();
+        config.backfillPageSize = 100;
+        config.backfillMaxPages = 5;
+        CoinbaseProduct product = new CoinbaseProductTable(List.of("BTC-USD")).get("BTC-USD");
+
+        // Short gap : a single request
+        PagedClient client = new PagedClient();
+        MatchSyncer syncer = new MatchSyncer(null, client, null, null, config, null, new BusMetrics(null, new MetricsRegistryImpl()));
+        List<CoinbaseTrade> trades = syncer.fetchTrades(product, 900, 905);
+        assertEquals(4, trades.size());
+        assertEquals("901", trades.get(0).trade_id);
+        assertEquals("904", trades.get(3).trade_id);
+        assertEquals(1, client.requests);
+
+        // Long gap : several requests
+        client = new PagedClient();
+        syncer = new MatchSyncer(null, client, null, null, config, null, new BusMetrics(null, new MetricsRegistryImpl()));
+        trades = syncer.fetchTrades(product, 550, 1000);
+        assertEquals(449, trades.size());
+        for(int i = 0; i < trades.size(); i++) {
+            assertEquals(String.valueOf(551 + i), trades.get(i).trade_id);
+        }
+        assertEquals(5, client.requests);
+
+        // Gap larger than the max. number of requests : the newest trades are fetched
+        client = new PagedClient();
+        syncer = new MatchSyncer(null, client, null, null, config, null, new BusMetrics(null, new MetricsRegistryImpl()));
+        trades = syncer.fetchTrades(product, 10, 1000);
+        assertEquals(500, trades.size());
+        assertEquals("500", trades.get(0).trade_id);
+        assertEquals(5, client.requests);
+
+        // Gap down to the first trade
+        client = new PagedClient();
+        syncer = new MatchSyncer(null, client, null, null, config, null, new BusMetrics(null, new MetricsRegistryImpl()));
+        trades = syncer.fetchTrades(product, 0, 150);
+        assertEquals(149, trades.size());
+        assertEquals(2, client.requests);
+
+        LOG.info("testFetchTrades - SUCCESS");
+    }
+
+    /**
+     * The test checks that a failed backfill is retried and that the older trades of a gap
+     * truncated by the max. number of requests are fetched later.
+     */
+    @Test
+    public void testBackfillRetry () throws Exception {
+
+        LOG.info("testBackfillRetry - START");
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            CoinbaseProperties config = new CoinbaseProperties();
+            config.backfillPageSize = 100;
+            config.backfillMaxPages = 2;
+            config.backfillInitial = 0L;
+            config.backfillRetryDelay = 10L;
+            config.backfillRetryMaxDelay = 20L;
+            CoinbaseProductTable products = new CoinbaseProductTable(List.of("BTC-USD"));
+            PagedClient client = new PagedClient();
+            client.failures = 2;
+            List<Long> published = new CopyOnWriteArrayList<>();
+            vertx.eventBus().registerDefaultCodec(Match.class, new MatchMessageCodec());
+            vertx.eventBus().<Match>consumer(CoinbaseWsEventAddresses.websocketMatchEventAddress, message -> published.add(message.body().getId()));
+            CheckpointService checkpoint = new CheckpointService(new ConfluentProperties(), products, vertx);
+            MatchSyncer syncer = new MatchSyncer(products, client, vertx.eventBus(), vertx, config, checkpoint, new BusMetrics(null, new MetricsRegistryImpl()));
+
+            // Trades 501 to 999 are missing : 2 failures then 3 truncated backfills
+            syncer.consumeMatchEvent(Match.newBuilder().setUnit(products.get("BTC-USD").getUnit()).setQuote(products.get("BTC-USD").getQuote()).setId(500).build());
+            syncer.consumeMatchEvent(Match.newBuilder().setUnit(products.get("BTC-USD").getUnit()).setQuote(products.get("BTC-USD").getQuote()).setId(1000).build());
+            for(int i = 0; i < 500 && published.size() < 499; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(499, published.size());
+            assertEquals(499, published.stream().distinct().count());
+            assertEquals(501L, published.stream().mapToLong(Long::longValue).min().getAsLong());
+            assertEquals(2 + 5, client.requests);
+        }
+        finally {
+            vertx.close();
+        }
+
+        LOG.info("testBackfillRetry - SUCCESS");
+    }
+}
@@ -0,0 +1,140 @@
+package tech.gbdevw.colibri.coinbaseetl.simulator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.client.CoinbaseTrade;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.utils.CoinbaseProductTable;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSMsgTypes;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSStreamDecoder;
+import tech.gbdevw.colibri.coinbaseetl.coinbase.websocket.utils.CoinbaseWSubscriptionHelper;
+import tech.gbdevw.colibri.domain.Match;
+
+/**
+ * Test class for CoinbaseSimulator
+ */
+public class CoinbaseSimulatorTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(CoinbaseSimulatorTest.class.getSimpleName());
+
+    private final static CoinbaseProductTable PRODUCTS = new CoinbaseProductTable(List.of("BTC-USD", "ETH-EUR"));
+
+    /**
+     * The test subscribes to the simulated feed like an endpoint, checks the streamed matches
+     * and tickers can be decoded with consecutive trade ids, and pages trades from the API.
+     */
+    @Test
+    public void testFeedAndTrades () throws Exception {
+
+        LOG.info("testFeedAndTrades - START");
+
+        Vertx vertx = Vertx.vertx();
+        CoinbaseSimulator simulator = new CoinbaseSimulator(vertx, 500, 0, 1000);
+        int port = simulator.start(0);
+        HttpClient client = HttpClient.newHttpClient();
+
+        // Subscribe
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        WebSocket socket = client.newWebSocketBuilder().buildAsync(URI.create("ws://localhost:" + port), new WebSocket.Listener() {
+            private StringBuilder text = new StringBuilder();
+            @Override
+            public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                text.append(data);
+                if(last) {
+                    messages.add(text.toString());
+                    text = new StringBuilder();
+                }
+                webSocket.request(1);
+                return null;
+            }
+        }).get(10, TimeUnit.SECONDS);
+        String[] products = { "BTC-USD", "ETH-EUR" };
+        String[] channels = { "ticker", "matches" };
+        socket.sendText(CoinbaseWSubscriptionHelper.buildSubscribeMessage(products, channels).toString(), true);
+
+        String subscriptions = messages.poll(10, TimeUnit.SECONDS);
+        assertNotNull(subscriptions);
+        assertTrue(CoinbaseWSubscriptionHelper.checkSubscriptionMessage(JsonParser.parseString(subscriptions).getAsJsonObject(), products, channels));
+
+        // Last match of each product, then consecutive matches & tickers
+        Map<String, Long> lastTradeIds = new HashMap<>();
+        int matches = 0;
+        int tickers = 0;
+        while(matches < 200 || tickers < 200) {
+            String message = messages.poll(10, TimeUnit.SECONDS);
+            assertNotNull(message);
+            JsonReader reader = new JsonReader(new StringReader(message));
+            String type = CoinbaseWSStreamDecoder.readType(reader);
+            if(CoinbaseWSMsgTypes.TICKER.equals(type)) {
+                assertNotNull(CoinbaseWSStreamDecoder.readTicker(reader, PRODUCTS));
+                tickers++;
+                continue;
+            }
+            Match match = CoinbaseWSStreamDecoder.readMatch(reader, PRODUCTS);
+            String product = match.getUnit() + "-" + match.getQuote();
+            Long last = lastTradeIds.put(product, match.getId());
+            if(CoinbaseWSMsgTypes.LASTMATCH.equals(type)) {
+                assertNull(last);
+            }
+            else {
+                assertEquals(CoinbaseWSMsgTypes.MATCH, type);
+                assertEquals(last + 1, match.getId());
+                matches++;
+            }
+        }
+        socket.abort();
+
+        // Trades API : newest first, paged with after
+        long newest = lastTradeIds.get("BTC-USD");
+        CoinbaseTrade[] page = this.getTrades(client, port, "BTC-USD", "limit=10&after=" + (newest + 1));
+        assertEquals(10, page.length);
+        for(int i = 0; i < page.length; i++) {
+            assertEquals(newest - i, Long.parseLong(page[i].trade_id));
+        }
+        CoinbaseTrade[] next = this.getTrades(client, port, "BTC-USD", "limit=10&after=" + page[9].trade_id);
+        assertEquals(newest - 10, Long.parseLong(next[0].trade_id));
+
+        // Unknown product
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/products/LTC-USD/trades")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, response.statusCode());
+
+        simulator.close();
+        vertx.close();
+
+        LOG.info("testFeedAndTrades - SUCCESS");
+    }
+
+    /**
+     * Get a page of trades from the simulated API
+     */
+    private CoinbaseTrade[] getTrades (HttpClient client, int port, String product, String query) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/products/" + product + "/trades?" + query)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        return new Gson().fromJson(response.body(), CoinbaseTrade[].class);
+    }
+}